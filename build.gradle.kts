@@ -87,6 +87,11 @@ tasks.register<Sync>("copyOpenAPITypes") {
 tasks.withType<Test> {
     systemProperty("java.util.logging.manager", "org.jboss.logmanager.LogManager")
     jvmArgs("--add-opens", "java.base/java.lang=ALL-UNNAMED")
+
+    // Benchmarks are skipped unless explicitly enabled, e.g. ./gradlew test -Dbenchmark=true
+    listOf("benchmark", "benchmark.sizes", "benchmark.rows", "benchmark.iterations").forEach { name ->
+        System.getProperty(name)?.let { systemProperty(name, it) }
+    }
 }
 
 tasks.withType<JavaCompile> {
@@ -1,12 +1,9 @@
 package de.bethibande.finance.jobs;
 
-import com.cronutils.model.Cron;
-import com.cronutils.model.definition.CronDefinition;
 import com.cronutils.model.time.ExecutionTime;
-import com.cronutils.parser.CronParser;
 import de.bethibande.finance.model.jpa.Job;
 import de.bethibande.finance.model.jpa.Workspace;
-import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+import de.bethibande.finance.model.jpa.recurring.CronCache;
 import org.slf4j.Logger;
 
 import java.time.Duration;
@@ -39,9 +36,7 @@ public class JobContext<C> {
     }
 
     public void reschedule(final String cronExpression) {
-        final CronDefinition def = RecurringPayment.cronDefinition();
-        final Cron cron = new CronParser(def).parse(cronExpression);
-        final ExecutionTime time = ExecutionTime.forCron(cron);
+        final ExecutionTime time = CronCache.shared().get(cronExpression);
 
         reschedule(time.nextExecution(ZonedDateTime.now()).orElseThrow().toInstant());
     }
@@ -54,6 +49,13 @@ public class JobContext<C> {
         reschedule(Instant.now().plus(duration));
     }
 
+    /**
+     * Persists the given config for this job, e.g. to store a checkpoint the next run can resume from.
+     */
+    public void updateConfig(final C config) {
+        scheduler.updateConfig(job, config);
+    }
+
     public boolean isActive() {
         return runner.isActive(this);
     }
@@ -0,0 +1,163 @@
+package de.bethibande.finance.jobs;
+
+import de.bethibande.finance.model.jpa.Job;
+import de.bethibande.finance.model.jpa.JobExecution;
+import de.bethibande.finance.model.jpa.JobExecutionOutcome;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.StatelessSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Records a {@link JobExecution} for every job run on this node.
+ * <br>
+ * Runners only append to an in-memory queue, the queue is written to the database in batches by a scheduled flush,
+ * so recording never delays a job. Executions older than {@code finance.jobs.history.retention} are pruned.
+ */
+@ApplicationScoped
+public class JobExecutionRecorder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobExecutionRecorder.class);
+
+    public static final int BATCH_SIZE = 500;
+
+    @Inject
+    protected StatelessSession session;
+
+    @ConfigProperty(name = "finance.jobs.node-id")
+    protected Optional<String> configuredNodeId;
+
+    @ConfigProperty(name = "finance.jobs.history.retention", defaultValue = "30d")
+    protected Duration retention;
+
+    private final Queue<JobExecution> pending = new ConcurrentLinkedQueue<>();
+
+    private volatile String nodeId;
+
+    /**
+     * @return the id of this node, defaults to the host name if {@code finance.jobs.node-id} is not set
+     */
+    public String getNodeId() {
+        if (nodeId == null) {
+            nodeId = configuredNodeId.orElseGet(() -> {
+                try {
+                    return InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+                } catch (final UnknownHostException e) {
+                    return "node-" + ProcessHandle.current().pid();
+                }
+            });
+        }
+
+        return nodeId;
+    }
+
+    public void record(final Job job,
+                       final Instant scheduledAt,
+                       final Instant startedAt,
+                       final JobExecutionOutcome outcome,
+                       final Throwable error) {
+        final JobExecution execution = new JobExecution();
+        execution.job = job;
+        execution.type = job.type;
+        execution.scheduledAt = scheduledAt;
+        execution.startedAt = startedAt;
+        execution.finishedAt = Instant.now();
+        execution.outcome = outcome;
+        execution.nodeId = getNodeId();
+        execution.error = summarize(error);
+
+        pending.add(execution);
+    }
+
+    private static String summarize(Throwable error) {
+        if (error == null) return null;
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        final String summary = error.getMessage() != null
+                ? error.getClass().getName() + ": " + error.getMessage()
+                : error.getClass().getName();
+
+        return summary.length() > JobExecution.MAX_ERROR_LENGTH
+                ? summary.substring(0, JobExecution.MAX_ERROR_LENGTH)
+                : summary;
+    }
+
+    @Scheduled(every = "${finance.jobs.history.flush-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    protected void flush() {
+        while (!pending.isEmpty()) {
+            final List<JobExecution> batch = new ArrayList<>(BATCH_SIZE);
+            JobExecution execution;
+            while (batch.size() < BATCH_SIZE && (execution = pending.poll()) != null) {
+                batch.add(execution);
+            }
+
+            try {
+                insert(batch);
+            } catch (final Throwable th) {
+                LOGGER.debug("Failed to write {} job executions as a batch, retrying one by one", batch.size(), th);
+                insertEach(batch);
+            }
+        }
+    }
+
+    private void insert(final List<JobExecution> executions) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            session.setJdbcBatchSize(BATCH_SIZE);
+            session.insertMultiple(executions);
+        });
+    }
+
+    /**
+     * Inserts every execution in its own transaction, so a single bad row only drops that row.
+     */
+    private void insertEach(final List<JobExecution> executions) {
+        int failed = 0;
+        for (final JobExecution execution : executions) {
+            // The id may have been assigned by the failed batch
+            execution.id = null;
+
+            try {
+                insert(List.of(execution));
+            } catch (final Throwable th) {
+                // The history is best effort, e.g. a job may have been deleted since it was run
+                LOGGER.debug("Failed to write execution of job {}", execution.job.id, th);
+                failed++;
+            }
+        }
+
+        if (failed > 0) LOGGER.warn("Dropped {} of {} job executions that could not be written", failed, executions.size());
+    }
+
+    protected void onShutdown(final @Observes ShutdownEvent event) {
+        flush();
+    }
+
+    @Scheduled(every = "1h", delayed = "1m")
+    protected void prune() {
+        final long deleted = QuarkusTransaction.requiringNew()
+                .call(() -> JobExecution.delete("finishedAt < ?1", Instant.now().minus(retention)));
+
+        if (deleted > 0) LOGGER.debug("Pruned {} job executions", deleted);
+    }
+
+}
@@ -0,0 +1,28 @@
+package de.bethibande.finance.jobs;
+
+/**
+ * Aggregated {@link de.bethibande.finance.model.jpa.JobExecution}s of a single task type.
+ * Lag is the time between the scheduled and the actual start of a run.
+ *
+ * @param type              the task type
+ * @param executions        number of runs
+ * @param failures          number of failed runs
+ * @param p50DurationMillis median run duration
+ * @param p95DurationMillis 95th percentile of the run duration
+ * @param p99DurationMillis 99th percentile of the run duration
+ * @param p50LagMillis      median lag
+ * @param p95LagMillis      95th percentile of the lag
+ * @param p99LagMillis      99th percentile of the lag
+ */
+public record JobExecutionStats(
+        String type,
+        long executions,
+        long failures,
+        Double p50DurationMillis,
+        Double p95DurationMillis,
+        Double p99DurationMillis,
+        Double p50LagMillis,
+        Double p95LagMillis,
+        Double p99LagMillis
+) {
+}
@@ -0,0 +1,105 @@
+package de.bethibande.finance.jobs;
+
+import de.bethibande.finance.model.jpa.Job;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Renews the locks of all jobs running on this node.
+ * <br>
+ * Runners register their job once it has been started, every heartbeat then renews all held locks using a single
+ * statement, see {@link JobService#renewLocks(Map, Instant)}. Jobs whose lock could not be renewed were claimed by
+ * another node in the meantime, their runners are told to stop.
+ * <br>
+ * The lock value of a held job only changes during a heartbeat. Locks are released through
+ * {@link #release(Job, Runnable)}, which waits for a running heartbeat, so the release always compares against the
+ * value stored in the database.
+ */
+@ApplicationScoped
+public class JobHeartbeat {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobHeartbeat.class);
+
+    private record Held(Job job, JobRunner runner) {
+    }
+
+    @Inject
+    protected JobService jobService;
+
+    private final Map<Long, Held> held = new ConcurrentHashMap<>();
+
+    // Heartbeats take the write lock, releases only need to exclude heartbeats, not each other
+    private final ReadWriteLock renewal = new ReentrantReadWriteLock();
+
+    public void register(final Job job, final JobRunner runner) {
+        held.put(job.id, new Held(job, runner));
+    }
+
+    public void unregister(final Job job) {
+        held.remove(job.id);
+    }
+
+    /**
+     * Stops renewing the lock of the given job and runs {@code release} while no heartbeat is in progress, so the
+     * {@link Job#lockTimeout} of the job is the value held in the database.
+     */
+    public void release(final Job job, final Runnable release) {
+        renewal.readLock().lock();
+        try {
+            held.remove(job.id);
+            release.run();
+        } finally {
+            renewal.readLock().unlock();
+        }
+    }
+
+    @Scheduled(every = "${finance.jobs.heartbeat-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    protected void beat() {
+        if (held.isEmpty()) return;
+
+        renewal.writeLock().lock();
+        try {
+            renew();
+        } finally {
+            renewal.writeLock().unlock();
+        }
+    }
+
+    private void renew() {
+        final Map<Long, Held> snapshot = Map.copyOf(held);
+        final Map<Long, Instant> locks = new HashMap<>(snapshot.size());
+        snapshot.forEach((id, entry) -> locks.put(id, entry.job().lockTimeout));
+
+        // Postgres stores microseconds, the lock value must survive the round trip to be comparable
+        final Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        final Set<Long> renewed = jobService.renewLocks(locks, now);
+
+        snapshot.forEach((id, entry) -> {
+            if (renewed.contains(id)) {
+                entry.job().lockTimeout = now;
+                return;
+            }
+
+            // The job may have finished and released its lock since the snapshot was taken
+            if (!held.remove(id, entry)) return;
+
+            LOGGER.warn("Lost lock on job {}", id);
+            entry.runner().lostLock(entry.job());
+        });
+
+        LOGGER.debug("Renewed {} of {} job locks", renewed.size(), snapshot.size());
+    }
+
+}
@@ -3,33 +3,39 @@ package de.bethibande.finance.jobs;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.bethibande.finance.model.jpa.Job;
+import de.bethibande.finance.model.jpa.JobExecutionOutcome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.Objects;
 import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.LockSupport;
 
 public class JobRunner {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JobRunner.class);
 
     private final AtomicReference<JobRunnerState> state = new AtomicReference<>(JobRunnerState.IDLE);
+    private volatile Instant lastActive = Instant.now();
 
     private final JobScheduler scheduler;
     private final JobService jobService;
+    private final JobHeartbeat heartbeat;
+    private final JobExecutionRecorder recorder;
     private final ObjectMapper objectMapper;
     private final Executor executor;
 
     public JobRunner(final JobScheduler scheduler,
                      final JobService jobService,
+                     final JobHeartbeat heartbeat,
+                     final JobExecutionRecorder recorder,
                      final ObjectMapper objectMapper,
                      final Executor executor) {
         this.scheduler = scheduler;
         this.jobService = jobService;
+        this.heartbeat = heartbeat;
+        this.recorder = recorder;
         this.objectMapper = objectMapper;
         this.executor = executor;
     }
@@ -38,28 +44,52 @@ public class JobRunner {
         return switch (state.get()) {
             case JobRunnerState.Idle _ -> false;
             case JobRunnerState.Running<?> s -> Objects.equals(s.ctx(), ctx);
+            case JobRunnerState.Lost _ -> false;
         };
     }
 
-    public boolean tryAcquire(final Job job) {
-        if (!state.compareAndSet(JobRunnerState.IDLE, new JobRunnerState.Running<>(job, null, null))) return false;
+    public boolean isIdle() {
+        return state.get() == JobRunnerState.IDLE;
+    }
 
-        try {
-            final Instant now = Instant.now();
-            if (!jobService.acquireLock(job, now)) {
-                state.set(JobRunnerState.IDLE);
-                return false;
-            }
+    /**
+     * @return the job this runner is currently running or null if the runner is idle
+     */
+    public Job getJob() {
+        return switch (state.get()) {
+            case JobRunnerState.Idle _ -> null;
+            case JobRunnerState.Running<?> s -> s.job();
+            case JobRunnerState.Lost s -> s.job();
+        };
+    }
 
-            job.lockTimeout = now;
+    /**
+     * @return the time the runner last started or finished a job
+     */
+    public Instant getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * Starts running the given job, the job must already be locked by this node, see {@link JobService#claimPendingJobs(int)}.
+     *
+     * @return false if the runner is busy or the job could not be started, in which case its lock has been released
+     * and it is retried later, see {@link #retryLater(Job)}
+     */
+    public boolean tryStart(final Job job) {
+        if (!state.compareAndSet(JobRunnerState.IDLE, new JobRunnerState.Running<>(job, null, null))) return false;
+        lastActive = Instant.now();
 
+        try {
             run(job);
-            return true;
         } catch (Throwable th) {
-            LOGGER.error("Encountered an error whilst trying to acquire job", th);
+            LOGGER.error("Encountered an error whilst trying to start job", th);
             state.set(JobRunnerState.IDLE);
+            heartbeat.release(job, () -> retryLater(job));
             return false;
         }
+
+        return true;
     }
 
     private <C> JobContext<C> createContext(final Job job, final JobTask<C> task) {
@@ -86,39 +116,79 @@ public class JobRunner {
         final JobTask<C> task = (JobTask<C>) jobService.findTaskById(job.type).orElseThrow(() -> new IllegalArgumentException("No task found for type " + job.type));
         final JobContext<C> ctx = createContext(job, task);
 
+        heartbeat.register(job, this);
         executor.execute(() -> runTask(job, task, ctx));
-        executor.execute(() -> retainLockTask(job));
     }
 
-    private void retainLockTask(final Job job) {
-        final JobRunnerState state = this.state.get();
-        while (Objects.equals(this.state.get(), state)) {
-            final Instant now = Instant.now();
-            if (jobService.extendLock(job, job.lockTimeout, now)) {
-                job.lockTimeout = now;
-                LOGGER.debug("Extended lock timeout for job {}", job.id);
-            } else {
-                final Job current = jobService.findById(job.id);
-                if (Objects.equals(this.state.get(), JobRunnerState.IDLE) || current.lockTimeout == null) return;
+    /**
+     * Called by the {@link JobHeartbeat} if the lock on the given job could not be renewed. The task is no longer
+     * active from this point on and its result is discarded. The runner stays busy until the task returns.
+     */
+    public void lostLock(final Job job) {
+        final JobRunnerState current = state.get();
+        if (current instanceof JobRunnerState.Running<?> running && Objects.equals(running.job().id, job.id)) {
+            state.compareAndSet(current, new JobRunnerState.Lost(running.job()));
+        }
+    }
 
-                LOGGER.warn("Lost lock on job {}", job.id);
-                this.state.set(JobRunnerState.IDLE);
-            }
+    /**
+     * Returns the runner to idle once the task of a job whose lock was lost has returned.
+     */
+    private void abandon(final Job job) {
+        final JobRunnerState current = state.get();
+        if (current instanceof JobRunnerState.Lost lost && lost.job() == job) state.compareAndSet(current, JobRunnerState.IDLE);
+    }
 
-            LockSupport.parkNanos(TimeUnit.MINUTES.toNanos(1));
-        }
+    /**
+     * Returns the runner to idle if it is still running the given context.
+     *
+     * @return false if the lock was lost in the meantime
+     */
+    private boolean finish(final JobContext<?> ctx) {
+        final JobRunnerState current = state.get();
+        return current instanceof JobRunnerState.Running<?> running
+                && Objects.equals(running.ctx(), ctx)
+                && state.compareAndSet(current, JobRunnerState.IDLE);
+    }
+
+    /**
+     * Releases the lock on a failed job and queues its retry, see {@link JobService#releaseFailedJob(Job)}.
+     * Without the delay, the next dispatch would claim the same job again right away.
+     */
+    private void retryLater(final Job job) {
+        final Instant nextExecution = jobService.releaseFailedJob(job);
+        if (nextExecution != null) scheduler.enqueue(job.id, nextExecution);
     }
 
     private <C> void runTask(final Job job, final JobTask<C> task, final JobContext<C> ctx) {
+        final Instant scheduledAt = job.nextScheduledExecution;
+        final Instant startedAt = Instant.now();
+
         try {
             task.execute(ctx).join();
 
-            state.set(JobRunnerState.IDLE);
-            jobService.markAsExecuted(job.id);
+            heartbeat.unregister(job);
+            if (finish(ctx)) {
+                jobService.markAsExecuted(job.id);
+                recorder.record(job, scheduledAt, startedAt, JobExecutionOutcome.SUCCEEDED, null);
+            } else {
+                LOGGER.warn("Lost lock on job {} whilst running, the result is discarded", job.id);
+                recorder.record(job, scheduledAt, startedAt, JobExecutionOutcome.LOCK_LOST, null);
+            }
         } catch (final Throwable th) {
-            state.set(JobRunnerState.IDLE);
-            jobService.releaseLock(job);
+            if (finish(ctx)) {
+                heartbeat.release(job, () -> retryLater(job));
+                recorder.record(job, scheduledAt, startedAt, JobExecutionOutcome.FAILED, th);
+            } else {
+                heartbeat.unregister(job);
+                recorder.record(job, scheduledAt, startedAt, JobExecutionOutcome.LOCK_LOST, th);
+            }
+
             LOGGER.error("Encountered an error whilst trying to run task: {}", ctx, th);
+        } finally {
+            abandon(job);
+            lastActive = Instant.now();
+            scheduler.requestDispatch();
         }
     }
 
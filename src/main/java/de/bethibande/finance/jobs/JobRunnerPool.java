@@ -0,0 +1,186 @@
+package de.bethibande.finance.jobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.model.jpa.Job;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An elastic pool of {@link JobRunner}s.
+ * <br>
+ * Runners are created on demand up to {@code finance.jobs.runners.max} and removed again once they have been idle for
+ * {@code finance.jobs.runners.idle-timeout}, keeping at least {@code finance.jobs.runners.min}. Each task type may
+ * additionally be limited using {@code finance.jobs.task-limit.<type>}, so a slow task cannot occupy the whole pool.
+ * <br>
+ * The pool is only modified by the dispatcher thread of the {@link JobScheduler}.
+ */
+@ApplicationScoped
+public class JobRunnerPool {
+
+    /**
+     * Free capacity of the pool.
+     *
+     * @param free           number of jobs that can be started right now
+     * @param saturatedTypes task types that reached their limit
+     */
+    public record Capacity(
+            int free,
+            Set<String> saturatedTypes
+    ) {
+    }
+
+    @Inject
+    protected JobScheduler scheduler;
+
+    @Inject
+    protected JobService jobService;
+
+    @Inject
+    protected JobHeartbeat heartbeat;
+
+    @Inject
+    protected JobExecutionRecorder recorder;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    protected Config config;
+
+    @ConfigProperty(name = "finance.jobs.runners.min", defaultValue = "1")
+    protected int minRunners;
+
+    @ConfigProperty(name = "finance.jobs.runners.max", defaultValue = "5")
+    protected int maxRunners;
+
+    @ConfigProperty(name = "finance.jobs.runners.idle-timeout", defaultValue = "5m")
+    protected Duration idleTimeout;
+
+    protected final Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final List<JobRunner> runners = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> limits = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder totalQueueWaitMillis = new LongAdder();
+    private final AtomicLong maxQueueWaitMillis = new AtomicLong();
+    private volatile long lastQueueWaitMillis = 0;
+
+    /**
+     * @return the maximum number of concurrently running jobs of the given type
+     */
+    public int getLimit(final String type) {
+        return limits.computeIfAbsent(type, _ -> config.getOptionalValue("finance.jobs.task-limit." + type, Integer.class)
+                .filter(limit -> limit > 0)
+                .map(limit -> Math.min(limit, maxRunners))
+                .orElse(maxRunners));
+    }
+
+    private Map<String, Integer> countBusyByType() {
+        final Map<String, Integer> busy = new HashMap<>();
+        for (final JobRunner runner : runners) {
+            final Job job = runner.getJob();
+            if (job != null) busy.merge(job.type, 1, Integer::sum);
+        }
+
+        return busy;
+    }
+
+    public Capacity getCapacity() {
+        final Map<String, Integer> busy = countBusyByType();
+        final int running = busy.values().stream().mapToInt(Integer::intValue).sum();
+
+        final Set<String> saturated = new HashSet<>();
+        busy.forEach((type, count) -> {
+            if (count >= getLimit(type)) saturated.add(type);
+        });
+
+        return new Capacity(Math.max(0, maxRunners - running), saturated);
+    }
+
+    /**
+     * Starts the given job on an idle runner, creating a new runner if none is idle.
+     * The job must already be locked by this node, see {@link JobService#claimPendingJobs(int, Collection)}.
+     *
+     * @return false if the job could not be started because either the pool or the task type is at its limit or the
+     * job failed to start
+     */
+    public boolean start(final Job job) {
+        if (countBusyByType().getOrDefault(job.type, 0) >= getLimit(job.type)) return false;
+
+        // Only idle runners are tried, a job that failed to start must not be handed to the next runner
+        for (final JobRunner runner : runners) {
+            if (runner.isIdle()) return start(runner, job);
+        }
+
+        if (runners.size() >= maxRunners) return false;
+
+        final JobRunner runner = new JobRunner(scheduler, jobService, heartbeat, recorder, objectMapper, executor);
+        runners.add(runner);
+
+        return start(runner, job);
+    }
+
+    private boolean start(final JobRunner runner, final Job job) {
+        if (!runner.tryStart(job)) return false;
+
+        recordStart(job);
+        return true;
+    }
+
+    private void recordStart(final Job job) {
+        final long wait = job.nextScheduledExecution != null
+                ? Math.max(0, Duration.between(job.nextScheduledExecution, Instant.now()).toMillis())
+                : 0;
+
+        started.increment();
+        totalQueueWaitMillis.add(wait);
+        maxQueueWaitMillis.accumulateAndGet(wait, Math::max);
+        lastQueueWaitMillis = wait;
+    }
+
+    /**
+     * Removes runners that have been idle for longer than the idle timeout, keeping at least the configured minimum.
+     */
+    public void shrink() {
+        final Instant threshold = Instant.now().minus(idleTimeout);
+        for (final JobRunner runner : runners) {
+            if (runners.size() <= minRunners) return;
+            if (runner.isIdle() && runner.getLastActive().isBefore(threshold)) runners.remove(runner);
+        }
+    }
+
+    public JobRunnerStats getStats() {
+        final Map<String, Integer> busy = countBusyByType();
+        final Map<String, Integer> limitsByType = new TreeMap<>();
+        jobService.getTasks().forEach(task -> limitsByType.put(task.getTaskIdentifier(), getLimit(task.getTaskIdentifier())));
+
+        final long started = this.started.sum();
+
+        return new JobRunnerStats(
+                runners.size(),
+                busy.values().stream().mapToInt(Integer::intValue).sum(),
+                minRunners,
+                maxRunners,
+                new TreeMap<>(busy),
+                limitsByType,
+                started,
+                started > 0 ? totalQueueWaitMillis.sum() / started : 0,
+                maxQueueWaitMillis.get(),
+                lastQueueWaitMillis
+        );
+    }
+
+}
@@ -2,7 +2,7 @@ package de.bethibande.finance.jobs;
 
 import de.bethibande.finance.model.jpa.Job;
 
-public sealed interface JobRunnerState permits JobRunnerState.Idle, JobRunnerState.Running {
+public sealed interface JobRunnerState permits JobRunnerState.Idle, JobRunnerState.Running, JobRunnerState.Lost {
 
     JobRunnerState IDLE = new Idle();
 
@@ -18,4 +18,13 @@ public sealed interface JobRunnerState permits JobRunnerState.Idle, JobRunnerSta
     ) implements JobRunnerState {
     }
 
+    /**
+     * The lock on the job was lost but its task has not returned yet. The runner stays busy until it does, so the
+     * task still counts towards the pool and task type limits.
+     */
+    record Lost(
+            Job job
+    ) implements JobRunnerState {
+    }
+
 }
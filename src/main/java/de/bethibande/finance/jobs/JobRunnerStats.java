@@ -0,0 +1,31 @@
+package de.bethibande.finance.jobs;
+
+import java.util.Map;
+
+/**
+ * Occupancy of the {@link JobRunnerPool} of this node.
+ *
+ * @param runners                number of runners currently in the pool
+ * @param busy                   number of runners currently running a job
+ * @param minRunners             minimum size of the pool
+ * @param maxRunners             maximum size of the pool
+ * @param busyByType             number of running jobs by task type
+ * @param limits                 concurrency limit by task type
+ * @param started                number of jobs started since startup
+ * @param averageQueueWaitMillis average time between the scheduled and the actual start of a job
+ * @param maxQueueWaitMillis     longest time between the scheduled and the actual start of a job
+ * @param lastQueueWaitMillis    time between the scheduled and the actual start of the last job
+ */
+public record JobRunnerStats(
+        int runners,
+        int busy,
+        int minRunners,
+        int maxRunners,
+        Map<String, Integer> busyByType,
+        Map<String, Integer> limits,
+        long started,
+        long averageQueueWaitMillis,
+        long maxQueueWaitMillis,
+        long lastQueueWaitMillis
+) {
+}
@@ -0,0 +1,16 @@
+package de.bethibande.finance.jobs;
+
+import java.time.Instant;
+
+/**
+ * Fired whenever the next execution of a job changes. The {@link JobScheduler} observes this event once the
+ * surrounding transaction has been committed, so it can wake up immediately instead of waiting for the next poll.
+ *
+ * @param jobId         the id of the job
+ * @param nextExecution the next execution of the job, may be null if the job is no longer scheduled
+ */
+public record JobScheduledEvent(
+        long jobId,
+        Instant nextExecution
+) {
+}
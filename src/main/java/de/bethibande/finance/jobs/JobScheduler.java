@@ -1,39 +1,83 @@
 package de.bethibande.finance.jobs;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import de.bethibande.finance.model.jpa.Job;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.StartupEvent;
 import io.quarkus.scheduler.Scheduled;
-import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Dispatches pending jobs to the {@link JobRunner}s.
+ * <br>
+ * The scheduler keeps a time-ordered in-memory queue of upcoming job executions and a dispatcher thread that sleeps
+ * until the earliest one is due. Changes to a job's schedule are published as {@link JobScheduledEvent}s, which wake
+ * the dispatcher immediately. The database remains the source of truth, the queue is rebuilt by a slow
+ * reconciliation poll, which also picks up changes made by other nodes.
+ */
+@Startup
 @ApplicationScoped
 public class JobScheduler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
 
+    private record Upcoming(long jobId, Instant at) {
+    }
+
     @Inject
     protected JobService jobService;
 
     @Inject
-    protected ObjectMapper objectMapper;
+    protected JobRunnerPool pool;
+
+    @Inject
+    protected Event<JobScheduledEvent> scheduledEvent;
+
+    @ConfigProperty(name = "finance.jobs.enabled", defaultValue = "true")
+    protected boolean enabled;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeup = lock.newCondition();
+    private final PriorityQueue<Upcoming> queue = new PriorityQueue<>(Comparator.comparing(Upcoming::at));
+    private final Map<Long, Instant> upcoming = new HashMap<>();
+
+    private boolean dispatchRequested = false;
+    private volatile boolean running = false;
 
-    protected final List<JobRunner> runners = new ArrayList<>();
-    protected Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+    protected void onStart(final @Observes StartupEvent event) {
+        if (!enabled) {
+            LOGGER.info("Job scheduler is disabled");
+            return;
+        }
+
+        running = true;
+
+        reconcile();
+        Thread.ofVirtual().name("job-dispatcher").start(this::dispatchLoop);
+    }
 
-    @PostConstruct
-    public void init() {
-        for (int i = 0; i < 5; i++) {
-            runners.add(new JobRunner(this, jobService, objectMapper, executor));
+    protected void onShutdown(final @Observes ShutdownEvent event) {
+        lock.lock();
+        try {
+            running = false;
+            wakeup.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -43,21 +87,157 @@ public class JobScheduler {
 
         final Job actual = Job.findById(job.id);
         actual.nextScheduledExecution = nextExecution;
+
+        scheduledEvent.fire(new JobScheduledEvent(job.id, nextExecution));
     }
 
-    @Transactional
-    @Scheduled(every = "1m")
-    protected void schedule() {
-        final List<Job> jobs = jobService.listPendingJobs();
+    public void updateConfig(final Job job, final Object config) {
+        jobService.updateConfig(job, config);
+    }
+
+    protected void onJobScheduled(final @Observes(during = TransactionPhase.AFTER_SUCCESS) JobScheduledEvent event) {
+        enqueue(event.jobId(), event.nextExecution());
+    }
+
+    /**
+     * Adds or replaces the next execution of a job in the queue and wakes the dispatcher if needed.
+     */
+    public void enqueue(final long jobId, final Instant at) {
+        lock.lock();
+        try {
+            if (at == null) {
+                upcoming.remove(jobId);
+                return;
+            }
+
+            upcoming.put(jobId, at);
+            queue.add(new Upcoming(jobId, at));
+            wakeup.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the dispatcher and makes it look for pending jobs, e.g. after a runner became idle.
+     */
+    public void requestDispatch() {
+        lock.lock();
+        try {
+            dispatchRequested = true;
+            wakeup.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Safety net, rebuilds the queue from the database and dispatches any job that may have been missed.
+     */
+    @Scheduled(every = "${finance.jobs.reconcile-interval}", delayed = "${finance.jobs.reconcile-interval}")
+    protected void reconcile() {
+        if (!running) return;
+
+        final List<Job> jobs = jobService.listScheduledJobs();
+
+        lock.lock();
+        try {
+            queue.clear();
+            upcoming.clear();
+
+            final Duration lockTimeout = jobService.getLockTimeout();
+            for (final Job job : jobs) {
+                // Running jobs only need to be looked at again once their lock may have timed out
+                final Instant at = job.lockTimeout != null && job.lockTimeout.plus(lockTimeout).isAfter(job.nextScheduledExecution)
+                        ? job.lockTimeout.plus(lockTimeout)
+                        : job.nextScheduledExecution;
+
+                upcoming.put(job.id, at);
+                queue.add(new Upcoming(job.id, at));
+            }
+
+            dispatchRequested = true;
+            wakeup.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            lock.lock();
+            try {
+                awaitDue();
+                if (!running) return;
+
+                dispatchRequested = false;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                dispatch();
+            } catch (final Throwable th) {
+                LOGGER.error("Encountered an error whilst dispatching jobs", th);
+            }
+        }
+    }
+
+    /**
+     * Sleeps until either a dispatch was requested or the earliest queued job is due, due jobs are removed from the queue.
+     * Must be called while holding the lock.
+     */
+    private void awaitDue() throws InterruptedException {
+        while (running && !dispatchRequested) {
+            final Upcoming head = queue.peek();
+            if (head == null) {
+                wakeup.await();
+                continue;
+            }
+
+            // Entry was replaced by a newer execution time
+            if (!Objects.equals(upcoming.get(head.jobId()), head.at())) {
+                queue.poll();
+                continue;
+            }
+
+            final Duration wait = Duration.between(Instant.now(), head.at());
+            if (wait.isNegative() || wait.isZero()) {
+                queue.poll();
+                upcoming.remove(head.jobId());
+                dispatchRequested = true;
+                break;
+            }
+
+            wakeup.awaitNanos(Math.min(wait.toNanos(), TimeUnit.DAYS.toNanos(1)));
+        }
+
+        // Remove everything else that is due as well, a single dispatch handles all of them
+        final Instant now = Instant.now();
+        while (!queue.isEmpty() && !queue.peek().at().isAfter(now)) {
+            final Upcoming due = queue.poll();
+            if (Objects.equals(upcoming.get(due.jobId()), due.at())) upcoming.remove(due.jobId());
+        }
+    }
+
+    protected void dispatch() {
+        pool.shrink();
+
+        final JobRunnerPool.Capacity capacity = pool.getCapacity();
+        if (capacity.free() <= 0) return;
 
+        final List<Job> jobs = jobService.claimPendingJobs(capacity.free(), capacity.saturatedTypes());
         for (final Job job : jobs) {
-            final boolean isRunning = job.lockTimeout != null;
-            for (final JobRunner runner : runners) {
-                if (runner.tryAcquire(job)) {
-                    LOGGER.debug("Acquired job {}: {}", job.id, job.type);
-                    if (isRunning) LOGGER.warn("Acquired job {} after timeout", job.id);
-                    break;
-                }
+            if (pool.start(job)) {
+                LOGGER.debug("Acquired job {}: {}", job.id, job.type);
+            } else {
+                // A single claim may contain more jobs of one type than its limit allows, they are picked up again later.
+                // Releasing is a no-op if the job failed to start, the runner has already released it.
+                LOGGER.debug("Could not start job {} of type {}, releasing lock", job.id, job.type);
+                jobService.releaseLock(job);
             }
         }
     }
@@ -1,17 +1,24 @@
 package de.bethibande.finance.jobs;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.bethibande.finance.model.jpa.Job;
 import io.quarkus.arc.All;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.jpa.HibernateHints;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class JobService {
@@ -19,6 +26,15 @@ public class JobService {
     @Inject
     protected ObjectMapper mapper;
 
+    @ConfigProperty(name = "finance.jobs.lock-timeout", defaultValue = "5m")
+    protected Duration lockTimeout;
+
+    @ConfigProperty(name = "finance.jobs.retry-delay", defaultValue = "1m")
+    protected Duration retryDelay;
+
+    @ConfigProperty(name = "finance.jobs.max-retry-delay", defaultValue = "1h")
+    protected Duration maxRetryDelay;
+
     @All
     @Inject
     protected List<JobTask<?>> tasks;
@@ -31,10 +47,140 @@ public class JobService {
                 .findAny();
     }
 
-    public List<Job> listPendingJobs() {
+    public List<JobTask<?>> getTasks() {
+        return tasks;
+    }
+
+    public List<Job> claimPendingJobs(final int limit) {
+        return claimPendingJobs(limit, Set.of());
+    }
+
+    /**
+     * Claims up to {@code limit} pending jobs by locking them in a single statement.
+     * <br>
+     * Rows that are currently being claimed by another node are skipped ({@code FOR UPDATE SKIP LOCKED}),
+     * so several nodes can claim jobs concurrently without blocking each other or claiming the same job twice.
+     *
+     * @param excludedTypes task types that must not be claimed, e.g. because they reached their concurrency limit
+     * @return the claimed jobs, their lockTimeout is set to the new lock
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public List<Job> claimPendingJobs(final int limit, final Collection<String> excludedTypes) {
+        if (limit <= 0) return List.of();
+
         final Instant now = Instant.now();
-        final Instant nowTimeout = now.minus(5, ChronoUnit.MINUTES);
-        return Job.list("nextScheduledExecution <= ?1 AND (lockTimeout <= ?2 OR lockTimeout IS NULL) AND (lastSuccessfulExecution IS NULL OR lastSuccessfulExecution <= nextScheduledExecution)", now, nowTimeout);
+        return Job.getEntityManager().createNativeQuery("""
+                        UPDATE Job SET lockTimeout = :now
+                        WHERE id IN (
+                            SELECT id FROM Job
+                            WHERE nextScheduledExecution <= :now
+                              AND (lockTimeout <= :timeout OR lockTimeout IS NULL)
+                              AND (lastSuccessfulExecution IS NULL OR lastSuccessfulExecution <= nextScheduledExecution)
+                              AND NOT (type = ANY(:excluded))
+                            ORDER BY nextScheduledExecution
+                            LIMIT :limit
+                            FOR UPDATE SKIP LOCKED
+                        )
+                        RETURNING *
+                        """, Job.class)
+                .setParameter("now", now)
+                .setParameter("timeout", now.minus(lockTimeout))
+                .setParameter("limit", limit)
+                .setParameter("excluded", excludedTypes.toArray(String[]::new))
+                .getResultList();
+    }
+
+    /**
+     * Renews the given locks in a single statement. A lock is only renewed if the job is still locked with the given
+     * value, otherwise it was released or claimed by another node.
+     *
+     * @param locks the held locks, mapped from job id to the current lock value
+     * @return the ids of all jobs whose lock has been renewed
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Set<Long> renewLocks(final Map<Long, Instant> locks, final Instant now) {
+        if (locks.isEmpty()) return Set.of();
+
+        final Long[] ids = new Long[locks.size()];
+        final Instant[] values = new Instant[locks.size()];
+
+        int i = 0;
+        for (final Map.Entry<Long, Instant> entry : locks.entrySet()) {
+            ids[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+
+        final List<Number> renewed = Job.getEntityManager().createNativeQuery("""
+                        UPDATE Job SET lockTimeout = :now
+                        FROM unnest(:ids, :locks) AS held(id, lockTimeout)
+                        WHERE Job.id = held.id AND Job.lockTimeout = held.lockTimeout
+                        RETURNING Job.id
+                        """)
+                .setParameter("now", now)
+                .setParameter("ids", ids)
+                .setParameter("locks", values)
+                .getResultList();
+
+        return renewed.stream().map(Number::longValue).collect(Collectors.toSet());
+    }
+
+    public Duration getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * Lists all jobs that have an upcoming execution, including pending and running ones.
+     */
+    @Transactional
+    public List<Job> listScheduledJobs() {
+        return Job.list("nextScheduledExecution IS NOT NULL AND (lastSuccessfulExecution IS NULL OR lastSuccessfulExecution <= nextScheduledExecution)");
+    }
+
+    /**
+     * Aggregates the executions of all jobs of a workspace by task type, see {@link JobExecutionStats}.
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public List<JobExecutionStats> getExecutionStats(final long workspaceId, final Instant since) {
+        final List<Object[]> rows = Job.getEntityManager().createNativeQuery("""
+                        SELECT e.type,
+                               count(*),
+                               count(*) FILTER (WHERE e.outcome = 'FAILED'),
+                               percentile_cont(0.5) WITHIN GROUP (ORDER BY extract(EPOCH FROM e.finishedAt - e.startedAt) * 1000),
+                               percentile_cont(0.95) WITHIN GROUP (ORDER BY extract(EPOCH FROM e.finishedAt - e.startedAt) * 1000),
+                               percentile_cont(0.99) WITHIN GROUP (ORDER BY extract(EPOCH FROM e.finishedAt - e.startedAt) * 1000),
+                               percentile_cont(0.5) WITHIN GROUP (ORDER BY extract(EPOCH FROM e.startedAt - e.scheduledAt) * 1000),
+                               percentile_cont(0.95) WITHIN GROUP (ORDER BY extract(EPOCH FROM e.startedAt - e.scheduledAt) * 1000),
+                               percentile_cont(0.99) WITHIN GROUP (ORDER BY extract(EPOCH FROM e.startedAt - e.scheduledAt) * 1000)
+                        FROM JobExecution e
+                        JOIN Job j ON j.id = e.job_id
+                        WHERE j.workspace_id = :workspace AND e.startedAt >= :since
+                        GROUP BY e.type
+                        ORDER BY e.type
+                        """)
+                .setParameter("workspace", workspaceId)
+                .setParameter("since", since)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new JobExecutionStats(
+                        (String) row[0],
+                        ((Number) row[1]).longValue(),
+                        ((Number) row[2]).longValue(),
+                        toDouble(row[3]),
+                        toDouble(row[4]),
+                        toDouble(row[5]),
+                        toDouble(row[6]),
+                        toDouble(row[7]),
+                        toDouble(row[8])
+                ))
+                .toList();
+    }
+
+    private static Double toDouble(final Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
     }
 
     @Transactional
@@ -47,28 +193,60 @@ public class JobService {
         Job.update("lockTimeout = NULL WHERE lockTimeout = ?1 AND id = ?2", job.lockTimeout, job.id);
     }
 
+    /**
+     * Releases the lock on a job whose execution failed and postpones its next execution in the same statement.
+     * The delay starts at {@code finance.jobs.retry-delay} and doubles with every consecutive failure, up to
+     * {@code finance.jobs.max-retry-delay}.
+     *
+     * @return the next execution of the job or null if the lock was no longer held
+     */
     @Transactional
-    public void markAsExecuted(final long id) {
-        final Job job = Job.findById(id);
-        if (job == null) throw new IllegalArgumentException("Job id " + id + " not found");
+    public Instant releaseFailedJob(final Job job) {
+        final Instant nextExecution = Instant.now().plus(getRetryDelay(job.failedAttempts));
+        final int updated = Job.getEntityManager().createNativeQuery("""
+                        UPDATE Job SET lockTimeout = NULL, nextScheduledExecution = :next, failedAttempts = failedAttempts + 1
+                        WHERE id = :id AND lockTimeout = :lock
+                        """)
+                .setParameter("next", nextExecution)
+                .setParameter("id", job.id)
+                .setParameter("lock", job.lockTimeout)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "Job")
+                .executeUpdate();
 
-        job.lastSuccessfulExecution = Instant.now();
-        job.lockTimeout = null;
+        return updated > 0 ? nextExecution : null;
+    }
 
-        job.persist();
+    /**
+     * @param failedAttempts the number of consecutive failures before the current one
+     */
+    public Duration getRetryDelay(final int failedAttempts) {
+        final Duration delay = retryDelay.multipliedBy(1L << Math.min(failedAttempts, 30));
+        return delay.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : delay;
     }
 
     @Transactional
-    public boolean acquireLock(final Job job, final Instant now) {
-        if (job.lockTimeout == null) {
-            return Job.update("lockTimeout = ?1 WHERE id = ?2 AND lockTimeout IS NULL", now, job.id) > 0;
-        }
-        return extendLock(job, job.lockTimeout, now);
+    public void markAsExecuted(final long id) {
+        final int updated = Job.getEntityManager().createNativeQuery("""
+                        UPDATE Job SET lastSuccessfulExecution = :now, lockTimeout = NULL, failedAttempts = 0
+                        WHERE id = :id
+                        """)
+                .setParameter("now", Instant.now())
+                .setParameter("id", id)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "Job")
+                .executeUpdate();
+
+        if (updated == 0) throw new IllegalArgumentException("Job id " + id + " not found");
     }
 
     @Transactional
-    public boolean extendLock(final Job job, final Instant previousLock, final Instant now) {
-        return Job.update("lockTimeout = ?1 WHERE id = ?2 AND lockTimeout = ?3", now, job.id, previousLock) > 0;
+    public void updateConfig(final Job job, final Object config) {
+        try {
+            job.configJson = mapper.writeValueAsString(config);
+        } catch (final JsonProcessingException e) {
+            throw new IllegalArgumentException("Job config cannot be serialized", e);
+        }
+
+        Job.update("configJson = ?1 WHERE id = ?2", job.configJson, job.id);
     }
 
 }
@@ -0,0 +1,79 @@
+package de.bethibande.finance.jobs.impl;
+
+import de.bethibande.finance.jobs.JobContext;
+import de.bethibande.finance.jobs.JobTask;
+import de.bethibande.finance.model.jpa.transaction.BalanceSnapshots;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Brings the {@link de.bethibande.finance.model.jpa.BalanceSnapshot}s of a workspace up to date.
+ * <br>
+ * Only wallets and assets with booked amounts changed since the last run are recomputed, each starting at the earliest
+ * changed day, see {@link BalanceSnapshots}. They are processed in batches of {@link Config#batchSize()}, each batch in
+ * its own transaction, so a run that loses its lock leaves the remaining batches to the next run.
+ */
+@ApplicationScoped
+public class BalanceSnapshotsTask implements JobTask<BalanceSnapshotsTask.Config> {
+
+    @RegisterForReflection
+    public record Config(
+            Integer batchSize,
+            Integer intervalMinutes
+    ) {
+
+        public static final int DEFAULT_BATCH_SIZE = 100;
+        public static final int DEFAULT_INTERVAL_MINUTES = 5;
+
+        public static final Config DEFAULT = new Config(null, null);
+
+        public int batchSizeOrDefault() {
+            return batchSize != null && batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        }
+
+        public Duration intervalOrDefault() {
+            return Duration.ofMinutes(intervalMinutes != null && intervalMinutes > 0 ? intervalMinutes : DEFAULT_INTERVAL_MINUTES);
+        }
+
+    }
+
+    @Inject
+    protected BalanceSnapshots snapshots;
+
+    @Override
+    public String getTaskIdentifier() {
+        return "balance_snapshots";
+    }
+
+    @Override
+    public Class<Config> getConfigType() {
+        return Config.class;
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(final JobContext<Config> ctx) {
+        final Config config = ctx.getConfig() != null ? ctx.getConfig() : Config.DEFAULT;
+        final long workspaceId = ctx.getWorkspace().id;
+        final int batchSize = config.batchSizeOrDefault();
+
+        return CompletableFuture.runAsync(() -> {
+            long refreshed = 0;
+            int claimed;
+            do {
+                if (!ctx.isActive()) throw new CancellationException("Lost lock after refreshing " + refreshed + " balances");
+
+                claimed = QuarkusTransaction.requiringNew().call(() -> snapshots.refresh(workspaceId, batchSize));
+                refreshed += claimed;
+            } while (claimed >= batchSize);
+
+            if (refreshed > 0) ctx.getLogger().info("Refreshed the snapshots of {} balances", refreshed);
+        }, ctx.getExecutor()).thenRun(() -> ctx.reschedule(config.intervalOrDefault()));
+    }
+
+}
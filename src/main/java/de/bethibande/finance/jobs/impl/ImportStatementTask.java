@@ -0,0 +1,57 @@
+package de.bethibande.finance.jobs.impl;
+
+import de.bethibande.finance.jobs.JobContext;
+import de.bethibande.finance.jobs.JobTask;
+import de.bethibande.finance.statement.StatementImporter;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Imports a bank statement uploaded to the {@link de.bethibande.finance.web.api.v2.StatementImportEndpoint}, see
+ * {@link StatementImporter}. The job is created by the upload and runs once, it is not rescheduled.
+ */
+@ApplicationScoped
+public class ImportStatementTask implements JobTask<ImportStatementTask.Config> {
+
+    public static final String IDENTIFIER = "import_statement";
+
+    @RegisterForReflection
+    public record Config(
+            long importId,
+            Integer batchSize
+    ) {
+
+        public int batchSizeOrDefault() {
+            return batchSize != null && batchSize > 0 ? batchSize : StatementImporter.DEFAULT_BATCH_SIZE;
+        }
+
+    }
+
+    @Inject
+    protected StatementImporter importer;
+
+    @Override
+    public String getTaskIdentifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public Class<Config> getConfigType() {
+        return Config.class;
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(final JobContext<Config> ctx) {
+        final Config config = ctx.getConfig();
+        if (config == null) throw new IllegalArgumentException("Missing import id");
+
+        return CompletableFuture.runAsync(
+                () -> importer.run(config.importId(), config.batchSizeOrDefault(), ctx::isActive, ctx.getLogger()),
+                ctx.getExecutor()
+        );
+    }
+
+}
@@ -0,0 +1,81 @@
+package de.bethibande.finance.jobs.impl;
+
+import de.bethibande.finance.jobs.JobContext;
+import de.bethibande.finance.jobs.JobTask;
+import de.bethibande.finance.model.jpa.transaction.TransactionBookings;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Checks the booking state of the transactions of a workspace against their booked amounts, see
+ * {@link TransactionBookings}.
+ * <br>
+ * In {@link Mode#VERIFY} mode the job fails if the state of any transaction differs, {@link Mode#REPAIR} recomputes
+ * the state of the transactions that differ.
+ */
+@ApplicationScoped
+public class TransactionBookingsTask implements JobTask<TransactionBookingsTask.Config> {
+
+    public enum Mode {
+        VERIFY,
+        REPAIR
+    }
+
+    @RegisterForReflection
+    public record Config(
+            Mode mode
+    ) {
+
+        public static final Config DEFAULT = new Config(Mode.REPAIR);
+
+        public Mode modeOrDefault() {
+            return mode != null ? mode : Mode.REPAIR;
+        }
+
+    }
+
+    @Inject
+    protected TransactionBookings transactionBookings;
+
+    @Override
+    public String getTaskIdentifier() {
+        return "transaction_bookings";
+    }
+
+    @Override
+    public Class<Config> getConfigType() {
+        return Config.class;
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(final JobContext<Config> ctx) {
+        final Config config = ctx.getConfig() != null ? ctx.getConfig() : Config.DEFAULT;
+        final long workspaceId = ctx.getWorkspace().id;
+
+        return CompletableFuture.runAsync(() -> {
+            final List<TransactionBookings.Mismatch> mismatches = QuarkusTransaction.requiringNew()
+                    .call(() -> transactionBookings.verify(workspaceId));
+            if (mismatches.isEmpty()) return;
+
+            for (final TransactionBookings.Mismatch mismatch : mismatches) {
+                ctx.getLogger().warn("Transaction {} has {} bookings summing up to {} but the ledger has {} summing up to {}",
+                        mismatch.transactionId(), mismatch.storedCount(), mismatch.storedSum(), mismatch.ledgerCount(), mismatch.ledgerSum());
+            }
+
+            if (config.modeOrDefault() == Mode.VERIFY) {
+                throw new IllegalStateException(mismatches.size() + " transactions differ from their booked amounts");
+            }
+
+            final int repaired = QuarkusTransaction.requiringNew().call(() -> transactionBookings.refresh(
+                    mismatches.stream().map(TransactionBookings.Mismatch::transactionId).toList()
+            ));
+            ctx.getLogger().info("Repaired the booking state of {} transactions", repaired);
+        }, ctx.getExecutor()).thenRun(() -> ctx.reschedule("0 30 3 * * *"));
+    }
+
+}
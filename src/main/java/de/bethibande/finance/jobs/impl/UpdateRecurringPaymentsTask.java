@@ -5,15 +5,59 @@ import de.bethibande.finance.jobs.JobTask;
 import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
 import de.bethibande.finance.model.jpa.recurring.RecurringPaymentStatus;
 import de.bethibande.finance.model.jpa.transaction.Transaction;
+import de.bethibande.finance.model.jpa.transaction.TransactionBulkWriter;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.transaction.Transactional;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Generates upcoming transactions for all active recurring payments of a workspace.
+ * <br>
+ * Payments are processed in fixed-size chunks, each chunk runs in its own transaction on the job executor and
+ * at most {@link Config#concurrency()} chunks run at the same time. Whenever all chunks up to a payment id are done,
+ * that id is stored as a checkpoint in the job config, so a run that loses its lock can be resumed by the next one.
+ */
 @ApplicationScoped
-public class UpdateRecurringPaymentsTask implements JobTask<Object> {
+public class UpdateRecurringPaymentsTask implements JobTask<UpdateRecurringPaymentsTask.Config> {
+
+    @RegisterForReflection
+    public record Config(
+            Integer chunkSize,
+            Integer concurrency,
+            Long checkpoint
+    ) {
+
+        public static final int DEFAULT_CHUNK_SIZE = 100;
+        public static final int DEFAULT_CONCURRENCY = 4;
+
+        public static final Config DEFAULT = new Config(null, null, null);
+
+        public int chunkSizeOrDefault() {
+            return chunkSize != null && chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        }
+
+        public int concurrencyOrDefault() {
+            return concurrency != null && concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+        }
+
+        public Config withCheckpoint(final Long checkpoint) {
+            return new Config(chunkSize, concurrency, checkpoint);
+        }
+
+    }
+
+    @Inject
+    protected TransactionBulkWriter bulkWriter;
 
     @Override
     public String getTaskIdentifier() {
@@ -21,26 +65,134 @@ public class UpdateRecurringPaymentsTask implements JobTask<Object> {
     }
 
     @Override
-    public Class<Object> getConfigType() {
-        return Object.class;
+    public Class<Config> getConfigType() {
+        return Config.class;
     }
 
     @Override
-    @Transactional
-    public CompletableFuture<Void> execute(final JobContext<Object> ctx) {
+    public CompletableFuture<Void> execute(final JobContext<Config> ctx) {
+        final Config config = ctx.getConfig() != null ? ctx.getConfig() : Config.DEFAULT;
         final Instant now = Instant.now();
-        RecurringPayment.<RecurringPayment>stream("workspace.id = ?1 AND status = ?2", ctx.getWorkspace().id, RecurringPaymentStatus.ACTIVE).forEach(payment -> {
-            if (payment.notAfter != null && now.isAfter(payment.notAfter)) {
-                payment.status = RecurringPaymentStatus.EXPIRED;
-                return;
+
+        final List<Long> ids = listActivePaymentIds(ctx.getWorkspace().id, config.checkpoint());
+        final List<List<Long>> chunks = partition(ids, config.chunkSizeOrDefault());
+        if (config.checkpoint() != null) {
+            ctx.getLogger().info("Resuming from checkpoint {}, {} payments remaining", config.checkpoint(), ids.size());
+        }
+
+        final Checkpoint checkpoint = new Checkpoint(ctx, config, chunks);
+        final Semaphore permits = new Semaphore(config.concurrencyOrDefault());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(chunks.size());
+
+        for (int i = 0; i < chunks.size(); i++) {
+            if (!ctx.isActive() || failed.get()) break;
+
+            permits.acquireUninterruptibly();
+
+            final int index = i;
+            final List<Long> chunk = chunks.get(i);
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    processChunk(chunk, now);
+                    checkpoint.complete(index);
+                } catch (final Throwable th) {
+                    failed.set(true);
+                    throw th;
+                } finally {
+                    permits.release();
+                }
+            }, ctx.getExecutor()));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            if (!ctx.isActive()) throw new CancellationException("Lost lock, stopped at checkpoint " + checkpoint.current());
+            if (!checkpoint.isDone()) throw new IllegalStateException("Not all payments were processed");
+
+            ctx.updateConfig(config.withCheckpoint(null));
+            ctx.reschedule("0 0 1 * * *");
+        });
+    }
+
+    protected List<Long> listActivePaymentIds(final long workspaceId, final Long checkpoint) {
+        return QuarkusTransaction.requiringNew().call(() -> RecurringPayment.getEntityManager()
+                .createQuery("SELECT p.id FROM RecurringPayment p WHERE p.workspace.id = ?1 AND p.status = ?2 AND p.id > ?3 ORDER BY p.id", Long.class)
+                .setParameter(1, workspaceId)
+                .setParameter(2, RecurringPaymentStatus.ACTIVE)
+                .setParameter(3, checkpoint != null ? checkpoint : Long.MIN_VALUE)
+                .getResultList());
+    }
+
+    protected void processChunk(final List<Long> ids, final Instant now) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            final List<RecurringPayment> payments = RecurringPayment.list("id IN ?1 AND status = ?2", ids, RecurringPaymentStatus.ACTIVE);
+            final List<Transaction> transactions = new ArrayList<>();
+
+            for (final RecurringPayment payment : payments) {
+                if (payment.notAfter != null && now.isAfter(payment.notAfter)) {
+                    payment.status = RecurringPaymentStatus.EXPIRED;
+                    continue;
+                }
+
+                transactions.addAll(payment.generatePayments(now, true));
             }
 
-            final List<Transaction> transactions = payment.generatePayments(now, true);
-            Transaction.persist(transactions);
+            bulkWriter.insert(transactions);
+
+            final EntityManager em = RecurringPayment.getEntityManager();
+            em.flush();
+            em.clear();
         });
+    }
+
+    private static <T> List<List<T>> partition(final List<T> list, final int size) {
+        final List<List<T>> chunks = new ArrayList<>((list.size() + size - 1) / size);
+        for (int i = 0; i < list.size(); i += size) {
+            chunks.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Tracks completed chunks and persists the last payment id of the longest completed prefix of chunks.
+     * Chunks complete out of order, so a chunk is only covered by the checkpoint once all chunks before it are done.
+     */
+    private static class Checkpoint {
+
+        private final JobContext<Config> ctx;
+        private final Config config;
+        private final List<List<Long>> chunks;
+        private final boolean[] completed;
+
+        private int prefix = 0;
+
+        private Checkpoint(final JobContext<Config> ctx, final Config config, final List<List<Long>> chunks) {
+            this.ctx = ctx;
+            this.config = config;
+            this.chunks = chunks;
+            this.completed = new boolean[chunks.size()];
+        }
+
+        private synchronized void complete(final int index) {
+            completed[index] = true;
+
+            final int previous = prefix;
+            while (prefix < completed.length && completed[prefix]) prefix++;
+
+            if (prefix != previous && ctx.isActive()) {
+                ctx.updateConfig(config.withCheckpoint(current()));
+            }
+        }
+
+        private synchronized Long current() {
+            if (prefix == 0) return config.checkpoint();
+            return chunks.get(prefix - 1).getLast();
+        }
 
-        ctx.reschedule("0 0 1 * * *");
+        private synchronized boolean isDone() {
+            return prefix == completed.length;
+        }
 
-        return CompletableFuture.completedFuture(null);
     }
 }
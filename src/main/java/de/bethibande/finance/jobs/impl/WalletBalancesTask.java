@@ -0,0 +1,85 @@
+package de.bethibande.finance.jobs.impl;
+
+import de.bethibande.finance.jobs.JobContext;
+import de.bethibande.finance.jobs.JobTask;
+import de.bethibande.finance.model.jpa.transaction.WalletBalances;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Checks the {@link de.bethibande.finance.model.jpa.WalletBalance}s of a workspace against its booked amounts.
+ * <br>
+ * In {@link Mode#VERIFY} mode the job fails if any balance differs, {@link Mode#REPAIR} rebuilds the balances of the
+ * workspace if any differ and {@link Mode#REBUILD} always recomputes them from scratch.
+ */
+@ApplicationScoped
+public class WalletBalancesTask implements JobTask<WalletBalancesTask.Config> {
+
+    public enum Mode {
+        VERIFY,
+        REPAIR,
+        REBUILD
+    }
+
+    @RegisterForReflection
+    public record Config(
+            Mode mode
+    ) {
+
+        public static final Config DEFAULT = new Config(Mode.VERIFY);
+
+        public Mode modeOrDefault() {
+            return mode != null ? mode : Mode.VERIFY;
+        }
+
+    }
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    @Override
+    public String getTaskIdentifier() {
+        return "wallet_balances";
+    }
+
+    @Override
+    public Class<Config> getConfigType() {
+        return Config.class;
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(final JobContext<Config> ctx) {
+        final Config config = ctx.getConfig() != null ? ctx.getConfig() : Config.DEFAULT;
+        final long workspaceId = ctx.getWorkspace().id;
+
+        return CompletableFuture.runAsync(() -> {
+            if (config.modeOrDefault() == Mode.REBUILD) {
+                final int balances = QuarkusTransaction.requiringNew().call(() -> walletBalances.rebuild(workspaceId));
+                ctx.getLogger().info("Rebuilt {} wallet balances", balances);
+            } else {
+                final List<WalletBalances.Mismatch> mismatches = QuarkusTransaction.requiringNew()
+                        .call(() -> walletBalances.verify(workspaceId));
+
+                for (final WalletBalances.Mismatch mismatch : mismatches) {
+                    ctx.getLogger().warn("Balance of wallet {} in asset {} is {} but the ledger sums up to {} ({} bookings)",
+                            mismatch.walletId(), mismatch.assetId(), mismatch.stored(), mismatch.ledger(), mismatch.bookings());
+                }
+
+                if (!mismatches.isEmpty()) {
+                    if (config.modeOrDefault() == Mode.VERIFY) {
+                        throw new IllegalStateException(mismatches.size() + " wallet balances differ from the ledger");
+                    }
+
+                    final int balances = QuarkusTransaction.requiringNew().call(() -> walletBalances.rebuild(workspaceId));
+                    ctx.getLogger().info("Repaired {} wallet balances, rebuilt {}", mismatches.size(), balances);
+                }
+            }
+        }, ctx.getExecutor()).thenRun(() -> ctx.reschedule("0 0 3 * * *"));
+    }
+
+}
@@ -2,14 +2,19 @@ package de.bethibande.finance.model.jpa;
 
 import com.bethibande.process.annotation.EntityDTO;
 import de.bethibande.finance.model.jpa.partner.Partner;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.ManyToOne;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.validator.constraints.Length;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @EntityDTO
 @EntityDTO(excludeProperties = "id")
 @EntityDTO(excludeProperties = "workspace")
@@ -0,0 +1,27 @@
+package de.bethibande.finance.model.jpa;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The balance of an asset over time.
+ *
+ * @param interval the number of days between two points
+ * @param points   the balance at the end of each interval, the last point is always the end of the requested range
+ */
+public record BalanceHistoryDTO(
+        @NotNull AssetDTO asset,
+        @NotNull int interval,
+        @NotNull List<Point> points
+) {
+
+    public record Point(
+            @NotNull LocalDate date,
+            @NotNull BigDecimal balance
+    ) {
+    }
+
+}
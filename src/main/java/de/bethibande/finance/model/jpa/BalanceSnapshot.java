@@ -0,0 +1,67 @@
+package de.bethibande.finance.model.jpa;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * The balance of a wallet in a single asset at the end of a day (UTC).
+ * <br>
+ * Snapshots only exist for days with at least one booked amount, the balance of any other day is the one of the
+ * latest snapshot before it. They are recomputed by the {@link de.bethibande.finance.model.jpa.transaction.BalanceSnapshots}
+ * starting at the earliest day touched since the last run.
+ */
+@Entity
+@IdClass(BalanceSnapshot.Key.class)
+public class BalanceSnapshot extends PanacheEntityBase {
+
+    public static class Key implements Serializable {
+
+        public Long wallet;
+        public Long asset;
+        public LocalDate day;
+
+        public Key() {
+        }
+
+        public Key(final Long wallet, final Long asset, final LocalDate day) {
+            this.wallet = wallet;
+            this.asset = asset;
+            this.day = day;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key key)) return false;
+            return Objects.equals(wallet, key.wallet) && Objects.equals(asset, key.asset) && Objects.equals(day, key.day);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(wallet, asset, day);
+        }
+
+    }
+
+    @ManyToOne(optional = false)
+    public Workspace workspace;
+
+    @Id
+    @ManyToOne(optional = false)
+    public Wallet wallet;
+
+    @Id
+    @ManyToOne(optional = false)
+    public Asset asset;
+
+    @Id
+    public LocalDate day;
+
+    @Column(nullable = false)
+    public BigDecimal balance;
+
+}
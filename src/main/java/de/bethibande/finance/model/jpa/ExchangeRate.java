@@ -1,9 +1,9 @@
 package de.bethibande.finance.model.jpa;
 
+import de.bethibande.finance.model.jpa.exchange.ExchangeRateChangedEvent;
+import io.quarkus.arc.Arc;
 import io.quarkus.hibernate.orm.panache.PanacheEntity;
-import jakarta.persistence.Column;
-import jakarta.persistence.Entity;
-import jakarta.persistence.ManyToOne;
+import jakarta.persistence.*;
 
 import java.time.Instant;
 
@@ -22,4 +22,34 @@ public class ExchangeRate extends PanacheEntity {
     @Column(nullable = false)
     public Instant date;
 
+    /**
+     * Notifies the {@link de.bethibande.finance.model.jpa.exchange.ExchangeRateIndex} once the transaction commits.
+     */
+    private void fireChanged(final ExchangeRateChangedEvent.Type type) {
+        Arc.container().beanManager().getEvent().select(ExchangeRateChangedEvent.class).fire(new ExchangeRateChangedEvent(
+                type,
+                base.workspace.id,
+                id,
+                base.id,
+                quote.id,
+                date,
+                rate
+        ));
+    }
+
+    @PostPersist
+    protected void onPersist() {
+        fireChanged(ExchangeRateChangedEvent.Type.CREATED);
+    }
+
+    @PostUpdate
+    protected void onUpdate() {
+        fireChanged(ExchangeRateChangedEvent.Type.UPDATED);
+    }
+
+    @PostRemove
+    protected void onRemove() {
+        fireChanged(ExchangeRateChangedEvent.Type.DELETED);
+    }
+
 }
@@ -5,13 +5,15 @@ import com.bethibande.process.annotation.VirtualDTOField;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 
 @Entity
 @EntityDTO(excludeProperties = {"lockTimeout"}, name = "JobDTO")
-@EntityDTO(excludeProperties = {"id", "lockTimeout", "lastSuccessfulExecution", "jobState"}, name = "JobDTOWithoutId")
-@EntityDTO(excludeProperties = {"lockTimeout", "workspace", "lastSuccessfulExecution", "jobState"}, name = "JobDTOWithoutWorkspace")
+@EntityDTO(excludeProperties = {"id", "lockTimeout", "lastSuccessfulExecution", "failedAttempts", "jobState"}, name = "JobDTOWithoutId")
+@EntityDTO(excludeProperties = {"lockTimeout", "workspace", "lastSuccessfulExecution", "failedAttempts", "jobState"}, name = "JobDTOWithoutWorkspace")
 public class Job extends WorkspaceEntity {
 
     @Column(nullable = false)
@@ -27,11 +29,26 @@ public class Job extends WorkspaceEntity {
     public Instant lastSuccessfulExecution;
     public Instant lockTimeout;
 
+    /**
+     * The number of consecutive failed executions, maintained by the {@code JobService}. Reset once the job succeeds.
+     */
+    @Column(nullable = false, insertable = false, updatable = false)
+    public int failedAttempts;
+
     public String notes;
 
+    /**
+     * Locks that have not been renewed for this long are considered abandoned, see {@code finance.jobs.lock-timeout}.
+     */
+    protected static Duration configuredLockTimeout() {
+        return ConfigProvider.getConfig()
+                .getOptionalValue("finance.jobs.lock-timeout", Duration.class)
+                .orElse(Duration.ofMinutes(5));
+    }
+
     protected boolean isPending() {
         final Instant now = Instant.now();
-        final Instant nowTimeout = now.minus(5, ChronoUnit.MINUTES);
+        final Instant nowTimeout = now.minus(configuredLockTimeout());
 
         return nextScheduledExecution != null
                 && !(now.isBefore(nextScheduledExecution))
@@ -41,7 +58,7 @@ public class Job extends WorkspaceEntity {
 
     public boolean isRunning() {
         final Instant now = Instant.now();
-        final Instant nowTimeout = now.minus(5, ChronoUnit.MINUTES);
+        final Instant nowTimeout = now.minus(configuredLockTimeout());
 
         return lockTimeout != null
                 && nowTimeout.isBefore(lockTimeout)
@@ -0,0 +1,42 @@
+package de.bethibande.finance.model.jpa;
+
+import com.bethibande.process.annotation.EntityDTO;
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A single run of a {@link Job}, written by the {@link de.bethibande.finance.jobs.JobExecutionRecorder}.
+ */
+@Entity
+@EntityDTO(name = "JobExecutionDTO")
+public class JobExecution extends PanacheEntity {
+
+    public static final int MAX_ERROR_LENGTH = 1024;
+
+    @ManyToOne(optional = false)
+    public Job job;
+
+    @Column(nullable = false)
+    public String type;
+
+    public Instant scheduledAt;
+
+    @Column(nullable = false)
+    public Instant startedAt;
+
+    @Column(nullable = false)
+    public Instant finishedAt;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    public JobExecutionOutcome outcome;
+
+    @Column(nullable = false)
+    public String nodeId;
+
+    @Column(length = MAX_ERROR_LENGTH)
+    public String error;
+
+}
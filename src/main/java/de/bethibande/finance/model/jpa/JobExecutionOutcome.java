@@ -0,0 +1,9 @@
+package de.bethibande.finance.model.jpa;
+
+public enum JobExecutionOutcome {
+
+    SUCCEEDED,
+    FAILED,
+    LOCK_LOST
+
+}
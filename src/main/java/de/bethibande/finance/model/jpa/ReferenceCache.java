@@ -0,0 +1,83 @@
+package de.bethibande.finance.model.jpa;
+
+import de.bethibande.finance.model.jpa.partner.Partner;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.List;
+
+/**
+ * Manages the second-level cache of the small, rarely changing entities that almost every request references:
+ * {@link Asset}, {@link Wallet}, {@link Partner} and {@link Workspace}.
+ * <br>
+ * The entities are cached by Hibernate using the {@code READ_WRITE} strategy, so changes made by this node, including
+ * bulk deletes, update or invalidate the cached entries when their transaction commits. The size of each region is
+ * bounded by {@code quarkus.hibernate-orm.cache."<entity>".memory.object-count}.
+ * <br>
+ * The cache is local to each node and reads reset the idle expiration of an entry, so changes made by other nodes
+ * would never be seen by frequently read entries. All regions are therefore evicted every
+ * {@code finance.reference-cache.ttl}, which bounds how long a node may serve an entity changed elsewhere.
+ */
+@ApplicationScoped
+public class ReferenceCache {
+
+    public static final List<Class<?>> ENTITIES = List.of(Asset.class, Wallet.class, Partner.class, Workspace.class);
+
+    /**
+     * @param hitRatio the share of lookups served from the cache, 0 if there were none
+     * @param size     the number of cached entities, negative if unknown
+     */
+    public record Stats(
+            String entity,
+            long hits,
+            long misses,
+            long puts,
+            double hitRatio,
+            long size
+    ) {
+    }
+
+    @Inject
+    protected SessionFactory sessionFactory;
+
+    @Scheduled(every = "${finance.reference-cache.ttl}", delayed = "${finance.reference-cache.ttl}")
+    public void evictAll() {
+        for (final Class<?> entity : ENTITIES) {
+            sessionFactory.getCache().evictEntityData(entity);
+        }
+    }
+
+    /**
+     * Requires hibernate statistics ({@code quarkus.hibernate-orm.statistics}), the counters are zero otherwise.
+     *
+     * @return the statistics of each cached entity since startup
+     */
+    public List<Stats> getStats() {
+        final Statistics statistics = sessionFactory.getStatistics();
+
+        return ENTITIES.stream().map(entity -> {
+            final EntityStatistics entityStatistics = statistics.getEntityStatistics(entity.getName());
+            final long hits = entityStatistics.getCacheHitCount();
+            final long misses = entityStatistics.getCacheMissCount();
+
+            final CacheRegionStatistics region = entityStatistics.getCacheRegionName() != null
+                    ? statistics.getDomainDataRegionStatistics(entityStatistics.getCacheRegionName())
+                    : null;
+
+            return new Stats(
+                    entity.getSimpleName(),
+                    hits,
+                    misses,
+                    entityStatistics.getCachePutCount(),
+                    hits + misses > 0 ? (double) hits / (hits + misses) : 0,
+                    region != null ? region.getElementCountInMemory() : -1
+            );
+        }).toList();
+    }
+
+}
@@ -0,0 +1,39 @@
+package de.bethibande.finance.model.jpa;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public enum StatementFormat {
+
+    CSV,
+    /**
+     * ISO 20022 bank to customer statement, {@code camt.053}
+     */
+    CAMT053,
+    /**
+     * Open Financial Exchange, both the SGML based 1.x and the XML based 2.x versions
+     */
+    OFX;
+
+    private static final int DETECTION_PREFIX = 4096;
+
+    /**
+     * Case-insensitive lookup, used for query parameters.
+     */
+    public static StatementFormat fromString(final String value) {
+        return valueOf(value.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Guesses the format of a statement by looking at the start of the file.
+     */
+    public static StatementFormat detect(final byte[] content) {
+        final String head = new String(content, 0, Math.min(content.length, DETECTION_PREFIX), StandardCharsets.UTF_8)
+                .toUpperCase(Locale.ROOT);
+
+        if (head.contains("OFXHEADER") || head.contains("<OFX>")) return OFX;
+        if (head.contains("CAMT.053")) return CAMT053;
+        return CSV;
+    }
+
+}
@@ -0,0 +1,59 @@
+package de.bethibande.finance.model.jpa;
+
+import com.bethibande.process.annotation.EntityDTO;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A bank statement file that is imported into a wallet by the {@link de.bethibande.finance.jobs.impl.ImportStatementTask}.
+ * <br>
+ * The counters are updated together with each imported batch, so they always match the imported transactions and
+ * double as the checkpoint a restarted import resumes from. The raw file is stored separately, see
+ * {@link de.bethibande.finance.statement.StatementContents}, and removed once the import completed.
+ */
+@Entity
+@EntityDTO(name = "StatementImportDTO")
+public class StatementImport extends WorkspaceEntity {
+
+    public static final int MAX_ERROR_LENGTH = 1024;
+
+    @Column(nullable = false)
+    public String fileName;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    public StatementFormat format;
+
+    @ManyToOne(optional = false)
+    public Wallet wallet;
+
+    @ManyToOne
+    public Job job;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    public StatementImportStatus status = StatementImportStatus.PENDING;
+
+    /**
+     * Number of imported statement entries.
+     */
+    public long importedRows;
+
+    /**
+     * Number of statement entries that could not be read or resolved, e.g. because of an unknown currency.
+     */
+    public long skippedRows;
+
+    /**
+     * Throughput of the current or last run.
+     */
+    public double rowsPerSecond;
+
+    public Instant startedAt;
+    public Instant finishedAt;
+
+    @Column(length = MAX_ERROR_LENGTH)
+    public String error;
+
+}
@@ -0,0 +1,10 @@
+package de.bethibande.finance.model.jpa;
+
+public enum StatementImportStatus {
+
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+
+}
@@ -2,11 +2,16 @@ package de.bethibande.finance.model.jpa;
 
 import com.bethibande.process.annotation.EntityDTO;
 import de.bethibande.finance.model.jpa.partner.Partner;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.ManyToOne;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @EntityDTO
 @EntityDTO(excludeProperties = "id")
 @EntityDTO(excludeProperties = "workspace")
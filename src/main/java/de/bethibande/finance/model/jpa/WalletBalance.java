@@ -0,0 +1,63 @@
+package de.bethibande.finance.model.jpa;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * The sum of all {@link de.bethibande.finance.model.jpa.transaction.BookedAmount}s of a wallet in a single asset.
+ * <br>
+ * Maintained incrementally by the {@link de.bethibande.finance.model.jpa.transaction.WalletBalances} in the same
+ * transaction as the booked amounts themselves, so reading a balance does not depend on the size of the history.
+ */
+@Entity
+@IdClass(WalletBalance.Key.class)
+public class WalletBalance extends PanacheEntityBase {
+
+    public static class Key implements Serializable {
+
+        public Long wallet;
+        public Long asset;
+
+        public Key() {
+        }
+
+        public Key(final Long wallet, final Long asset) {
+            this.wallet = wallet;
+            this.asset = asset;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key key)) return false;
+            return Objects.equals(wallet, key.wallet) && Objects.equals(asset, key.asset);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(wallet, asset);
+        }
+
+    }
+
+    @Id
+    @ManyToOne(optional = false)
+    public Wallet wallet;
+
+    @Id
+    @ManyToOne(optional = false)
+    public Asset asset;
+
+    @Column(nullable = false)
+    public BigDecimal balance;
+
+    /**
+     * Number of booked amounts included in the balance.
+     */
+    @Column(nullable = false)
+    public long bookings;
+
+}
@@ -0,0 +1,23 @@
+package de.bethibande.finance.model.jpa;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.math.BigDecimal;
+
+public record WalletBalanceDTO(
+        @NotNull long walletId,
+        @NotNull AssetDTO asset,
+        @NotNull BigDecimal balance,
+        @NotNull long bookings
+) {
+
+    public static WalletBalanceDTO from(final WalletBalance balance) {
+        return new WalletBalanceDTO(
+                balance.wallet.id,
+                AssetDTO.from(balance.asset),
+                balance.balance,
+                balance.bookings
+        );
+    }
+
+}
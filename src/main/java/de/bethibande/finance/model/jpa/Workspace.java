@@ -2,10 +2,15 @@ package de.bethibande.finance.model.jpa;
 
 import com.bethibande.process.annotation.EntityDTO;
 import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @EntityDTO
 @EntityDTO(excludeProperties = "id")
 public class Workspace extends PanacheEntity {
@@ -0,0 +1,130 @@
+package de.bethibande.finance.model.jpa.component;
+
+import io.hypersistence.utils.hibernate.type.util.JsonConfiguration;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A predicate over the {@link DataComponent}s of an entity, evaluated by the database instead of loading every
+ * candidate entity and checking its components in Java.
+ * <pre>
+ * {@code
+ * final ComponentFilter modified = ComponentFilter.contains(TransactionComponents.USER_MODIFIED, true);
+ *
+ * final List<Object> params = new ArrayList<>(List.of(workspaceId));
+ * Transaction.list("workspace.id = ?1 AND " + modified.toHql("components.dataComponents", params), params.toArray());
+ * }
+ * </pre>
+ * Filters are rendered using the functions of {@link ComponentFunctions}. Unlike SQL comparisons, filters never
+ * evaluate to unknown, an entity without the component simply does not match {@link #contains}, {@link #exists} or
+ * {@link #compare}, but does match their {@link #not() negation}.
+ */
+public final class ComponentFilter {
+
+    public enum Operator {
+        EQ("="),
+        NE("<>"),
+        LT("<"),
+        LE("<="),
+        GT(">"),
+        GE(">=");
+
+        private final String hql;
+
+        Operator(final String hql) {
+            this.hql = hql;
+        }
+    }
+
+    /**
+     * Matches entities whose component equals the given value, or contains it in case of objects and arrays.
+     * This is the only filter that can use a GIN index on the component column.
+     */
+    public static <T> ComponentFilter contains(final DataComponent<T> component, final T value) {
+        // Serialized like the column itself, see JsonBinaryType
+        final String json = JsonConfiguration.INSTANCE.getObjectMapperWrapper().toString(Map.of(component.getKey(), value));
+
+        return new ComponentFilter((path, bind) -> "%s(%s, %s)".formatted(ComponentFunctions.CONTAINS, path, bind.apply(json)));
+    }
+
+    /**
+     * Matches entities that have the component, even if its value is null.
+     */
+    public static ComponentFilter exists(final DataComponent<?> component) {
+        return new ComponentFilter((path, bind) -> "%s(%s, %s)".formatted(ComponentFunctions.EXISTS, path, bind.apply(component.getKey())));
+    }
+
+    /**
+     * Compares the value of the component, numbers are compared numerically, strings, booleans and enums by their
+     * text. Entities without the component, or with a null value, never match.
+     *
+     * @throws IllegalArgumentException if the value cannot be compared in the database
+     */
+    public static <T> ComponentFilter compare(final DataComponent<T> component, final Operator operator, final T value) {
+        final boolean numeric;
+        final Object parameter;
+        switch (value) {
+            case final Number number -> {
+                numeric = true;
+                parameter = new BigDecimal(number.toString());
+            }
+            case final String string -> {
+                numeric = false;
+                parameter = string;
+            }
+            case final Boolean bool -> {
+                numeric = false;
+                parameter = bool.toString();
+            }
+            case final Enum<?> constant -> {
+                numeric = false;
+                parameter = constant.name();
+            }
+            case null, default -> throw new IllegalArgumentException("Cannot compare component values of type: " + value);
+        }
+
+        return new ComponentFilter((path, bind) -> {
+            final String text = "%s(%s, %s)".formatted(ComponentFunctions.VALUE, path, bind.apply(component.getKey()));
+            final String lhs = numeric ? "cast(%s as BigDecimal)".formatted(text) : text;
+
+            return "(%s IS NOT NULL AND %s %s %s)".formatted(text, lhs, operator.hql, bind.apply(parameter));
+        });
+    }
+
+    private final BiFunction<String, Function<Object, String>, String> renderer;
+
+    private ComponentFilter(final BiFunction<String, Function<Object, String>, String> renderer) {
+        this.renderer = renderer;
+    }
+
+    public ComponentFilter not() {
+        return new ComponentFilter((path, bind) -> "(%s IS NULL OR NOT %s)".formatted(path, renderer.apply(path, bind)));
+    }
+
+    public ComponentFilter and(final ComponentFilter other) {
+        return new ComponentFilter((path, bind) -> "(%s AND %s)".formatted(renderer.apply(path, bind), other.renderer.apply(path, bind)));
+    }
+
+    public ComponentFilter or(final ComponentFilter other) {
+        return new ComponentFilter((path, bind) -> "(%s OR %s)".formatted(renderer.apply(path, bind), other.renderer.apply(path, bind)));
+    }
+
+    /**
+     * Renders the filter as an HQL predicate using positional parameters.
+     *
+     * @param path       the path of the {@link DataComponentMap} column, e.g. {@code components.dataComponents}
+     * @param parameters the parameters of the surrounding query, the parameters of the filter are appended and
+     *                   numbered after them
+     */
+    public String toHql(final String path, final List<Object> parameters) {
+        return renderer.apply(path, value -> {
+            parameters.add(value);
+            return "?" + parameters.size();
+        });
+    }
+
+}
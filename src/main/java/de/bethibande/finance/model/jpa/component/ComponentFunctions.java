@@ -0,0 +1,33 @@
+package de.bethibande.finance.model.jpa.component;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.query.sqm.function.SqmFunctionRegistry;
+import org.hibernate.type.BasicTypeRegistry;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers the HQL functions used by {@link ComponentFilter} to query jsonb component columns.
+ * <ul>
+ *     <li>{@code component_contains(column, json)}, jsonb containment ({@code @>}), can use a GIN index</li>
+ *     <li>{@code component_exists(column, key)}, whether the component is present</li>
+ *     <li>{@code component_value(column, key)}, the value of the component as text ({@code ->>})</li>
+ * </ul>
+ * Registered using {@code META-INF/services/org.hibernate.boot.model.FunctionContributor}.
+ */
+public class ComponentFunctions implements FunctionContributor {
+
+    public static final String CONTAINS = "component_contains";
+    public static final String EXISTS = "component_exists";
+    public static final String VALUE = "component_value";
+
+    @Override
+    public void contributeFunctions(final FunctionContributions functionContributions) {
+        final SqmFunctionRegistry registry = functionContributions.getFunctionRegistry();
+        final BasicTypeRegistry types = functionContributions.getTypeConfiguration().getBasicTypeRegistry();
+
+        registry.registerPattern(CONTAINS, "(?1 @> cast(?2 as jsonb))", types.resolve(StandardBasicTypes.BOOLEAN));
+        registry.registerPattern(EXISTS, "jsonb_exists(?1, ?2)", types.resolve(StandardBasicTypes.BOOLEAN));
+        registry.registerPattern(VALUE, "(?1 ->> ?2)", types.resolve(StandardBasicTypes.STRING));
+    }
+}
@@ -1,10 +1,12 @@
 package de.bethibande.finance.model.jpa.component;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
 import org.jspecify.annotations.Nullable;
 
 import java.lang.reflect.Type;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Allows dynamic data to be attached to some entities.
@@ -27,27 +29,27 @@ import java.util.Map;
  */
 public final class DataComponent<T> {
 
-    private static final Map<String, DataComponent<?>> COMPONENTS = new HashMap<>();
+    private static final Map<String, DataComponent<?>> COMPONENTS = new ConcurrentHashMap<>();
 
     public static @Nullable DataComponent<?> get(final String key) {
         return COMPONENTS.get(key);
     }
 
-    public static synchronized <T> DataComponent<T> of(final String key, final Type type) {
-        if (COMPONENTS.containsKey(key)) throw new IllegalArgumentException("Key already in use");
-
+    public static <T> DataComponent<T> of(final String key, final Type type) {
         final DataComponent<T> comp = new DataComponent<>(key, type);
-        COMPONENTS.put(key, comp);
+        if (COMPONENTS.putIfAbsent(key, comp) != null) throw new IllegalArgumentException("Key already in use");
 
         return comp;
     }
 
     private final String key;
     private final Type type;
+    private final JavaType javaType;
 
     private DataComponent(final String key, final Type type) {
         this.key = key;
         this.type = type;
+        this.javaType = TypeFactory.defaultInstance().constructType(type);
     }
 
     public String getKey() {
@@ -57,4 +59,11 @@ public final class DataComponent<T> {
     public Type getType() {
         return type;
     }
+
+    /**
+     * @return the {@link #getType() type} resolved once when the component is created
+     */
+    public JavaType getJavaType() {
+        return javaType;
+    }
 }
@@ -2,32 +2,57 @@ package de.bethibande.finance.model.jpa.component.serial;
 
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.bethibande.finance.model.jpa.component.DataComponent;
 import de.bethibande.finance.model.jpa.component.DataComponentMap;
 
 import java.io.IOException;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the components directly from the token stream, without building an intermediate tree.
+ * <br>
+ * The value deserializer of each component is resolved once and cached. Instances must therefore not be shared
+ * between differently configured object mappers, see {@link SerialConfig}.
+ */
 public class DataComponentDeserializer extends JsonDeserializer<DataComponentMap> {
 
+    private final Map<DataComponent<?>, JsonDeserializer<Object>> deserializers = new ConcurrentHashMap<>();
+
+    private JsonDeserializer<Object> deserializer(final DataComponent<?> comp,
+                                                  final DeserializationContext ctxt) throws IOException {
+        final JsonDeserializer<Object> cached = deserializers.get(comp);
+        if (cached != null) return cached;
+
+        final JsonDeserializer<Object> deserializer = ctxt.findRootValueDeserializer(comp.getJavaType());
+        deserializers.putIfAbsent(comp, deserializer);
+
+        return deserializer;
+    }
+
     @Override
     public DataComponentMap deserialize(final JsonParser p, final DeserializationContext ctxt) throws IOException, JacksonException {
         final DataComponentMap map = new DataComponentMap();
 
-        final ObjectNode tree = p.readValueAsTree();
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        } else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (DataComponentMap) ctxt.handleUnexpectedToken(DataComponentMap.class, p);
+        }
 
-        for (final Map.Entry<String, JsonNode> entry : tree.properties()) {
-            final String key = entry.getKey();
-            final JsonNode node = entry.getValue();
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            final String key = p.currentName();
 
             final DataComponent<?> comp = DataComponent.get(key);
             if (comp == null) throw new IllegalStateException("Unknown component: " + key);
 
-            final Object value = p.getCodec().readValue(node.traverse(p.getCodec()), ctxt.constructType(comp.getType()));
+            final Object value = p.nextToken() == JsonToken.VALUE_NULL
+                    ? null
+                    : deserializer(comp, ctxt).deserialize(p, ctxt);
             map.put(key, value);
         }
 
@@ -12,6 +12,11 @@ public interface GeneratedEntity {
 
     Integer getSourceDiscriminator();
 
+    /**
+     * Sets the source that has already been loaded by the {@link SourceResolver}, so {@link #fetchSource()} is not needed.
+     */
+    void resolveSource(final EntitySource source);
+
     default void setSource(final EntitySource source) {
         if (source.getId() == null) throw new IllegalArgumentException("Entity must be persistent");
 
@@ -0,0 +1,45 @@
+package de.bethibande.finance.model.jpa.discriminator;
+
+import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the sources of many {@link GeneratedEntity}s at once, using a single query per source discriminator instead
+ * of one {@link GeneratedEntity#fetchSource()} call per entity.
+ */
+public class SourceResolver {
+
+    public static void resolve(final Collection<? extends GeneratedEntity> entities) {
+        final Map<Integer, Set<Long>> ids = new HashMap<>();
+        for (final GeneratedEntity entity : entities) {
+            if (entity.getSourceDiscriminator() == null || entity.getSourceId() == null) continue;
+
+            ids.computeIfAbsent(entity.getSourceDiscriminator(), _ -> new HashSet<>()).add(entity.getSourceId());
+        }
+
+        final Map<Integer, Map<Long, EntitySource>> sources = new HashMap<>();
+        ids.forEach((discriminator, sourceIds) -> sources.put(discriminator, load(discriminator, sourceIds)));
+
+        for (final GeneratedEntity entity : entities) {
+            if (entity.getSourceDiscriminator() == null || entity.getSourceId() == null) {
+                entity.resolveSource(null);
+                continue;
+            }
+
+            entity.resolveSource(sources.get(entity.getSourceDiscriminator()).get(entity.getSourceId()));
+        }
+    }
+
+    private static Map<Long, EntitySource> load(final int discriminator, final Collection<Long> ids) {
+        final List<? extends EntitySource> sources = switch (discriminator) {
+            case SourceDiscriminators.RECURRING_PAYMENTS -> RecurringPayment.<RecurringPayment>list("id IN ?1", ids);
+            default -> throw new IllegalArgumentException("Unknown source discriminator: " + discriminator);
+        };
+
+        return sources.stream().collect(Collectors.toMap(EntitySource::getId, Function.identity()));
+    }
+
+}
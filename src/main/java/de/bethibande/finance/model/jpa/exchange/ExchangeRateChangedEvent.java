@@ -0,0 +1,25 @@
+package de.bethibande.finance.model.jpa.exchange;
+
+import java.time.Instant;
+
+/**
+ * Fired whenever an {@link de.bethibande.finance.model.jpa.ExchangeRate} is persisted, updated or removed.
+ * Holds the values after the change, or before the removal.
+ */
+public record ExchangeRateChangedEvent(
+        Type type,
+        long workspaceId,
+        long id,
+        long baseId,
+        long quoteId,
+        Instant date,
+        double rate
+) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+}
@@ -0,0 +1,153 @@
+package de.bethibande.finance.model.jpa.exchange;
+
+import de.bethibande.finance.model.jpa.ExchangeRate;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-workspace {@link ExchangeRates}, loaded on first use.
+ * <br>
+ * Loaded workspaces are kept up to date using the {@link ExchangeRateChangedEvent}s of committed transactions.
+ * New and removed rates are applied to the index directly, updated rates drop the workspace so it is reloaded on its
+ * next use. Bulk updates and deletes bypass these events, call {@link #invalidate(long)} afterward.
+ * <br>
+ * The total number of cached rates is bounded by {@code finance.exchange-rates.max-entries}, once exceeded the least
+ * recently used workspaces are evicted. The most recently used workspace is always kept, even if it exceeds the
+ * limit on its own.
+ */
+@ApplicationScoped
+public class ExchangeRateIndex {
+
+    public record Stats(
+            long hits,
+            long misses,
+            long evictions,
+            int workspaces,
+            long entries
+    ) {
+    }
+
+    @ConfigProperty(name = "finance.exchange-rates.max-entries", defaultValue = "1000000")
+    protected long maxEntries;
+
+    private final LinkedHashMap<Long, ExchangeRates> workspaces = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Incremented on every change, a workspace is only cached if nothing changed while it was loaded.
+     */
+    private final AtomicLong changes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Returns the price of one unit of the asset {@code from} in {@code to} as of the given date,
+     * see {@link ExchangeRates#rate(long, long, Instant)}.
+     */
+    public OptionalDouble rate(final long workspaceId, final long from, final long to, final Instant asOf) {
+        return get(workspaceId).rate(from, to, asOf);
+    }
+
+    public ExchangeRates get(final long workspaceId) {
+        synchronized (workspaces) {
+            final ExchangeRates cached = workspaces.get(workspaceId);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+
+        misses.increment();
+
+        final long generation = changes.get();
+        final ExchangeRates loaded = load(workspaceId);
+
+        synchronized (workspaces) {
+            if (changes.get() != generation) return loaded;
+
+            final ExchangeRates existing = workspaces.putIfAbsent(workspaceId, loaded);
+            evict();
+
+            return existing != null ? existing : loaded;
+        }
+    }
+
+    protected ExchangeRates load(final long workspaceId) {
+        final ExchangeRates rates = new ExchangeRates();
+
+        QuarkusTransaction.requiringNew().run(() -> ExchangeRate.getEntityManager()
+                .createQuery("""
+                        SELECT r.id, r.base.id, r.quote.id, r.date, r.rate
+                        FROM ExchangeRate r
+                        WHERE r.base.workspace.id = ?1
+                        """, Object[].class)
+                .setParameter(1, workspaceId)
+                .getResultStream()
+                .forEach(row -> rates.put((Long) row[0], (Long) row[1], (Long) row[2], (Instant) row[3], (Double) row[4])));
+
+        return rates;
+    }
+
+    private long entries() {
+        long entries = 0;
+        for (final ExchangeRates rates : workspaces.values()) {
+            entries += rates.size();
+        }
+
+        return entries;
+    }
+
+    private void evict() {
+        long entries = entries();
+
+        final Iterator<ExchangeRates> iterator = workspaces.values().iterator();
+        while (entries > maxEntries && workspaces.size() > 1) {
+            final ExchangeRates eldest = iterator.next();
+            iterator.remove();
+
+            entries -= eldest.size();
+            evictions.increment();
+        }
+    }
+
+    public void invalidate(final long workspaceId) {
+        changes.incrementAndGet();
+
+        synchronized (workspaces) {
+            workspaces.remove(workspaceId);
+        }
+    }
+
+    protected void onChanged(final @Observes(during = TransactionPhase.AFTER_SUCCESS) ExchangeRateChangedEvent event) {
+        changes.incrementAndGet();
+
+        synchronized (workspaces) {
+            final ExchangeRates rates = workspaces.get(event.workspaceId());
+            if (rates == null) return;
+
+            switch (event.type()) {
+                case CREATED -> rates.put(event.id(), event.baseId(), event.quoteId(), event.date(), event.rate());
+                case DELETED -> rates.remove(event.id(), event.baseId(), event.quoteId(), event.date());
+                case UPDATED -> workspaces.remove(event.workspaceId());
+            }
+
+            evict();
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (workspaces) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), workspaces.size(), entries());
+        }
+    }
+
+}
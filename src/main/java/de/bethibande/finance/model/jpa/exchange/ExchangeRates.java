@@ -0,0 +1,122 @@
+package de.bethibande.finance.model.jpa.exchange;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe in-memory index of the exchange rates of a single workspace.
+ * <br>
+ * The rates of each asset pair are kept in a {@link NavigableMap} by date, so the rate as of a date is a floor lookup.
+ * A pair also serves the inverse conversion. If two assets are not paired directly, the rate is triangulated along
+ * the shortest path of pairs that have a rate as of the requested date.
+ * <pre>
+ * {@code
+ * final OptionalDouble rate = rates.rate(euro.id, dollar.id, Instant.now());
+ * }
+ * </pre>
+ */
+public final class ExchangeRates {
+
+    private record Pair(long base, long quote) {
+    }
+
+    private record Rate(long id, double rate) {
+    }
+
+    private final Map<Pair, NavigableMap<Instant, Rate>> pairs = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> neighbours = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Adds a rate, replacing any rate of the same pair at the same date.
+     *
+     * @param rate the price of one unit of the base asset in the quote asset
+     */
+    public void put(final long id, final long base, final long quote, final Instant date, final double rate) {
+        final Rate previous = pairs.computeIfAbsent(new Pair(base, quote), _ -> new ConcurrentSkipListMap<>())
+                .put(date, new Rate(id, rate));
+        if (previous == null) size.incrementAndGet();
+
+        neighbours.computeIfAbsent(base, _ -> ConcurrentHashMap.newKeySet()).add(quote);
+        neighbours.computeIfAbsent(quote, _ -> ConcurrentHashMap.newKeySet()).add(base);
+    }
+
+    /**
+     * Removes the rate with the given id, does nothing if it has been replaced in the meantime.
+     */
+    public void remove(final long id, final long base, final long quote, final Instant date) {
+        final NavigableMap<Instant, Rate> rates = pairs.get(new Pair(base, quote));
+        if (rates == null) return;
+
+        final Rate rate = rates.get(date);
+        if (rate != null && rate.id() == id && rates.remove(date, rate)) size.decrementAndGet();
+    }
+
+    /**
+     * @return the number of rates
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private static Map.Entry<Instant, Rate> floor(final NavigableMap<Instant, Rate> rates, final Instant asOf) {
+        return rates != null ? rates.floorEntry(asOf) : null;
+    }
+
+    /**
+     * The latest direct or inverse rate between two paired assets as of the given date.
+     */
+    private Double directRate(final long from, final long to, final Instant asOf) {
+        final Map.Entry<Instant, Rate> direct = floor(pairs.get(new Pair(from, to)), asOf);
+        final Map.Entry<Instant, Rate> inverse = floor(pairs.get(new Pair(to, from)), asOf);
+
+        if (direct != null && (inverse == null || !direct.getKey().isBefore(inverse.getKey()))) {
+            return direct.getValue().rate();
+        }
+        if (inverse != null && inverse.getValue().rate() != 0) {
+            return 1 / inverse.getValue().rate();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the price of one unit of {@code from} in {@code to} as of the given date.
+     * Pairs are only considered if they have a rate at or before the given date.
+     *
+     * @return the rate, empty if the assets are not connected by rates as of the given date
+     */
+    public OptionalDouble rate(final long from, final long to, final Instant asOf) {
+        if (from == to) return OptionalDouble.of(1);
+
+        final Double direct = directRate(from, to, asOf);
+        if (direct != null) return OptionalDouble.of(direct);
+
+        // Breadth-first search, so the rate is triangulated over the fewest conversions
+        final Map<Long, Double> visited = new HashMap<>();
+        final Deque<Long> queue = new ArrayDeque<>();
+        visited.put(from, 1.0);
+        queue.add(from);
+
+        while (!queue.isEmpty()) {
+            final long current = queue.poll();
+            final double rate = visited.get(current);
+
+            for (final long next : neighbours.getOrDefault(current, Set.of())) {
+                if (visited.containsKey(next)) continue;
+
+                final Double edge = directRate(current, next, asOf);
+                if (edge == null) continue;
+                if (next == to) return OptionalDouble.of(rate * edge);
+
+                visited.put(next, rate * edge);
+                queue.add(next);
+            }
+        }
+
+        return OptionalDouble.empty();
+    }
+
+}
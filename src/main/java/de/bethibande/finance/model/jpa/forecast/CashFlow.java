@@ -0,0 +1,15 @@
+package de.bethibande.finance.model.jpa.forecast;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A single expected change of the balance of a wallet.
+ */
+public record CashFlow(
+        Instant date,
+        long walletId,
+        long assetId,
+        BigDecimal amount
+) {
+}
@@ -0,0 +1,176 @@
+package de.bethibande.finance.model.jpa.forecast;
+
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.AssetDTO;
+import de.bethibande.finance.model.jpa.BalanceHistoryDTO;
+import de.bethibande.finance.model.jpa.WalletBalance;
+import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+import de.bethibande.finance.model.jpa.recurring.RecurringPaymentStatus;
+import de.bethibande.finance.model.jpa.transaction.Transaction;
+import de.bethibande.finance.model.jpa.transaction.TransactionStatus;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.TypedQuery;
+import jakarta.ws.rs.BadRequestException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.jpa.HibernateHints;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Forecasts the balances of a workspace, or a single wallet of it, without persisting anything.
+ * <br>
+ * Starts at the current {@link WalletBalance}s and applies, in order of their date,
+ * <ul>
+ *     <li>the remaining amount of every open {@link Transaction}, streamed from the database ordered by date</li>
+ *     <li>every execution of each active {@link RecurringPayment} that has no transaction yet, generated lazily,
+ *     see {@link RecurringPayment#occurrences(Instant)}</li>
+ * </ul>
+ * The sources are merged using a {@link MergingIterator}, so the memory used is proportional to the number of
+ * recurring payments and assets, not to the length of the horizon. Open transactions that are overdue are applied
+ * right away.
+ */
+@ApplicationScoped
+public class CashFlowForecaster {
+
+    private static final int FETCH_SIZE = 1000;
+
+    @ConfigProperty(name = "finance.forecast.max-events", defaultValue = "1000000")
+    protected long maxEvents;
+
+    /**
+     * Returns the forecasted balance of each asset at the end of the days (UTC) from today until the given day.
+     * If the range has more than {@code maxPoints} days, only the balance at the end of every n-th day is returned,
+     * counting back from {@code until}.
+     *
+     * @param walletId the wallet, the balances of all wallets are summed up if null
+     * @throws BadRequestException if the forecast would apply more than {@code finance.forecast.max-events} events
+     */
+    public List<BalanceHistoryDTO> forecast(final long workspaceId,
+                                            final Long walletId,
+                                            final Instant now,
+                                            final LocalDate until,
+                                            final int maxPoints) {
+        final LocalDate today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        final long days = ChronoUnit.DAYS.between(today, until) + 1;
+        final int interval = (int) Math.max(1, (days + maxPoints - 1) / maxPoints);
+
+        final List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = until; !date.isBefore(today); date = date.minusDays(interval)) {
+            dates.add(date);
+        }
+        Collections.reverse(dates);
+
+        final Map<Long, BigDecimal> totals = new HashMap<>();
+        final List<WalletBalance> balances = walletId != null
+                ? WalletBalance.list("wallet.id = ?1", walletId)
+                : WalletBalance.list("wallet.workspace.id = ?1", workspaceId);
+        balances.forEach(balance -> totals.merge(balance.asset.id, balance.balance, BigDecimal::add));
+
+        final Instant end = until.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        final Map<Long, List<BalanceHistoryDTO.Point>> points = new HashMap<>();
+
+        try (final Stream<CashFlow> transactions = openTransactions(workspaceId, walletId, now, end)) {
+            final List<Iterator<CashFlow>> sources = new ArrayList<>();
+            sources.add(transactions.iterator());
+            for (final RecurringPayment payment : recurringPayments(workspaceId, walletId)) {
+                sources.add(occurrences(payment, now));
+            }
+
+            final Iterator<CashFlow> flows = new MergingIterator<>(sources, Comparator.comparing(CashFlow::date));
+            CashFlow next = flows.hasNext() ? flows.next() : null;
+            long events = 0;
+
+            for (final LocalDate date : dates) {
+                final Instant endOfDay = date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+                while (next != null && next.date().isBefore(endOfDay)) {
+                    if (++events > maxEvents) {
+                        throw new BadRequestException("The forecast exceeds " + maxEvents + " events, choose a shorter horizon");
+                    }
+
+                    totals.merge(next.assetId(), next.amount(), BigDecimal::add);
+                    next = flows.hasNext() ? flows.next() : null;
+                }
+
+                totals.forEach((assetId, total) -> points.computeIfAbsent(assetId, _ -> new ArrayList<>())
+                        .add(new BalanceHistoryDTO.Point(date, total)));
+            }
+        }
+
+        if (totals.isEmpty()) return List.of();
+
+        // Assets first seen later on have no balance at the earlier points
+        for (final List<BalanceHistoryDTO.Point> series : points.values()) {
+            for (int i = 0; series.size() < dates.size(); i++) {
+                series.add(i, new BalanceHistoryDTO.Point(dates.get(i), BigDecimal.ZERO));
+            }
+        }
+
+        return Asset.<Asset>list("id IN ?1 ORDER BY code", totals.keySet())
+                .stream()
+                .map(asset -> new BalanceHistoryDTO(AssetDTO.from(asset), interval, points.getOrDefault(asset.id, List.of())))
+                .toList();
+    }
+
+    private Stream<CashFlow> openTransactions(final long workspaceId,
+                                              final Long walletId,
+                                              final Instant now,
+                                              final Instant end) {
+        final TypedQuery<Object[]> query = Transaction.getEntityManager().createQuery("""
+                        SELECT t.date, t.wallet.id, t.asset.id, t.amount - coalesce((
+                            SELECT sum(b.amount)
+                            FROM BookedAmount b
+                            WHERE b.transaction = t AND b.asset = t.asset
+                        ), 0)
+                        FROM Transaction t
+                        WHERE t.workspace.id = :workspace AND t.status = :status AND t.date < :end
+                        """ + (walletId != null ? " AND t.wallet.id = :wallet" : "") + " ORDER BY t.date", Object[].class)
+                .setParameter("workspace", workspaceId)
+                .setParameter("status", TransactionStatus.OPEN)
+                .setParameter("end", end)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                .setHint(HibernateHints.HINT_READ_ONLY, true);
+        if (walletId != null) query.setParameter("wallet", walletId);
+
+        return query.getResultStream()
+                .map(row -> new CashFlow(
+                        ((Instant) row[0]).isBefore(now) ? now : (Instant) row[0],
+                        (Long) row[1],
+                        (Long) row[2],
+                        (BigDecimal) row[3]
+                ))
+                .filter(flow -> flow.amount().signum() != 0);
+    }
+
+    private List<RecurringPayment> recurringPayments(final long workspaceId, final Long walletId) {
+        if (walletId != null) {
+            return RecurringPayment.list("workspace.id = ?1 AND status = ?2 AND wallet.id = ?3", workspaceId, RecurringPaymentStatus.ACTIVE, walletId);
+        }
+
+        return RecurringPayment.list("workspace.id = ?1 AND status = ?2", workspaceId, RecurringPaymentStatus.ACTIVE);
+    }
+
+    private static Iterator<CashFlow> occurrences(final RecurringPayment payment, final Instant now) {
+        final Iterator<Instant> dates = payment.occurrences(now);
+        final long walletId = payment.wallet.id;
+        final long assetId = payment.asset.id;
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return dates.hasNext();
+            }
+
+            @Override
+            public CashFlow next() {
+                return new CashFlow(dates.next(), walletId, assetId, payment.amount);
+            }
+        };
+    }
+
+}
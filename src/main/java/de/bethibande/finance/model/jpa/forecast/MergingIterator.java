@@ -0,0 +1,51 @@
+package de.bethibande.finance.model.jpa.forecast;
+
+import java.util.*;
+
+/**
+ * Merges sorted iterators into a single sorted iterator.
+ * <br>
+ * Only the head of each source is held in a priority queue, so the memory used is proportional to the number of
+ * sources, no matter how many elements they produce. Sources are consumed lazily, one element at a time.
+ *
+ * @param <T> the type of the elements
+ */
+public final class MergingIterator<T> implements Iterator<T> {
+
+    private record Head<T>(T value, Iterator<? extends T> source, int index) {
+    }
+
+    private final PriorityQueue<Head<T>> heads;
+
+    /**
+     * @param sources    the sources, each must be sorted by the given comparator
+     * @param comparator elements that compare equal are returned in the order of their sources
+     */
+    public MergingIterator(final List<? extends Iterator<? extends T>> sources, final Comparator<? super T> comparator) {
+        final Comparator<Head<T>> byValue = (a, b) -> comparator.compare(a.value(), b.value());
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()), byValue.thenComparingInt(Head::index));
+
+        for (int i = 0; i < sources.size(); i++) {
+            final Iterator<? extends T> source = sources.get(i);
+            if (source.hasNext()) heads.add(new Head<>(source.next(), source, i));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        final Head<T> head = heads.poll();
+        if (head == null) throw new NoSuchElementException();
+
+        if (head.source().hasNext()) {
+            heads.add(new Head<>(head.source().next(), head.source(), head.index()));
+        }
+
+        return head.value();
+    }
+
+}
@@ -2,12 +2,17 @@ package de.bethibande.finance.model.jpa.partner;
 
 import com.bethibande.process.annotation.EntityDTO;
 import de.bethibande.finance.model.jpa.WorkspaceEntity;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @EntityDTO
 @EntityDTO(excludeProperties = "id")
 @EntityDTO(excludeProperties = "workspace")
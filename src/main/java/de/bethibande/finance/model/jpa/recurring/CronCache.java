@@ -0,0 +1,119 @@
+package de.bethibande.finance.model.jpa.recurring;
+
+import com.cronutils.model.definition.CronDefinition;
+import com.cronutils.model.time.ExecutionTime;
+import com.cronutils.parser.CronParser;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of parsed cron expressions.
+ * <br>
+ * Parsing a cron expression and building its {@link ExecutionTime} is comparatively expensive, yet the same handful of
+ * expressions is evaluated over and over (once per row when listing recurring payments, once per job run, ...).
+ * Expressions are normalized before lookup, so {@code "0 0 0 1 * *"} and {@code " 0  0 0 1 * * "} share one entry.
+ * Once the cache is full, the oldest entries are evicted first.
+ * <pre>
+ * {@code
+ * final ExecutionTime time = CronCache.shared().get("0 0 0 1 * *");
+ * }
+ * </pre>
+ * @see RecurringPayment#cronDefinition()
+ */
+public final class CronCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private static final CronCache SHARED = new CronCache(RecurringPayment.cronDefinition(), DEFAULT_MAXIMUM_SIZE);
+
+    /**
+     * @return the process-wide cache using the {@link RecurringPayment#cronDefinition() default cron definition}
+     */
+    public static CronCache shared() {
+        return SHARED;
+    }
+
+    public static String normalize(final String expression) {
+        return expression.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    public record Stats(
+            long hits,
+            long misses,
+            long evictions,
+            int size
+    ) {
+    }
+
+    private final CronParser parser;
+    private final int maximumSize;
+
+    private final ConcurrentHashMap<String, ExecutionTime> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CronCache(final CronDefinition definition, final int maximumSize) {
+        if (maximumSize < 1) throw new IllegalArgumentException("Maximum size must be at least 1");
+
+        this.parser = new CronParser(definition);
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Returns the execution time of the given expression, parsing it only if it is not cached yet.
+     *
+     * @throws IllegalArgumentException if the expression is not valid, invalid expressions are never cached
+     */
+    public ExecutionTime get(final String expression) {
+        final String key = normalize(expression);
+
+        final ExecutionTime cached = entries.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        final ExecutionTime time = ExecutionTime.forCron(parser.parse(key));
+
+        final ExecutionTime existing = entries.putIfAbsent(key, time);
+        if (existing != null) return existing;
+
+        insertionOrder.add(key);
+        evictOverflow();
+
+        return time;
+    }
+
+    private void evictOverflow() {
+        while (entries.size() > maximumSize) {
+            final String eldest = insertionOrder.poll();
+            if (eldest == null) return;
+
+            if (entries.remove(eldest) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+    }
+
+    public Stats getStats() {
+        return new Stats(
+                hits.sum(),
+                misses.sum(),
+                evictions.sum(),
+                entries.size()
+        );
+    }
+
+}
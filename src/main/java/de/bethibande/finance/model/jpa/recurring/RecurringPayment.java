@@ -2,11 +2,10 @@ package de.bethibande.finance.model.jpa.recurring;
 
 import com.bethibande.process.annotation.EntityDTO;
 import com.bethibande.process.annotation.VirtualDTOField;
-import com.cronutils.model.Cron;
 import com.cronutils.model.definition.CronDefinition;
 import com.cronutils.model.definition.CronDefinitionBuilder;
 import com.cronutils.model.time.ExecutionTime;
-import com.cronutils.parser.CronParser;
+import de.bethibande.finance.model.jpa.component.ComponentFilter;
 import de.bethibande.finance.model.jpa.discriminator.EntitySource;
 import de.bethibande.finance.model.jpa.discriminator.SourceDiscriminators;
 import de.bethibande.finance.model.jpa.transaction.AbstractPayment;
@@ -17,6 +16,10 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.TypedQuery;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.ws.rs.BadRequestException;
 
 import java.time.Instant;
 import java.time.ZoneId;
@@ -30,21 +33,56 @@ import java.util.*;
 @EntityDTO(excludeProperties = {"lastTransactionDate", "workspace"}, name = "RecurringPaymentDTOWithoutWorkspace")
 public class RecurringPayment extends AbstractPayment implements EntitySource {
 
-    public static void deleteAllOpenScheduledPayments(final long id) {
+    public static final int DEFAULT_HORIZON_DAYS = 365;
+
+    /**
+     * Enough for a daily schedule to cover the whole {@link #DEFAULT_HORIZON_DAYS default horizon},
+     * but keeps hourly or minutely schedules from writing thousands of rows.
+     */
+    public static final int DEFAULT_HORIZON_COUNT = 366;
+
+    public static final int MAX_HORIZON_DAYS = 3660;
+
+    /**
+     * The most transactions a single generation may write, a daily schedule can still cover the whole
+     * {@link #MAX_HORIZON_DAYS maximum horizon}.
+     */
+    public static final int MAX_HORIZON_COUNT = 3660;
+
+    private static final String PENDING_PAYMENTS = "date > ?1 AND sourceDiscriminator = ?2 AND sourceId = ?3 AND bookedCount = 0";
+
+    private static final ComponentFilter USER_MODIFIED = ComponentFilter.contains(TransactionComponents.USER_MODIFIED, true);
+
+    public static void deleteAllOpenScheduledPayments(final Collection<Long> ids) {
         Transaction.delete(
-                "sourceDiscriminator = ?1 AND sourceId = ?2 AND size(bookedAmounts) = 0 AND status = ?3",
+                "sourceDiscriminator = ?1 AND sourceId IN ?2 AND bookedCount = 0 AND status = ?3",
                 SourceDiscriminators.RECURRING_PAYMENTS,
-                id,
+                ids,
                 TransactionStatus.OPEN
         );
 
         Transaction.update( // Detach any remaining transactions
-                "sourceDiscriminator = NULL, sourceId = NULL WHERE sourceDiscriminator = ?1 AND sourceId = ?2",
+                "sourceDiscriminator = NULL, sourceId = NULL WHERE sourceDiscriminator = ?1 AND sourceId IN ?2",
                 SourceDiscriminators.RECURRING_PAYMENTS,
-                id
+                ids
         );
     }
 
+    /**
+     * The bean validation constraints on {@link #horizonDays} and {@link #horizonCount} only run on flush, which is
+     * after the payments have been generated. Endpoints call this before generating anything.
+     *
+     * @throws BadRequestException if a horizon is out of bounds
+     */
+    public static void validateHorizon(final Integer horizonDays, final Integer horizonCount) {
+        if (horizonDays != null && (horizonDays < 1 || horizonDays > MAX_HORIZON_DAYS)) {
+            throw new BadRequestException("horizonDays must be between 1 and " + MAX_HORIZON_DAYS);
+        }
+        if (horizonCount != null && (horizonCount < 1 || horizonCount > MAX_HORIZON_COUNT)) {
+            throw new BadRequestException("horizonCount must be between 1 and " + MAX_HORIZON_COUNT);
+        }
+    }
+
     public static CronDefinition cronDefinition() {
         return CronDefinitionBuilder.defineCron()
                 .withSeconds().and()
@@ -72,6 +110,22 @@ public class RecurringPayment extends AbstractPayment implements EntitySource {
     @Column
     public Instant lastTransactionDate;
 
+    /**
+     * How many days into the future transactions are generated for, defaults to {@link #DEFAULT_HORIZON_DAYS}
+     */
+    @Min(1)
+    @Max(MAX_HORIZON_DAYS)
+    @Column
+    public Integer horizonDays;
+
+    /**
+     * The maximum number of future transactions that are generated, defaults to {@link #DEFAULT_HORIZON_COUNT}
+     */
+    @Min(1)
+    @Max(MAX_HORIZON_COUNT)
+    @Column
+    public Integer horizonCount;
+
     @Override
     public Long getId() {
         return id;
@@ -84,10 +138,7 @@ public class RecurringPayment extends AbstractPayment implements EntitySource {
 
     @VirtualDTOField
     public Instant nextPaymentDate() {
-        final CronParser parser = new CronParser(cronDefinition());
-        final Cron cron = parser.parse(this.cronSchedule);
-
-        final ExecutionTime time = ExecutionTime.forCron(cron);
+        final ExecutionTime time = CronCache.shared().get(this.cronSchedule);
         final Instant instant = time.nextExecution(ZonedDateTime.now())
                 .map(ZonedDateTime::toInstant)
                 .orElse(null);
@@ -115,13 +166,42 @@ public class RecurringPayment extends AbstractPayment implements EntitySource {
         return transaction;
     }
 
+    /**
+     * The watermark, payments are generated for every execution after this date.
+     */
     protected Instant getStartDate(final Instant now) {
-        if (this.notBefore != null && this.notBefore.isAfter(now)) return this.notBefore.minus(1, ChronoUnit.MINUTES);
-        return this.lastTransactionDate != null ? this.lastTransactionDate : now;
+        final Instant start = this.lastTransactionDate != null ? this.lastTransactionDate : now;
+        if (this.notBefore != null && this.notBefore.minus(1, ChronoUnit.MINUTES).isAfter(start)) {
+            return this.notBefore.minus(1, ChronoUnit.MINUTES);
+        }
+
+        return start;
+    }
+
+    public int getHorizonDaysOrDefault() {
+        return this.horizonDays != null ? this.horizonDays : DEFAULT_HORIZON_DAYS;
+    }
+
+    public int getHorizonCountOrDefault() {
+        return this.horizonCount != null ? this.horizonCount : DEFAULT_HORIZON_COUNT;
     }
 
+    /**
+     * {@link #horizonCount} counts the executions after this date, which includes the ones up to the
+     * {@link #getStartDate(Instant) watermark} that have been generated before.
+     */
+    protected Instant getHorizonStart(final Instant now) {
+        return this.notBefore != null && this.notBefore.isAfter(now)
+                ? this.notBefore.minus(1, ChronoUnit.MINUTES)
+                : now;
+    }
+
+    /**
+     * The end of the materialized window, this is the earlier of {@link #horizonDays} after now and {@link #notAfter}.
+     * The window is additionally limited to {@link #horizonCount} executions, these are counted while generating.
+     */
     protected Instant getEndDate(final Instant now) {
-        final Instant limit = now.plus(365, ChronoUnit.DAYS);
+        final Instant limit = now.plus(getHorizonDaysOrDefault(), ChronoUnit.DAYS);
 
         if (this.notAfter != null && this.notAfter.isBefore(limit)) return this.notAfter;
         return limit;
@@ -132,20 +212,26 @@ public class RecurringPayment extends AbstractPayment implements EntitySource {
             return Collections.emptyList();
         }
 
-        final CronParser parser = new CronParser(RecurringPayment.cronDefinition());
-        final Cron cron = parser.parse(this.cronSchedule);
-        final ExecutionTime executionTime = ExecutionTime.forCron(cron);
+        final ExecutionTime executionTime = CronCache.shared().get(this.cronSchedule);
 
         final List<Transaction> payments = new ArrayList<>();
 
         final ZoneId zone = ZoneId.systemDefault();
         final ZonedDateTime endDate = getEndDate(now).atZone(zone);
-        ZonedDateTime currentDate = getStartDate(now).atZone(zone);
-        while (true) {
+        final Instant startDate = getStartDate(now);
+        final Instant horizonStart = getHorizonStart(now);
+        final int horizonCount = getHorizonCountOrDefault();
+
+        // Executions between the horizon start and the watermark are only counted, payments exist for them already
+        ZonedDateTime currentDate = (startDate.isBefore(horizonStart) ? startDate : horizonStart).atZone(zone);
+        int counted = 0;
+        while (counted < horizonCount) {
             currentDate = executionTime.nextExecution(currentDate).orElse(null);
             if (currentDate == null || currentDate.isAfter(endDate)) break;
 
-            payments.add(createPaymentAt(currentDate.toInstant()));
+            final Instant date = currentDate.toInstant();
+            if (date.isAfter(horizonStart)) counted++;
+            if (date.isAfter(startDate)) payments.add(createPaymentAt(date));
         }
 
         if (updateLastTransactionDate
@@ -157,27 +243,65 @@ public class RecurringPayment extends AbstractPayment implements EntitySource {
         return payments;
     }
 
+    /**
+     * Lazily iterates the executions that {@link #generatePayments(Instant, boolean)} has not generated transactions
+     * for yet, that is every execution after the {@link #getStartDate(Instant) watermark} until {@link #notAfter}.
+     * Unlike {@link #generatePayments(Instant, boolean)}, the executions are not limited by the horizon, callers stop
+     * iterating once they have seen enough.
+     */
+    public Iterator<Instant> occurrences(final Instant now) {
+        if (this.status != null && this.status != RecurringPaymentStatus.ACTIVE) {
+            return Collections.emptyIterator();
+        }
+
+        final ExecutionTime executionTime = CronCache.shared().get(this.cronSchedule);
+        final ZonedDateTime start = getStartDate(now).atZone(ZoneId.systemDefault());
+
+        return new Iterator<>() {
+
+            private ZonedDateTime next = advance(start);
+
+            private ZonedDateTime advance(final ZonedDateTime date) {
+                final ZonedDateTime next = executionTime.nextExecution(date).orElse(null);
+                if (next == null || (notAfter != null && next.toInstant().isAfter(notAfter))) return null;
+
+                return next;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Instant next() {
+                if (next == null) throw new NoSuchElementException();
+
+                final ZonedDateTime current = next;
+                next = advance(current);
+
+                return current.toInstant();
+            }
+        };
+    }
+
+    /**
+     * @param deleted the number of deleted pending transactions
+     * @param create  the transactions replacing the deleted ones, not persisted yet
+     */
     public record PaymentUpdateResult(
-            List<Transaction> delete,
+            long deleted,
             List<Transaction> create
     ) {
     }
 
+    /**
+     * Deletes the pending transactions and generates new ones. Pending transactions modified by the user are kept,
+     * unless {@code forceUpdate} is set, and no new transaction is generated for their date.
+     */
     public PaymentUpdateResult updatePayments(final Instant now, final boolean forceUpdate) {
-        final List<Transaction> pendingTransactions = listPendingPayments(now);
-
-        final Set<Instant> retainedDates = new HashSet<>();
-        final List<Transaction> purgedTransactions = forceUpdate ? pendingTransactions : new ArrayList<>();
-        if (!forceUpdate) {
-            for (int i = 0; i < pendingTransactions.size(); i++) {
-                final Transaction tx = pendingTransactions.get(i);
-                if (tx.get(TransactionComponents.USER_MODIFIED, false)) {
-                    retainedDates.add(tx.date);
-                } else {
-                    purgedTransactions.add(tx);
-                }
-            }
-        }
+        final Set<Instant> retainedDates = forceUpdate ? Set.of() : listModifiedPaymentDates(now);
+        final long deleted = deletePendingPayments(now, forceUpdate);
 
         this.lastTransactionDate = null;
         final List<Transaction> newTransactions = generatePayments(now, true)
@@ -186,18 +310,45 @@ public class RecurringPayment extends AbstractPayment implements EntitySource {
                 .toList();
 
         return new PaymentUpdateResult(
-                purgedTransactions,
+                deleted,
                 newTransactions
         );
     }
 
-    public List<Transaction> listPendingPayments(final Instant now) {
-        return Transaction.list(
-                "date > ?1 AND sourceDiscriminator = ?2 AND sourceId = ?3 AND size(bookedAmounts) = 0",
-                now,
-                SourceDiscriminators.RECURRING_PAYMENTS,
-                id
+    private List<Object> pendingPaymentParameters(final Instant now) {
+        return new ArrayList<>(List.of(now, SourceDiscriminators.RECURRING_PAYMENTS, id));
+    }
+
+    /**
+     * @return the dates of the pending transactions modified by the user
+     */
+    public Set<Instant> listModifiedPaymentDates(final Instant now) {
+        final List<Object> params = pendingPaymentParameters(now);
+        final String filter = USER_MODIFIED.toHql("components.dataComponents", params);
+
+        final TypedQuery<Instant> query = Transaction.getEntityManager().createQuery(
+                "SELECT date FROM Transaction WHERE " + PENDING_PAYMENTS + " AND " + filter,
+                Instant.class
         );
+        for (int i = 0; i < params.size(); i++) {
+            query.setParameter(i + 1, params.get(i));
+        }
+
+        return new HashSet<>(query.getResultList());
+    }
+
+    /**
+     * Deletes the pending transactions with a single statement.
+     *
+     * @param includeModified whether to delete transactions modified by the user as well
+     * @return the number of deleted transactions
+     */
+    public long deletePendingPayments(final Instant now, final boolean includeModified) {
+        final List<Object> params = pendingPaymentParameters(now);
+        if (includeModified) return Transaction.delete(PENDING_PAYMENTS, params.toArray());
+
+        final String filter = USER_MODIFIED.not().toHql("components.dataComponents", params);
+        return Transaction.delete(PENDING_PAYMENTS + " AND " + filter, params.toArray());
     }
 
 }
@@ -0,0 +1,224 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.AssetDTO;
+import de.bethibande.finance.model.jpa.BalanceHistoryDTO;
+import de.bethibande.finance.model.jpa.BalanceSnapshot;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.FlushMode;
+import org.hibernate.jpa.HibernateHints;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Maintains the daily {@link BalanceSnapshot}s and reads balance histories from them.
+ * <br>
+ * Every change of a booked amount marks its wallet and asset as dirty from the day of the booking on, keeping only the
+ * earliest day per wallet and asset. {@link #refresh(long, int)} claims the marks and recomputes the snapshots from
+ * that day on, starting with the last snapshot before it, so a late-dated booking only recomputes the days after it.
+ */
+@ApplicationScoped
+public class BalanceSnapshots {
+
+    public static final int MAX_POINTS = 5000;
+
+    private record Key(long walletId, long assetId) {
+    }
+
+    /**
+     * Marks the snapshots of the wallet in the given asset as outdated starting at the day of the given date.
+     * Must be called within the transaction that changes the booked amounts.
+     */
+    public void touch(final long walletId, final long assetId, final Instant date) {
+        BalanceSnapshot.getEntityManager().createNativeQuery("""
+                        INSERT INTO BalanceSnapshotDirty (wallet_id, asset_id, workspace_id, day)
+                        SELECT w.id, :asset, w.workspace_id, :day
+                        FROM Wallet w
+                        WHERE w.id = :wallet
+                        ON CONFLICT (wallet_id, asset_id) DO UPDATE
+                        SET day = least(BalanceSnapshotDirty.day, EXCLUDED.day)
+                        """)
+                .setParameter("wallet", walletId)
+                .setParameter("asset", assetId)
+                .setParameter("day", LocalDate.ofInstant(date, ZoneOffset.UTC))
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "BalanceSnapshotDirty")
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .executeUpdate();
+    }
+
+    /**
+     * Recomputes the outdated snapshots of up to {@code limit} wallets and assets of the workspace.
+     * <br>
+     * The marks are claimed using {@code FOR UPDATE SKIP LOCKED} and deleted in the same transaction the snapshots are
+     * written in. Marks of bookings that have not been committed yet are skipped and processed by the next run.
+     *
+     * @return the number of recomputed wallets and assets, less than {@code limit} once nothing is left
+     */
+    public int refresh(final long workspaceId, final int limit) {
+        final EntityManager em = BalanceSnapshot.getEntityManager();
+
+        @SuppressWarnings("unchecked")
+        final List<Object[]> claimed = em.createNativeQuery("""
+                        DELETE FROM BalanceSnapshotDirty d
+                        USING (
+                            SELECT wallet_id, asset_id
+                            FROM BalanceSnapshotDirty
+                            WHERE workspace_id = :workspace
+                            ORDER BY day
+                            LIMIT :limit
+                            FOR UPDATE SKIP LOCKED
+                        ) c
+                        WHERE d.wallet_id = c.wallet_id AND d.asset_id = c.asset_id
+                        RETURNING d.wallet_id, d.asset_id, d.day
+                        """)
+                .setParameter("workspace", workspaceId)
+                .setParameter("limit", limit)
+                .getResultList();
+
+        for (final Object[] row : claimed) {
+            recompute(em, ((Number) row[0]).longValue(), ((Number) row[1]).longValue(), toLocalDate(row[2]));
+        }
+
+        return claimed.size();
+    }
+
+    private static LocalDate toLocalDate(final Object value) {
+        if (value instanceof LocalDate date) return date;
+        return ((java.sql.Date) value).toLocalDate();
+    }
+
+    private void recompute(final EntityManager em, final long walletId, final long assetId, final LocalDate from) {
+        em.createNativeQuery("DELETE FROM BalanceSnapshot WHERE wallet_id = :wallet AND asset_id = :asset AND day >= :from")
+                .setParameter("wallet", walletId)
+                .setParameter("asset", assetId)
+                .setParameter("from", from)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "BalanceSnapshot")
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .executeUpdate();
+
+        em.createNativeQuery("""
+                        INSERT INTO BalanceSnapshot (workspace_id, wallet_id, asset_id, day, balance)
+                        SELECT w.workspace_id, :wallet, :asset, d.day, base.balance + sum(d.delta) OVER (ORDER BY d.day)
+                        FROM (
+                            SELECT cast(b.date AT TIME ZONE 'UTC' AS date) AS day, sum(b.amount) AS delta
+                            FROM BookedAmount b
+                            WHERE b.wallet_id = :wallet AND b.asset_id = :asset AND b.date >= :since
+                            GROUP BY 1
+                        ) d
+                        JOIN Wallet w ON w.id = :wallet
+                        CROSS JOIN (
+                            SELECT coalesce((
+                                SELECT s.balance
+                                FROM BalanceSnapshot s
+                                WHERE s.wallet_id = :wallet AND s.asset_id = :asset AND s.day < :from
+                                ORDER BY s.day DESC
+                                LIMIT 1
+                            ), 0) AS balance
+                        ) base
+                        """)
+                .setParameter("wallet", walletId)
+                .setParameter("asset", assetId)
+                .setParameter("from", from)
+                .setParameter("since", from.atStartOfDay().atOffset(ZoneOffset.UTC))
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "BalanceSnapshot")
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .executeUpdate();
+    }
+
+    /**
+     * Reads the balance of each asset held by the workspace, or a single wallet of it, at the end of the days in the
+     * given range. If the range has more than {@code maxPoints} days, only the balance at the end of every n-th day is
+     * returned, counting back from {@code to}.
+     *
+     * @param walletId the wallet, the balances of all wallets are summed up if null
+     */
+    public List<BalanceHistoryDTO> history(final long workspaceId,
+                                           final Long walletId,
+                                           final LocalDate from,
+                                           final LocalDate to,
+                                           final int maxPoints) {
+        final long days = ChronoUnit.DAYS.between(from, to) + 1;
+        final int interval = (int) Math.max(1, (days + maxPoints - 1) / maxPoints);
+
+        final List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = to; !date.isBefore(from); date = date.minusDays(interval)) {
+            dates.add(date);
+        }
+        Collections.reverse(dates);
+
+        final EntityManager em = BalanceSnapshot.getEntityManager();
+        final String walletFilter = walletId != null ? " AND s.wallet_id = :wallet" : "";
+
+        final Query baseQuery = em.createNativeQuery("""
+                        SELECT DISTINCT ON (s.wallet_id, s.asset_id) s.wallet_id, s.asset_id, s.day, s.balance
+                        FROM BalanceSnapshot s
+                        WHERE s.workspace_id = :workspace AND s.day < :from%s
+                        ORDER BY s.wallet_id, s.asset_id, s.day DESC
+                        """.formatted(walletFilter))
+                .setParameter("workspace", workspaceId)
+                .setParameter("from", from);
+
+        final Query rangeQuery = em.createNativeQuery("""
+                        SELECT s.wallet_id, s.asset_id, s.day, s.balance
+                        FROM BalanceSnapshot s
+                        WHERE s.workspace_id = :workspace AND s.day >= :from AND s.day <= :to%s
+                        ORDER BY s.day
+                        """.formatted(walletFilter))
+                .setParameter("workspace", workspaceId)
+                .setParameter("from", from)
+                .setParameter("to", to);
+
+        if (walletId != null) {
+            baseQuery.setParameter("wallet", walletId);
+            rangeQuery.setParameter("wallet", walletId);
+        }
+
+        @SuppressWarnings("unchecked")
+        final List<Object[]> base = baseQuery.getResultList();
+        @SuppressWarnings("unchecked")
+        final List<Object[]> range = rangeQuery.getResultList();
+
+        final Map<Key, BigDecimal> balances = new HashMap<>();
+        final Map<Long, BigDecimal> totals = new HashMap<>();
+        for (final Object[] row : base) {
+            apply(row, balances, totals);
+        }
+        for (final Object[] row : range) {
+            totals.putIfAbsent(((Number) row[1]).longValue(), BigDecimal.ZERO);
+        }
+
+        final Map<Long, List<BalanceHistoryDTO.Point>> points = new HashMap<>();
+        int next = 0;
+        for (final LocalDate date : dates) {
+            while (next < range.size() && !toLocalDate(range.get(next)[2]).isAfter(date)) {
+                apply(range.get(next++), balances, totals);
+            }
+
+            totals.forEach((assetId, total) -> points.computeIfAbsent(assetId, _ -> new ArrayList<>(dates.size()))
+                    .add(new BalanceHistoryDTO.Point(date, total)));
+        }
+
+        if (totals.isEmpty()) return List.of();
+
+        return Asset.<Asset>list("id IN ?1 ORDER BY code", totals.keySet())
+                .stream()
+                .map(asset -> new BalanceHistoryDTO(AssetDTO.from(asset), interval, points.getOrDefault(asset.id, List.of())))
+                .toList();
+    }
+
+    private static void apply(final Object[] row, final Map<Key, BigDecimal> balances, final Map<Long, BigDecimal> totals) {
+        final Key key = new Key(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        final BigDecimal balance = (BigDecimal) row[3];
+
+        final BigDecimal previous = balances.put(key, balance);
+        totals.merge(key.assetId(), previous != null ? balance.subtract(previous) : balance, BigDecimal::add);
+    }
+
+}
@@ -16,6 +16,7 @@ import java.time.Instant;
 @EntityDTO(excludeProperties = {"asset.notes", "wallet.notes"}, expandProperties = {"asset", "wallet"}, name = "BookedAmountDTO")
 @EntityDTO(excludeProperties = {"id", "transaction"})
 @EntityDTO(excludeProperties = {"transaction"})
+@EntityDTO(excludeProperties = {"id"})
 public class BookedAmount extends PanacheEntity {
 
     @JsonIgnore
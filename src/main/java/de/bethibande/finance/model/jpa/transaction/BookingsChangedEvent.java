@@ -0,0 +1,12 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+/**
+ * Fired by the {@link WalletBalances} whenever booked amounts of a workspace are added, changed or removed.
+ * Observers interested in committed changes only should observe it {@code during = TransactionPhase.AFTER_SUCCESS}.
+ *
+ * @param workspaceId the id of the workspace
+ */
+public record BookingsChangedEvent(
+        long workspaceId
+) {
+}
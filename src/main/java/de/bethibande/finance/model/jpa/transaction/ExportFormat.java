@@ -0,0 +1,40 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import java.util.Locale;
+
+public enum ExportFormat {
+
+    /**
+     * One JSON object per line and transaction, booked amounts are nested.
+     */
+    NDJSON("application/x-ndjson", "ndjson"),
+    /**
+     * One line per booked amount, repeating the columns of the transaction.
+     * Transactions without booked amounts are written as a single line with empty booked amount columns.
+     */
+    CSV("text/csv", "csv");
+
+    private final String mediaType;
+    private final String extension;
+
+    ExportFormat(final String mediaType, final String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Case-insensitive lookup, used for query parameters.
+     */
+    public static ExportFormat fromString(final String value) {
+        return valueOf(value.toUpperCase(Locale.ROOT));
+    }
+
+}
@@ -10,16 +10,30 @@ import de.bethibande.finance.model.jpa.discriminator.EntitySource;
 import de.bethibande.finance.model.jpa.discriminator.GeneratedEntity;
 import jakarta.persistence.*;
 
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.List;
 
 @Entity
+@NamedEntityGraph(
+        name = Transaction.GRAPH_EXPANDED,
+        attributeNodes = {
+                @NamedAttributeNode("asset"),
+                @NamedAttributeNode("wallet"),
+                @NamedAttributeNode("partner")
+        }
+)
 @EntityDTO(excludeProperties = {"bookedAmounts", "components.dataComponents", "source"}, name = "TransactionDTOWithoutBookedAmounts")
-@EntityDTO(excludeProperties = {"id", "bookedAmounts", "components.dataComponents", "source"}, name = "TransactionDTOWithoutIdAndBookedAmounts")
-@EntityDTO(excludeProperties = {"workspace", "bookedAmounts", "components.dataComponents", "source"}, name = "TransactionDTOWithoutWorkspaceAndBookedAmounts")
+@EntityDTO(excludeProperties = {"id", "bookedAmounts", "bookedCount", "bookedSum", "components.dataComponents", "source"}, name = "TransactionDTOWithoutIdAndBookedAmounts")
+@EntityDTO(excludeProperties = {"workspace", "bookedAmounts", "bookedCount", "bookedSum", "components.dataComponents", "source"}, name = "TransactionDTOWithoutWorkspaceAndBookedAmounts")
 @EntityDTO(excludeProperties = {"bookedAmounts", "components.dataComponents"}, expandProperties = {"asset", "partner", "wallet"}, name = "TransactionDTOExpanded")
 public class Transaction extends AbstractPayment implements ComponentUtils, GeneratedEntity {
 
+    /**
+     * Loads everything needed for {@link TransactionDTOExpanded}, use as fetch graph.
+     */
+    public static final String GRAPH_EXPANDED = "Transaction.expanded";
+
     @Column(nullable = false)
     public Instant date;
 
@@ -30,6 +44,19 @@ public class Transaction extends AbstractPayment implements ComponentUtils, Gene
     @OneToMany(mappedBy = "transaction")
     public List<BookedAmount> bookedAmounts;
 
+    /**
+     * The number of {@link #bookedAmounts}, maintained by {@link TransactionBookings}.
+     */
+    @Column(nullable = false, insertable = false, updatable = false)
+    public int bookedCount;
+
+    /**
+     * The sum of the {@link #bookedAmounts} booked in the {@link #asset} of this transaction, maintained by
+     * {@link TransactionBookings}. Amounts booked in other assets are only counted.
+     */
+    @Column(nullable = false, insertable = false, updatable = false)
+    public BigDecimal bookedSum = BigDecimal.ZERO;
+
     @ManyToOne
     @JsonIncludeProperties("id")
     public Transaction internalRef;
@@ -41,6 +68,12 @@ public class Transaction extends AbstractPayment implements ComponentUtils, Gene
     @Embedded
     public JPAComponentBearer components = new JPAComponentBearer();
 
+    @Transient
+    private EntitySource resolvedSource;
+
+    @Transient
+    private boolean sourceResolved = false;
+
     @Override
     public DataComponentMap getDataComponents() {
         if (components == null) {
@@ -70,8 +103,15 @@ public class Transaction extends AbstractPayment implements ComponentUtils, Gene
         return this.sourceDiscriminator;
     }
 
+    @Override
+    public void resolveSource(final EntitySource source) {
+        this.resolvedSource = source;
+        this.sourceResolved = true;
+    }
+
     @VirtualDTOField
     public EntitySource getSource() {
+        if (sourceResolved) return resolvedSource;
         return fetchSource();
     }
 
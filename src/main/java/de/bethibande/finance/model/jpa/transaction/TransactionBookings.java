@@ -0,0 +1,177 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.FlushMode;
+import org.hibernate.jpa.HibernateHints;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains the booking state of {@link Transaction}s, {@link Transaction#bookedCount} and
+ * {@link Transaction#bookedSum}.
+ * <br>
+ * Applied by {@link WalletBalances} for every change of a {@link BookedAmount}. Like the balances, changes are applied
+ * as atomic increments, so concurrent bookings of the same transaction cannot overwrite each other.
+ */
+@ApplicationScoped
+public class TransactionBookings {
+
+    /**
+     * A transaction whose booking state does not match its booked amounts.
+     */
+    public record Mismatch(
+            long transactionId,
+            long storedCount,
+            BigDecimal storedSum,
+            long ledgerCount,
+            BigDecimal ledgerSum
+    ) {
+    }
+
+    private static final class Delta {
+
+        private long count;
+        private BigDecimal sum = BigDecimal.ZERO;
+
+    }
+
+    /**
+     * Applies the given amounts to their transactions using a single update.
+     *
+     * @param sign 1 to book the amounts, -1 to revert them
+     */
+    public void applyAll(final Collection<BookedAmount> amounts, final int sign) {
+        if (amounts.isEmpty()) return;
+
+        // Sorted by id, so concurrent updates lock the transactions in the same order
+        final Map<Long, Delta> deltas = new TreeMap<>();
+        for (final BookedAmount amount : amounts) {
+            final Delta delta = deltas.computeIfAbsent(amount.transaction.id, _ -> new Delta());
+            delta.count += sign;
+
+            if (amount.asset.id.equals(amount.transaction.asset.id)) {
+                delta.sum = sign < 0 ? delta.sum.subtract(amount.amount) : delta.sum.add(amount.amount);
+            }
+        }
+
+        final Long[] ids = new Long[deltas.size()];
+        final Long[] counts = new Long[deltas.size()];
+        final BigDecimal[] sums = new BigDecimal[deltas.size()];
+
+        int i = 0;
+        for (final Map.Entry<Long, Delta> entry : deltas.entrySet()) {
+            ids[i] = entry.getKey();
+            counts[i] = entry.getValue().count;
+            sums[i++] = entry.getValue().sum;
+        }
+
+        Transaction.getEntityManager().createNativeQuery("""
+                        UPDATE Transaction
+                        SET bookedCount = Transaction.bookedCount + d.count,
+                            bookedSum = Transaction.bookedSum + d.sum
+                        FROM unnest(:ids, :counts, :sums) AS d(id, count, sum)
+                        WHERE Transaction.id = d.id
+                        """)
+                .setParameter("ids", ids)
+                .setParameter("counts", counts)
+                .setParameter("sums", sums)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "Transaction")
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .executeUpdate();
+    }
+
+    /**
+     * Recomputes the booking state of the given transactions from their booked amounts, e.g. after the asset of a
+     * transaction changed.
+     * <br>
+     * Safe to run while amounts are being booked, the transactions are locked first. Inserting a booked amount takes a
+     * key share lock on its transaction, so the refresh waits for running bookings and new ones wait for the refresh.
+     *
+     * @return the number of updated transactions
+     */
+    public int refresh(final Collection<Long> transactionIds) {
+        return recompute(transactionIds).size();
+    }
+
+    /**
+     * Like {@link #refresh(Collection)}, but also updates the booking state of the given entities.
+     */
+    public void refreshTransactions(final Collection<Transaction> transactions) {
+        final Map<Long, Transaction> byId = new HashMap<>();
+        transactions.forEach(transaction -> byId.put(transaction.id, transaction));
+
+        for (final Object[] row : recompute(byId.keySet())) {
+            final Transaction transaction = byId.get(((Number) row[0]).longValue());
+            transaction.bookedCount = ((Number) row[1]).intValue();
+            transaction.bookedSum = (BigDecimal) row[2];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> recompute(final Collection<Long> transactionIds) {
+        if (transactionIds.isEmpty()) return List.of();
+
+        final Long[] ids = transactionIds.stream().sorted().distinct().toArray(Long[]::new);
+        Transaction.getEntityManager().createNativeQuery("SELECT id FROM Transaction WHERE id = ANY(:ids) ORDER BY id FOR UPDATE")
+                .setParameter("ids", ids)
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .getResultList();
+
+        return Transaction.getEntityManager().createNativeQuery("""
+                        UPDATE Transaction t
+                        SET bookedCount = coalesce(l.count, 0),
+                            bookedSum = coalesce(l.sum, 0)
+                        FROM Transaction s
+                        LEFT JOIN LATERAL (
+                            SELECT count(*) AS count, sum(b.amount) FILTER (WHERE b.asset_id = s.asset_id) AS sum
+                            FROM BookedAmount b
+                            WHERE b.transaction_id = s.id
+                        ) l ON true
+                        WHERE t.id = s.id AND s.id = ANY(:ids)
+                        RETURNING t.id, t.bookedCount, t.bookedSum
+                        """)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
+    /**
+     * Compares the booking state of all transactions of the workspace with their booked amounts.
+     */
+    public List<Mismatch> verify(final long workspaceId) {
+        @SuppressWarnings("unchecked")
+        final List<Object[]> rows = Transaction.getEntityManager().createNativeQuery("""
+                        SELECT t.id, t.bookedCount, t.bookedSum, coalesce(l.count, 0), coalesce(l.sum, 0)
+                        FROM Transaction t
+                        LEFT JOIN (
+                            SELECT b.transaction_id,
+                                   count(*) AS count,
+                                   sum(b.amount) FILTER (WHERE b.asset_id = bt.asset_id) AS sum
+                            FROM BookedAmount b
+                            JOIN Transaction bt ON bt.id = b.transaction_id
+                            WHERE bt.workspace_id = :workspace
+                            GROUP BY b.transaction_id
+                        ) l ON l.transaction_id = t.id
+                        WHERE t.workspace_id = :workspace
+                          AND (t.bookedCount <> coalesce(l.count, 0) OR t.bookedSum <> coalesce(l.sum, 0))
+                        ORDER BY t.id
+                        """)
+                .setParameter("workspace", workspaceId)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new Mismatch(
+                        ((Number) row[0]).longValue(),
+                        ((Number) row[1]).longValue(),
+                        (BigDecimal) row[2],
+                        ((Number) row[3]).longValue(),
+                        (BigDecimal) row[4]
+                ))
+                .toList();
+    }
+
+}
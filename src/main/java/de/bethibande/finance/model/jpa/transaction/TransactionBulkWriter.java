@@ -0,0 +1,65 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.hibernate.StatelessSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Inserts large amounts of {@link Transaction}s and {@link BookedAmount}s, e.g. the payments generated for a recurring
+ * payment or the entries of an imported statement.
+ * <br>
+ * Uses a {@link StatelessSession} bound to the current transaction, so the inserted entities are never added to the
+ * persistence context. Rows are sent in JDBC batches of {@link #BATCH_SIZE}, which the PostgreSQL driver rewrites
+ * into multi-row inserts ({@code reWriteBatchedInserts}). Ids come from the pooled entity sequence, so only one
+ * sequence round trip is needed per 50 rows.
+ * <br>
+ * Must be called within an active transaction.
+ */
+@ApplicationScoped
+public class TransactionBulkWriter {
+
+    public static final int BATCH_SIZE = 500;
+
+    @Inject
+    protected StatelessSession session;
+
+    /**
+     * @return the number of inserted transactions
+     */
+    public int insert(final Collection<Transaction> transactions) {
+        return insertBatched(transactions);
+    }
+
+    /**
+     * The transactions of the booked amounts must have been inserted before.
+     *
+     * @return the number of inserted booked amounts
+     */
+    public int insertBookedAmounts(final Collection<BookedAmount> amounts) {
+        return insertBatched(amounts);
+    }
+
+    private int insertBatched(final Collection<?> entities) {
+        if (entities.isEmpty()) return 0;
+
+        session.setJdbcBatchSize(BATCH_SIZE);
+
+        final List<Object> batch = new ArrayList<>(Math.min(entities.size(), BATCH_SIZE));
+        for (final Object entity : entities) {
+            batch.add(entity);
+            if (batch.size() == BATCH_SIZE) {
+                session.insertMultiple(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) session.insertMultiple(batch);
+
+        return entities.size();
+    }
+
+}
@@ -0,0 +1,245 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.narayana.jta.QuarkusTransactionException;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Writes all {@link Transaction}s of a workspace including their {@link BookedAmount}s to a stream.
+ * <br>
+ * Transactions and booked amounts are read by a single projection query joined on the transaction, ordered by id and
+ * read through a forward-only cursor with a fixed fetch size. Since the query runs in a {@link StatelessSession} and
+ * selects no entities, nothing is retained between rows, memory usage does not depend on the size of the workspace.
+ * Output is written through a fixed size buffer, a slow client blocks the writer, which in turn stops fetching rows.
+ */
+@ApplicationScoped
+public class TransactionExporter {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String QUERY = """
+            SELECT t.id, t.date, t.name, t.type, t.status, t.amount, a.code, w.name, p.name, t.internalRef.id, t.notes,
+                   b.id, b.date, b.amount, ba.code, bw.name, b.notes
+            FROM Transaction t
+            JOIN t.asset a
+            JOIN t.wallet w
+            LEFT JOIN t.partner p
+            LEFT JOIN BookedAmount b ON b.transaction = t
+            LEFT JOIN b.asset ba
+            LEFT JOIN b.wallet bw
+            WHERE t.workspace.id = :workspace
+            ORDER BY t.id, b.id
+            """;
+
+    private static final int BOOKED_AMOUNT_OFFSET = 11;
+
+    private static final String[] CSV_HEADER = {
+            "id", "date", "name", "type", "status", "amount", "asset", "wallet", "partner", "internalRef", "notes",
+            "bookedAmountId", "bookedAmountDate", "bookedAmount", "bookedAmountAsset", "bookedAmountWallet", "bookedAmountNotes"
+    };
+
+    @Inject
+    protected StatelessSession session;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "finance.export.fetch-size", defaultValue = "1000")
+    protected int fetchSize;
+
+    @ConfigProperty(name = "finance.export.timeout", defaultValue = "1h")
+    protected Duration timeout;
+
+    /**
+     * Writes all transactions of the given workspace, the stream is flushed but not closed.
+     *
+     * @return the number of exported transactions
+     */
+    public long export(final long workspaceId, final ExportFormat format, final OutputStream out) throws IOException {
+        try {
+            return QuarkusTransaction.requiringNew()
+                    .timeout((int) timeout.toSeconds())
+                    .call(() -> write(workspaceId, format, out));
+        } catch (final QuarkusTransactionException ex) {
+            // Most likely the client went away
+            if (ex.getCause() instanceof IOException io) throw io;
+            throw ex;
+        }
+    }
+
+    private long write(final long workspaceId, final ExportFormat format, final OutputStream out) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        final RowWriter rows = switch (format) {
+            case NDJSON -> new NdjsonRowWriter(writer);
+            case CSV -> new CsvRowWriter(writer);
+        };
+
+        long transactions = 0;
+        try (final ScrollableResults<Object[]> results = session.createSelectionQuery(QUERY, Object[].class)
+                .setParameter("workspace", workspaceId)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+
+            Object currentId = null;
+            while (results.next()) {
+                final Object[] row = results.get();
+
+                if (!Objects.equals(currentId, row[0])) {
+                    if (currentId != null) rows.endTransaction();
+                    rows.startTransaction(row);
+                    currentId = row[0];
+                    transactions++;
+                }
+
+                rows.bookedAmount(row);
+            }
+
+            if (currentId != null) rows.endTransaction();
+        }
+
+        rows.flush();
+        return transactions;
+    }
+
+    private interface RowWriter {
+
+        void startTransaction(final Object[] row) throws IOException;
+
+        /**
+         * Called once per row, the booked amount columns are null if the transaction has no booked amounts.
+         */
+        void bookedAmount(final Object[] row) throws IOException;
+
+        void endTransaction() throws IOException;
+
+        void flush() throws IOException;
+
+    }
+
+    private class NdjsonRowWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+
+        private NdjsonRowWriter(final Writer writer) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.setRootValueSeparator(null);
+        }
+
+        private void writeField(final String name, final Object value) throws IOException {
+            switch (value) {
+                case null -> generator.writeNullField(name);
+                case BigDecimal number -> generator.writeNumberField(name, number);
+                case Long number -> generator.writeNumberField(name, number);
+                case Enum<?> constant -> generator.writeStringField(name, constant.name());
+                default -> generator.writeStringField(name, value.toString());
+            }
+        }
+
+        @Override
+        public void startTransaction(final Object[] row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < BOOKED_AMOUNT_OFFSET; i++) {
+                writeField(CSV_HEADER[i], row[i]);
+            }
+            generator.writeArrayFieldStart("bookedAmounts");
+        }
+
+        @Override
+        public void bookedAmount(final Object[] row) throws IOException {
+            if (row[BOOKED_AMOUNT_OFFSET] == null) return;
+
+            generator.writeStartObject();
+            writeField("id", row[BOOKED_AMOUNT_OFFSET]);
+            writeField("date", row[BOOKED_AMOUNT_OFFSET + 1]);
+            writeField("amount", row[BOOKED_AMOUNT_OFFSET + 2]);
+            writeField("asset", row[BOOKED_AMOUNT_OFFSET + 3]);
+            writeField("wallet", row[BOOKED_AMOUNT_OFFSET + 4]);
+            writeField("notes", row[BOOKED_AMOUNT_OFFSET + 5]);
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void endTransaction() throws IOException {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+
+        private CsvRowWriter(final Writer writer) throws IOException {
+            this.writer = writer;
+            writeLine(CSV_HEADER);
+        }
+
+        private void writeLine(final Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                writeValue(values[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeValue(final Object value) throws IOException {
+            final String text = switch (value) {
+                case null -> "";
+                case BigDecimal number -> number.toPlainString();
+                case Enum<?> constant -> constant.name();
+                default -> value.toString();
+            };
+
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                writer.write(text);
+                return;
+            }
+
+            writer.write('"');
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void startTransaction(final Object[] row) {
+        }
+
+        @Override
+        public void bookedAmount(final Object[] row) throws IOException {
+            writeLine(row);
+        }
+
+        @Override
+        public void endTransaction() {
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+    }
+
+}
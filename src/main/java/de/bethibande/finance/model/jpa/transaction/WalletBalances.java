@@ -0,0 +1,215 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import de.bethibande.finance.model.jpa.WalletBalance;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import org.hibernate.FlushMode;
+import org.hibernate.jpa.HibernateHints;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the {@link WalletBalance}s.
+ * <br>
+ * Every change of a {@link BookedAmount} must be applied here within the same transaction. Changes are applied as
+ * atomic upserts adding the difference to the stored balance, so concurrent bookings on the same wallet do not need
+ * to read the balance first and cannot overwrite each other.
+ * <br>
+ * Each change also marks the affected day for the {@link BalanceSnapshots}, updates the booking state of the
+ * transactions using {@link TransactionBookings} and fires a {@link BookingsChangedEvent}.
+ */
+@ApplicationScoped
+public class WalletBalances {
+
+    /**
+     * A balance that does not match the sum of the booked amounts.
+     *
+     * @param stored   the stored balance, null if missing
+     * @param ledger   the sum of the booked amounts, null if there are none
+     * @param bookings the number of booked amounts
+     */
+    public record Mismatch(
+            long walletId,
+            long assetId,
+            BigDecimal stored,
+            BigDecimal ledger,
+            long bookings
+    ) {
+    }
+
+    private record Key(long walletId, long assetId) {
+    }
+
+    @Inject
+    protected BalanceSnapshots snapshots;
+
+    @Inject
+    protected TransactionBookings transactionBookings;
+
+    @Inject
+    protected Event<BookingsChangedEvent> bookingsChanged;
+
+    private void apply(final long walletId, final long assetId, final Instant date, final BigDecimal delta, final long bookings) {
+        WalletBalance.getEntityManager().createNativeQuery("""
+                        INSERT INTO WalletBalance (wallet_id, asset_id, balance, bookings)
+                        VALUES (:wallet, :asset, :delta, :bookings)
+                        ON CONFLICT (wallet_id, asset_id) DO UPDATE
+                        SET balance = WalletBalance.balance + EXCLUDED.balance,
+                            bookings = WalletBalance.bookings + EXCLUDED.bookings
+                        """)
+                .setParameter("wallet", walletId)
+                .setParameter("asset", assetId)
+                .setParameter("delta", delta)
+                .setParameter("bookings", bookings)
+                // Native updates without query spaces evict the whole second-level cache. Declaring them also limits the
+                // auto flush to those spaces, so pending inserts (the booked amount, a new wallet) are flushed explicitly
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "WalletBalance")
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .executeUpdate();
+
+        snapshots.touch(walletId, assetId, date);
+    }
+
+    public void book(final BookedAmount amount) {
+        apply(amount.wallet.id, amount.asset.id, amount.date, amount.amount, 1);
+        transactionBookings.applyAll(List.of(amount), 1);
+        bookingsChanged.fire(new BookingsChangedEvent(amount.wallet.workspace.id));
+    }
+
+    /**
+     * Reverts a booked amount that is deleted or about to be changed.
+     * Must be called with the values the booked amount had when it was booked.
+     */
+    public void unbook(final BookedAmount amount) {
+        apply(amount.wallet.id, amount.asset.id, amount.date, amount.amount.negate(), -1);
+        transactionBookings.applyAll(List.of(amount), -1);
+        bookingsChanged.fire(new BookingsChangedEvent(amount.wallet.workspace.id));
+    }
+
+    /**
+     * Books many amounts using a single upsert per wallet and asset.
+     */
+    public void bookAll(final Collection<BookedAmount> amounts) {
+        applyAll(amounts, 1);
+    }
+
+    /**
+     * Reverts many booked amounts using a single upsert per wallet and asset, see {@link #unbook(BookedAmount)}.
+     */
+    public void unbookAll(final Collection<BookedAmount> amounts) {
+        applyAll(amounts, -1);
+    }
+
+    private void applyAll(final Collection<BookedAmount> amounts, final int sign) {
+        final Map<Key, BigDecimal> sums = new HashMap<>();
+        final Map<Key, Long> counts = new HashMap<>();
+        final Map<Key, Instant> earliest = new HashMap<>();
+        for (final BookedAmount amount : amounts) {
+            final Key key = new Key(amount.wallet.id, amount.asset.id);
+            sums.merge(key, sign < 0 ? amount.amount.negate() : amount.amount, BigDecimal::add);
+            counts.merge(key, (long) sign, Long::sum);
+            earliest.merge(key, amount.date, (a, b) -> a.isBefore(b) ? a : b);
+        }
+
+        sums.forEach((key, sum) -> apply(key.walletId(), key.assetId(), earliest.get(key), sum, counts.get(key)));
+        transactionBookings.applyAll(amounts, sign);
+
+        final Set<Long> workspaces = amounts.stream()
+                .map(amount -> amount.wallet.workspace.id)
+                .collect(Collectors.toSet());
+        workspaces.forEach(workspaceId -> bookingsChanged.fire(new BookingsChangedEvent(workspaceId)));
+    }
+
+    /**
+     * Compares the balances of all wallets of the workspace with the sum of their booked amounts.
+     */
+    public List<Mismatch> verify(final long workspaceId) {
+        @SuppressWarnings("unchecked")
+        final List<Object[]> rows = WalletBalance.getEntityManager().createNativeQuery("""
+                        WITH ledger AS (
+                            SELECT b.wallet_id, b.asset_id, sum(b.amount) AS balance, count(*) AS bookings
+                            FROM BookedAmount b
+                            JOIN Wallet w ON w.id = b.wallet_id
+                            WHERE w.workspace_id = :workspace
+                            GROUP BY b.wallet_id, b.asset_id
+                        ), stored AS (
+                            SELECT s.wallet_id, s.asset_id, s.balance, s.bookings
+                            FROM WalletBalance s
+                            JOIN Wallet w ON w.id = s.wallet_id
+                            WHERE w.workspace_id = :workspace
+                        )
+                        SELECT coalesce(l.wallet_id, s.wallet_id),
+                               coalesce(l.asset_id, s.asset_id),
+                               s.balance,
+                               l.balance,
+                               coalesce(l.bookings, 0)
+                        FROM ledger l
+                        FULL JOIN stored s ON s.wallet_id = l.wallet_id AND s.asset_id = l.asset_id
+                        WHERE l.balance IS DISTINCT FROM s.balance AND NOT (l.balance IS NULL AND s.balance = 0 AND s.bookings = 0)
+                           OR coalesce(l.bookings, 0) <> coalesce(s.bookings, 0)
+                        """)
+                .setParameter("workspace", workspaceId)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new Mismatch(
+                        ((Number) row[0]).longValue(),
+                        ((Number) row[1]).longValue(),
+                        (BigDecimal) row[2],
+                        (BigDecimal) row[3],
+                        ((Number) row[4]).longValue()
+                ))
+                .toList();
+    }
+
+    /**
+     * Recomputes the balances of all wallets of the workspace from their booked amounts.
+     * <br>
+     * Safe to run while amounts are being booked. The wallets are locked first, inserting a booked amount takes a key
+     * share lock on its wallet, so the rebuild waits for running bookings and new ones wait for the rebuild.
+     * Deletions only lock the balance row and add their difference to the rebuilt balance afterward.
+     *
+     * @return the number of balances
+     */
+    public int rebuild(final long workspaceId) {
+        bookingsChanged.fire(new BookingsChangedEvent(workspaceId));
+
+        WalletBalance.getEntityManager().createNativeQuery("SELECT id FROM Wallet WHERE workspace_id = :workspace FOR UPDATE")
+                .setParameter("workspace", workspaceId)
+                .getResultList();
+
+        WalletBalance.getEntityManager().createNativeQuery("""
+                        DELETE FROM WalletBalance
+                        WHERE wallet_id IN (SELECT id FROM Wallet WHERE workspace_id = :workspace)
+                        """)
+                .setParameter("workspace", workspaceId)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "WalletBalance")
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .executeUpdate();
+
+        return WalletBalance.getEntityManager().createNativeQuery("""
+                        INSERT INTO WalletBalance (wallet_id, asset_id, balance, bookings)
+                        SELECT b.wallet_id, b.asset_id, sum(b.amount), count(*)
+                        FROM BookedAmount b
+                        JOIN Wallet w ON w.id = b.wallet_id
+                        WHERE w.workspace_id = :workspace
+                        GROUP BY b.wallet_id, b.asset_id
+                        ON CONFLICT (wallet_id, asset_id) DO UPDATE
+                        SET balance = EXCLUDED.balance,
+                            bookings = EXCLUDED.bookings
+                        """)
+                .setParameter("workspace", workspaceId)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "WalletBalance")
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                .executeUpdate();
+    }
+
+}
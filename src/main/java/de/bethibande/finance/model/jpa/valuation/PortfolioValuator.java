@@ -0,0 +1,234 @@
+package de.bethibande.finance.model.jpa.valuation;
+
+import de.bethibande.finance.model.jpa.Wallet;
+import de.bethibande.finance.model.jpa.exchange.ExchangeRateChangedEvent;
+import de.bethibande.finance.model.jpa.exchange.ExchangeRateIndex;
+import de.bethibande.finance.model.jpa.exchange.ExchangeRates;
+import de.bethibande.finance.model.jpa.transaction.BookingsChangedEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Values all wallets of a workspace in a single base asset.
+ * <br>
+ * The balances are aggregated per wallet and asset in SQL, the current ones are read from the
+ * {@link de.bethibande.finance.model.jpa.WalletBalance}s, past ones are summed up from the booked amounts. Each
+ * distinct asset is then converted using the {@link ExchangeRateIndex}, the conversions run in parallel on virtual
+ * threads, at most {@code finance.valuation.concurrency} at a time.
+ * <br>
+ * Valuations are cached per workspace, date and base asset until bookings or exchange rates of the workspace change.
+ * The current valuation is cached as well, so its {@link ValuationDTO#asOf()} is the time it was computed at.
+ */
+@ApplicationScoped
+public class PortfolioValuator {
+
+    @ConfigProperty(name = "finance.valuation.concurrency", defaultValue = "8")
+    protected int concurrency;
+
+    @ConfigProperty(name = "finance.valuation.cache-size", defaultValue = "256")
+    protected int cacheSize;
+
+    @Inject
+    protected ExchangeRateIndex exchangeRates;
+
+    /**
+     * @param date the valuation date, null for the current valuation
+     */
+    private record Key(long workspaceId, LocalDate date, long baseAssetId) {
+    }
+
+    private record Cached(long version, ValuationDTO valuation) {
+    }
+
+    private record Balance(long walletId, long assetId, BigDecimal balance) {
+    }
+
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Key, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long version(final long workspaceId) {
+        final AtomicLong version = versions.get(workspaceId);
+        return version != null ? version.get() : 0;
+    }
+
+    /**
+     * Drops all cached valuations of the workspace, e.g. after bulk changes that bypass the change events.
+     */
+    public void invalidate(final long workspaceId) {
+        versions.computeIfAbsent(workspaceId, _ -> new AtomicLong()).incrementAndGet();
+    }
+
+    protected void onBookingsChanged(final @Observes(during = TransactionPhase.AFTER_SUCCESS) BookingsChangedEvent event) {
+        invalidate(event.workspaceId());
+    }
+
+    protected void onExchangeRateChanged(final @Observes(during = TransactionPhase.AFTER_SUCCESS) ExchangeRateChangedEvent event) {
+        invalidate(event.workspaceId());
+    }
+
+    /**
+     * Values the workspace at the end of the given day (UTC), or right now if no date is given.
+     */
+    public ValuationDTO value(final long workspaceId, final long baseAssetId, final LocalDate date) {
+        final Key key = new Key(workspaceId, date, baseAssetId);
+        final long version = version(workspaceId);
+
+        synchronized (cache) {
+            final Cached cached = cache.get(key);
+            if (cached != null && cached.version() == version) return cached.valuation();
+        }
+
+        final ValuationDTO valuation = compute(workspaceId, baseAssetId, date);
+
+        synchronized (cache) {
+            // Do not cache a valuation that may have missed a change committed while it was computed
+            if (version(workspaceId) == version) {
+                cache.put(key, new Cached(version, valuation));
+
+                final Iterator<Cached> iterator = cache.values().iterator();
+                while (cache.size() > cacheSize) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+
+        return valuation;
+    }
+
+    private ValuationDTO compute(final long workspaceId, final long baseAssetId, final LocalDate date) {
+        final Instant asOf = date != null
+                ? date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().minusNanos(1)
+                : Instant.now();
+
+        final List<Balance> balances = date != null ? balancesAt(workspaceId, asOf) : currentBalances(workspaceId);
+        final Set<Long> assets = new TreeSet<>();
+        balances.forEach(balance -> assets.add(balance.assetId()));
+
+        final Map<Long, BigDecimal> rates = convert(workspaceId, assets, baseAssetId, asOf);
+
+        final Map<Long, List<ValuationDTO.Position>> positions = new HashMap<>();
+        for (final Balance balance : balances) {
+            final BigDecimal rate = rates.get(balance.assetId());
+            positions.computeIfAbsent(balance.walletId(), _ -> new ArrayList<>()).add(new ValuationDTO.Position(
+                    balance.assetId(),
+                    balance.balance(),
+                    rate,
+                    rate != null ? balance.balance().multiply(rate) : null
+            ));
+        }
+
+        final List<Long> walletIds = Wallet.getEntityManager()
+                .createQuery("SELECT w.id FROM Wallet w WHERE w.workspace.id = ?1 ORDER BY w.id", Long.class)
+                .setParameter(1, workspaceId)
+                .getResultList();
+
+        BigDecimal total = BigDecimal.ZERO;
+        final List<ValuationDTO.WalletValue> wallets = new ArrayList<>(walletIds.size());
+        for (final long walletId : walletIds) {
+            final List<ValuationDTO.Position> walletPositions = positions.getOrDefault(walletId, List.of());
+            final BigDecimal value = walletPositions.stream()
+                    .map(ValuationDTO.Position::value)
+                    .filter(Objects::nonNull)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+            wallets.add(new ValuationDTO.WalletValue(walletId, value, walletPositions));
+            total = total.add(value);
+        }
+
+        final List<Long> unconvertible = assets.stream()
+                .filter(asset -> !rates.containsKey(asset))
+                .toList();
+
+        return new ValuationDTO(workspaceId, baseAssetId, asOf, total, wallets, unconvertible);
+    }
+
+    private static List<Balance> toBalances(final List<Object[]> rows) {
+        return rows.stream()
+                .map(row -> new Balance(((Number) row[0]).longValue(), ((Number) row[1]).longValue(), (BigDecimal) row[2]))
+                .toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Balance> currentBalances(final long workspaceId) {
+        return toBalances(Wallet.getEntityManager().createNativeQuery("""
+                        SELECT b.wallet_id, b.asset_id, b.balance
+                        FROM WalletBalance b
+                        JOIN Wallet w ON w.id = b.wallet_id
+                        WHERE w.workspace_id = :workspace AND b.balance <> 0
+                        ORDER BY b.wallet_id, b.asset_id
+                        """)
+                .setParameter("workspace", workspaceId)
+                .getResultList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Balance> balancesAt(final long workspaceId, final Instant asOf) {
+        return toBalances(Wallet.getEntityManager().createNativeQuery("""
+                        SELECT b.wallet_id, b.asset_id, sum(b.amount)
+                        FROM BookedAmount b
+                        JOIN Wallet w ON w.id = b.wallet_id
+                        WHERE w.workspace_id = :workspace AND b.date <= :asOf
+                        GROUP BY b.wallet_id, b.asset_id
+                        HAVING sum(b.amount) <> 0
+                        ORDER BY b.wallet_id, b.asset_id
+                        """)
+                .setParameter("workspace", workspaceId)
+                .setParameter("asOf", asOf.atOffset(ZoneOffset.UTC))
+                .getResultList());
+    }
+
+    /**
+     * Looks up the rate of each asset to the base asset, assets without a rate are missing from the result.
+     */
+    private Map<Long, BigDecimal> convert(final long workspaceId,
+                                          final Collection<Long> assets,
+                                          final long baseAssetId,
+                                          final Instant asOf) {
+        // Load the rates once up front instead of in every task
+        final ExchangeRates rates = exchangeRates.get(workspaceId);
+
+        final Map<Long, BigDecimal> converted = new ConcurrentHashMap<>();
+        final Semaphore permits = new Semaphore(concurrency);
+        final List<Future<?>> futures = new ArrayList<>(assets.size());
+
+        try (final ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final long assetId : assets) {
+                futures.add(scope.submit(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        rates.rate(assetId, baseAssetId, asOf)
+                                .ifPresent(rate -> converted.put(assetId, BigDecimal.valueOf(rate)));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException("Failed to convert asset", e.getCause());
+            }
+        }
+
+        return converted;
+    }
+
+}
@@ -0,0 +1,44 @@
+package de.bethibande.finance.model.jpa.valuation;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The value of all wallets of a workspace in a single asset.
+ *
+ * @param total         the sum of all convertible positions
+ * @param unconvertible the ids of the assets without a rate to the base asset as of the valuation date,
+ *                      their positions are not included in any value
+ */
+public record ValuationDTO(
+        @NotNull long workspaceId,
+        @NotNull long baseAssetId,
+        @NotNull Instant asOf,
+        @NotNull BigDecimal total,
+        @NotNull List<WalletValue> wallets,
+        @NotNull List<Long> unconvertible
+) {
+
+    public record WalletValue(
+            @NotNull long walletId,
+            @NotNull BigDecimal value,
+            @NotNull List<Position> positions
+    ) {
+    }
+
+    /**
+     * @param rate  the price of one unit of the asset in the base asset, null if unconvertible
+     * @param value the balance in the base asset, null if unconvertible
+     */
+    public record Position(
+            @NotNull long assetId,
+            @NotNull BigDecimal balance,
+            BigDecimal rate,
+            BigDecimal value
+    ) {
+    }
+
+}
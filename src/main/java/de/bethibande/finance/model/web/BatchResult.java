@@ -0,0 +1,24 @@
+package de.bethibande.finance.model.web;
+
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * The result of a single item of a batch request, either the written entity or the reason it was not written.
+ *
+ * @param index the index of the item in the request
+ */
+public record BatchResult<T>(
+        @NotNull int index,
+        T data,
+        ErrorResponse error
+) {
+
+    public static <T> BatchResult<T> ok(final int index, final T data) {
+        return new BatchResult<>(index, data, null);
+    }
+
+    public static <T> BatchResult<T> notFound(final int index) {
+        return new BatchResult<>(index, null, new ErrorResponse(404, "The entity or a referenced entity does not exist", "error.batch.not_found"));
+    }
+
+}
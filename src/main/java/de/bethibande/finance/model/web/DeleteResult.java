@@ -0,0 +1,21 @@
+package de.bethibande.finance.model.web;
+
+import jakarta.validation.constraints.NotNull;
+
+public record DeleteResult(
+        @NotNull long id,
+        @NotNull Status status
+) {
+
+    public enum Status {
+
+        DELETED,
+        /**
+         * Not deleted, the resource has dependent resources
+         */
+        CONFLICT,
+        NOT_FOUND
+
+    }
+
+}
@@ -10,9 +10,16 @@ public record PagedResponse<T>(
         @NotNull int pageSize,
         @NotNull int totalPages,
         @NotNull int totalElements,
-        @NotNull List<@NotNull T> data
+        @NotNull List<@NotNull T> data,
+        String nextCursor,
+        String prevCursor
 ) {
 
+    /**
+     * Used for totalPages and totalElements if the count was not requested.
+     */
+    public static final int UNKNOWN = -1;
+
     public static <T> PagedResponse<T> of(final int page,
                                           final int size,
                                           final PanacheQuery<T> query) {
@@ -28,7 +35,28 @@ public record PagedResponse<T>(
                 size,
                 (int) Math.ceil((double) count / size),
                 (int) count,
-                data
+                data,
+                null,
+                null
+        );
+    }
+
+    /**
+     * @param count the total number of elements or null if unknown
+     */
+    public static <T> PagedResponse<T> ofCursor(final int size,
+                                                final Long count,
+                                                final List<T> data,
+                                                final String nextCursor,
+                                                final String prevCursor) {
+        return new PagedResponse<>(
+                0,
+                size,
+                count != null ? (int) Math.ceil((double) count / size) : UNKNOWN,
+                count != null ? count.intValue() : UNKNOWN,
+                data,
+                nextCursor,
+                prevCursor
         );
     }
 
@@ -0,0 +1,161 @@
+package de.bethibande.finance.statement;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads ISO 20022 {@code camt.053} statements using StAX, only the current {@code Ntry} element is kept in memory.
+ * <br>
+ * Each entry becomes one {@link StatementEntry}, entries containing multiple transaction details (batch bookings)
+ * are not split. The counterparty is the creditor of debits and the debtor of credits.
+ */
+public class Camt053StatementReader implements StatementReader {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private final XMLStreamReader reader;
+    private final Deque<String> path = new ArrayDeque<>();
+
+    private int entries = 0;
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    public Camt053StatementReader(final InputStream in) throws IOException {
+        try {
+            this.reader = FACTORY.createXMLStreamReader(in);
+        } catch (final XMLStreamException ex) {
+            throw new IOException("Invalid camt.053 statement", ex);
+        }
+    }
+
+    /**
+     * The values of an {@code Ntry} element collected while reading it.
+     */
+    private static class Entry {
+
+        private String amount;
+        private String currency;
+        private String direction;
+        private String bookingDate;
+        private String valueDate;
+        private String creditor;
+        private String debtor;
+        private String additionalInfo;
+        private final StringBuilder remittance = new StringBuilder();
+
+    }
+
+    @Override
+    public StatementEntry next() throws IOException, InvalidEntryException {
+        try {
+            while (reader.hasNext()) {
+                final int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    path.push(reader.getLocalName());
+                    if ("Ntry".equals(reader.getLocalName())) {
+                        entries++;
+                        return readEntry();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    path.pop();
+                }
+            }
+
+            return null;
+        } catch (final XMLStreamException ex) {
+            throw new IOException("Invalid camt.053 statement", ex);
+        }
+    }
+
+    /**
+     * Reads the current {@code Ntry} element up to and including its end tag.
+     */
+    private StatementEntry readEntry() throws XMLStreamException, InvalidEntryException {
+        final int depth = path.size();
+        final Entry entry = new Entry();
+
+        while (reader.hasNext()) {
+            final int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                path.push(reader.getLocalName());
+                if (path.size() == depth + 1 && "Amt".equals(reader.getLocalName())) {
+                    entry.currency = reader.getAttributeValue(null, "Ccy");
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS && !reader.isWhiteSpace()) {
+                collect(entry, depth, reader.getText().strip());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                path.pop();
+                if (path.size() < depth) return toStatementEntry(entry);
+            }
+        }
+
+        throw new XMLStreamException("Unexpected end of statement in entry " + entries);
+    }
+
+    /**
+     * Assigns a text node to the entry based on the path relative to the {@code Ntry} element.
+     */
+    private void collect(final Entry entry, final int depth, final String text) {
+        final String element = path.peek();
+        final String parent = path.size() > 1 ? path.stream().skip(1).findFirst().orElse("") : "";
+        final boolean direct = path.size() == depth + 1;
+
+        if (direct && "Amt".equals(element)) entry.amount = text;
+        else if (direct && "CdtDbtInd".equals(element)) entry.direction = text;
+        else if (direct && "AddtlNtryInf".equals(element)) entry.additionalInfo = text;
+        else if ("BookgDt".equals(parent) && entry.bookingDate == null) entry.bookingDate = text;
+        else if ("ValDt".equals(parent) && entry.valueDate == null) entry.valueDate = text;
+        else if ("Ustrd".equals(element)) {
+            if (!entry.remittance.isEmpty()) entry.remittance.append(' ');
+            entry.remittance.append(text);
+        } else if ("Nm".equals(element) && path.contains("RltdPties")) {
+            // Cdtr/Nm in camt.053.001.02, Cdtr/Pty/Nm in later versions
+            if (path.contains("Cdtr") && !path.contains("UltmtCdtr") && entry.creditor == null) entry.creditor = text;
+            if (path.contains("Dbtr") && !path.contains("UltmtDbtr") && entry.debtor == null) entry.debtor = text;
+        }
+    }
+
+    private StatementEntry toStatementEntry(final Entry entry) throws InvalidEntryException {
+        try {
+            BigDecimal amount = StatementValues.parseAmount(entry.amount);
+            if ("DBIT".equals(entry.direction)) amount = amount.negate();
+
+            final Instant date = StatementValues.parseDate(entry.bookingDate != null ? entry.bookingDate : entry.valueDate);
+            final String partner = "DBIT".equals(entry.direction) ? entry.creditor : entry.debtor;
+            final String remittance = StatementValues.emptyToNull(entry.remittance.toString());
+            final String name = entry.additionalInfo != null
+                    ? entry.additionalInfo
+                    : remittance != null ? remittance : partner;
+
+            return new StatementEntry(date, amount, entry.currency, name, partner, remittance);
+        } catch (final InvalidEntryException ex) {
+            throw new InvalidEntryException("Entry " + entries + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (final XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+package de.bethibande.finance.statement;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads CSV statements with a header line. The delimiter ({@code ,}, {@code ;} or tab) is detected from the header.
+ * <br>
+ * Columns are matched by name, ignoring case. {@code date} and {@code amount} are required, {@code currency},
+ * {@code name}, {@code partner} and {@code notes} are optional. Common alternative names used by bank exports,
+ * e.g. {@code Buchungstag} or {@code Betrag}, are accepted as well.
+ */
+public class CsvStatementReader implements StatementReader {
+
+    private static final Map<String, List<String>> COLUMNS = Map.of(
+            "date", List.of("date", "booking date", "bookingdate", "buchungstag", "buchungsdatum", "datum"),
+            "amount", List.of("amount", "betrag"),
+            "currency", List.of("currency", "währung", "waehrung"),
+            "name", List.of("name", "description", "purpose", "buchungstext", "verwendungszweck"),
+            "partner", List.of("partner", "payee", "counterparty", "beguenstigter/zahlungspflichtiger", "empfänger", "auftraggeber"),
+            "notes", List.of("notes", "memo", "note")
+    );
+
+    private final Reader reader;
+    private final char delimiter;
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * Number of lines read so far, including the header.
+     */
+    private int line = 0;
+
+    public CsvStatementReader(final InputStream in) throws IOException {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') reader.reset();
+
+        final String header = readHeaderLine();
+        this.delimiter = detectDelimiter(header);
+
+        final List<String> names = parseLine(header);
+        for (int i = 0; i < names.size(); i++) {
+            final String name = names.get(i).strip().toLowerCase(Locale.ROOT);
+            for (final Map.Entry<String, List<String>> column : COLUMNS.entrySet()) {
+                if (column.getValue().contains(name)) columns.putIfAbsent(column.getKey(), i);
+            }
+        }
+
+        if (!columns.containsKey("date") || !columns.containsKey("amount")) {
+            throw new IOException("The CSV header must contain a date and an amount column: " + header);
+        }
+    }
+
+    private String readHeaderLine() throws IOException {
+        final StringBuilder header = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1 && c != '\n') {
+            if (c != '\r') header.append((char) c);
+        }
+
+        if (header.isEmpty()) throw new IOException("The statement is empty");
+        return header.toString();
+    }
+
+    private static char detectDelimiter(final String header) {
+        final long semicolons = header.chars().filter(c -> c == ';').count();
+        final long tabs = header.chars().filter(c -> c == '\t').count();
+        final long commas = header.chars().filter(c -> c == ',').count();
+
+        if (semicolons >= commas && semicolons >= tabs && semicolons > 0) return ';';
+        if (tabs >= commas && tabs > 0) return '\t';
+        return ',';
+    }
+
+    private List<String> parseLine(final String text) throws IOException {
+        return readRecord(new StringReader(text + '\n'));
+    }
+
+    /**
+     * Reads a single record, quoted fields may contain delimiters, line breaks and quotes escaped as {@code ""}.
+     *
+     * @return the fields of the record or null at the end of the input
+     */
+    private List<String> readRecord(final Reader in) throws IOException {
+        final List<String> fields = new ArrayList<>();
+        field.setLength(0);
+
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = in.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    in.mark(1);
+                    if (in.read() == '"') {
+                        field.append('"');
+                    } else {
+                        in.reset();
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                line++;
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+
+        if (!any) return null;
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private String column(final List<String> record, final String name) {
+        final Integer index = columns.get(name);
+        if (index == null || index >= record.size()) return null;
+
+        return StatementValues.emptyToNull(record.get(index));
+    }
+
+    @Override
+    public StatementEntry next() throws IOException, InvalidEntryException {
+        List<String> record;
+        int number;
+        do {
+            number = line + 1;
+            record = readRecord(reader);
+            if (record == null) return null;
+        } while (record.size() == 1 && record.getFirst().isBlank());
+
+        try {
+            final String partner = column(record, "partner");
+            final String name = column(record, "name");
+
+            return new StatementEntry(
+                    StatementValues.parseDate(column(record, "date")),
+                    StatementValues.parseAmount(column(record, "amount")),
+                    column(record, "currency"),
+                    name != null ? name : partner,
+                    partner,
+                    column(record, "notes")
+            );
+        } catch (final InvalidEntryException ex) {
+            throw new InvalidEntryException("Line " + number + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
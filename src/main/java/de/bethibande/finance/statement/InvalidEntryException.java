@@ -0,0 +1,16 @@
+package de.bethibande.finance.statement;
+
+/**
+ * Thrown if a single entry of a statement cannot be read, the {@link StatementReader} can continue with the next one.
+ */
+public class InvalidEntryException extends Exception {
+
+    public InvalidEntryException(final String message) {
+        super(message);
+    }
+
+    public InvalidEntryException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+}
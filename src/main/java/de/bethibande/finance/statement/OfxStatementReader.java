@@ -0,0 +1,169 @@
+package de.bethibande.finance.statement;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads OFX statements, one {@code STMTTRN} element at a time.
+ * <br>
+ * OFX 1.x is SGML, elements holding a value are usually not closed, so instead of an XML parser a small tokenizer is
+ * used that reads the value of an element up to the next tag. This also covers the XML based OFX 2.x.
+ */
+public class OfxStatementReader implements StatementReader {
+
+    private final Reader reader;
+    private final StringBuilder token = new StringBuilder();
+
+    private String defaultCurrency;
+    private int entries = 0;
+    private int pending = -1;
+
+    public OfxStatementReader(final InputStream in) {
+        // OFX 1.x headers may declare other charsets, but real world files rarely use anything but ASCII for tags
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private int read() throws IOException {
+        if (pending != -1) {
+            final int c = pending;
+            pending = -1;
+            return c;
+        }
+
+        return reader.read();
+    }
+
+    /**
+     * @return the name of the next tag, prefixed with {@code /} for end tags, or null at the end of the input
+     */
+    private String nextTag() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && c != '<');
+        if (c == -1) return null;
+
+        token.setLength(0);
+        while ((c = read()) != -1 && c != '>') token.append((char) c);
+
+        return token.toString().strip().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the text following the current tag up to the next tag
+     */
+    private String value() throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = read()) != -1 && c != '<') token.append((char) c);
+        if (c == '<') pending = c;
+
+        return StatementValues.emptyToNull(unescape(token.toString()));
+    }
+
+    private static String unescape(final String text) {
+        if (text.indexOf('&') < 0) return text;
+
+        return text.replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&apos;", "'")
+                .replace("&nbsp;", " ")
+                .replace("&amp;", "&");
+    }
+
+    @Override
+    public StatementEntry next() throws IOException, InvalidEntryException {
+        String tag;
+        while ((tag = nextTag()) != null) {
+            if (tag.equals("CURDEF")) defaultCurrency = value();
+            if (tag.equals("STMTTRN")) {
+                entries++;
+                return readTransaction();
+            }
+        }
+
+        return null;
+    }
+
+    private StatementEntry readTransaction() throws IOException, InvalidEntryException {
+        final Map<String, String> values = new HashMap<>();
+
+        String tag;
+        while ((tag = nextTag()) != null && !tag.equals("/STMTTRN")) {
+            if (tag.startsWith("/") || tag.startsWith("?") || tag.startsWith("!")) continue;
+
+            final String value = value();
+            if (value != null) values.putIfAbsent(tag, value);
+        }
+
+        if (tag == null) throw new IOException("Unexpected end of statement in transaction " + entries);
+
+        try {
+            final BigDecimal amount = StatementValues.parseAmount(values.get("TRNAMT"));
+            final Instant date = parseDate(values.getOrDefault("DTPOSTED", values.get("DTUSER")));
+
+            final String partner = values.get("NAME");
+            final String memo = values.get("MEMO");
+            final String currency = values.getOrDefault("CURSYM", defaultCurrency);
+
+            return new StatementEntry(date, amount, currency, memo != null ? memo : partner, partner, memo);
+        } catch (final InvalidEntryException ex) {
+            throw new InvalidEntryException("Transaction " + entries + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Parses OFX dates like {@code 20240131}, {@code 20240131120000} or {@code 20240131120000.000[-5:EST]}.
+     */
+    static Instant parseDate(final String value) throws InvalidEntryException {
+        if (value == null) throw new InvalidEntryException("Missing date");
+
+        final int bracket = value.indexOf('[');
+        final String timestamp = (bracket >= 0 ? value.substring(0, bracket) : value).strip();
+
+        ZoneOffset offset = ZoneOffset.UTC;
+        if (bracket >= 0) {
+            final String zone = value.substring(bracket + 1, value.indexOf(']', bracket) > 0 ? value.indexOf(']', bracket) : value.length());
+            final String hours = zone.split(":")[0].strip();
+            try {
+                final double parsed = Double.parseDouble(hours);
+                offset = ZoneOffset.ofTotalSeconds((int) Math.round(parsed * 3600));
+            } catch (final RuntimeException ex) {
+                throw new InvalidEntryException("Invalid date: " + value, ex);
+            }
+        }
+
+        try {
+            final LocalDate date = LocalDate.of(
+                    Integer.parseInt(timestamp.substring(0, 4)),
+                    Integer.parseInt(timestamp.substring(4, 6)),
+                    Integer.parseInt(timestamp.substring(6, 8))
+            );
+
+            LocalTime time = LocalTime.MIDNIGHT;
+            if (timestamp.length() >= 14) {
+                time = LocalTime.of(
+                        Integer.parseInt(timestamp.substring(8, 10)),
+                        Integer.parseInt(timestamp.substring(10, 12)),
+                        Integer.parseInt(timestamp.substring(12, 14))
+                );
+            }
+
+            return LocalDateTime.of(date, time).toInstant(offset);
+        } catch (final RuntimeException ex) {
+            throw new InvalidEntryException("Invalid date: " + value, ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,128 @@
+package de.bethibande.finance.statement;
+
+import de.bethibande.finance.model.jpa.StatementImport;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.FlushMode;
+import org.hibernate.jpa.HibernateHints;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Stores the raw files of {@link StatementImport}s in chunks, so neither the upload nor the import has to hold a whole
+ * file in memory.
+ */
+@ApplicationScoped
+public class StatementContents {
+
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Stores the given content in the current transaction, the import must have been persisted.
+     *
+     * @return the number of bytes written
+     */
+    public long write(final long importId, final InputStream content) throws IOException {
+        long size = 0;
+        int part = 0;
+
+        byte[] chunk;
+        while ((chunk = content.readNBytes(CHUNK_SIZE)).length > 0) {
+            StatementImport.getEntityManager()
+                    .createNativeQuery("INSERT INTO StatementImportChunk (import_id, part, data) VALUES (:import, :part, :data)")
+                    .setParameter("import", importId)
+                    .setParameter("part", part++)
+                    .setParameter("data", chunk)
+                    .setHint(HibernateHints.HINT_NATIVE_SPACES, "StatementImportChunk")
+                    .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.ALWAYS)
+                    .executeUpdate();
+
+            size += chunk.length;
+        }
+
+        return size;
+    }
+
+    /**
+     * Reads the content of the import, each chunk is loaded in its own transaction once the previous one has been
+     * consumed.
+     */
+    public InputStream open(final long importId) {
+        return new ChunkInputStream(importId);
+    }
+
+    /**
+     * Removes the content of the import in the current transaction.
+     */
+    public void delete(final long importId) {
+        StatementImport.getEntityManager()
+                .createNativeQuery("DELETE FROM StatementImportChunk WHERE import_id = :import")
+                .setParameter("import", importId)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "StatementImportChunk")
+                .executeUpdate();
+    }
+
+    private static class ChunkInputStream extends InputStream {
+
+        private final long importId;
+
+        private byte[] chunk = new byte[0];
+        private int position;
+        private int part;
+        private boolean end;
+
+        private ChunkInputStream(final long importId) {
+            this.importId = importId;
+        }
+
+        /**
+         * @return false if there are no more chunks
+         */
+        private boolean fill() {
+            if (end) return false;
+
+            final List<?> result = QuarkusTransaction.requiringNew().call(() -> StatementImport.getEntityManager()
+                    .createNativeQuery("SELECT data FROM StatementImportChunk WHERE import_id = :import AND part = :part")
+                    .setParameter("import", importId)
+                    .setParameter("part", part)
+                    .getResultList());
+
+            if (result.isEmpty()) {
+                end = true;
+                chunk = new byte[0];
+                return false;
+            }
+
+            chunk = (byte[]) result.getFirst();
+            position = 0;
+            part++;
+            return true;
+        }
+
+        @Override
+        public int read() {
+            while (position >= chunk.length) {
+                if (!fill()) return -1;
+            }
+
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            if (length == 0) return 0;
+            while (position >= chunk.length) {
+                if (!fill()) return -1;
+            }
+
+            final int read = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package de.bethibande.finance.statement;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A single booking read from a bank statement.
+ *
+ * @param date     the booking date
+ * @param amount   the signed amount, negative for debits
+ * @param currency the ISO currency code, null if the statement does not specify one
+ * @param name     a short description of the booking
+ * @param partner  the name of the counterparty, may be null
+ * @param notes    remittance information or other details, may be null
+ */
+public record StatementEntry(
+        Instant date,
+        BigDecimal amount,
+        String currency,
+        String name,
+        String partner,
+        String notes
+) {
+}
@@ -0,0 +1,268 @@
+package de.bethibande.finance.statement;
+
+import de.bethibande.finance.model.jpa.*;
+import de.bethibande.finance.model.jpa.partner.Partner;
+import de.bethibande.finance.model.jpa.partner.PartnerType;
+import de.bethibande.finance.model.jpa.transaction.*;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.hibernate.StatelessSession;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Imports the entries of a {@link StatementImport} into its wallet.
+ * <br>
+ * Each entry becomes a closed {@link Transaction} with a single {@link BookedAmount}. Assets are resolved by their
+ * code and partners by their name using lookup maps built once per run, partners that do not exist yet are created.
+ * Entries are written in batches using the {@link TransactionBulkWriter}, each batch is committed together with the
+ * progress of the import, so a run that is interrupted continues after the last committed batch.
+ */
+@ApplicationScoped
+public class StatementImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    @Inject
+    protected TransactionBulkWriter bulkWriter;
+
+    @Inject
+    protected StatelessSession session;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    @Inject
+    protected StatementContents contents;
+
+    /**
+     * State of a single run.
+     */
+    private static class Run {
+
+        private final StatementImport statement;
+        private final Map<String, Asset> assets = new HashMap<>();
+        private final Map<String, Partner> partners = new HashMap<>();
+
+        private final List<Partner> newPartners = new ArrayList<>();
+        private final List<Transaction> transactions = new ArrayList<>();
+        private final List<BookedAmount> amounts = new ArrayList<>();
+
+        private final long startedAt = System.nanoTime();
+        private final long resumedAt;
+
+        private long imported;
+        private long skipped;
+
+        private Run(final StatementImport statement) {
+            this.statement = statement;
+            this.imported = statement.importedRows;
+            this.skipped = statement.skippedRows;
+            this.resumedAt = statement.importedRows + statement.skippedRows;
+        }
+
+        private long processed() {
+            return imported + skipped;
+        }
+
+        private double rowsPerSecond() {
+            final double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+            return seconds > 0 ? (processed() - resumedAt) / seconds : 0;
+        }
+
+    }
+
+    /**
+     * Runs or resumes the given import, does nothing if it has already completed or failed.
+     *
+     * @param active checked before each batch, the import stops with a {@link CancellationException} once false
+     */
+    public void run(final long importId, final int batchSize, final BooleanSupplier active, final Logger logger) {
+        final Run run = QuarkusTransaction.requiringNew().call(() -> start(importId));
+        if (run == null) return;
+
+        try (final StatementReader reader = StatementReader.open(run.statement.format, contents.open(importId))) {
+            if (run.resumedAt > 0) logger.info("Resuming import {} after {} entries", importId, run.resumedAt);
+
+            long position = 0;
+            while (true) {
+                final StatementEntry entry;
+                try {
+                    entry = reader.next();
+                } catch (final InvalidEntryException ex) {
+                    if (position++ >= run.resumedAt) {
+                        run.skipped++;
+                        logger.warn("Skipping entry of import {}: {}", importId, ex.getMessage());
+                    }
+                    continue;
+                }
+
+                if (entry == null) break;
+                if (position++ < run.resumedAt) continue;
+
+                add(run, entry, logger);
+
+                if (run.transactions.size() >= batchSize) {
+                    if (!active.getAsBoolean()) throw new CancellationException("Lost lock, stopped after " + run.processed() + " entries");
+                    flush(run);
+                    logger.debug("Import {}: {} entries, {} rows/s", importId, run.processed(), Math.round(run.rowsPerSecond()));
+                }
+            }
+
+            if (!active.getAsBoolean()) throw new CancellationException("Lost lock, stopped after " + run.processed() + " entries");
+            flush(run);
+            complete(run);
+
+            logger.info("Imported {} entries of {}, skipped {}, {} rows/s", run.imported, run.statement.fileName, run.skipped, Math.round(run.rowsPerSecond()));
+        } catch (final CancellationException ex) {
+            throw ex;
+        } catch (final Throwable th) {
+            fail(importId, th);
+            throw new IllegalStateException("Import " + importId + " failed", th);
+        }
+    }
+
+    private Run start(final long importId) {
+        final StatementImport statement = StatementImport.findById(importId);
+        if (statement == null) throw new IllegalArgumentException("Unknown statement import: " + importId);
+        if (statement.status == StatementImportStatus.COMPLETED || statement.status == StatementImportStatus.FAILED) {
+            return null;
+        }
+
+        statement.status = StatementImportStatus.RUNNING;
+        if (statement.startedAt == null) statement.startedAt = Instant.now();
+
+        final Run run = new Run(statement);
+        Asset.<Asset>stream("workspace.id = ?1", statement.workspace.id)
+                .forEach(asset -> run.assets.putIfAbsent(asset.code.toUpperCase(Locale.ROOT), asset));
+        Partner.<Partner>stream("workspace.id = ?1", statement.workspace.id)
+                .forEach(partner -> run.partners.putIfAbsent(partner.name.toLowerCase(Locale.ROOT), partner));
+
+        return run;
+    }
+
+    private static String truncate(final String value) {
+        if (value == null || value.length() <= MAX_TEXT_LENGTH) return value;
+        return value.substring(0, MAX_TEXT_LENGTH);
+    }
+
+    private Asset resolveAsset(final Run run, final StatementEntry entry) {
+        final Asset walletAsset = run.statement.wallet.asset;
+        if (entry.currency() == null) return walletAsset;
+        if (walletAsset != null && walletAsset.code.equalsIgnoreCase(entry.currency())) return walletAsset;
+
+        return run.assets.get(entry.currency().toUpperCase(Locale.ROOT));
+    }
+
+    private Partner resolvePartner(final Run run, final StatementEntry entry) {
+        final String name = truncate(entry.partner());
+        if (name == null) return null;
+
+        return run.partners.computeIfAbsent(name.toLowerCase(Locale.ROOT), _ -> {
+            final Partner partner = new Partner();
+            partner.name = name;
+            partner.type = PartnerType.OTHER;
+            partner.workspace = run.statement.workspace;
+
+            run.newPartners.add(partner);
+            return partner;
+        });
+    }
+
+    private void add(final Run run, final StatementEntry entry, final Logger logger) {
+        final Asset asset = resolveAsset(run, entry);
+        if (asset == null) {
+            run.skipped++;
+            logger.warn("Skipping entry of import {}: Unknown currency {}", run.statement.id, entry.currency());
+            return;
+        }
+
+        final Transaction transaction = new Transaction();
+        transaction.name = truncate(entry.name() != null ? entry.name() : run.statement.fileName);
+        transaction.date = entry.date();
+        transaction.amount = entry.amount();
+        transaction.type = TransactionType.PAYMENT;
+        transaction.status = TransactionStatus.CLOSED;
+        transaction.asset = asset;
+        transaction.wallet = run.statement.wallet;
+        transaction.partner = resolvePartner(run, entry);
+        transaction.notes = truncate(entry.notes());
+        transaction.workspace = run.statement.workspace;
+
+        final BookedAmount amount = new BookedAmount();
+        amount.transaction = transaction;
+        amount.amount = entry.amount();
+        amount.asset = asset;
+        amount.date = entry.date();
+        amount.wallet = run.statement.wallet;
+
+        run.transactions.add(transaction);
+        run.amounts.add(amount);
+    }
+
+    /**
+     * Writes the pending entries and the progress of the import in a single transaction.
+     */
+    private void flush(final Run run) {
+        final long imported = run.imported + run.transactions.size();
+        final double rowsPerSecond = run.rowsPerSecond();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            for (final Partner partner : run.newPartners) {
+                session.insert(partner);
+            }
+
+            bulkWriter.insert(run.transactions);
+            bulkWriter.insertBookedAmounts(run.amounts);
+            walletBalances.bookAll(run.amounts);
+
+            StatementImport.update(
+                    "importedRows = ?1, skippedRows = ?2, rowsPerSecond = ?3 WHERE id = ?4",
+                    imported,
+                    run.skipped,
+                    rowsPerSecond,
+                    run.statement.id
+            );
+        });
+
+        run.imported = imported;
+        run.newPartners.clear();
+        run.transactions.clear();
+        run.amounts.clear();
+    }
+
+    private void complete(final Run run) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            StatementImport.update(
+                    "status = ?1, finishedAt = ?2, rowsPerSecond = ?3 WHERE id = ?4",
+                    StatementImportStatus.COMPLETED,
+                    Instant.now(),
+                    run.rowsPerSecond(),
+                    run.statement.id
+            );
+            contents.delete(run.statement.id);
+        });
+    }
+
+    private void fail(final long importId, Throwable error) {
+        if (error instanceof IOException && error.getCause() != null) error = error.getCause();
+
+        final String message = error.getMessage() != null ? error.getMessage() : error.getClass().getName();
+        QuarkusTransaction.requiringNew().run(() -> StatementImport.update(
+                "status = ?1, finishedAt = ?2, error = ?3 WHERE id = ?4",
+                StatementImportStatus.FAILED,
+                Instant.now(),
+                message.length() > StatementImport.MAX_ERROR_LENGTH ? message.substring(0, StatementImport.MAX_ERROR_LENGTH) : message,
+                importId
+        ));
+    }
+
+}
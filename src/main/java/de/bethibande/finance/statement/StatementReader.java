@@ -0,0 +1,29 @@
+package de.bethibande.finance.statement;
+
+import de.bethibande.finance.model.jpa.StatementFormat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the entries of a bank statement one at a time, without loading the whole statement into memory.
+ */
+public interface StatementReader extends Closeable {
+
+    static StatementReader open(final StatementFormat format, final InputStream in) throws IOException {
+        return switch (format) {
+            case CSV -> new CsvStatementReader(in);
+            case CAMT053 -> new Camt053StatementReader(in);
+            case OFX -> new OfxStatementReader(in);
+        };
+    }
+
+    /**
+     * @return the next entry or null if the end of the statement has been reached
+     * @throws InvalidEntryException if the current entry is invalid, the next call continues with the following entry
+     * @throws IOException           if the statement cannot be read
+     */
+    StatementEntry next() throws IOException, InvalidEntryException;
+
+}
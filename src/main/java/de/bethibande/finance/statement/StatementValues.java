@@ -0,0 +1,79 @@
+package de.bethibande.finance.statement;
+
+import java.math.BigDecimal;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Parsing of the amount and date notations found in bank statements. Dates without a time zone are read as UTC.
+ */
+final class StatementValues {
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("dd.MM.yy"),
+            DateTimeFormatter.ofPattern("MM/dd/yyyy"),
+            DateTimeFormatter.BASIC_ISO_DATE
+    );
+
+    private StatementValues() {
+    }
+
+    /**
+     * Parses amounts like {@code -1234.56}, {@code 1,234.56}, {@code 1.234,56} or {@code -12,5}.
+     * If both separators are present, the last one is the decimal separator.
+     */
+    static BigDecimal parseAmount(final String value) throws InvalidEntryException {
+        if (value == null || value.isBlank()) throw new InvalidEntryException("Missing amount");
+
+        String normalized = value.strip().replace(" ", "").replace("\u00A0", "").replace("'", "");
+        final int comma = normalized.lastIndexOf(',');
+        final int dot = normalized.lastIndexOf('.');
+
+        if (comma > dot) {
+            normalized = normalized.replace(".", "").replace(',', '.');
+        } else if (comma >= 0) {
+            normalized = normalized.replace(",", "");
+        }
+
+        try {
+            return new BigDecimal(normalized);
+        } catch (final NumberFormatException ex) {
+            throw new InvalidEntryException("Invalid amount: " + value, ex);
+        }
+    }
+
+    static Instant parseDate(final String value) throws InvalidEntryException {
+        if (value == null || value.isBlank()) throw new InvalidEntryException("Missing date");
+
+        final String text = value.strip();
+        for (final DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(text, format).atStartOfDay(ZoneOffset.UTC).toInstant();
+            } catch (final DateTimeParseException _) {
+            }
+        }
+
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (final DateTimeParseException _) {
+        }
+
+        try {
+            return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC);
+        } catch (final DateTimeParseException ex) {
+            throw new InvalidEntryException("Invalid date: " + value, ex);
+        }
+    }
+
+    static String emptyToNull(final String value) {
+        if (value == null) return null;
+
+        final String stripped = value.strip();
+        return stripped.isEmpty() ? null : stripped;
+    }
+
+}
@@ -0,0 +1,15 @@
+package de.bethibande.finance.web;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Allows request bodies up to {@code quarkus.http.limits.max-body-size} for the annotated endpoint, the bodies of all
+ * other endpoints are limited to {@code finance.http.max-body-size}, see {@link RequestBodyLimits}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LargeRequestBody {
+}
@@ -0,0 +1,48 @@
+package de.bethibande.finance.web;
+
+import io.quarkus.runtime.configuration.MemorySize;
+import io.quarkus.vertx.http.runtime.VertxHttpRecorder;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.reactive.server.ServerRequestFilter;
+
+/**
+ * The HTTP body limit has to allow large statement uploads, so it is lowered again for all endpoints not annotated with
+ * {@link LargeRequestBody}.
+ * <br>
+ * Request filters run before the body is read. Bodies with a larger {@code Content-Length} are rejected right away,
+ * an invalid {@code Content-Length} is answered with 400. Chunked bodies are cut off once they exceed the limit.
+ */
+public class RequestBodyLimits {
+
+    @ConfigProperty(name = "finance.http.max-body-size")
+    protected MemorySize maxBodySize;
+
+    @ServerRequestFilter
+    public Response limit(final ResourceInfo resource, final RoutingContext ctx) {
+        if (resource.getResourceMethod() == null || resource.getResourceMethod().isAnnotationPresent(LargeRequestBody.class)) {
+            return null;
+        }
+
+        final long limit = maxBodySize.asLongValue();
+        final String length = ctx.request().getHeader(HttpHeaders.CONTENT_LENGTH);
+        if (length != null) {
+            final long contentLength;
+            try {
+                contentLength = Long.parseLong(length.trim());
+            } catch (final NumberFormatException e) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+
+            if (contentLength < 0) return Response.status(Response.Status.BAD_REQUEST).build();
+            if (contentLength > limit) return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE).build();
+        }
+
+        ctx.put(VertxHttpRecorder.MAX_REQUEST_SIZE_KEY, limit);
+        return null;
+    }
+
+}
@@ -1,5 +1,6 @@
 package de.bethibande.finance.web.api.v1;
 
+import de.bethibande.finance.model.jpa.StatementImport;
 import de.bethibande.finance.model.jpa.Wallet;
 import de.bethibande.finance.model.jpa.transaction.BookedAmount;
 import de.bethibande.finance.model.jpa.transaction.Transaction;
@@ -25,6 +26,7 @@ public class WalletEndpoint extends AbstractWorkspaceCRUDEndpoint<Wallet> {
     protected boolean hasDependents(final long id) {
         if (Transaction.count("wallet.id = ?1", id) > 0) return true;
         if (BookedAmount.count("wallet.id = ?1", id) > 0) return true;
+        if (StatementImport.count("wallet.id = ?1", id) > 0) return true;
         return false;
     }
 }
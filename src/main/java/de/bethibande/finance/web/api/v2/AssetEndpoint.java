@@ -2,9 +2,6 @@ package de.bethibande.finance.web.api.v2;
 
 import de.bethibande.finance.model.jpa.*;
 import de.bethibande.finance.model.jpa.partner.Partner;
-import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
-import de.bethibande.finance.model.jpa.transaction.BookedAmount;
-import de.bethibande.finance.model.jpa.transaction.Transaction;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.security.Roles;
 import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
@@ -14,6 +11,9 @@ import jakarta.annotation.security.RolesAllowed;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 
+import java.util.Collection;
+import java.util.Map;
+
 @Path("/api/v2/asset")
 @RolesAllowed({Roles.ADMIN, Roles.USER})
 public class AssetEndpoint extends AbstractCRUDEndpoint {
@@ -60,6 +60,10 @@ public class AssetEndpoint extends AbstractCRUDEndpoint {
     @Transactional
     @Path("/{workspace_id}")
     public PagedResponse<AssetDTOExpanded> listAssets(final @BeanParam WorkspacedParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(Asset.class, params, AssetDTOExpanded::from, "workspace.id = ?1", params.workspaceId);
+        }
+
         final PanacheQuery<Asset> query = Asset.find("workspace.id = ?1", params.getSort(), params.workspaceId)
                 .page(params.getPage());
 
@@ -72,18 +76,22 @@ public class AssetEndpoint extends AbstractCRUDEndpoint {
     }
 
     @Override
-    protected void deleteById(final long id) {
-        Asset.deleteById(id);
+    protected void deleteAllById(final Collection<Long> ids) {
+        Asset.delete("id IN ?1", ids);
     }
 
     @Override
-    protected boolean hasDependents(final long id) {
-        if (Wallet.count("asset.id = ?1", id) > 0) return true;
-        if (Transaction.count("asset.id = ?1", id) > 0) return true;
-        if (BookedAmount.count("asset.id = ?1", id) > 0) return true;
-        if (ExchangeRate.count("base.id = ?1 OR quote.id = ?1", id) > 0) return true;
-        if (RecurringPayment.count("asset.id = ?1", id) > 0) return true;
-        return false;
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        return queryDependents("""
+                SELECT a.id, CASE WHEN EXISTS (SELECT 1 FROM Wallet w WHERE w.asset = a)
+                    OR EXISTS (SELECT 1 FROM Transaction t WHERE t.asset = a)
+                    OR EXISTS (SELECT 1 FROM BookedAmount b WHERE b.asset = a)
+                    OR EXISTS (SELECT 1 FROM ExchangeRate r WHERE r.base = a OR r.quote = a)
+                    OR EXISTS (SELECT 1 FROM RecurringPayment p WHERE p.asset = a)
+                THEN true ELSE false END
+                FROM Asset a
+                WHERE a.id IN ?1
+                """, ids);
     }
 
 }
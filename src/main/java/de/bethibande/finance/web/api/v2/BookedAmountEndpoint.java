@@ -4,18 +4,35 @@ package de.bethibande.finance.web.api.v2;
 import de.bethibande.finance.model.jpa.Asset;
 import de.bethibande.finance.model.jpa.Wallet;
 import de.bethibande.finance.model.jpa.transaction.*;
+import de.bethibande.finance.model.web.BatchResult;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.security.Roles;
+import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
 import de.bethibande.finance.web.api.v2.crud.BookedAmountParams;
+import de.bethibande.finance.web.api.v2.crud.CursorPagination;
+import de.bethibande.finance.web.api.v2.crud.EntityReferences;
 import io.quarkus.hibernate.orm.panache.PanacheQuery;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
 
+import java.util.*;
+
 @Path("/api/v2")
 @RolesAllowed({Roles.ADMIN, Roles.USER})
 public class BookedAmountEndpoint {
 
+    @Inject
+    protected CursorPagination cursorPagination;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    @Inject
+    protected TransactionBulkWriter bulkWriter;
+
     @POST
     @Transactional
     @Path("/bookedamount/transaction/{transaction_id}")
@@ -36,6 +53,7 @@ public class BookedAmountEndpoint {
         }
 
         amount.persist();
+        walletBalances.book(amount);
 
         return BookedAmountDTO.from(amount);
     }
@@ -47,6 +65,8 @@ public class BookedAmountEndpoint {
         final BookedAmount amount = BookedAmount.findById(dto.id());
         if (amount == null) throw new NotFoundException();
 
+        walletBalances.unbook(amount);
+
         amount.amount = dto.amount();
         amount.asset = dto.assetId() != null ? Asset.findById(dto.assetId()) : null;
         amount.date = dto.date();
@@ -58,13 +78,132 @@ public class BookedAmountEndpoint {
             throw new NotFoundException();
         }
 
+        walletBalances.book(amount);
+
         return BookedAmountDTO.from(amount);
     }
 
+    private static void checkBatchSize(final List<?> items) {
+        if (items.size() > AbstractCRUDEndpoint.MAX_BATCH_SIZE) {
+            throw new BadRequestException("Cannot write more than " + AbstractCRUDEndpoint.MAX_BATCH_SIZE + " entities at once");
+        }
+    }
+
+    /**
+     * Books many amounts at once, possibly of different transactions. Items referencing entities that do not exist
+     * are skipped. The references of all items are resolved using one query per entity type, the amounts are inserted
+     * in JDBC batches and booked using a single balance update per wallet and asset.
+     *
+     * @return the result of each item, in the order of the request
+     */
+    @POST
+    @Transactional
+    @Path("/bookedamount/batch")
+    public List<BatchResult<BookedAmountDTO>> createBookedAmounts(final @NotNull List<BookedAmountDTOWithoutId> dtos) {
+        checkBatchSize(dtos);
+
+        final Map<Long, Transaction> transactions = EntityReferences.findAll(Transaction.class, dtos.stream().map(BookedAmountDTOWithoutId::transactionId));
+        final Map<Long, Asset> assets = EntityReferences.findAll(Asset.class, dtos.stream().map(BookedAmountDTOWithoutId::assetId));
+        final Map<Long, Wallet> wallets = EntityReferences.findAll(Wallet.class, dtos.stream().map(BookedAmountDTOWithoutId::walletId));
+
+        final BookedAmount[] amounts = new BookedAmount[dtos.size()];
+        for (int i = 0; i < dtos.size(); i++) {
+            final BookedAmountDTOWithoutId dto = dtos.get(i);
+            final BookedAmount amount = new BookedAmount();
+            amount.transaction = dto.transactionId() != null ? transactions.get(dto.transactionId()) : null;
+            amount.amount = dto.amount();
+            amount.asset = dto.assetId() != null ? assets.get(dto.assetId()) : null;
+            amount.date = dto.date();
+            amount.wallet = dto.walletId() != null ? wallets.get(dto.walletId()) : null;
+            amount.notes = dto.notes();
+
+            if (amount.transaction == null
+                    || amount.asset == null
+                    || amount.wallet == null) {
+                continue;
+            }
+
+            amounts[i] = amount;
+        }
+
+        final List<BookedAmount> created = Arrays.stream(amounts).filter(Objects::nonNull).toList();
+        bulkWriter.insertBookedAmounts(created);
+        walletBalances.bookAll(created);
+
+        final List<BatchResult<BookedAmountDTO>> results = new ArrayList<>(dtos.size());
+        for (int i = 0; i < amounts.length; i++) {
+            results.add(amounts[i] != null ? BatchResult.ok(i, BookedAmountDTO.from(amounts[i])) : BatchResult.notFound(i));
+        }
+
+        return results;
+    }
+
+    /**
+     * Updates many booked amounts at once, items referencing entities that do not exist are skipped.
+     * The amounts and their references are loaded using one query per entity type, the balances are updated using a
+     * single update per wallet and asset and the changes are flushed in JDBC batches when the request completes.
+     *
+     * @return the result of each item, in the order of the request
+     */
+    @PUT
+    @Transactional
+    @Path("/bookedamount/batch")
+    public List<BatchResult<BookedAmountDTO>> updateBookedAmounts(final @NotNull List<BookedAmountDTOWithoutTransaction> dtos) {
+        checkBatchSize(dtos);
+
+        final Map<Long, BookedAmount> amounts = EntityReferences.findAll(BookedAmount.class, dtos.stream().map(BookedAmountDTOWithoutTransaction::id));
+        final Map<Long, Asset> assets = EntityReferences.findAll(Asset.class, dtos.stream().map(BookedAmountDTOWithoutTransaction::assetId));
+        final Map<Long, Wallet> wallets = EntityReferences.findAll(Wallet.class, dtos.stream().map(BookedAmountDTOWithoutTransaction::walletId));
+
+        final BookedAmount[] updated = new BookedAmount[dtos.size()];
+        for (int i = 0; i < dtos.size(); i++) {
+            final BookedAmountDTOWithoutTransaction dto = dtos.get(i);
+            final BookedAmount amount = dto.id() != null ? amounts.get(dto.id()) : null;
+
+            if (amount == null
+                    || dto.assetId() == null || !assets.containsKey(dto.assetId())
+                    || dto.walletId() == null || !wallets.containsKey(dto.walletId())) {
+                continue;
+            }
+
+            updated[i] = amount;
+        }
+
+        // Revert all amounts with their old values first, an amount may be updated more than once
+        final Set<BookedAmount> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Arrays.stream(updated).filter(Objects::nonNull).forEach(changed::add);
+        walletBalances.unbookAll(changed);
+
+        for (int i = 0; i < dtos.size(); i++) {
+            if (updated[i] == null) continue;
+
+            final BookedAmountDTOWithoutTransaction dto = dtos.get(i);
+            final BookedAmount amount = updated[i];
+            amount.amount = dto.amount();
+            amount.asset = assets.get(dto.assetId());
+            amount.date = dto.date();
+            amount.wallet = wallets.get(dto.walletId());
+            amount.notes = dto.notes();
+        }
+
+        walletBalances.bookAll(changed);
+
+        final List<BatchResult<BookedAmountDTO>> results = new ArrayList<>(dtos.size());
+        for (int i = 0; i < updated.length; i++) {
+            results.add(updated[i] != null ? BatchResult.ok(i, BookedAmountDTO.from(updated[i])) : BatchResult.notFound(i));
+        }
+
+        return results;
+    }
+
     @GET
     @Transactional
     @Path("/bookedamount/transaction/{transaction_id}")
     public PagedResponse<BookedAmountDTO> listBookedAmount(final @BeanParam BookedAmountParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(BookedAmount.class, params, BookedAmountDTO::from, "transaction.id = ?1", params.transactionId);
+        }
+
         final PanacheQuery<BookedAmount> query = BookedAmount.find("transaction.id = ?1", params.getSort(), params.transactionId)
                 .page(params.getPage());
 
@@ -80,7 +219,11 @@ public class BookedAmountEndpoint {
     @Path("/bookedamount/{id}")
     @Transactional
     public void deleteBookedAmount(final @PathParam("id") long id) {
-        BookedAmount.deleteById(id);
+        final BookedAmount amount = BookedAmount.findById(id);
+        if (amount == null) return;
+
+        walletBalances.unbook(amount);
+        amount.delete();
     }
 
 }
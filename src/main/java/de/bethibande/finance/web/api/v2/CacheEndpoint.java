@@ -0,0 +1,28 @@
+package de.bethibande.finance.web.api.v2;
+
+import de.bethibande.finance.model.jpa.ReferenceCache;
+import de.bethibande.finance.security.Roles;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+
+import java.util.List;
+
+@Path("/api/v2/cache")
+@RolesAllowed(Roles.ADMIN)
+public class CacheEndpoint {
+
+    @Inject
+    protected ReferenceCache referenceCache;
+
+    /**
+     * @return the hit ratio and size of the second-level cache of each reference entity, see {@link ReferenceCache}
+     */
+    @GET
+    @Path("/stats")
+    public List<ReferenceCache.Stats> getStats() {
+        return referenceCache.getStats();
+    }
+
+}
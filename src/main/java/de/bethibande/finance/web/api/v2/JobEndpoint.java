@@ -2,6 +2,10 @@ package de.bethibande.finance.web.api.v2;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.jobs.JobExecutionStats;
+import de.bethibande.finance.jobs.JobRunnerPool;
+import de.bethibande.finance.jobs.JobRunnerStats;
+import de.bethibande.finance.jobs.JobScheduledEvent;
 import de.bethibande.finance.jobs.JobService;
 import de.bethibande.finance.jobs.JobTask;
 import de.bethibande.finance.model.jpa.*;
@@ -10,11 +14,20 @@ import de.bethibande.finance.security.Roles;
 import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
 import de.bethibande.finance.web.api.v2.crud.WorkspacedParams;
 import io.quarkus.hibernate.orm.panache.PanacheQuery;
+import io.quarkus.panache.common.Sort;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import jakarta.validation.constraints.Min;
 import jakarta.ws.rs.*;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 @Path("/api/v2/job")
 @RolesAllowed(Roles.ADMIN)
 public class JobEndpoint extends AbstractCRUDEndpoint {
@@ -22,9 +35,15 @@ public class JobEndpoint extends AbstractCRUDEndpoint {
     @Inject
     protected JobService jobService;
 
+    @Inject
+    protected JobRunnerPool runnerPool;
+
     @Inject
     protected ObjectMapper objectMapper;
 
+    @Inject
+    protected Event<JobScheduledEvent> scheduledEvent;
+
     protected void validateJobConfigString(final Job job) {
         final JobTask<?> task = jobService.findTaskById(job.type).orElseThrow(NotFoundException::new);
         try {
@@ -50,6 +69,7 @@ public class JobEndpoint extends AbstractCRUDEndpoint {
         validateJobConfigString(job);
 
         job.persist();
+        scheduledEvent.fire(new JobScheduledEvent(job.id, job.nextScheduledExecution));
 
         return JobDTO.from(job);
     }
@@ -67,14 +87,25 @@ public class JobEndpoint extends AbstractCRUDEndpoint {
         job.notes = dto.notes();
 
         validateJobConfigString(job);
+        scheduledEvent.fire(new JobScheduledEvent(job.id, job.nextScheduledExecution));
 
         return JobDTO.from(job);
     }
 
+    @GET
+    @Path("/stats")
+    public JobRunnerStats getRunnerStats() {
+        return runnerPool.getStats();
+    }
+
     @GET
     @Transactional
     @Path("/{workspace_id}")
     public PagedResponse<JobDTO> getJobs(final @BeanParam WorkspacedParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(Job.class, params, JobDTO::from, "workspace.id = ?1", params.workspaceId);
+        }
+
         final PanacheQuery<Job> query = Job.find("workspace.id = ?1", params.getSort(), params.workspaceId)
                 .page(params.getPage());
 
@@ -86,13 +117,41 @@ public class JobEndpoint extends AbstractCRUDEndpoint {
         );
     }
 
+    @GET
+    @Transactional
+    @Path("/{workspace_id}/history")
+    public PagedResponse<JobExecutionDTO> getExecutions(final @BeanParam WorkspacedParams params,
+                                                        final @QueryParam("job_id") Long jobId) {
+        Sort sort = params.getSort();
+        if (sort.getColumns().isEmpty()) sort = Sort.descending("startedAt");
+
+        final PanacheQuery<JobExecution> query = jobId != null
+                ? JobExecution.find("job.workspace.id = ?1 AND job.id = ?2", sort, params.workspaceId, jobId)
+                : JobExecution.find("job.workspace.id = ?1", sort, params.workspaceId);
+        query.page(params.getPage());
+
+        return PagedResponse.of(
+                params.page,
+                params.size,
+                query.count(),
+                query.stream().map(JobExecutionDTO::from).toList()
+        );
+    }
+
+    @GET
+    @Path("/{workspace_id}/history/stats")
+    public List<JobExecutionStats> getExecutionStats(final @PathParam("workspace_id") long workspaceId,
+                                                     final @QueryParam("days") @DefaultValue("7") @Min(1) int days) {
+        return jobService.getExecutionStats(workspaceId, Instant.now().minus(days, ChronoUnit.DAYS));
+    }
+
     @Override
-    protected boolean hasDependents(final long id) {
-        return false;
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        return queryDependents("SELECT j.id, false FROM Job j WHERE j.id IN ?1", ids);
     }
 
     @Override
-    protected void deleteById(final long id) {
-        Job.deleteById(id);
+    protected void deleteAllById(final Collection<Long> ids) {
+        Job.delete("id IN ?1", ids);
     }
 }
@@ -1,14 +1,10 @@
 package de.bethibande.finance.web.api.v2;
 
-import de.bethibande.finance.model.jpa.Asset;
-import de.bethibande.finance.model.jpa.Wallet;
 import de.bethibande.finance.model.jpa.Workspace;
 import de.bethibande.finance.model.jpa.partner.Partner;
 import de.bethibande.finance.model.jpa.partner.PartnerDTO;
 import de.bethibande.finance.model.jpa.partner.PartnerDTOWithoutId;
 import de.bethibande.finance.model.jpa.partner.PartnerDTOWithoutWorkspace;
-import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
-import de.bethibande.finance.model.jpa.transaction.Transaction;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.security.Roles;
 import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
@@ -18,6 +14,9 @@ import jakarta.annotation.security.RolesAllowed;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 
+import java.util.Collection;
+import java.util.Map;
+
 @Path("/api/v2/partner")
 @RolesAllowed({Roles.ADMIN, Roles.USER})
 public class PartnerEndpoint extends AbstractCRUDEndpoint {
@@ -55,6 +54,10 @@ public class PartnerEndpoint extends AbstractCRUDEndpoint {
     @Transactional
     @Path("/{workspace_id}")
     public PagedResponse<PartnerDTO> listPartners(final @BeanParam WorkspacedParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(Partner.class, params, PartnerDTO::from, "workspace.id = ?1", params.workspaceId);
+        }
+
         final PanacheQuery<Partner> query = Partner.find("workspace.id = ?1", params.getSort(), params.workspaceId)
                 .page(params.getPage());
 
@@ -67,17 +70,21 @@ public class PartnerEndpoint extends AbstractCRUDEndpoint {
     }
 
     @Override
-    protected void deleteById(final long id) {
-        Partner.deleteById(id);
+    protected void deleteAllById(final Collection<Long> ids) {
+        Partner.delete("id IN ?1", ids);
     }
 
     @Override
-    protected boolean hasDependents(final long id) {
-        if (Asset.count("provider.id = ?1", id) > 0) return true;
-        if (Transaction.count("partner.id = ?1", id) > 0) return true;
-        if (Wallet.count("provider.id = ?1", id) > 0) return true;
-        if (RecurringPayment.count("partner.id = ?1", id) > 0) return true;
-        return false;
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        return queryDependents("""
+                SELECT p.id, CASE WHEN EXISTS (SELECT 1 FROM Asset a WHERE a.provider = p)
+                    OR EXISTS (SELECT 1 FROM Transaction t WHERE t.partner = p)
+                    OR EXISTS (SELECT 1 FROM Wallet w WHERE w.provider = p)
+                    OR EXISTS (SELECT 1 FROM RecurringPayment r WHERE r.partner = p)
+                THEN true ELSE false END
+                FROM Partner p
+                WHERE p.id IN ?1
+                """, ids);
     }
 
 }
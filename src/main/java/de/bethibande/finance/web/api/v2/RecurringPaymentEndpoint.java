@@ -9,26 +9,31 @@ import de.bethibande.finance.model.jpa.recurring.RecurringPaymentDTO;
 import de.bethibande.finance.model.jpa.recurring.RecurringPaymentDTOWithoutId;
 import de.bethibande.finance.model.jpa.recurring.RecurringPaymentDTOWithoutWorkspace;
 import de.bethibande.finance.model.jpa.transaction.Transaction;
-import de.bethibande.finance.model.jpa.transaction.TransactionComponents;
+import de.bethibande.finance.model.jpa.transaction.TransactionBulkWriter;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
 import de.bethibande.finance.web.api.v2.crud.WorkspacedParams;
 import io.quarkus.hibernate.orm.panache.PanacheQuery;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 
 import java.time.Instant;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.function.Predicate;
+import java.util.Map;
 
 @Path("/api/v2/recurring")
 public class RecurringPaymentEndpoint extends AbstractCRUDEndpoint {
 
+    @Inject
+    protected TransactionBulkWriter bulkWriter;
+
     @POST
     @Transactional
     public RecurringPaymentDTO create(final RecurringPaymentDTOWithoutId dto) {
+        RecurringPayment.validateHorizon(dto.horizonDays(), dto.horizonCount());
+
         final RecurringPayment payment = new RecurringPayment();
         payment.amount = dto.amount();
         payment.asset = Asset.findById(dto.assetId());
@@ -41,6 +46,8 @@ public class RecurringPaymentEndpoint extends AbstractCRUDEndpoint {
         payment.notBefore = dto.notBefore();
         payment.notAfter = dto.notAfter();
         payment.status = dto.status();
+        payment.horizonDays = dto.horizonDays();
+        payment.horizonCount = dto.horizonCount();
         payment.workspace = Workspace.findById(dto.workspaceId());
 
         if (payment.asset == null
@@ -53,7 +60,7 @@ public class RecurringPaymentEndpoint extends AbstractCRUDEndpoint {
         payment.persist();
 
         final List<Transaction> transactions = payment.generatePayments(Instant.now(), true);
-        Transaction.persist(transactions);
+        bulkWriter.insert(transactions);
 
         return RecurringPaymentDTO.from(payment);
     }
@@ -61,6 +68,8 @@ public class RecurringPaymentEndpoint extends AbstractCRUDEndpoint {
     @PUT
     @Transactional
     public RecurringPaymentDTO patch(final RecurringPaymentDTOWithoutWorkspace dto) {
+        RecurringPayment.validateHorizon(dto.horizonDays(), dto.horizonCount());
+
         final RecurringPayment payment = RecurringPayment.findById(dto.id());
         if (payment == null) throw new NotFoundException();
 
@@ -75,6 +84,8 @@ public class RecurringPaymentEndpoint extends AbstractCRUDEndpoint {
         payment.notBefore = dto.notBefore();
         payment.notAfter = dto.notAfter();
         payment.status = dto.status();
+        payment.horizonDays = dto.horizonDays();
+        payment.horizonCount = dto.horizonCount();
 
         if (payment.asset == null
                 || payment.wallet == null
@@ -99,14 +110,17 @@ public class RecurringPaymentEndpoint extends AbstractCRUDEndpoint {
         final Instant now = Instant.now();
         final RecurringPayment.PaymentUpdateResult result = payment.updatePayments(now, overwriteModified);
 
-        Transaction.delete("id IN ?1", result.delete().stream().map(tx -> tx.id).toList());
-        Transaction.persist(result.create());
+        bulkWriter.insert(result.create());
     }
 
     @GET
     @Transactional
     @Path("/{workspace_id}")
     public PagedResponse<RecurringPaymentDTO> list(final @BeanParam WorkspacedParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(RecurringPayment.class, params, RecurringPaymentDTO::from, "workspace.id = ?1", params.workspaceId);
+        }
+
         final PanacheQuery<RecurringPayment> query = RecurringPayment.find("workspace.id = ?1", params.getSort(), params.workspaceId)
                 .page(params.getPage());
 
@@ -119,14 +133,14 @@ public class RecurringPaymentEndpoint extends AbstractCRUDEndpoint {
     }
 
     @Override
-    protected boolean hasDependents(final long id) {
-        return false;
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        return queryDependents("SELECT r.id, false FROM RecurringPayment r WHERE r.id IN ?1", ids);
     }
 
     @Override
     @Transactional
-    protected void deleteById(final long id) {
-        RecurringPayment.deleteAllOpenScheduledPayments(id);
-        RecurringPayment.deleteById(id);
+    protected void deleteAllById(final Collection<Long> ids) {
+        RecurringPayment.deleteAllOpenScheduledPayments(ids);
+        RecurringPayment.delete("id IN ?1", ids);
     }
 }
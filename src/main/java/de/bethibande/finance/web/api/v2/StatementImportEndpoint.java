@@ -0,0 +1,158 @@
+package de.bethibande.finance.web.api.v2;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.jobs.JobScheduledEvent;
+import de.bethibande.finance.jobs.impl.ImportStatementTask;
+import de.bethibande.finance.model.jpa.*;
+import de.bethibande.finance.model.web.PagedResponse;
+import de.bethibande.finance.security.Roles;
+import de.bethibande.finance.statement.StatementContents;
+import de.bethibande.finance.web.LargeRequestBody;
+import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
+import de.bethibande.finance.web.api.v2.crud.WorkspacedParams;
+import io.quarkus.hibernate.orm.panache.PanacheQuery;
+import io.quarkus.panache.common.Sort;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Uploads bank statements, the statements are imported in the background by the {@link ImportStatementTask}.
+ */
+@Path("/api/v2/import")
+@RolesAllowed({Roles.ADMIN, Roles.USER})
+public class StatementImportEndpoint extends AbstractCRUDEndpoint {
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    protected Event<JobScheduledEvent> scheduledEvent;
+
+    @Inject
+    protected StatementContents contents;
+
+    /**
+     * The statement is streamed into the database in chunks, see {@link StatementContents}. Unlike other requests, the
+     * body may be as large as {@code finance.import.max-size}.
+     *
+     * @param format the format of the statement, detected from the content if not set
+     */
+    @POST
+    @Transactional
+    @LargeRequestBody
+    @Path("/{workspace_id}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public StatementImportDTO createImport(final @PathParam("workspace_id") long workspaceId,
+                                           final @QueryParam("wallet_id") long walletId,
+                                           final @QueryParam("file_name") @DefaultValue("statement") String fileName,
+                                           final @QueryParam("format") StatementFormat format,
+                                           final InputStream content) throws IOException {
+        // Only the first chunk is needed to detect the format
+        final byte[] head = content.readNBytes(StatementContents.CHUNK_SIZE);
+        if (head.length == 0) throw new BadRequestException("The statement is empty");
+
+        final StatementImport statement = new StatementImport();
+        statement.workspace = Workspace.findById(workspaceId);
+        statement.wallet = Wallet.findById(walletId);
+        statement.fileName = fileName;
+        statement.format = format != null ? format : StatementFormat.detect(head);
+
+        if (statement.workspace == null
+                || statement.wallet == null
+                || !statement.wallet.workspace.id.equals(statement.workspace.id)) {
+            throw new NotFoundException();
+        }
+
+        statement.persist();
+        contents.write(statement.id, new SequenceInputStream(new ByteArrayInputStream(head), content));
+
+        final Job job = new Job();
+        job.name = "Import " + fileName;
+        job.type = ImportStatementTask.IDENTIFIER;
+        job.workspace = statement.workspace;
+        job.nextScheduledExecution = Instant.now();
+        try {
+            job.configJson = objectMapper.writeValueAsString(new ImportStatementTask.Config(statement.id, null));
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        job.persist();
+        statement.job = job;
+
+        scheduledEvent.fire(new JobScheduledEvent(job.id, job.nextScheduledExecution));
+
+        return StatementImportDTO.from(statement);
+    }
+
+    @GET
+    @Transactional
+    @Path("/{workspace_id}")
+    public PagedResponse<StatementImportDTO> listImports(final @BeanParam WorkspacedParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(StatementImport.class, params, StatementImportDTO::from, "workspace.id = ?1", params.workspaceId);
+        }
+
+        Sort sort = params.getSort();
+        if (sort.getColumns().isEmpty()) sort = Sort.descending("id");
+
+        final PanacheQuery<StatementImport> query = StatementImport.find("workspace.id = ?1", sort, params.workspaceId)
+                .page(params.getPage());
+
+        return PagedResponse.of(
+                params.page,
+                params.size,
+                query.count(),
+                query.stream().map(StatementImportDTO::from).toList()
+        );
+    }
+
+    /**
+     * Returns the progress of a single import.
+     */
+    @GET
+    @Transactional
+    @Path("/{workspace_id}/{id}")
+    public StatementImportDTO getImport(final @PathParam("workspace_id") long workspaceId,
+                                        final @PathParam("id") long id) {
+        final StatementImport statement = StatementImport.find("id = ?1 AND workspace.id = ?2", id, workspaceId).firstResult();
+        if (statement == null) throw new NotFoundException();
+
+        return StatementImportDTO.from(statement);
+    }
+
+    @Override
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        return queryDependents("""
+                SELECT s.id, CASE WHEN s.status = ?2 THEN true ELSE false END
+                FROM StatementImport s
+                WHERE s.id IN ?1
+                """, ids, StatementImportStatus.RUNNING);
+    }
+
+    /**
+     * Deletes the imports and their jobs, the imported transactions are kept.
+     */
+    @Override
+    protected void deleteAllById(final Collection<Long> ids) {
+        for (final StatementImport statement : StatementImport.<StatementImport>list("id IN ?1", ids)) {
+            final Job job = statement.job;
+            statement.delete();
+            if (job != null) job.delete();
+        }
+    }
+
+}
@@ -3,21 +3,43 @@ package de.bethibande.finance.web.api.v2;
 import de.bethibande.finance.model.jpa.Asset;
 import de.bethibande.finance.model.jpa.Wallet;
 import de.bethibande.finance.model.jpa.Workspace;
+import de.bethibande.finance.model.jpa.discriminator.SourceResolver;
 import de.bethibande.finance.model.jpa.partner.Partner;
 import de.bethibande.finance.model.jpa.transaction.*;
+import de.bethibande.finance.model.web.BatchResult;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.security.Roles;
 import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
+import de.bethibande.finance.web.api.v2.crud.EntityReferences;
+import de.bethibande.finance.web.api.v2.crud.TransactionSearchParams;
 import de.bethibande.finance.web.api.v2.crud.WorkspacedParams;
 import io.quarkus.hibernate.orm.panache.PanacheQuery;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.hibernate.jpa.SpecHints;
+
+import java.util.*;
+import java.util.stream.Stream;
 
 @Path("/api/v2/transaction")
 @RolesAllowed({Roles.ADMIN, Roles.USER})
 public class TransactionEndpoint extends AbstractCRUDEndpoint {
 
+    @Inject
+    protected TransactionExporter exporter;
+
+    @Inject
+    protected TransactionBulkWriter bulkWriter;
+
+    @Inject
+    protected TransactionBookings transactionBookings;
+
     @POST
     @Transactional
     public TransactionDTOWithoutBookedAmounts createTransaction(final TransactionDTOWithoutIdAndBookedAmounts dto) {
@@ -52,6 +74,7 @@ public class TransactionEndpoint extends AbstractCRUDEndpoint {
         final Transaction transaction = Transaction.findById(dto.id());
         if (transaction == null) throw new NotFoundException();
 
+        final Asset previousAsset = transaction.asset;
         transaction.name = dto.name();
         transaction.amount = dto.amount();
         transaction.date = dto.date();
@@ -73,9 +96,148 @@ public class TransactionEndpoint extends AbstractCRUDEndpoint {
             transaction.set(TransactionComponents.USER_MODIFIED, true);
         }
 
+        // The booked sum only includes the amounts booked in the asset of the transaction
+        if (transaction.asset != previousAsset) {
+            transactionBookings.refreshTransactions(List.of(transaction));
+        }
+
         return TransactionDTOWithoutBookedAmounts.from(transaction);
     }
 
+    private static void checkBatchSize(final List<?> items) {
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("Cannot write more than " + MAX_BATCH_SIZE + " entities at once");
+        }
+    }
+
+    /**
+     * Creates many transactions at once, items referencing entities that do not exist are skipped.
+     * The references of all items are resolved using one query per entity type and the transactions are inserted in
+     * JDBC batches, see {@link TransactionBulkWriter}.
+     *
+     * @return the result of each item, in the order of the request
+     */
+    @POST
+    @Transactional
+    @Path("/batch")
+    public List<BatchResult<TransactionDTOWithoutBookedAmounts>> createTransactions(final @NotNull List<TransactionDTOWithoutIdAndBookedAmounts> dtos) {
+        checkBatchSize(dtos);
+
+        final Map<Long, Asset> assets = EntityReferences.findAll(Asset.class, dtos.stream().map(TransactionDTOWithoutIdAndBookedAmounts::assetId));
+        final Map<Long, Wallet> wallets = EntityReferences.findAll(Wallet.class, dtos.stream().map(TransactionDTOWithoutIdAndBookedAmounts::walletId));
+        final Map<Long, Partner> partners = EntityReferences.findAll(Partner.class, dtos.stream().map(TransactionDTOWithoutIdAndBookedAmounts::partnerId));
+        final Map<Long, Transaction> internalRefs = EntityReferences.findAll(Transaction.class, dtos.stream().map(TransactionDTOWithoutIdAndBookedAmounts::internalRefId));
+        final Map<Long, Workspace> workspaces = EntityReferences.findAll(Workspace.class, dtos.stream().map(TransactionDTOWithoutIdAndBookedAmounts::workspaceId));
+
+        final Transaction[] transactions = new Transaction[dtos.size()];
+        for (int i = 0; i < dtos.size(); i++) {
+            final TransactionDTOWithoutIdAndBookedAmounts dto = dtos.get(i);
+            final Transaction transaction = new Transaction();
+            transaction.name = dto.name();
+            transaction.amount = dto.amount();
+            transaction.date = dto.date();
+            transaction.asset = dto.assetId() != null ? assets.get(dto.assetId()) : null;
+            transaction.wallet = dto.walletId() != null ? wallets.get(dto.walletId()) : null;
+            transaction.partner = dto.partnerId() != null ? partners.get(dto.partnerId()) : null;
+            transaction.status = dto.status();
+            transaction.type = dto.type();
+            transaction.internalRef = dto.internalRefId() != null ? internalRefs.get(dto.internalRefId()) : null;
+            transaction.workspace = dto.workspaceId() != null ? workspaces.get(dto.workspaceId()) : null;
+            transaction.notes = dto.notes();
+
+            if (transaction.asset == null
+                    || transaction.wallet == null
+                    || transaction.workspace == null
+                    || (transaction.partner == null && dto.partnerId() != null)
+                    || (transaction.internalRef == null && dto.internalRefId() != null)) {
+                continue;
+            }
+
+            transactions[i] = transaction;
+        }
+
+        bulkWriter.insert(Arrays.stream(transactions).filter(Objects::nonNull).toList());
+
+        final List<BatchResult<TransactionDTOWithoutBookedAmounts>> results = new ArrayList<>(dtos.size());
+        for (int i = 0; i < transactions.length; i++) {
+            results.add(transactions[i] != null
+                    ? BatchResult.ok(i, TransactionDTOWithoutBookedAmounts.from(transactions[i]))
+                    : BatchResult.notFound(i));
+        }
+
+        return results;
+    }
+
+    /**
+     * Updates many transactions at once, items referencing entities that do not exist are skipped.
+     * The transactions and their references are loaded using one query per entity type, the changes are flushed in
+     * JDBC batches when the request completes.
+     *
+     * @return the result of each item, in the order of the request
+     */
+    @PUT
+    @Transactional
+    @Path("/batch")
+    public List<BatchResult<TransactionDTOWithoutBookedAmounts>> updateTransactions(final @NotNull List<TransactionDTOWithoutWorkspaceAndBookedAmounts> dtos) {
+        checkBatchSize(dtos);
+
+        final Map<Long, Transaction> transactions = EntityReferences.findAll(Transaction.class, Stream.concat(
+                dtos.stream().map(TransactionDTOWithoutWorkspaceAndBookedAmounts::id),
+                dtos.stream().map(TransactionDTOWithoutWorkspaceAndBookedAmounts::internalRefId)
+        ));
+        final Map<Long, Asset> assets = EntityReferences.findAll(Asset.class, dtos.stream().map(TransactionDTOWithoutWorkspaceAndBookedAmounts::assetId));
+        final Map<Long, Wallet> wallets = EntityReferences.findAll(Wallet.class, dtos.stream().map(TransactionDTOWithoutWorkspaceAndBookedAmounts::walletId));
+        final Map<Long, Partner> partners = EntityReferences.findAll(Partner.class, dtos.stream().map(TransactionDTOWithoutWorkspaceAndBookedAmounts::partnerId));
+
+        final Transaction[] updated = new Transaction[dtos.size()];
+        final Set<Transaction> assetChanged = new HashSet<>();
+        for (int i = 0; i < dtos.size(); i++) {
+            final TransactionDTOWithoutWorkspaceAndBookedAmounts dto = dtos.get(i);
+            final Transaction transaction = dto.id() != null ? transactions.get(dto.id()) : null;
+            final Asset asset = dto.assetId() != null ? assets.get(dto.assetId()) : null;
+            final Wallet wallet = dto.walletId() != null ? wallets.get(dto.walletId()) : null;
+            final Partner partner = dto.partnerId() != null ? partners.get(dto.partnerId()) : null;
+            final Transaction internalRef = dto.internalRefId() != null ? transactions.get(dto.internalRefId()) : null;
+
+            if (transaction == null
+                    || asset == null
+                    || wallet == null
+                    || (partner == null && dto.partnerId() != null)
+                    || (internalRef == null && dto.internalRefId() != null)) {
+                continue;
+            }
+
+            if (transaction.asset != asset) assetChanged.add(transaction);
+
+            transaction.name = dto.name();
+            transaction.amount = dto.amount();
+            transaction.date = dto.date();
+            transaction.asset = asset;
+            transaction.wallet = wallet;
+            transaction.partner = partner;
+            transaction.status = dto.status();
+            transaction.type = dto.type();
+            transaction.internalRef = internalRef;
+            transaction.notes = dto.notes();
+
+            if (transaction.isGenerated()) {
+                transaction.set(TransactionComponents.USER_MODIFIED, true);
+            }
+
+            updated[i] = transaction;
+        }
+
+        // The booked sums only include the amounts booked in the asset of each transaction
+        transactionBookings.refreshTransactions(assetChanged);
+
+        final List<BatchResult<TransactionDTOWithoutBookedAmounts>> results = new ArrayList<>(dtos.size());
+        for (int i = 0; i < updated.length; i++) {
+            results.add(updated[i] != null ? BatchResult.ok(i, TransactionDTOWithoutBookedAmounts.from(updated[i])) : BatchResult.notFound(i));
+        }
+
+        return results;
+    }
+
     @GET
     @Transactional
     @Path("/{id}/expand")
@@ -86,32 +248,84 @@ public class TransactionEndpoint extends AbstractCRUDEndpoint {
         return TransactionDTOExpanded.from(transaction);
     }
 
+    /**
+     * Maps a page of transactions loaded using the {@link Transaction#GRAPH_EXPANDED} fetch graph, the sources of all
+     * generated transactions are loaded at once.
+     */
+    protected List<TransactionDTOExpanded> expand(final List<Transaction> transactions) {
+        SourceResolver.resolve(transactions);
+        return transactions.stream().map(TransactionDTOExpanded::from).toList();
+    }
+
     @GET
     @Transactional
     @Path("/{workspace_id}")
     public PagedResponse<TransactionDTOExpanded> listTransactions(final @BeanParam WorkspacedParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(Transaction.class, params, Transaction.GRAPH_EXPANDED, this::expand, "workspace.id = ?1", params.workspaceId);
+        }
+
         final PanacheQuery<Transaction> query = Transaction.find("workspace.id = ?1", params.getSort(), params.workspaceId)
+                .withHint(SpecHints.HINT_SPEC_FETCH_GRAPH, Transaction.getEntityManager().getEntityGraph(Transaction.GRAPH_EXPANDED))
                 .page(params.getPage());
 
         return PagedResponse.of(
                 params.page,
                 params.size,
                 query.count(),
-                query.stream().map(TransactionDTOExpanded::from).toList()
+                expand(query.list())
         );
     }
 
+    /**
+     * Searches the transactions of the workspace, see {@link TransactionSearchParams} for the available filters.
+     * Results are always paged using keyset pagination, see {@link de.bethibande.finance.web.api.v2.crud.CursorPagination},
+     * a missing cursor requests the first page.
+     */
+    @GET
+    @Transactional
+    @Path("/{workspace_id}/search")
+    public PagedResponse<TransactionDTOExpanded> searchTransactions(final @BeanParam TransactionSearchParams params) {
+        if (params.cursor == null) params.cursor = "";
+
+        final List<Object> parameters = new ArrayList<>();
+        final String query = params.toQuery(parameters);
+
+        return cursorPagination.list(Transaction.class, params, Transaction.GRAPH_EXPANDED, this::expand, query, parameters.toArray());
+    }
+
+    /**
+     * Streams all transactions of the workspace including their booked amounts, see {@link TransactionExporter}.
+     */
+    @GET
+    @Path("/{workspace_id}/export")
+    @Produces({"application/x-ndjson", "text/csv"})
+    public Response exportTransactions(final @PathParam("workspace_id") long workspaceId,
+                                       final @QueryParam("format") @DefaultValue("ndjson") ExportFormat format) {
+        if (Workspace.count("id = ?1", workspaceId) == 0) throw new NotFoundException();
+
+        final StreamingOutput output = out -> exporter.export(workspaceId, format, out);
+
+        return Response.ok(output, format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"transactions-" + workspaceId + "." + format.getExtension() + "\"")
+                .build();
+    }
+
     @Override
-    protected void deleteById(final long id) {
-        Transaction.deleteById(id);
+    protected void deleteAllById(final Collection<Long> ids) {
+        Transaction.delete("id IN ?1", ids);
     }
 
     @Override
-    protected boolean hasDependents(final long id) {
-        if (Transaction.count("id = ?1 AND sourceId IS NOT NULL", id) > 0) return true;
-        if (BookedAmount.count("transaction.id = ?1", id) > 0) return true;
-        if (Transaction.count("internalRef.id = ?1", id) > 0) return true;
-        return false;
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        return queryDependents("""
+                SELECT t.id, CASE WHEN t.sourceId IS NOT NULL
+                    OR EXISTS (SELECT 1 FROM BookedAmount b WHERE b.transaction = t)
+                    OR EXISTS (SELECT 1 FROM Transaction r WHERE r.internalRef = t)
+                THEN true ELSE false END
+                FROM Transaction t
+                WHERE t.id IN ?1
+                """, ids);
     }
 
 }
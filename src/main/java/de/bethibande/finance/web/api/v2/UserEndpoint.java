@@ -6,10 +6,12 @@ import de.bethibande.finance.model.jpa.UserDTOWithoutNameAndRoles;
 import de.bethibande.finance.model.jpa.UserDTOWithoutPassword;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.security.Roles;
+import de.bethibande.finance.web.api.v2.crud.CursorPagination;
 import de.bethibande.finance.web.api.v2.crud.PaginationParams;
 import io.quarkus.elytron.security.common.BcryptUtil;
 import io.quarkus.hibernate.orm.panache.PanacheQuery;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 
@@ -17,6 +19,9 @@ import jakarta.ws.rs.*;
 @RolesAllowed(Roles.ADMIN)
 public class UserEndpoint {
 
+    @Inject
+    protected CursorPagination cursorPagination;
+
     @POST
     @Transactional
     public UserDTOWithoutPassword createUser(final UserDTOWithoutId userDTO) {
@@ -64,6 +69,10 @@ public class UserEndpoint {
     @GET
     @Transactional
     public PagedResponse<UserDTOWithoutPassword> listUsers(final @BeanParam PaginationParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(User.class, params, UserDTOWithoutPassword::from, "1 = 1");
+        }
+
         final PanacheQuery<User> query = User.findAll(params.getSort())
                 .page(params.getPage());
 
@@ -1,23 +1,38 @@
 package de.bethibande.finance.web.api.v2;
 
 import de.bethibande.finance.model.jpa.*;
+import de.bethibande.finance.model.jpa.forecast.CashFlowForecaster;
 import de.bethibande.finance.model.jpa.partner.Partner;
-import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
-import de.bethibande.finance.model.jpa.transaction.BookedAmount;
-import de.bethibande.finance.model.jpa.transaction.Transaction;
+import de.bethibande.finance.model.jpa.transaction.BalanceSnapshots;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.security.Roles;
 import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
 import de.bethibande.finance.web.api.v2.crud.WorkspacedParams;
 import io.quarkus.hibernate.orm.panache.PanacheQuery;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 @Path("/api/v2/wallet")
 @RolesAllowed({Roles.ADMIN, Roles.USER})
 public class WalletEndpoint extends AbstractCRUDEndpoint {
 
+    public static final int MAX_FORECAST_YEARS = 100;
+
+    @Inject
+    protected BalanceSnapshots balanceSnapshots;
+
+    @Inject
+    protected CashFlowForecaster forecaster;
+
     @POST
     @Transactional
     public WalletDTO createWallet(final WalletDTOWithoutId dto) {
@@ -60,6 +75,10 @@ public class WalletEndpoint extends AbstractCRUDEndpoint {
     @Transactional
     @Path("/{workspace_id}")
     public PagedResponse<WalletDTOExpanded> listWallets(final @BeanParam WorkspacedParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(Wallet.class, params, WalletDTOExpanded::from, "workspace.id = ?1", params.workspaceId);
+        }
+
         final PanacheQuery<Wallet> query = Wallet.find("workspace.id = ?1", params.getSort(), params.workspaceId)
                 .page(params.getPage());
 
@@ -71,17 +90,142 @@ public class WalletEndpoint extends AbstractCRUDEndpoint {
         );
     }
 
+    /**
+     * @return the balance of the wallet in each asset it holds, see {@link WalletBalance}
+     */
+    @GET
+    @Transactional
+    @Path("/{id}/balance")
+    public List<WalletBalanceDTO> getBalance(final @PathParam("id") long id) {
+        if (Wallet.count("id = ?1", id) == 0) throw new NotFoundException();
+
+        return WalletBalance.<WalletBalance>list("wallet.id = ?1 ORDER BY asset.code", id)
+                .stream()
+                .map(WalletBalanceDTO::from)
+                .toList();
+    }
+
+    @GET
+    @Transactional
+    @Path("/{workspace_id}/balances")
+    public List<WalletBalanceDTO> getBalances(final @PathParam("workspace_id") long workspaceId) {
+        return WalletBalance.<WalletBalance>list("wallet.workspace.id = ?1 ORDER BY wallet.id, asset.code", workspaceId)
+                .stream()
+                .map(WalletBalanceDTO::from)
+                .toList();
+    }
+
+    private List<BalanceHistoryDTO> history(final long workspaceId,
+                                            final Long walletId,
+                                            LocalDate from,
+                                            LocalDate to,
+                                            final int maxPoints) {
+        if (to == null) to = LocalDate.now(ZoneOffset.UTC);
+        if (from == null) from = to.minusYears(1).plusDays(1);
+        if (from.isAfter(to)) throw new BadRequestException("from must not be after to");
+        if (maxPoints < 1 || maxPoints > BalanceSnapshots.MAX_POINTS) {
+            throw new BadRequestException("max_points must be between 1 and " + BalanceSnapshots.MAX_POINTS);
+        }
+
+        return balanceSnapshots.history(workspaceId, walletId, from, to, maxPoints);
+    }
+
+    /**
+     * Returns the balance of the wallet in each asset at the end of each day (UTC) of the given range, the last year
+     * by default. Longer ranges are downsampled to at most {@code max_points} points per asset.
+     * The history is read from the {@link BalanceSnapshot}s and may lag behind the latest bookings until the
+     * {@link de.bethibande.finance.jobs.impl.BalanceSnapshotsTask} of the workspace has run.
+     */
+    @GET
+    @Transactional
+    @Path("/{id}/balance/history")
+    public List<BalanceHistoryDTO> getBalanceHistory(final @PathParam("id") long id,
+                                                     final @QueryParam("from") LocalDate from,
+                                                     final @QueryParam("to") LocalDate to,
+                                                     final @QueryParam("max_points") @DefaultValue("366") int maxPoints) {
+        final Wallet wallet = Wallet.findById(id);
+        if (wallet == null) throw new NotFoundException();
+
+        return history(wallet.workspace.id, id, from, to, maxPoints);
+    }
+
+    /**
+     * Same as {@link #getBalanceHistory(long, LocalDate, LocalDate, int)}, summing up the balances of all wallets.
+     */
+    @GET
+    @Transactional
+    @Path("/{workspace_id}/balances/history")
+    public List<BalanceHistoryDTO> getBalancesHistory(final @PathParam("workspace_id") long workspaceId,
+                                                      final @QueryParam("from") LocalDate from,
+                                                      final @QueryParam("to") LocalDate to,
+                                                      final @QueryParam("max_points") @DefaultValue("366") int maxPoints) {
+        return history(workspaceId, null, from, to, maxPoints);
+    }
+
+    private List<BalanceHistoryDTO> forecast(final long workspaceId,
+                                             final Long walletId,
+                                             LocalDate until,
+                                             final int maxPoints) {
+        final Instant now = Instant.now();
+        final LocalDate today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+
+        if (until == null) until = today.plusYears(1);
+        if (until.isBefore(today)) throw new BadRequestException("until must not be in the past");
+        if (until.isAfter(today.plusYears(MAX_FORECAST_YEARS))) {
+            throw new BadRequestException("until must be within " + MAX_FORECAST_YEARS + " years");
+        }
+        if (maxPoints < 1 || maxPoints > BalanceSnapshots.MAX_POINTS) {
+            throw new BadRequestException("max_points must be between 1 and " + BalanceSnapshots.MAX_POINTS);
+        }
+
+        return forecaster.forecast(workspaceId, walletId, now, until, maxPoints);
+    }
+
+    /**
+     * Forecasts the balance of the wallet in each asset at the end of each day (UTC) from today until the given day,
+     * one year from now by default, see {@link CashFlowForecaster}. Longer ranges are downsampled to at most
+     * {@code max_points} points per asset.
+     */
+    @GET
+    @Transactional
+    @Path("/{id}/balance/forecast")
+    public List<BalanceHistoryDTO> getBalanceForecast(final @PathParam("id") long id,
+                                                      final @QueryParam("until") LocalDate until,
+                                                      final @QueryParam("max_points") @DefaultValue("366") int maxPoints) {
+        final Wallet wallet = Wallet.findById(id);
+        if (wallet == null) throw new NotFoundException();
+
+        return forecast(wallet.workspace.id, id, until, maxPoints);
+    }
+
+    /**
+     * Same as {@link #getBalanceForecast(long, LocalDate, int)}, summing up the balances of all wallets.
+     */
+    @GET
+    @Transactional
+    @Path("/{workspace_id}/balances/forecast")
+    public List<BalanceHistoryDTO> getBalancesForecast(final @PathParam("workspace_id") long workspaceId,
+                                                       final @QueryParam("until") LocalDate until,
+                                                       final @QueryParam("max_points") @DefaultValue("366") int maxPoints) {
+        return forecast(workspaceId, null, until, maxPoints);
+    }
+
     @Override
-    protected void deleteById(final long id) {
-        Wallet.deleteById(id);
+    protected void deleteAllById(final Collection<Long> ids) {
+        Wallet.delete("id IN ?1", ids);
     }
 
     @Override
-    protected boolean hasDependents(final long id) {
-        if (Transaction.count("wallet.id = ?1", id) > 0) return true;
-        if (BookedAmount.count("wallet.id = ?1", id) > 0) return true;
-        if (RecurringPayment.count("wallet.id = ?1", id) > 0) return true;
-        return false;
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        return queryDependents("""
+                SELECT w.id, CASE WHEN EXISTS (SELECT 1 FROM Transaction t WHERE t.wallet = w)
+                    OR EXISTS (SELECT 1 FROM BookedAmount b WHERE b.wallet = w)
+                    OR EXISTS (SELECT 1 FROM RecurringPayment r WHERE r.wallet = w)
+                    OR EXISTS (SELECT 1 FROM StatementImport s WHERE s.wallet = w)
+                THEN true ELSE false END
+                FROM Wallet w
+                WHERE w.id IN ?1
+                """, ids);
     }
 
 }
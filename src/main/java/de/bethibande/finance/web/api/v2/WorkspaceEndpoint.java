@@ -4,19 +4,29 @@ import de.bethibande.finance.model.jpa.Asset;
 import de.bethibande.finance.model.jpa.Workspace;
 import de.bethibande.finance.model.jpa.WorkspaceDTO;
 import de.bethibande.finance.model.jpa.WorkspaceDTOWithoutId;
+import de.bethibande.finance.model.jpa.valuation.PortfolioValuator;
+import de.bethibande.finance.model.jpa.valuation.ValuationDTO;
 import de.bethibande.finance.model.web.PagedResponse;
 import de.bethibande.finance.security.Roles;
 import de.bethibande.finance.web.api.v2.crud.AbstractCRUDEndpoint;
 import de.bethibande.finance.web.api.v2.crud.PaginationParams;
 import io.quarkus.hibernate.orm.panache.PanacheQuery;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
 @Path("/api/v2/workspace")
 @RolesAllowed({Roles.ADMIN, Roles.USER})
 public class WorkspaceEndpoint extends AbstractCRUDEndpoint {
 
+    @Inject
+    protected PortfolioValuator valuator;
+
     @POST
     @Transactional
     public WorkspaceDTO createWorkspace(final WorkspaceDTOWithoutId dto) {
@@ -41,6 +51,10 @@ public class WorkspaceEndpoint extends AbstractCRUDEndpoint {
     @GET
     @Transactional
     public PagedResponse<WorkspaceDTO> listWorkspaces(final @BeanParam PaginationParams params) {
+        if (params.isCursorMode()) {
+            return cursorPagination.list(Workspace.class, params, WorkspaceDTO::from, "1 = 1");
+        }
+
         final PanacheQuery<Workspace> query = Workspace.findAll(params.getSort())
                 .page(params.getPage());
 
@@ -52,14 +66,38 @@ public class WorkspaceEndpoint extends AbstractCRUDEndpoint {
         );
     }
 
+    /**
+     * Values all wallets of the workspace in the given base asset, see {@link PortfolioValuator}.
+     *
+     * @param date the valuation is made at the end of this day (UTC), the current valuation if not set
+     */
+    @GET
+    @Transactional
+    @Path("/{workspace_id}/valuation")
+    public ValuationDTO getValuation(final @PathParam("workspace_id") long workspaceId,
+                                     final @QueryParam("base_asset_id") Long baseAssetId,
+                                     final @QueryParam("date") LocalDate date) {
+        if (baseAssetId == null) throw new BadRequestException("base_asset_id is required");
+        if (Asset.count("id = ?1 AND workspace.id = ?2", baseAssetId, workspaceId) == 0) throw new NotFoundException();
+
+        return valuator.value(workspaceId, baseAssetId, date);
+    }
+
     @Override
-    protected boolean hasDependents(final long id) {
-        // All workspace-bound entities directly or indirectly depend on an asset, if there are no assets, then the workspace is empty
-        return Asset.find("workspace.id = ?1", id).count() > 0;
+    protected Map<Long, Boolean> findDependents(final Collection<Long> ids) {
+        // All workspace-bound entities directly or indirectly depend on an asset, if there are no assets, then the workspace is empty.
+        // Statement imports are checked explicitly, so a failed import cannot make the delete fail on its foreign key
+        return queryDependents("""
+                SELECT w.id, CASE WHEN EXISTS (SELECT 1 FROM Asset a WHERE a.workspace = w)
+                    OR EXISTS (SELECT 1 FROM StatementImport s WHERE s.workspace = w)
+                THEN true ELSE false END
+                FROM Workspace w
+                WHERE w.id IN ?1
+                """, ids);
     }
 
     @Override
-    protected void deleteById(final long id) {
-        Workspace.deleteById(id);
+    protected void deleteAllById(final Collection<Long> ids) {
+        Workspace.delete("id IN ?1", ids);
     }
 }
@@ -1,23 +1,72 @@
 package de.bethibande.finance.web.api.v2.crud;
 
+import de.bethibande.finance.model.web.DeleteResult;
 import de.bethibande.finance.model.web.ErrorResponse;
 import de.bethibande.finance.security.Roles;
+import io.quarkus.hibernate.orm.panache.Panache;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.persistence.TypedQuery;
 import jakarta.transaction.Transactional;
-import jakarta.ws.rs.DELETE;
-import jakarta.ws.rs.Path;
-import jakarta.ws.rs.PathParam;
+import jakarta.validation.constraints.NotNull;
+import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Response;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 
+import java.util.*;
+
 @RolesAllowed({Roles.ADMIN, Roles.USER})
 public abstract class AbstractCRUDEndpoint {
 
-    protected abstract boolean hasDependents(final long id);
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    @Inject
+    protected CursorPagination cursorPagination;
+
+    /**
+     * Checks which of the given ids exist and whether they have dependent resources, using a single query.
+     * See {@link #queryDependents(String, Collection, Object...)}.
+     *
+     * @return whether each of the given ids that exists has dependent resources, ids that do not exist are missing
+     */
+    protected abstract Map<Long, Boolean> findDependents(final Collection<Long> ids);
+
+    /**
+     * Deletes the given ids, all of which exist and have no dependent resources.
+     */
+    protected abstract void deleteAllById(final Collection<Long> ids);
+
+    protected boolean hasDependents(final long id) {
+        return findDependents(List.of(id)).getOrDefault(id, false);
+    }
+
+    protected void deleteById(final long id) {
+        deleteAllById(List.of(id));
+    }
+
+    /**
+     * Runs a dependency check query, the query must select the id and a boolean whether the entity has dependent
+     * resources. The ids are bound to {@code ?1}, the given parameters to {@code ?2} and up.
+     */
+    protected static Map<Long, Boolean> queryDependents(final String query,
+                                                        final Collection<Long> ids,
+                                                        final Object... parameters) {
+        final TypedQuery<Object[]> typedQuery = Panache.getEntityManager()
+                .createQuery(query, Object[].class)
+                .setParameter(1, ids);
+        for (int i = 0; i < parameters.length; i++) {
+            typedQuery.setParameter(i + 2, parameters[i]);
+        }
+
+        final Map<Long, Boolean> dependents = new HashMap<>();
+        for (final Object[] row : typedQuery.getResultList()) {
+            dependents.put((Long) row[0], (Boolean) row[1]);
+        }
 
-    protected abstract void deleteById(final long id);
+        return dependents;
+    }
 
     @DELETE
     @Path("/{id}")
@@ -45,4 +94,39 @@ public abstract class AbstractCRUDEndpoint {
         return Response.ok().build();
     }
 
+    /**
+     * Deletes all given resources that exist and have no dependent resources, the others are kept.
+     * The dependents of all resources are checked using a single query.
+     *
+     * @return the result for each distinct id, in the order of the request
+     */
+    @POST
+    @Path("/batch-delete")
+    @Transactional
+    public List<DeleteResult> deleteAll(final @NotNull List<Long> ids) {
+        final Set<Long> distinct = new LinkedHashSet<>(ids);
+        if (distinct.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("Cannot delete more than " + MAX_BATCH_SIZE + " resources at once");
+        }
+        if (distinct.isEmpty()) return List.of();
+
+        final Map<Long, Boolean> dependents = findDependents(distinct);
+        final List<Long> deletable = new ArrayList<>();
+        final List<DeleteResult> results = new ArrayList<>(distinct.size());
+        for (final long id : distinct) {
+            final Boolean hasDependents = dependents.get(id);
+            if (hasDependents == null) {
+                results.add(new DeleteResult(id, DeleteResult.Status.NOT_FOUND));
+            } else if (hasDependents) {
+                results.add(new DeleteResult(id, DeleteResult.Status.CONFLICT));
+            } else {
+                results.add(new DeleteResult(id, DeleteResult.Status.DELETED));
+                deletable.add(id);
+            }
+        }
+
+        if (!deletable.isEmpty()) deleteAllById(deletable);
+        return results;
+    }
+
 }
@@ -0,0 +1,298 @@
+package de.bethibande.finance.web.api.v2.crud;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.bethibande.finance.model.web.PagedResponse;
+import de.bethibande.finance.web.api.v1.crud.CRUDSortOrder;
+import io.quarkus.hibernate.orm.panache.Panache;
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import io.quarkus.panache.common.Sort;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import jakarta.ws.rs.BadRequestException;
+import org.hibernate.jpa.SpecHints;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Keyset pagination for the v2 list endpoints, enabled by the {@code cursor} query parameter.
+ * <br>
+ * Instead of skipping rows using OFFSET, each page continues right after the last row of the previous one using a
+ * seek predicate on the requested sort keys, followed by the id as tie-breaker. The cost of a page therefore does not
+ * depend on its position. The returned cursors are opaque to clients, they contain the sort key values of the first
+ * or last row of the page and are only valid for the sort order they were created with.
+ * <br>
+ * Null values are ordered like in {@link PaginationParams#getSort()}, first when ascending and last when descending.
+ */
+@ApplicationScoped
+public class CursorPagination {
+
+    private static final Pattern FIELD = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)*");
+
+    private record Key(String field, boolean ascending, Class<?> type) {
+
+        private Key reversed() {
+            return new Key(field, !ascending, type);
+        }
+
+    }
+
+    private record Cursor(boolean backward, List<Object> values) {
+    }
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    /**
+     * Lists a page of entities matching the given query.
+     *
+     * @param query      the where clause, using positional parameters like {@code workspace.id = ?1}
+     * @param parameters the parameters of the query
+     */
+    public <E extends PanacheEntityBase, T> PagedResponse<T> list(final Class<E> type,
+                                                                  final PaginationParams params,
+                                                                  final Function<E, T> mapper,
+                                                                  final String query,
+                                                                  final Object... parameters) {
+        return list(type, params, null, rows -> rows.stream().map(mapper).toList(), query, parameters);
+    }
+
+    /**
+     * Lists a page of entities matching the given query, mapping the whole page at once.
+     *
+     * @param fetchGraph the name of an entity graph used as fetch graph, may be null
+     * @param mapper     maps all rows of the page, e.g. to batch load data needed by the DTOs
+     * @param query      the where clause, using positional parameters like {@code workspace.id = ?1}
+     * @param parameters the parameters of the query
+     */
+    public <E extends PanacheEntityBase, T> PagedResponse<T> list(final Class<E> type,
+                                                                  final PaginationParams params,
+                                                                  final String fetchGraph,
+                                                                  final Function<List<E>, List<T>> mapper,
+                                                                  final String query,
+                                                                  final Object... parameters) {
+        final EntityManager em = Panache.getEntityManager(type);
+        final EntityType<E> entity = em.getMetamodel().entity(type);
+
+        final List<Key> keys = resolveKeys(entity, params.getSortOrders());
+        final Cursor cursor = params.cursor.isBlank() ? null : decode(params.cursor, keys);
+        final boolean backward = cursor != null && cursor.backward();
+        final List<Key> effective = backward ? keys.stream().map(Key::reversed).toList() : keys;
+
+        final List<Object> values = new ArrayList<>(Arrays.asList(parameters));
+        final StringBuilder hql = new StringBuilder("SELECT e, ").append(select(keys))
+                .append(" FROM ").append(entity.getName()).append(" e")
+                .append(" WHERE (").append(query).append(')');
+
+        if (cursor != null) hql.append(" AND (").append(seek(effective, cursor.values(), values)).append(')');
+        hql.append(" ORDER BY ").append(orderBy(effective));
+
+        // The key values are selected alongside the entities, they are needed for the cursors of the first and last row
+        final TypedQuery<Object[]> page = em.createQuery(hql.toString(), Object[].class);
+        if (fetchGraph != null) page.setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, em.getEntityGraph(fetchGraph));
+        bind(page, values);
+
+        final List<Object[]> result = new ArrayList<>(page.setMaxResults(params.size + 1).getResultList());
+        final boolean more = result.size() > params.size;
+        if (more) result.removeLast();
+        if (backward) Collections.reverse(result);
+
+        String next = null;
+        String prev = null;
+        if (!result.isEmpty()) {
+            if (backward || more) next = encode(new Cursor(false, keyValues(result.getLast())), keys);
+            if (backward ? more : cursor != null) prev = encode(new Cursor(true, keyValues(result.getFirst())), keys);
+        }
+
+        final List<E> rows = result.stream().map(row -> type.cast(row[0])).toList();
+
+        Long count = null;
+        if (params.isCountRequested()) {
+            final TypedQuery<Long> countQuery = em.createQuery("SELECT count(*) FROM " + entity.getName() + " WHERE " + query, Long.class);
+            bind(countQuery, Arrays.asList(parameters));
+            count = countQuery.getSingleResult();
+        }
+
+        return PagedResponse.ofCursor(params.size, count, mapper.apply(rows), next, prev);
+    }
+
+    private static void bind(final TypedQuery<?> query, final List<Object> values) {
+        for (int i = 0; i < values.size(); i++) {
+            query.setParameter(i + 1, values.get(i));
+        }
+    }
+
+    private static List<Key> resolveKeys(final EntityType<?> entity, final List<CRUDSortOrder> orders) {
+        final String idField = entity.getId(entity.getIdType().getJavaType()).getName();
+        final List<Key> keys = new ArrayList<>(orders.size() + 1);
+
+        for (final CRUDSortOrder order : orders) {
+            if (order.field() == null || !FIELD.matcher(order.field()).matches()) {
+                throw new BadRequestException("Bad sort field: " + order.field());
+            }
+
+            final boolean ascending = order.direction() != Sort.Direction.Descending;
+            keys.add(resolveKey(entity, order.field(), ascending));
+        }
+
+        if (keys.stream().noneMatch(key -> key.field().equals(idField))) {
+            keys.add(new Key(idField, true, entity.getIdType().getJavaType()));
+        }
+
+        return keys;
+    }
+
+    private static Key resolveKey(final ManagedType<?> root, final String field, final boolean ascending) {
+        final String[] parts = field.split("\\.");
+        ManagedType<?> type = root;
+
+        for (int i = 0; i < parts.length; i++) {
+            final Attribute<?, ?> attribute;
+            try {
+                attribute = type.getAttribute(parts[i]);
+            } catch (final IllegalArgumentException ex) {
+                throw new BadRequestException("Unknown sort field: " + field);
+            }
+
+            final boolean last = i == parts.length - 1;
+            if (last && attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC) {
+                return new Key(field, ascending, attribute.getJavaType());
+            }
+
+            if (!(attribute instanceof SingularAttribute<?, ?> singular) || !(singular.getType() instanceof EntityType<?> target)) {
+                throw new BadRequestException("Cannot sort by " + field);
+            }
+
+            // Sorting by an association sorts by its id
+            if (last) {
+                final SingularAttribute<?, ?> id = target.getId(target.getIdType().getJavaType());
+                return new Key(field + "." + id.getName(), ascending, id.getJavaType());
+            }
+
+            type = target;
+        }
+
+        throw new BadRequestException("Cannot sort by " + field);
+    }
+
+    private static String orderBy(final List<Key> keys) {
+        final StringJoiner joiner = new StringJoiner(", ");
+        for (final Key key : keys) {
+            joiner.add(key.ascending() ? key.field() + " ASC NULLS FIRST" : key.field() + " DESC NULLS LAST");
+        }
+
+        return joiner.toString();
+    }
+
+    /**
+     * Builds the predicate matching all rows ordered after the given key values, that is
+     * {@code k1 > v1 OR (k1 = v1 AND k2 > v2) OR ...} with the comparisons adjusted for direction and null values.
+     */
+    private static String seek(final List<Key> keys, final List<Object> boundary, final List<Object> values) {
+        final StringJoiner or = new StringJoiner(" OR ");
+
+        for (int i = 0; i < keys.size(); i++) {
+            final String after = after(keys.get(i), boundary.get(i), values);
+            if (after == null) continue;
+
+            final StringJoiner and = new StringJoiner(" AND ", "(", ")");
+            for (int j = 0; j < i; j++) {
+                and.add(equal(keys.get(j), boundary.get(j), values));
+            }
+            and.add(after);
+
+            or.add(and.toString());
+        }
+
+        return or.length() > 0 ? or.toString() : "1 = 0";
+    }
+
+    private static String equal(final Key key, final Object value, final List<Object> values) {
+        if (value == null) return key.field() + " IS NULL";
+
+        values.add(value);
+        return key.field() + " = ?" + values.size();
+    }
+
+    /**
+     * @return the predicate matching rows ordered after the given value by this key alone, null if there are none
+     */
+    private static String after(final Key key, final Object value, final List<Object> values) {
+        if (key.ascending()) {
+            if (value == null) return key.field() + " IS NOT NULL";
+
+            values.add(value);
+            return key.field() + " > ?" + values.size();
+        }
+
+        if (value == null) return null;
+
+        values.add(value);
+        return "(" + key.field() + " < ?" + values.size() + " OR " + key.field() + " IS NULL)";
+    }
+
+    private static String select(final List<Key> keys) {
+        final StringJoiner joiner = new StringJoiner(", ");
+        keys.forEach(key -> joiner.add(key.field()));
+        return joiner.toString();
+    }
+
+    /**
+     * @param row a row of the page query, the entity followed by the values of its keys
+     */
+    private static List<Object> keyValues(final Object[] row) {
+        return Arrays.asList(row).subList(1, row.length);
+    }
+
+    private static String signature(final List<Key> keys) {
+        final StringJoiner joiner = new StringJoiner(",");
+        keys.forEach(key -> joiner.add(key.field() + (key.ascending() ? "+" : "-")));
+        return joiner.toString();
+    }
+
+    private String encode(final Cursor cursor, final List<Key> keys) {
+        final ObjectNode node = objectMapper.createObjectNode();
+        node.put("b", cursor.backward());
+        node.put("s", signature(keys));
+        node.set("k", objectMapper.valueToTree(cursor.values()));
+
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(node));
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cursor cannot be serialized", e);
+        }
+    }
+
+    private Cursor decode(final String cursor, final List<Key> keys) {
+        try {
+            final JsonNode node = objectMapper.readTree(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            final JsonNode values = node.path("k");
+
+            if (!signature(keys).equals(node.path("s").asText()) || values.size() != keys.size()) {
+                throw new BadRequestException("Cursor does not match the sort order");
+            }
+
+            final List<Object> parsed = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                final JsonNode value = values.get(i);
+                parsed.add(value.isNull() ? null : objectMapper.treeToValue(value, keys.get(i).type()));
+            }
+
+            return new Cursor(node.path("b").asBoolean(), parsed);
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new BadRequestException("Bad cursor");
+        }
+    }
+
+}
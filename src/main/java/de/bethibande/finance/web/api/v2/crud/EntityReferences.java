@@ -0,0 +1,38 @@
+package de.bethibande.finance.web.api.v2.crud;
+
+import io.quarkus.hibernate.orm.panache.Panache;
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the entities referenced by the items of a batch request, using a single query per entity type instead of
+ * one lookup per item and reference.
+ */
+public final class EntityReferences {
+
+    private EntityReferences() {
+    }
+
+    /**
+     * Loads all entities with the given ids, null ids are ignored.
+     *
+     * @return the loaded entities by id, ids that do not exist are missing
+     */
+    public static <T extends PanacheEntity> Map<Long, T> findAll(final Class<T> type, final Stream<Long> ids) {
+        final List<Long> distinct = ids.filter(Objects::nonNull).distinct().toList();
+        if (distinct.isEmpty()) return Map.of();
+
+        final Map<Long, T> entities = new HashMap<>();
+        for (final T entity : Panache.getSession().findMultiple(type, distinct)) {
+            if (entity != null) entities.put(entity.id, entity);
+        }
+
+        return entities;
+    }
+
+}
@@ -30,6 +30,19 @@ public class PaginationParams {
     @QueryParam("sort[]")
     public List<String> sortOrders;
 
+    /**
+     * Enables keyset pagination, see {@link CursorPagination}. An empty value requests the first page, any other value
+     * must be a cursor returned by a previous response.
+     */
+    @QueryParam("cursor")
+    public String cursor;
+
+    /**
+     * Whether to include the total number of elements, defaults to true for offset and false for cursor pagination.
+     */
+    @QueryParam("count")
+    public Boolean count;
+
     @Inject
     protected ObjectMapper objectMapper;
 
@@ -37,8 +50,21 @@ public class PaginationParams {
         return Page.of(this.page, this.size);
     }
 
+    public boolean isCursorMode() {
+        return cursor != null;
+    }
+
+    public boolean isCountRequested() {
+        return count != null ? count : !isCursorMode();
+    }
+
+    public List<CRUDSortOrder> getSortOrders() {
+        if (sortOrders == null) return List.of();
+        return sortOrders.stream().map(this::parseSortOrder).toList();
+    }
+
     public Sort getSort() {
-        final List<CRUDSortOrder> orders = sortOrders.stream().map(this::parseSortOrder).toList();
+        final List<CRUDSortOrder> orders = getSortOrders();
         final Sort sort = Sort.empty();
         for (final CRUDSortOrder order : orders) {
             sort.and(
@@ -0,0 +1,139 @@
+package de.bethibande.finance.web.api.v2.crud;
+
+import de.bethibande.finance.model.jpa.transaction.TransactionStatus;
+import de.bethibande.finance.model.jpa.transaction.TransactionType;
+import de.bethibande.finance.web.api.v1.crud.CRUDSortOrder;
+import io.quarkus.hibernate.orm.panache.Panache;
+import io.quarkus.panache.common.Sort;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.QueryParam;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * The filters of the transaction search, all of them are optional and combined using AND. List filters match any of
+ * their values.
+ */
+public class TransactionSearchParams extends WorkspacedParams {
+
+    private static final List<CRUDSortOrder> DEFAULT_SORT = List.of(new CRUDSortOrder("date", Sort.Direction.Descending));
+
+    /**
+     * Case-insensitive substring of the name, the notes or the name of the partner.
+     */
+    @QueryParam("query")
+    public String query;
+
+    /**
+     * Inclusive
+     */
+    @QueryParam("from")
+    public Instant from;
+
+    /**
+     * Exclusive
+     */
+    @QueryParam("to")
+    public Instant to;
+
+    @QueryParam("status[]")
+    public List<TransactionStatus> statuses;
+
+    @QueryParam("type[]")
+    public List<TransactionType> types;
+
+    @QueryParam("wallet[]")
+    public List<Long> walletIds;
+
+    @QueryParam("asset[]")
+    public List<Long> assetIds;
+
+    @QueryParam("partner[]")
+    public List<Long> partnerIds;
+
+    /**
+     * Inclusive
+     */
+    @QueryParam("min_amount")
+    public BigDecimal minAmount;
+
+    /**
+     * Inclusive
+     */
+    @QueryParam("max_amount")
+    public BigDecimal maxAmount;
+
+    /**
+     * The newest transactions first, unless requested otherwise.
+     */
+    @Override
+    public List<CRUDSortOrder> getSortOrders() {
+        final List<CRUDSortOrder> orders = super.getSortOrders();
+        return orders.isEmpty() ? DEFAULT_SORT : orders;
+    }
+
+    private static String escapeLike(final String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    /**
+     * Renders the filters as an HQL predicate over {@link de.bethibande.finance.model.jpa.transaction.Transaction}
+     * using positional parameters.
+     * <br>
+     * The text search uses ILIKE, which can use the trigram indices of the name and notes columns. Matching partners
+     * are looked up first, a list of ids can be combined with the other indices unlike a subquery or join.
+     *
+     * @param parameters the parameters of the query, the workspace id is bound to {@code ?1}
+     */
+    public String toQuery(final List<Object> parameters) {
+        if (from != null && to != null && !from.isBefore(to)) throw new BadRequestException("from must be before to");
+        if (minAmount != null && maxAmount != null && minAmount.compareTo(maxAmount) > 0) {
+            throw new BadRequestException("min_amount must not be greater than max_amount");
+        }
+
+        parameters.add(workspaceId);
+        final StringJoiner and = new StringJoiner(" AND ");
+        and.add("workspace.id = ?1");
+
+        if (query != null && !query.isBlank()) {
+            final String pattern = "%" + escapeLike(query.strip()) + "%";
+            final List<Long> partners = Panache.getEntityManager()
+                    .createQuery("SELECT p.id FROM Partner p WHERE p.workspace.id = ?1 AND p.name ILIKE ?2 ESCAPE '\\'", Long.class)
+                    .setParameter(1, workspaceId)
+                    .setParameter(2, pattern)
+                    .getResultList();
+
+            parameters.add(pattern);
+            final int bound = parameters.size();
+            final StringJoiner or = new StringJoiner(" OR ", "(", ")");
+            or.add("name ILIKE ?%d ESCAPE '\\'".formatted(bound));
+            or.add("notes ILIKE ?%d ESCAPE '\\'".formatted(bound));
+            if (!partners.isEmpty()) or.add(bind("partner.id IN ?", partners, parameters));
+
+            and.add(or.toString());
+        }
+
+        if (from != null) and.add(bind("date >= ?", from, parameters));
+        if (to != null) and.add(bind("date < ?", to, parameters));
+        if (statuses != null && !statuses.isEmpty()) and.add(bind("status IN ?", statuses, parameters));
+        if (types != null && !types.isEmpty()) and.add(bind("type IN ?", types, parameters));
+        if (walletIds != null && !walletIds.isEmpty()) and.add(bind("wallet.id IN ?", walletIds, parameters));
+        if (assetIds != null && !assetIds.isEmpty()) and.add(bind("asset.id IN ?", assetIds, parameters));
+        if (partnerIds != null && !partnerIds.isEmpty()) and.add(bind("partner.id IN ?", partnerIds, parameters));
+        if (minAmount != null) and.add(bind("amount >= ?", minAmount, parameters));
+        if (maxAmount != null) and.add(bind("amount <= ?", maxAmount, parameters));
+
+        return and.toString();
+    }
+
+    private static String bind(final String predicate, final Object value, final List<Object> parameters) {
+        parameters.add(value);
+        return predicate + parameters.size();
+    }
+
+}
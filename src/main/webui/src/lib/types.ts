@@ -23,4 +23,6 @@ export interface PagedResponse<T> {
     pageSize: number;
     totalPages: number;
     totalElements: number;
+    nextCursor?: string;
+    prevCursor?: string;
 }
\ No newline at end of file
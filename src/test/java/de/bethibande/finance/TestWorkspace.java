@@ -0,0 +1,145 @@
+package de.bethibande.finance;
+
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.Wallet;
+import de.bethibande.finance.model.jpa.Workspace;
+import de.bethibande.finance.model.jpa.partner.Partner;
+import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+import de.bethibande.finance.model.jpa.transaction.BookedAmount;
+import de.bethibande.finance.model.jpa.transaction.Transaction;
+import de.bethibande.finance.model.jpa.transaction.TransactionStatus;
+import de.bethibande.finance.model.jpa.transaction.TransactionType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A workspace persisted for a single test, including the entities most tests need. Everything is created in its own
+ * transaction, {@link #delete()} removes the workspace and everything created in it again.
+ * <br>
+ * Entities that are not requested are null.
+ */
+public class TestWorkspace {
+
+    public static Builder builder(final String name) {
+        return new Builder(name);
+    }
+
+    public static class Builder {
+
+        private final String name;
+
+        private boolean euro;
+        private boolean dollar;
+        private String wallet;
+        private BigDecimal transaction;
+
+        private Builder(final String name) {
+            this.name = name;
+        }
+
+        public Builder euro() {
+            this.euro = true;
+            return this;
+        }
+
+        public Builder dollar() {
+            this.dollar = true;
+            return this;
+        }
+
+        /**
+         * A wallet holding euros
+         */
+        public Builder wallet(final String name) {
+            this.wallet = name;
+            return euro();
+        }
+
+        /**
+         * An open payment of the given amount in the wallet, dated now
+         */
+        public Builder transaction(final BigDecimal amount) {
+            this.transaction = amount;
+            return this.wallet != null ? this : wallet("Wallet");
+        }
+
+        public TestWorkspace build() {
+            return QuarkusTransaction.requiringNew().call(() -> new TestWorkspace(this));
+        }
+
+    }
+
+    public final Workspace workspace;
+    public final Asset euro;
+    public final Asset dollar;
+    public final Wallet wallet;
+    public final Transaction transaction;
+
+    private TestWorkspace(final Builder builder) {
+        workspace = new Workspace();
+        workspace.name = builder.name;
+        workspace.persist();
+
+        euro = builder.euro ? asset("Euro", "EUR") : null;
+        dollar = builder.dollar ? asset("US Dollar", "USD") : null;
+        wallet = builder.wallet != null ? wallet(builder.wallet) : null;
+
+        if (builder.transaction != null) {
+            transaction = new Transaction();
+            transaction.name = "Transaction";
+            transaction.date = Instant.now();
+            transaction.amount = builder.transaction;
+            transaction.type = TransactionType.PAYMENT;
+            transaction.status = TransactionStatus.OPEN;
+            transaction.asset = euro;
+            transaction.wallet = wallet;
+            transaction.workspace = workspace;
+            transaction.persist();
+        } else {
+            transaction = null;
+        }
+    }
+
+    private Asset asset(final String name, final String code) {
+        final Asset asset = new Asset();
+        asset.name = name;
+        asset.code = code;
+        asset.workspace = workspace;
+        asset.persist();
+
+        return asset;
+    }
+
+    /**
+     * Creates another euro wallet, must be called in a transaction.
+     */
+    public Wallet wallet(final String name) {
+        final Wallet wallet = new Wallet();
+        wallet.name = name;
+        wallet.asset = euro;
+        wallet.workspace = workspace;
+        wallet.persist();
+
+        return wallet;
+    }
+
+    public long id() {
+        return workspace.id;
+    }
+
+    public void delete() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            BookedAmount.delete("transaction.workspace.id = ?1", workspace.id);
+            Transaction.update("internalRef = NULL WHERE workspace.id = ?1 AND internalRef IS NOT NULL", workspace.id);
+            Transaction.delete("workspace.id = ?1", workspace.id);
+            RecurringPayment.delete("workspace.id = ?1", workspace.id);
+            Wallet.delete("workspace.id = ?1", workspace.id);
+            Asset.delete("workspace.id = ?1", workspace.id);
+            Partner.delete("workspace.id = ?1", workspace.id);
+            Workspace.deleteById(workspace.id);
+        });
+    }
+
+}
@@ -0,0 +1,407 @@
+package de.bethibande.finance.jobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.model.jpa.Job;
+import de.bethibande.finance.model.jpa.JobExecution;
+import de.bethibande.finance.model.jpa.JobExecutionOutcome;
+import de.bethibande.finance.model.jpa.Workspace;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs against the dev services Postgres, the scheduler itself is disabled in the test profile.
+ */
+@QuarkusTest
+class JobServiceTest {
+
+    private static final int JOBS = 200;
+    private static final int NODES = 2;
+    private static final int RUNNERS_PER_NODE = 5;
+
+    @Inject
+    protected JobService jobService;
+
+    @Inject
+    protected JobExecutionRecorder recorder;
+
+    @Inject
+    protected JobRunnerPool pool;
+
+    @Inject
+    protected JobScheduler scheduler;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    protected Config config;
+
+    private Workspace workspace;
+    private Set<Long> jobIds;
+
+    @BeforeEach
+    void setUp() {
+        jobIds = QuarkusTransaction.requiringNew().call(() -> {
+            workspace = new Workspace();
+            workspace.name = "Jobs";
+            workspace.persist();
+
+            final Set<Long> ids = new HashSet<>();
+            for (int i = 0; i < JOBS; i++) {
+                final Job job = new Job();
+                job.name = "Job " + i;
+                job.type = "hello_world";
+                job.configJson = "{}";
+                job.nextScheduledExecution = Instant.now().minusSeconds(1);
+                job.workspace = workspace;
+                job.persist();
+
+                ids.add(job.id);
+            }
+
+            return ids;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            Job.delete("workspace.id = ?1", workspace.id);
+            Workspace.deleteById(workspace.id);
+        });
+    }
+
+    /**
+     * A scheduler with its own runner pool and heartbeat outside of CDI, standing in for another instance of the
+     * application. Only the database and the stateless {@link JobService} are shared, every claim runs in its own
+     * transaction on the dispatcher thread of the node.
+     */
+    private final class Node {
+
+        private final JobScheduler nodeScheduler = new JobScheduler() {
+            @Override
+            public void schedule(final Job job, final Instant nextExecution) {
+                // Needs the transaction and event of the CDI bean, the event only reaches its (disabled) queue
+                scheduler.schedule(job, nextExecution);
+            }
+        };
+        private final JobRunnerPool nodePool = new JobRunnerPool();
+        private final JobHeartbeat nodeHeartbeat = new JobHeartbeat();
+        private final Map<Long, Integer> executions = new ConcurrentHashMap<>();
+        private final List<JobExecutionOutcome> outcomes = new CopyOnWriteArrayList<>();
+
+        private Node() {
+            nodeHeartbeat.jobService = jobService;
+
+            nodePool.scheduler = nodeScheduler;
+            nodePool.jobService = jobService;
+            nodePool.heartbeat = nodeHeartbeat;
+            nodePool.objectMapper = objectMapper;
+            nodePool.config = config;
+            nodePool.minRunners = 1;
+            nodePool.maxRunners = RUNNERS_PER_NODE;
+            nodePool.idleTimeout = Duration.ofMinutes(5);
+            nodePool.recorder = new JobExecutionRecorder() {
+                @Override
+                public void record(final Job job,
+                                   final Instant scheduledAt,
+                                   final Instant startedAt,
+                                   final JobExecutionOutcome outcome,
+                                   final Throwable error) {
+                    executions.merge(job.id, 1, Integer::sum);
+                    outcomes.add(outcome);
+                }
+            };
+
+            nodeScheduler.jobService = jobService;
+            nodeScheduler.pool = nodePool;
+            nodeScheduler.enabled = true;
+        }
+
+        private void start() {
+            nodeScheduler.onStart(null);
+        }
+
+        private void stop() {
+            nodeScheduler.onShutdown(null);
+        }
+
+    }
+
+    @Test
+    void testNodesDrainJobsOnce() throws Exception {
+        final List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) nodes.add(new Node());
+
+        try {
+            nodes.forEach(Node::start);
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (QuarkusTransaction.requiringNew().call(() -> Job.count("workspace.id = ?1 AND lastSuccessfulExecution IS NULL", workspace.id)) > 0) {
+                assertTrue(System.nanoTime() < deadline, "Jobs were not drained in time");
+                Thread.sleep(50);
+            }
+        } finally {
+            nodes.forEach(Node::stop);
+        }
+
+        // Every job was run by exactly one node, exactly once
+        final Map<Long, Integer> executions = new HashMap<>();
+        for (final Node node : nodes) {
+            assertFalse(node.executions.isEmpty(), "Every node should have run jobs");
+            node.executions.forEach((id, count) -> {
+                if (jobIds.contains(id)) executions.merge(id, count, Integer::sum);
+            });
+            node.outcomes.forEach(outcome -> assertEquals(JobExecutionOutcome.SUCCEEDED, outcome));
+        }
+
+        assertEquals(jobIds, executions.keySet());
+        executions.forEach((id, count) -> assertEquals(1, count, "Job " + id + " was run more than once"));
+    }
+
+    @Test
+    void testClaimPendingJobsAcrossNodes() throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(NODES);
+        final List<Callable<List<Long>>> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            nodes.add(() -> {
+                start.await();
+
+                final List<Long> claimed = new ArrayList<>();
+                while (true) {
+                    final List<Job> jobs = jobService.claimPendingJobs(RUNNERS_PER_NODE);
+                    if (jobs.isEmpty()) return claimed;
+
+                    jobs.forEach(job -> claimed.add(job.id));
+                }
+            });
+        }
+
+        final List<Long> claimed = new ArrayList<>();
+        try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final Future<List<Long>> future : executor.invokeAll(nodes)) {
+                final List<Long> ids = future.get();
+                assertTrue(ids.size() <= JOBS);
+
+                claimed.addAll(ids);
+            }
+        }
+
+        // Every job was claimed exactly once
+        assertEquals(JOBS, claimed.size());
+        assertEquals(jobIds, new HashSet<>(claimed));
+    }
+
+    @Test
+    void testClaimedJobsAreNoLongerPending() {
+        final List<Job> claimed = jobService.claimPendingJobs(JOBS);
+        assertEquals(JOBS, claimed.size());
+        claimed.forEach(job -> assertTrue(job.lockTimeout != null));
+
+        assertEquals(0, jobService.claimPendingJobs(JOBS).size());
+    }
+
+    @Test
+    void testClaimSkipsExcludedTypes() {
+        assertEquals(0, jobService.claimPendingJobs(JOBS, Set.of("hello_world")).size());
+        assertEquals(JOBS, jobService.claimPendingJobs(JOBS, Set.of("update_recurring_payments")).size());
+    }
+
+    @Test
+    void testStartFailureReleasesLock() {
+        final Job job = jobService.claimPendingJobs(1).getFirst();
+        job.type = "unknown";
+
+        final long started = pool.getStats().started();
+        assertFalse(pool.start(job));
+
+        assertEquals(started, pool.getStats().started());
+        assertEquals(0, pool.getStats().busy());
+        assertTrue(jobService.findById(job.id).lockTimeout == null);
+    }
+
+    @Test
+    void testFailedJobsBackOff() {
+        final Duration first = jobService.getRetryDelay(0);
+        assertEquals(first.multipliedBy(2), jobService.getRetryDelay(1));
+        assertTrue(jobService.getRetryDelay(100).compareTo(jobService.getRetryDelay(1)) > 0);
+
+        final Job job = jobService.claimPendingJobs(1).getFirst();
+        final Instant retry = jobService.releaseFailedJob(job);
+        assertTrue(retry.isAfter(Instant.now().plus(first).minusSeconds(5)));
+
+        final Job failed = jobService.findById(job.id);
+        assertTrue(failed.lockTimeout == null);
+        assertEquals(1, failed.failedAttempts);
+        assertTrue(failed.nextScheduledExecution.isAfter(Instant.now()));
+
+        // The failed job is not claimed again before its retry is due
+        final List<Job> claimed = jobService.claimPendingJobs(JOBS);
+        assertEquals(JOBS - 1, claimed.size());
+        claimed.forEach(other -> assertFalse(other.id.equals(job.id)));
+
+        // Releasing a lock that is no longer held does not postpone the job
+        assertTrue(jobService.releaseFailedJob(job) == null);
+
+        QuarkusTransaction.requiringNew().run(() -> Job.update("nextScheduledExecution = ?1 WHERE id = ?2", Instant.now().minusSeconds(1), job.id));
+        final Job again = jobService.claimPendingJobs(1).getFirst();
+        assertEquals(job.id, again.id);
+        assertEquals(1, again.failedAttempts);
+
+        final Instant secondRetry = jobService.releaseFailedJob(again);
+        assertTrue(secondRetry.isAfter(Instant.now().plus(first.multipliedBy(2)).minusSeconds(5)));
+        assertEquals(2, jobService.findById(job.id).failedAttempts);
+
+        jobService.markAsExecuted(job.id);
+        assertEquals(0, jobService.findById(job.id).failedAttempts);
+    }
+
+    @Test
+    void testLostLockKeepsRunnerBusy() throws InterruptedException {
+        final CompletableFuture<Void> blocked = new CompletableFuture<>();
+        final JobTask<Object> blocking = new JobTask<>() {
+            @Override
+            public String getTaskIdentifier() {
+                return "hello_world";
+            }
+
+            @Override
+            public Class<Object> getConfigType() {
+                return Object.class;
+            }
+
+            @Override
+            public CompletableFuture<Void> execute(final JobContext<Object> ctx) {
+                return blocked;
+            }
+        };
+
+        final JobHeartbeat nodeHeartbeat = new JobHeartbeat();
+        nodeHeartbeat.jobService = jobService;
+
+        final JobRunnerPool nodePool = new JobRunnerPool();
+        nodePool.scheduler = new JobScheduler();
+        nodePool.jobService = new JobService() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T extends JobTask<?>> Optional<T> findTaskById(final String id) {
+                return Optional.of((T) blocking);
+            }
+
+            @Override
+            public List<JobTask<?>> getTasks() {
+                return List.of(blocking);
+            }
+        };
+        nodePool.heartbeat = nodeHeartbeat;
+        nodePool.objectMapper = objectMapper;
+        nodePool.config = config;
+        nodePool.minRunners = 1;
+        nodePool.maxRunners = 1;
+        nodePool.idleTimeout = Duration.ofMinutes(5);
+        nodePool.recorder = new JobExecutionRecorder() {
+            @Override
+            public void record(final Job job,
+                               final Instant scheduledAt,
+                               final Instant startedAt,
+                               final JobExecutionOutcome outcome,
+                               final Throwable error) {
+            }
+        };
+
+        final List<Job> claimed = jobService.claimPendingJobs(2);
+        final Job job = claimed.getFirst();
+        assertTrue(nodePool.start(job));
+
+        // Another node claims the job after the lock timed out, the next heartbeat loses the lock
+        QuarkusTransaction.requiringNew().run(() -> Job.update("lockTimeout = ?1 WHERE id = ?2", Instant.now().plusSeconds(1), job.id));
+        nodeHeartbeat.beat();
+
+        // The abandoned task is still running and occupies the only runner
+        assertEquals(0, nodePool.getCapacity().free());
+        assertEquals(1, nodePool.getStats().busy());
+        assertFalse(nodePool.start(claimed.get(1)));
+
+        blocked.complete(null);
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (nodePool.getStats().busy() > 0) {
+            assertTrue(System.nanoTime() < deadline, "Runner did not become idle");
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, nodePool.getCapacity().free());
+    }
+
+    @Test
+    void testRenewLocks() {
+        final List<Job> claimed = jobService.claimPendingJobs(10);
+        final Map<Long, Instant> locks = new HashMap<>();
+        claimed.forEach(job -> locks.put(job.id, job.lockTimeout));
+
+        // Simulate another node claiming one of the jobs after its lock timed out
+        final Job stolen = claimed.getFirst();
+        QuarkusTransaction.requiringNew().run(() -> Job.update("lockTimeout = ?1 WHERE id = ?2", Instant.now().plusSeconds(1), stolen.id));
+
+        final Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        final Set<Long> renewed = jobService.renewLocks(locks, now);
+
+        assertEquals(claimed.size() - 1, renewed.size());
+        assertFalse(renewed.contains(stolen.id));
+        renewed.forEach(id -> assertEquals(now, jobService.findById(id).lockTimeout));
+    }
+
+    @Test
+    void testExecutionStats() {
+        final List<Job> claimed = jobService.claimPendingJobs(10);
+        final Instant now = Instant.now();
+        for (int i = 0; i < claimed.size(); i++) {
+            final Job job = claimed.get(i);
+            final JobExecutionOutcome outcome = i < 8 ? JobExecutionOutcome.SUCCEEDED : JobExecutionOutcome.FAILED;
+            recorder.record(job, now.minusSeconds(10), now.minusSeconds(i), outcome, outcome == JobExecutionOutcome.FAILED ? new IllegalStateException("Failed") : null);
+        }
+        recorder.flush();
+
+        final List<JobExecutionStats> stats = jobService.getExecutionStats(workspace.id, now.minusSeconds(60));
+        assertEquals(1, stats.size());
+
+        final JobExecutionStats helloWorld = stats.getFirst();
+        assertEquals("hello_world", helloWorld.type());
+        assertEquals(10, helloWorld.executions());
+        assertEquals(2, helloWorld.failures());
+        assertTrue(helloWorld.p50DurationMillis() >= 4_000 && helloWorld.p50DurationMillis() <= 6_000);
+        assertTrue(helloWorld.p99LagMillis() >= helloWorld.p50LagMillis());
+        assertTrue(helloWorld.p99DurationMillis() >= 8_500);
+    }
+
+    @Test
+    void testExecutionsOfDeletedJobsAreDropped() {
+        final List<Job> claimed = jobService.claimPendingJobs(3);
+        final Instant now = Instant.now();
+        claimed.forEach(job -> recorder.record(job, now, now, JobExecutionOutcome.SUCCEEDED, null));
+
+        // The job is deleted before its execution is written, only its own row is dropped
+        final Job deleted = claimed.getFirst();
+        QuarkusTransaction.requiringNew().run(() -> Job.deleteById(deleted.id));
+        recorder.flush();
+
+        final long written = QuarkusTransaction.requiringNew().call(() -> JobExecution.count("job.workspace.id = ?1", workspace.id));
+        assertEquals(claimed.size() - 1, written);
+    }
+
+}
@@ -0,0 +1,220 @@
+package de.bethibande.finance.jobs.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.jobs.JobContext;
+import de.bethibande.finance.jobs.JobScheduler;
+import de.bethibande.finance.jobs.JobService;
+import de.bethibande.finance.model.jpa.Job;
+import de.bethibande.finance.model.jpa.discriminator.SourceDiscriminators;
+import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+import de.bethibande.finance.model.jpa.recurring.RecurringPaymentStatus;
+import de.bethibande.finance.model.jpa.transaction.Transaction;
+import de.bethibande.finance.model.jpa.transaction.TransactionBulkWriter;
+import de.bethibande.finance.model.jpa.transaction.TransactionType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the task outside of a {@code JobRunner}, the job config is stored through {@link JobContext#updateConfig(Object)}
+ * like in a real run.
+ */
+@QuarkusTest
+class UpdateRecurringPaymentsTaskTest {
+
+    private static final int PAYMENTS = 7;
+    private static final int CHUNK_SIZE = 2;
+    private static final UpdateRecurringPaymentsTask.Config CONFIG = new UpdateRecurringPaymentsTask.Config(CHUNK_SIZE, 2, null);
+
+    @Inject
+    protected TransactionBulkWriter writer;
+
+    @Inject
+    protected JobService jobService;
+
+    @Inject
+    protected JobScheduler scheduler;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    private TestWorkspace fixture;
+    private List<Long> payments;
+    private long jobId;
+    private ExecutorService executor;
+    private final List<Instant> rescheduled = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        fixture = TestWorkspace.builder("Recurring")
+                .wallet("Checking")
+                .build();
+
+        final String configJson = objectMapper.writeValueAsString(CONFIG);
+        payments = QuarkusTransaction.requiringNew().call(() -> {
+            final List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < PAYMENTS; i++) {
+                final RecurringPayment payment = new RecurringPayment();
+                payment.name = "Subscription " + i;
+                payment.amount = new BigDecimal("-10");
+                payment.asset = fixture.euro;
+                payment.wallet = fixture.wallet;
+                payment.type = TransactionType.PAYMENT;
+                payment.cronSchedule = "0 0 12 1 * *"; // 12:00 @ the first of each month
+                payment.status = RecurringPaymentStatus.ACTIVE;
+                payment.horizonCount = 3;
+                payment.workspace = fixture.workspace;
+                payment.persist();
+
+                ids.add(payment.id);
+            }
+
+            final Job job = new Job();
+            job.name = "Recurring payments";
+            job.type = "update_recurring_payments";
+            job.configJson = configJson;
+            job.workspace = fixture.workspace;
+            job.persist();
+            jobId = job.id;
+
+            return ids;
+        });
+
+        executor = Executors.newFixedThreadPool(4);
+        rescheduled.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+
+        QuarkusTransaction.requiringNew().run(() -> Job.deleteById(jobId));
+        fixture.delete();
+    }
+
+    /**
+     * Fails every chunk containing one of the given payments and records the payments of all chunks that succeeded.
+     */
+    private final class RecordingTask extends UpdateRecurringPaymentsTask {
+
+        private final Set<Long> failing;
+        private final List<Long> processed = new CopyOnWriteArrayList<>();
+
+        private RecordingTask(final Set<Long> failing) {
+            this.failing = failing;
+            this.bulkWriter = writer;
+        }
+
+        @Override
+        protected void processChunk(final List<Long> ids, final Instant now) {
+            if (ids.stream().anyMatch(failing::contains)) throw new IllegalStateException("Chunk failed");
+
+            super.processChunk(ids, now);
+            processed.addAll(ids);
+        }
+
+    }
+
+    private UpdateRecurringPaymentsTask.Config storedConfig() {
+        try {
+            return objectMapper.readValue(jobService.findById(jobId).configJson, UpdateRecurringPaymentsTask.Config.class);
+        } catch (final JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private JobContext<UpdateRecurringPaymentsTask.Config> context() {
+        final Job job = jobService.findById(jobId);
+        return new JobContext<>(null, job, storedConfig(), executor, scheduler, LoggerFactory.getLogger(UpdateRecurringPaymentsTask.class)) {
+            @Override
+            public boolean isActive() {
+                return true;
+            }
+
+            @Override
+            public void reschedule(final Instant nextExecution) {
+                rescheduled.add(nextExecution);
+            }
+        };
+    }
+
+    private long countTransactions(final long paymentId) {
+        return QuarkusTransaction.requiringNew().call(() -> Transaction.count(
+                "sourceDiscriminator = ?1 AND sourceId = ?2",
+                SourceDiscriminators.RECURRING_PAYMENTS,
+                paymentId
+        ));
+    }
+
+    @Test
+    void testAllChunksSucceed() {
+        final RecordingTask recording = new RecordingTask(Set.of());
+        recording.execute(context()).join();
+
+        assertEquals(new HashSet<>(payments), new HashSet<>(recording.processed));
+        assertEquals(PAYMENTS, recording.processed.size());
+        payments.forEach(id -> assertTrue(countTransactions(id) > 0, "No transactions generated for payment " + id));
+
+        assertNull(storedConfig().checkpoint());
+        assertEquals(CHUNK_SIZE, storedConfig().chunkSize());
+        assertEquals(1, rescheduled.size());
+    }
+
+    @Test
+    void testFailedChunkKeepsCheckpoint() {
+        // Chunks are [0, 1], [2, 3], [4, 5] and [6], the second one fails
+        final RecordingTask failing = new RecordingTask(Set.of(payments.get(2)));
+        assertThrows(CompletionException.class, () -> failing.execute(context()).join());
+
+        assertFalse(failing.processed.contains(payments.get(2)));
+        assertEquals(payments.get(1), storedConfig().checkpoint());
+        assertTrue(rescheduled.isEmpty());
+    }
+
+    @Test
+    void testRerunResumesFromCheckpoint() {
+        final RecordingTask failing = new RecordingTask(Set.of(payments.get(2)));
+        assertThrows(CompletionException.class, () -> failing.execute(context()).join());
+        assertEquals(payments.get(1), storedConfig().checkpoint());
+
+        final long completed = countTransactions(payments.getFirst());
+        assertTrue(completed > 0);
+        assertEquals(0, countTransactions(payments.get(2)));
+
+        final RecordingTask rerun = new RecordingTask(Set.of());
+        rerun.execute(context()).join();
+
+        // Only the payments after the checkpoint are processed again
+        assertEquals(new HashSet<>(payments.subList(2, PAYMENTS)), new HashSet<>(rerun.processed));
+        assertEquals(PAYMENTS - 2, rerun.processed.size());
+        assertEquals(completed, countTransactions(payments.getFirst()));
+        payments.forEach(id -> assertTrue(countTransactions(id) > 0, "No transactions generated for payment " + id));
+
+        assertNull(storedConfig().checkpoint());
+        assertEquals(1, rescheduled.size());
+    }
+
+}
@@ -0,0 +1,144 @@
+package de.bethibande.finance.model.jpa;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.transaction.*;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Requires hibernate statistics.
+ */
+@QuarkusTest
+class ReferenceCacheTest {
+
+    @Inject
+    protected ReferenceCache referenceCache;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    @Inject
+    protected SessionFactory sessionFactory;
+
+    private TestWorkspace fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Cache")
+                .wallet("Checking")
+                .build();
+
+        referenceCache.evictAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private ReferenceCache.Stats assetStats() {
+        return referenceCache.getStats()
+                .stream()
+                .filter(stats -> stats.entity().equals(Asset.class.getSimpleName()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private String loadAssetName() {
+        return QuarkusTransaction.requiringNew().call(() -> Asset.<Asset>findById(fixture.euro.id).name);
+    }
+
+    private boolean isCached() {
+        return sessionFactory.getCache().containsEntity(Asset.class, fixture.euro.id);
+    }
+
+    /**
+     * Loads started in the same millisecond as an eviction are not put into the cache, so a single load does not
+     * guarantee that the entity is cached afterwards.
+     */
+    private void loadUntilCached() {
+        for (int i = 0; i < 100 && !isCached(); i++) {
+            loadAssetName();
+        }
+
+        assertTrue(isCached(), "Asset was not cached after 100 loads");
+    }
+
+    private void assertLoadHits(final String expectedName, final long expectedHits, final long expectedMisses) {
+        final ReferenceCache.Stats before = assetStats();
+        assertEquals(expectedName, loadAssetName());
+
+        final ReferenceCache.Stats after = assetStats();
+        assertEquals(expectedHits, after.hits() - before.hits());
+        assertEquals(expectedMisses, after.misses() - before.misses());
+    }
+
+    @Test
+    void testReadThrough() {
+        assertLoadHits("Euro", 0, 1);
+        loadUntilCached();
+        assertLoadHits("Euro", 1, 0);
+        assertTrue(assetStats().hitRatio() > 0);
+
+        referenceCache.evictAll();
+        assertFalse(isCached());
+        assertLoadHits("Euro", 0, 1);
+    }
+
+    @Test
+    void testUpdateInvalidates() {
+        assertLoadHits("Euro", 0, 1);
+
+        QuarkusTransaction.requiringNew().run(() -> Asset.<Asset>findById(fixture.euro.id).name = "Renamed");
+        assertEquals("Renamed", loadAssetName());
+
+        QuarkusTransaction.requiringNew().run(() -> Asset.update("name = 'Bulk' WHERE id = ?1", fixture.euro.id));
+        assertEquals("Bulk", loadAssetName());
+    }
+
+    @Test
+    void testBookingKeepsCache() {
+        assertLoadHits("Euro", 0, 1);
+        loadUntilCached();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            final Transaction transaction = new Transaction();
+            transaction.name = "Transaction";
+            transaction.date = Instant.now();
+            transaction.amount = BigDecimal.TEN;
+            transaction.type = TransactionType.PAYMENT;
+            transaction.status = TransactionStatus.CLOSED;
+            transaction.asset = Asset.findById(fixture.euro.id);
+            transaction.wallet = Wallet.findById(fixture.wallet.id);
+            transaction.workspace = Workspace.findById(fixture.id());
+            transaction.persist();
+
+            final BookedAmount amount = new BookedAmount();
+            amount.transaction = transaction;
+            amount.amount = transaction.amount;
+            amount.asset = transaction.asset;
+            amount.wallet = transaction.wallet;
+            amount.date = transaction.date;
+            amount.persist();
+
+            // Native balance update, must not evict the reference entities
+            walletBalances.book(amount);
+        });
+
+        assertTrue(isCached());
+        assertLoadHits("Euro", 1, 0);
+    }
+
+}
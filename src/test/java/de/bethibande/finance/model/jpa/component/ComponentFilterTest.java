@@ -0,0 +1,168 @@
+package de.bethibande.finance.model.jpa.component;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.discriminator.SourceDiscriminators;
+import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+import de.bethibande.finance.model.jpa.recurring.RecurringPaymentStatus;
+import de.bethibande.finance.model.jpa.transaction.*;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Requires hibernate statistics.
+ */
+@QuarkusTest
+class ComponentFilterTest {
+
+    private static final DataComponent<String> REFERENCE = DataComponent.of("filter_reference", String.class);
+    private static final DataComponent<BigDecimal> FEE = DataComponent.of("filter_fee", BigDecimal.class);
+
+    @Inject
+    protected SessionFactory sessionFactory;
+
+    private TestWorkspace fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Components")
+                .wallet("Checking")
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private Transaction transaction(final String name, final Instant date) {
+        final Transaction transaction = new Transaction();
+        transaction.name = name;
+        transaction.date = date;
+        transaction.amount = BigDecimal.TEN;
+        transaction.type = TransactionType.PAYMENT;
+        transaction.status = TransactionStatus.OPEN;
+        transaction.asset = fixture.euro;
+        transaction.wallet = fixture.wallet;
+        transaction.workspace = fixture.workspace;
+
+        return transaction;
+    }
+
+    private Set<String> names(final ComponentFilter filter) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            final List<Object> params = new ArrayList<>(List.of(fixture.id()));
+            final String hql = "workspace.id = ?1 AND " + filter.toHql("components.dataComponents", params);
+
+            return Transaction.<Transaction>list(hql, params.toArray())
+                    .stream()
+                    .map(tx -> tx.name)
+                    .collect(Collectors.toSet());
+        });
+    }
+
+    @Test
+    void testFilters() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            final Transaction plain = transaction("plain", Instant.now());
+            plain.persist();
+
+            final Transaction modified = transaction("modified", Instant.now());
+            modified.set(TransactionComponents.USER_MODIFIED, true);
+            modified.set(REFERENCE, "SEPA-1");
+            modified.set(FEE, new BigDecimal("2.50"));
+            modified.persist();
+
+            final Transaction unmodified = transaction("unmodified", Instant.now());
+            unmodified.set(TransactionComponents.USER_MODIFIED, false);
+            unmodified.set(REFERENCE, "SEPA-2");
+            unmodified.set(FEE, new BigDecimal("10"));
+            unmodified.persist();
+        });
+
+        final ComponentFilter isModified = ComponentFilter.contains(TransactionComponents.USER_MODIFIED, true);
+        assertEquals(Set.of("modified"), names(isModified));
+        assertEquals(Set.of("plain", "unmodified"), names(isModified.not()));
+
+        assertEquals(Set.of("modified", "unmodified"), names(ComponentFilter.exists(REFERENCE)));
+        assertEquals(Set.of("plain"), names(ComponentFilter.exists(REFERENCE).not()));
+
+        assertEquals(Set.of("unmodified"), names(ComponentFilter.compare(REFERENCE, ComponentFilter.Operator.EQ, "SEPA-2")));
+        assertEquals(Set.of("modified"), names(ComponentFilter.compare(FEE, ComponentFilter.Operator.LT, new BigDecimal("3"))));
+        assertEquals(Set.of("unmodified"), names(ComponentFilter.compare(FEE, ComponentFilter.Operator.GE, new BigDecimal("3"))));
+        assertEquals(Set.of("plain", "unmodified"), names(ComponentFilter.compare(FEE, ComponentFilter.Operator.LT, new BigDecimal("3")).not()));
+
+        assertEquals(Set.of("modified"), names(isModified.and(ComponentFilter.exists(FEE))));
+        assertEquals(Set.of("modified", "unmodified"), names(isModified.or(ComponentFilter.compare(REFERENCE, ComponentFilter.Operator.NE, "SEPA-1"))));
+    }
+
+    @Test
+    void testUpdatePaymentsKeepsModified() {
+        final Instant now = Instant.now();
+
+        final RecurringPayment recurring = QuarkusTransaction.requiringNew().call(() -> {
+            final RecurringPayment payment = new RecurringPayment();
+            payment.name = "Subscription";
+            payment.amount = new BigDecimal("-10");
+            payment.asset = fixture.euro;
+            payment.wallet = fixture.wallet;
+            payment.type = TransactionType.PAYMENT;
+            payment.cronSchedule = "0 0 12 1 * *"; // 12:00 @ the first of each month
+            payment.status = RecurringPaymentStatus.ACTIVE;
+            payment.horizonCount = 12;
+            payment.workspace = fixture.workspace;
+            payment.persist();
+
+            Transaction.persist(payment.generatePayments(now, true));
+            return payment;
+        });
+
+        final Transaction modified = QuarkusTransaction.requiringNew().call(() -> {
+            final Transaction transaction = Transaction.find(
+                    "sourceDiscriminator = ?1 AND sourceId = ?2",
+                    Sort.by("date"),
+                    SourceDiscriminators.RECURRING_PAYMENTS,
+                    recurring.id
+            ).firstResult();
+            transaction.set(TransactionComponents.USER_MODIFIED, true);
+            transaction.name = "Modified";
+
+            return transaction;
+        });
+
+        sessionFactory.getStatistics().clear();
+
+        final RecurringPayment.PaymentUpdateResult result = QuarkusTransaction.requiringNew().call(() -> {
+            final RecurringPayment payment = RecurringPayment.findById(recurring.id);
+            return payment.updatePayments(now, false);
+        });
+
+        // Load the payment, list the modified dates, delete the remaining pending payments and update the payment
+        assertEquals(4, sessionFactory.getStatistics().getPrepareStatementCount());
+        assertEquals(11, result.deleted());
+        assertEquals(11, result.create().size());
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            final List<Transaction> remaining = Transaction.list("sourceId = ?1", recurring.id);
+
+            assertEquals(1, remaining.size());
+            assertEquals(modified.id, remaining.getFirst().id);
+            assertEquals("Modified", remaining.getFirst().name);
+        });
+    }
+
+}
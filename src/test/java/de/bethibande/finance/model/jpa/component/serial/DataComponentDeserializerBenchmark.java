@@ -0,0 +1,141 @@
+package de.bethibande.finance.model.jpa.component.serial;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.bethibande.finance.model.jpa.component.DataComponent;
+import de.bethibande.finance.model.jpa.component.DataComponentMap;
+import de.bethibande.finance.model.jpa.transaction.TransactionComponents;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the maps/sec of the previous tree based deserializer and {@link DataComponentDeserializer}.
+ * <br>
+ * Only run with {@code ./gradlew test -Dbenchmark=true}, the number of maps per round can be changed using
+ * {@code -Dbenchmark.sizes=100000}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class DataComponentDeserializerBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataComponentDeserializerBenchmark.class);
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private static final DataComponent<String> REFERENCE = DataComponent.of("benchmark_reference", String.class);
+    private static final DataComponent<BigDecimal> FEE = DataComponent.of("benchmark_fee", BigDecimal.class);
+    private static final DataComponent<List<String>> TAGS = DataComponent.of("benchmark_tags", new TypeReference<List<String>>() {}.getType());
+    private static final DataComponent<Map<String, BigDecimal>> SPLITS = DataComponent.of("benchmark_splits", new TypeReference<Map<String, BigDecimal>>() {}.getType());
+    private static final DataComponent<Import> IMPORT = DataComponent.of("benchmark_import", Import.class);
+
+    record Import(long statementId, int line, Instant importedAt, String checksum) {
+    }
+
+    /**
+     * The deserializer before it was changed to read the token stream.
+     */
+    static class TreeDeserializer extends JsonDeserializer<DataComponentMap> {
+
+        @Override
+        public DataComponentMap deserialize(final JsonParser p, final DeserializationContext ctxt) throws IOException {
+            final DataComponentMap map = new DataComponentMap();
+
+            final ObjectNode tree = p.readValueAsTree();
+
+            for (final Map.Entry<String, JsonNode> entry : tree.properties()) {
+                final String key = entry.getKey();
+                final JsonNode node = entry.getValue();
+
+                final DataComponent<?> comp = DataComponent.get(key);
+                if (comp == null) throw new IllegalStateException("Unknown component: " + key);
+
+                final Object value = p.getCodec().readValue(node.traverse(p.getCodec()), ctxt.constructType(comp.getType()));
+                map.put(key, value);
+            }
+
+            return map;
+        }
+    }
+
+    private static ObjectMapper mapper(final JsonDeserializer<DataComponentMap> deserializer) {
+        final SimpleModule module = new SimpleModule();
+        module.addDeserializer(DataComponentMap.class, deserializer);
+        module.addSerializer(DataComponentMap.class, new DataComponentSerializer());
+
+        return new ObjectMapper().findAndRegisterModules().registerModule(module);
+    }
+
+    private static List<String> generate(final ObjectMapper mapper) throws IOException {
+        final DataComponentMap small = new DataComponentMap();
+        small.put(TransactionComponents.USER_MODIFIED.getKey(), true);
+
+        final DataComponentMap medium = new DataComponentMap();
+        medium.put(TransactionComponents.USER_MODIFIED.getKey(), false);
+        medium.put(REFERENCE.getKey(), "SEPA-2026-000123456");
+        medium.put(FEE.getKey(), new BigDecimal("1.25"));
+        medium.put(TAGS.getKey(), List.of("groceries", "monthly"));
+
+        final DataComponentMap large = new DataComponentMap();
+        large.putAll(medium);
+        large.put(SPLITS.getKey(), Map.of("food", new BigDecimal("42.10"), "household", new BigDecimal("17.35"), "other", new BigDecimal("3.99")));
+        large.put(IMPORT.getKey(), new Import(17, 342, Instant.parse("2026-01-15T10:00:00Z"), "9f86d081884c7d659a2feaa0c55ad015"));
+
+        return List.of(mapper.writeValueAsString(small), mapper.writeValueAsString(medium), mapper.writeValueAsString(large));
+    }
+
+    private static double measure(final ObjectMapper mapper, final List<String> documents, final int size) throws IOException {
+        long blackhole = 0;
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            blackhole += mapper.readValue(documents.get(i % documents.size()), DataComponentMap.class).size();
+        }
+        final double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        if (blackhole == 0) throw new IllegalStateException("No components read");
+
+        return size / seconds;
+    }
+
+    @Test
+    void benchmark() throws IOException {
+        final int size = Integer.parseInt(System.getProperty("benchmark.sizes", "200000").split(",")[0].trim());
+
+        final ObjectMapper tree = mapper(new TreeDeserializer());
+        final ObjectMapper streaming = mapper(new DataComponentDeserializer());
+        final List<String> documents = generate(streaming);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            measure(tree, documents, size);
+            measure(streaming, documents, size);
+        }
+
+        double before = 0;
+        double after = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            before += measure(tree, documents, size) / ROUNDS;
+            after += measure(streaming, documents, size) / ROUNDS;
+        }
+
+        LOGGER.info("{} maps: tree {} maps/sec, streaming {} maps/sec ({}x)",
+                size,
+                Math.round(before),
+                Math.round(after),
+                String.format("%.2f", after / before));
+    }
+
+}
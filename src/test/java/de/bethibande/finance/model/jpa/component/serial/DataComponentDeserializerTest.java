@@ -0,0 +1,79 @@
+package de.bethibande.finance.model.jpa.component.serial;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.model.jpa.component.DataComponent;
+import de.bethibande.finance.model.jpa.component.DataComponentMap;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataComponentDeserializerTest {
+
+    private static final DataComponent<BigDecimal> AMOUNT = DataComponent.of("test_amount", BigDecimal.class);
+    private static final DataComponent<List<Long>> IDS = DataComponent.of("test_ids", new TypeReference<List<Long>>() {}.getType());
+    private static final DataComponent<Map<String, Integer>> COUNTS = DataComponent.of("test_counts", new TypeReference<Map<String, Integer>>() {}.getType());
+
+    private ObjectMapper mapper() {
+        final ObjectMapper mapper = new ObjectMapper();
+        new SerialConfig().configure(mapper);
+
+        return mapper;
+    }
+
+    @Test
+    void testRoundTrip() throws Exception {
+        final ObjectMapper mapper = mapper();
+
+        final DataComponentMap map = new DataComponentMap();
+        map.put(AMOUNT.getKey(), new BigDecimal("12.50"));
+        map.put(IDS.getKey(), List.of(1L, 2L, 3L));
+        map.put(COUNTS.getKey(), Map.of("a", 1, "b", 2));
+
+        final DataComponentMap read = mapper.readValue(mapper.writeValueAsString(map), DataComponentMap.class);
+
+        assertEquals(map, read);
+        assertEquals(Long.class, ((List<?>) read.get(IDS.getKey())).getFirst().getClass());
+    }
+
+    @Test
+    void testNullsAndEmpty() throws Exception {
+        final ObjectMapper mapper = mapper();
+
+        final DataComponentMap read = mapper.readValue("{\"test_amount\": null}", DataComponentMap.class);
+        assertTrue(read.containsKey(AMOUNT.getKey()));
+        assertNull(read.get(AMOUNT.getKey()));
+
+        assertTrue(mapper.readValue("{}", DataComponentMap.class).isEmpty());
+        assertNull(mapper.readValue("null", DataComponentMap.class));
+    }
+
+    @Test
+    void testNested() throws Exception {
+        final ObjectMapper mapper = mapper();
+
+        final Holder holder = mapper.readValue("{\"components\": {\"test_ids\": [4, 5]}, \"name\": \"x\"}", Holder.class);
+
+        assertEquals(List.of(4L, 5L), holder.components().get(IDS.getKey()));
+        assertEquals("x", holder.name());
+    }
+
+    @Test
+    void testUnknownComponent() {
+        assertThrows(IllegalStateException.class, () -> mapper().readValue("{\"test_unknown\": 1}", DataComponentMap.class));
+    }
+
+    @Test
+    void testDuplicateKey() {
+        assertThrows(IllegalArgumentException.class, () -> DataComponent.of(AMOUNT.getKey(), String.class));
+        assertSame(AMOUNT, DataComponent.get(AMOUNT.getKey()));
+    }
+
+    record Holder(DataComponentMap components, String name) {
+    }
+
+}
@@ -0,0 +1,116 @@
+package de.bethibande.finance.model.jpa.exchange;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.ExchangeRate;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.narayana.jta.QuarkusTransactionException;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class ExchangeRateIndexTest {
+
+    private static final Instant JAN = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Instant FEB = Instant.parse("2026-02-01T00:00:00Z");
+
+    @Inject
+    protected ExchangeRateIndex index;
+
+    private TestWorkspace fixture;
+    private Asset yen;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Rates")
+                .euro()
+                .dollar()
+                .build();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            yen = new Asset();
+            yen.name = "JPY";
+            yen.code = "JPY";
+            yen.workspace = fixture.workspace;
+            yen.persist();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        QuarkusTransaction.requiringNew().run(() -> ExchangeRate.delete("base.workspace.id = ?1", fixture.id()));
+        fixture.delete();
+        index.invalidate(fixture.id());
+    }
+
+    private long createRate(final Asset base, final Asset quote, final Instant date, final double rate) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            final ExchangeRate exchangeRate = new ExchangeRate();
+            exchangeRate.base = Asset.findById(base.id);
+            exchangeRate.quote = Asset.findById(quote.id);
+            exchangeRate.date = date;
+            exchangeRate.rate = rate;
+            exchangeRate.persist();
+
+            return exchangeRate.id;
+        });
+    }
+
+    @Test
+    void testIncrementalUpdates() {
+        createRate(fixture.euro, fixture.dollar, JAN, 2);
+        assertEquals(2, index.rate(fixture.id(), fixture.euro.id, fixture.dollar.id, FEB).orElseThrow());
+        assertTrue(index.rate(fixture.id(), fixture.euro.id, yen.id, FEB).isEmpty());
+
+        final ExchangeRateIndex.Stats stats = index.getStats();
+
+        // Applied to the loaded index once committed
+        final long id = createRate(fixture.dollar, yen, FEB, 100);
+        assertEquals(200, index.rate(fixture.id(), fixture.euro.id, yen.id, FEB).orElseThrow(), 1e-9);
+
+        QuarkusTransaction.requiringNew().run(() -> ExchangeRate.<ExchangeRate>findById(id).delete());
+        assertTrue(index.rate(fixture.id(), fixture.euro.id, yen.id, FEB).isEmpty());
+
+        // Neither change reloaded the workspace
+        assertEquals(stats.hits() + 2, index.getStats().hits());
+        assertEquals(stats.misses(), index.getStats().misses());
+    }
+
+    @Test
+    void testRollback() {
+        createRate(fixture.euro, fixture.dollar, JAN, 2);
+        index.get(fixture.id());
+
+        assertThrows(QuarkusTransactionException.class, () -> QuarkusTransaction.requiringNew().run(() -> {
+            final ExchangeRate rate = new ExchangeRate();
+            rate.base = Asset.findById(fixture.euro.id);
+            rate.quote = Asset.findById(fixture.dollar.id);
+            rate.date = FEB;
+            rate.rate = 3.0;
+            rate.persist();
+            rate.flush();
+
+            QuarkusTransaction.setRollbackOnly();
+        }));
+
+        assertEquals(2, index.rate(fixture.id(), fixture.euro.id, fixture.dollar.id, FEB).orElseThrow());
+    }
+
+    @Test
+    void testUpdate() {
+        final long id = createRate(fixture.euro, fixture.dollar, JAN, 2);
+        index.get(fixture.id());
+
+        QuarkusTransaction.requiringNew().run(() -> ExchangeRate.<ExchangeRate>findById(id).rate = 4.0);
+
+        assertEquals(4, index.rate(fixture.id(), fixture.euro.id, fixture.dollar.id, FEB).orElseThrow());
+    }
+
+}
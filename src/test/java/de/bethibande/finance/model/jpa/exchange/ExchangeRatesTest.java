@@ -0,0 +1,85 @@
+package de.bethibande.finance.model.jpa.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExchangeRatesTest {
+
+    private static final long EUR = 1;
+    private static final long USD = 2;
+    private static final long JPY = 3;
+    private static final long BTC = 4;
+    private static final long CHF = 5;
+
+    private static final Instant JAN = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Instant FEB = Instant.parse("2026-02-01T00:00:00Z");
+    private static final Instant MAR = Instant.parse("2026-03-01T00:00:00Z");
+
+    @Test
+    void testFloorLookup() {
+        final ExchangeRates rates = new ExchangeRates();
+        rates.put(1, EUR, USD, JAN, 1.1);
+        rates.put(2, EUR, USD, MAR, 1.2);
+
+        assertTrue(rates.rate(EUR, USD, JAN.minusSeconds(1)).isEmpty());
+        assertEquals(1.1, rates.rate(EUR, USD, JAN).orElseThrow());
+        assertEquals(1.1, rates.rate(EUR, USD, FEB).orElseThrow());
+        assertEquals(1.2, rates.rate(EUR, USD, MAR.plusSeconds(1)).orElseThrow());
+        assertEquals(1, rates.rate(EUR, EUR, JAN).orElseThrow());
+    }
+
+    @Test
+    void testInverse() {
+        final ExchangeRates rates = new ExchangeRates();
+        rates.put(1, EUR, USD, JAN, 2);
+
+        assertEquals(0.5, rates.rate(USD, EUR, FEB).orElseThrow());
+
+        // The more recent of the direct and the inverse rate wins
+        rates.put(2, USD, EUR, FEB, 0.25);
+        assertEquals(4, rates.rate(EUR, USD, FEB).orElseThrow());
+        assertEquals(2, rates.rate(EUR, USD, JAN).orElseThrow());
+    }
+
+    @Test
+    void testTriangulation() {
+        final ExchangeRates rates = new ExchangeRates();
+        rates.put(1, EUR, USD, JAN, 2);
+        rates.put(2, USD, JPY, JAN, 100);
+        rates.put(3, BTC, USD, FEB, 50_000);
+        rates.put(4, CHF, EUR, JAN, 1);
+        rates.put(5, CHF, JPY, MAR, 150);
+
+        assertEquals(200, rates.rate(EUR, JPY, JAN).orElseThrow(), 1e-9);
+        assertEquals(0.005, rates.rate(JPY, EUR, JAN).orElseThrow(), 1e-9);
+        assertEquals(200, rates.rate(CHF, JPY, FEB).orElseThrow(), 1e-9);
+
+        // The direct pair only exists as of March
+        assertEquals(150, rates.rate(CHF, JPY, MAR).orElseThrow(), 1e-9);
+
+        // No BTC rate before February
+        assertTrue(rates.rate(BTC, EUR, JAN).isEmpty());
+        assertEquals(25_000, rates.rate(BTC, EUR, FEB).orElseThrow(), 1e-9);
+    }
+
+    @Test
+    void testRemove() {
+        final ExchangeRates rates = new ExchangeRates();
+        rates.put(1, EUR, USD, JAN, 1.1);
+        rates.put(2, EUR, USD, FEB, 1.2);
+        assertEquals(2, rates.size());
+
+        rates.remove(2, EUR, USD, FEB);
+        assertEquals(1.1, rates.rate(EUR, USD, MAR).orElseThrow());
+
+        // Replaced by another rate with the same date
+        rates.put(3, EUR, USD, JAN, 1.3);
+        rates.remove(1, EUR, USD, JAN);
+        assertEquals(1.3, rates.rate(EUR, USD, MAR).orElseThrow());
+        assertEquals(1, rates.size());
+    }
+
+}
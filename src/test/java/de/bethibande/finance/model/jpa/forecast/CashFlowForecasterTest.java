@@ -0,0 +1,129 @@
+package de.bethibande.finance.model.jpa.forecast;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.BalanceHistoryDTO;
+import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+import de.bethibande.finance.model.jpa.recurring.RecurringPaymentStatus;
+import de.bethibande.finance.model.jpa.transaction.*;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+class CashFlowForecasterTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-15T00:00:00Z");
+
+    @Inject
+    protected CashFlowForecaster forecaster;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    private TestWorkspace fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Forecast")
+                .wallet("Checking")
+                .build();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            final Transaction salary = transaction("Salary", "1000", Instant.parse("2026-01-01T00:00:00Z"), TransactionStatus.CLOSED);
+            final BookedAmount booked = new BookedAmount();
+            booked.transaction = salary;
+            booked.amount = salary.amount;
+            booked.asset = fixture.euro;
+            booked.wallet = fixture.wallet;
+            booked.date = salary.date;
+            booked.persist();
+            walletBalances.book(booked);
+
+            // Overdue, applied right away
+            transaction("Overdue", "-50", Instant.parse("2025-12-01T00:00:00Z"), TransactionStatus.OPEN);
+            transaction("Rent", "-200", Instant.parse("2026-01-25T00:00:00Z"), TransactionStatus.OPEN);
+            transaction("Cancelled", "-1000", Instant.parse("2026-01-20T00:00:00Z"), TransactionStatus.CANCELLED);
+
+            final RecurringPayment subscription = new RecurringPayment();
+            subscription.name = "Subscription";
+            subscription.amount = new BigDecimal("-100");
+            subscription.asset = fixture.euro;
+            subscription.wallet = fixture.wallet;
+            subscription.type = TransactionType.PAYMENT;
+            subscription.cronSchedule = "0 0 12 1 * *"; // 12:00 @ the first of each month
+            subscription.status = RecurringPaymentStatus.ACTIVE;
+            subscription.workspace = fixture.workspace;
+            subscription.persist();
+        });
+    }
+
+    private Transaction transaction(final String name,
+                                    final String amount,
+                                    final Instant date,
+                                    final TransactionStatus status) {
+        final Transaction transaction = new Transaction();
+        transaction.name = name;
+        transaction.date = date;
+        transaction.amount = new BigDecimal(amount);
+        transaction.type = TransactionType.PAYMENT;
+        transaction.status = status;
+        transaction.asset = fixture.euro;
+        transaction.wallet = fixture.wallet;
+        transaction.workspace = fixture.workspace;
+        transaction.persist();
+
+        return transaction;
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private List<BalanceHistoryDTO.Point> forecast(final Long walletId, final LocalDate until, final int maxPoints) {
+        final List<BalanceHistoryDTO> forecast = QuarkusTransaction.requiringNew()
+                .call(() -> forecaster.forecast(fixture.id(), walletId, NOW, until, maxPoints));
+
+        assertEquals(1, forecast.size());
+        return forecast.getFirst().points();
+    }
+
+    private static void assertBalance(final String expected, final BalanceHistoryDTO.Point point) {
+        assertEquals(0, new BigDecimal(expected).compareTo(point.balance()), () -> "Balance on " + point.date());
+    }
+
+    @Test
+    void testDailyForecast() {
+        final List<BalanceHistoryDTO.Point> points = forecast(fixture.wallet.id, LocalDate.of(2026, 3, 31), 366);
+
+        assertEquals(76, points.size());
+        assertEquals(LocalDate.of(2026, 1, 15), points.getFirst().date());
+        assertBalance("950", points.getFirst());
+        assertBalance("950", points.get(9));
+        assertBalance("750", points.get(10));
+        assertBalance("650", points.get(17));
+        assertBalance("550", points.getLast());
+    }
+
+    @Test
+    void testLongHorizon() {
+        final List<BalanceHistoryDTO.Point> points = forecast(null, LocalDate.of(2035, 12, 31), 10);
+
+        assertEquals(10, points.size());
+        assertEquals(LocalDate.of(2035, 12, 31), points.getLast().date());
+
+        // 119 executions from February 2026 until December 2035
+        assertBalance(String.valueOf(1000 - 50 - 200 - 119 * 100), points.getLast());
+    }
+
+}
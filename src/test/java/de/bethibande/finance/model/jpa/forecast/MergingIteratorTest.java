@@ -0,0 +1,58 @@
+package de.bethibande.finance.model.jpa.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergingIteratorTest {
+
+    private static <T> List<T> drain(final Iterator<T> iterator) {
+        final List<T> values = new ArrayList<>();
+        iterator.forEachRemaining(values::add);
+        return values;
+    }
+
+    @Test
+    void testMerge() {
+        final MergingIterator<Integer> iterator = new MergingIterator<>(List.of(
+                List.of(1, 4, 7).iterator(),
+                List.<Integer>of().iterator(),
+                List.of(2, 5, 8, 9).iterator(),
+                List.of(3, 6).iterator()
+        ), Comparator.naturalOrder());
+
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9), drain(iterator));
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    void testStable() {
+        record Entry(int key, String source) {
+        }
+
+        final MergingIterator<Entry> iterator = new MergingIterator<>(List.of(
+                List.of(new Entry(1, "a"), new Entry(2, "a")).iterator(),
+                List.of(new Entry(1, "b"), new Entry(2, "b")).iterator()
+        ), Comparator.comparingInt(Entry::key));
+
+        assertEquals(List.of("a", "b", "a", "b"), drain(iterator).stream().map(Entry::source).toList());
+    }
+
+    @Test
+    void testLazy() {
+        // Infinite sources are only consumed as far as needed
+        final MergingIterator<Long> iterator = new MergingIterator<>(List.of(
+                Stream.iterate(0L, i -> i + 2).iterator(),
+                Stream.iterate(1L, i -> i + 2).iterator()
+        ), Comparator.naturalOrder());
+
+        for (long i = 0; i < 1_000_000; i++) {
+            assertEquals(i, iterator.next());
+        }
+        assertTrue(iterator.hasNext());
+    }
+
+}
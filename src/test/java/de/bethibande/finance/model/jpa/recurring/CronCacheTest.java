@@ -0,0 +1,57 @@
+package de.bethibande.finance.model.jpa.recurring;
+
+import com.cronutils.model.time.ExecutionTime;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CronCacheTest {
+
+    @Test
+    void testHitAndMiss() {
+        final CronCache cache = new CronCache(RecurringPayment.cronDefinition(), 16);
+
+        final ExecutionTime first = cache.get("0 0 0 1 * *");
+        final ExecutionTime second = cache.get("0 0 0 1 * *");
+
+        assertSame(first, second);
+        assertEquals(new CronCache.Stats(1, 1, 0, 1), cache.getStats());
+    }
+
+    @Test
+    void testNormalizedKeys() {
+        final CronCache cache = new CronCache(RecurringPayment.cronDefinition(), 16);
+
+        final ExecutionTime first = cache.get("0 0 0 * * mon");
+        final ExecutionTime second = cache.get("  0 0  0 * *   MON ");
+
+        assertSame(first, second);
+        assertEquals(1, cache.getStats().size());
+    }
+
+    @Test
+    void testEviction() {
+        final CronCache cache = new CronCache(RecurringPayment.cronDefinition(), 2);
+
+        final ExecutionTime first = cache.get("0 0 0 1 * *");
+        cache.get("0 0 0 2 * *");
+        cache.get("0 0 0 3 * *");
+
+        final CronCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.size());
+        assertEquals(1, stats.evictions());
+
+        // The eldest entry was evicted and has to be parsed again
+        assertNotSame(first, cache.get("0 0 0 1 * *"));
+        assertEquals(4, cache.getStats().misses());
+    }
+
+    @Test
+    void testInvalidExpressionIsNotCached() {
+        final CronCache cache = new CronCache(RecurringPayment.cronDefinition(), 16);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.get("not a cron"));
+        assertEquals(0, cache.getStats().size());
+    }
+
+}
@@ -2,6 +2,7 @@ package de.bethibande.finance.model.jpa.recurring;
 
 import de.bethibande.finance.model.jpa.transaction.Transaction;
 import de.bethibande.finance.model.jpa.transaction.TransactionComponents;
+import jakarta.ws.rs.BadRequestException;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -9,9 +10,15 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class RecurringPaymentTest {
 
@@ -34,11 +41,13 @@ class RecurringPaymentTest {
 
         transactions.getFirst().set(TransactionComponents.USER_MODIFIED, true);
 
-        Mockito.doReturn(transactions).when(recurring).listPendingPayments(NOW);
+        Mockito.doReturn(Set.of(transactions.getFirst().date)).when(recurring).listModifiedPaymentDates(NOW);
+        Mockito.doReturn(11L).when(recurring).deletePendingPayments(NOW, false);
 
         final RecurringPayment.PaymentUpdateResult result = recurring.updatePayments(NOW, false);
-        assertEquals(11, result.delete().size());
+        Mockito.verify(recurring).deletePendingPayments(NOW, false);
         assertEquals(11, result.create().size());
+        assertFalse(result.create().stream().anyMatch(tx -> tx.date.equals(transactions.getFirst().date)));
     }
 
     @Test
@@ -49,12 +58,13 @@ class RecurringPaymentTest {
         recurring.cronSchedule = "0 0 0 1 * *"; // 00:00 @ the first of each month
         recurring.amount = BigDecimal.valueOf(1234);
 
-        final List<Transaction> transactions = recurring.generatePayments(NOW, true);
+        recurring.generatePayments(NOW, true);
 
-        Mockito.doReturn(transactions).when(recurring).listPendingPayments(NOW);
+        Mockito.doReturn(Set.of()).when(recurring).listModifiedPaymentDates(NOW);
+        Mockito.doReturn(12L).when(recurring).deletePendingPayments(NOW, false);
 
+        // Deleting is done in the database, see ComponentFilterTest#testUpdatePaymentsKeepsModified
         final RecurringPayment.PaymentUpdateResult result = recurring.updatePayments(NOW, false);
-        assertEquals(12, result.delete().size());
         assertEquals(12, result.create().size());
     }
 
@@ -152,4 +162,147 @@ class RecurringPaymentTest {
         assertEquals(at(2026, 5, 1), transactions.get(3).date);
         assertEquals(at(2026, 6, 1), transactions.get(4).date);
     }
-}
\ No newline at end of file
+
+    @Test
+    void generatePaymentsHorizonCount() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 * * * *"; // Every hour
+        recurring.amount = BigDecimal.valueOf(1234);
+        recurring.horizonCount = 24;
+
+        final List<Transaction> transactions = recurring.generatePayments(NOW, true);
+        assertEquals(24, transactions.size());
+        assertEquals(NOW.plus(1, ChronoUnit.HOURS), transactions.getFirst().date);
+        assertEquals(NOW.plus(24, ChronoUnit.HOURS), transactions.getLast().date);
+    }
+
+    @Test
+    void generatePaymentsDefaultHorizonCount() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 * * * *"; // Every hour
+        recurring.amount = BigDecimal.valueOf(1234);
+
+        final List<Transaction> transactions = recurring.generatePayments(NOW, true);
+        assertEquals(RecurringPayment.DEFAULT_HORIZON_COUNT, transactions.size());
+    }
+
+    @Test
+    void generatePaymentsHorizonDays() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 0 1 * *"; // 00:00 @ the first of each month
+        recurring.amount = BigDecimal.valueOf(1234);
+        recurring.horizonDays = 80;
+
+        final List<Transaction> transactions = recurring.generatePayments(NOW, true);
+        assertEquals(2, transactions.size());
+        assertEquals(at(2026, 2, 1), transactions.get(0).date);
+        assertEquals(at(2026, 3, 1), transactions.get(1).date);
+    }
+
+    @Test
+    void generatePaymentsAppendsNextSlice() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 * * * *"; // Every hour
+        recurring.amount = BigDecimal.valueOf(1234);
+        recurring.horizonCount = 24;
+
+        recurring.generatePayments(NOW, true);
+
+        // A day later only the next 24 hours are generated
+        final Instant tomorrow = NOW.plus(1, ChronoUnit.DAYS);
+        final List<Transaction> transactions = recurring.generatePayments(tomorrow, true);
+        assertEquals(24, transactions.size());
+        assertEquals(tomorrow.plus(1, ChronoUnit.HOURS), transactions.getFirst().date);
+        assertEquals(tomorrow.plus(24, ChronoUnit.HOURS), recurring.lastTransactionDate);
+
+        // Running again without time passing generates nothing
+        assertEquals(0, recurring.generatePayments(tomorrow, true).size());
+    }
+
+    @Test
+    void generatePaymentsCatchesUpBeforeHorizonCount() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 * * * *"; // Every hour
+        recurring.amount = BigDecimal.valueOf(1234);
+        recurring.horizonCount = 24;
+        recurring.lastTransactionDate = NOW.minus(2, ChronoUnit.DAYS);
+
+        // Missed executions are generated as well, only the ones after now count towards the horizon
+        final List<Transaction> transactions = recurring.generatePayments(NOW, true);
+        assertEquals(72, transactions.size());
+        assertEquals(NOW.minus(47, ChronoUnit.HOURS), transactions.getFirst().date);
+        assertEquals(NOW.plus(24, ChronoUnit.HOURS), transactions.getLast().date);
+    }
+
+    @Test
+    void generatePaymentsNotBeforeRespectsWatermark() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 0 1 * *"; // 00:00 @ the first of each month
+        recurring.notBefore = at(2026, 5, 1);
+        recurring.amount = BigDecimal.valueOf(1234);
+
+        assertEquals(9, recurring.generatePayments(NOW, true).size());
+        assertEquals(0, recurring.generatePayments(NOW, true).size());
+    }
+
+    @Test
+    void occurrencesContinueAfterGeneratedPayments() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 0 1 * *"; // 00:00 @ the first of each month
+        recurring.notAfter = at(2036, 1, 1);
+        recurring.amount = BigDecimal.valueOf(1234);
+
+        recurring.generatePayments(NOW, true);
+
+        // Not limited by the horizon, but by notAfter
+        final Iterator<Instant> occurrences = recurring.occurrences(NOW);
+        assertEquals(at(2027, 2, 1), occurrences.next());
+
+        int count = 1;
+        Instant last = null;
+        while (occurrences.hasNext()) {
+            last = occurrences.next();
+            count++;
+        }
+
+        assertEquals(108, count);
+        assertEquals(at(2036, 1, 1), last);
+    }
+
+    @Test
+    void noOccurrencesWhenSuspended() {
+        final RecurringPayment recurring = new RecurringPayment();
+        recurring.id = 0L;
+        recurring.name = "Test";
+        recurring.cronSchedule = "0 0 0 1 * *"; // 00:00 @ the first of each month
+        recurring.amount = BigDecimal.valueOf(1234);
+        recurring.status = RecurringPaymentStatus.SUSPENDED;
+
+        assertFalse(recurring.occurrences(NOW).hasNext());
+    }
+
+    @Test
+    void validateHorizonBounds() {
+        assertDoesNotThrow(() -> RecurringPayment.validateHorizon(null, null));
+        assertDoesNotThrow(() -> RecurringPayment.validateHorizon(RecurringPayment.MAX_HORIZON_DAYS, RecurringPayment.MAX_HORIZON_COUNT));
+
+        assertThrows(BadRequestException.class, () -> RecurringPayment.validateHorizon(0, null));
+        assertThrows(BadRequestException.class, () -> RecurringPayment.validateHorizon(RecurringPayment.MAX_HORIZON_DAYS + 1, null));
+        assertThrows(BadRequestException.class, () -> RecurringPayment.validateHorizon(null, 0));
+        assertThrows(BadRequestException.class, () -> RecurringPayment.validateHorizon(null, Integer.MAX_VALUE));
+    }
+}
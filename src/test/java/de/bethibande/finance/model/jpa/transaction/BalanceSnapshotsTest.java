@@ -0,0 +1,149 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.*;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+class BalanceSnapshotsTest {
+
+    private static final LocalDate START = LocalDate.of(2026, 1, 1);
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    @Inject
+    protected BalanceSnapshots snapshots;
+
+    private TestWorkspace fixture;
+    private Wallet savings;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Snapshots")
+                .wallet("Checking")
+                .transaction(BigDecimal.ZERO)
+                .build();
+        savings = QuarkusTransaction.requiringNew().call(() -> fixture.wallet("Savings"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private void book(final Wallet wallet, final int day, final String amount) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            final BookedAmount booked = new BookedAmount();
+            booked.transaction = fixture.transaction;
+            booked.amount = new BigDecimal(amount);
+            booked.asset = fixture.euro;
+            booked.wallet = wallet;
+            booked.date = START.plusDays(day - 1).atTime(12, 0).toInstant(ZoneOffset.UTC);
+            booked.persist();
+
+            walletBalances.book(booked);
+        });
+    }
+
+    private int refresh() {
+        return QuarkusTransaction.requiringNew().call(() -> snapshots.refresh(fixture.id(), 10));
+    }
+
+    private List<BalanceHistoryDTO.Point> history(final Long walletId, final int from, final int to, final int maxPoints) {
+        final List<BalanceHistoryDTO> history = QuarkusTransaction.requiringNew().call(() -> snapshots.history(
+                fixture.id(),
+                walletId,
+                START.plusDays(from - 1),
+                START.plusDays(to - 1),
+                maxPoints
+        ));
+
+        assertEquals(1, history.size());
+        return history.getFirst().points();
+    }
+
+    private static void assertBalance(final String expected, final BalanceHistoryDTO.Point point) {
+        assertEquals(0, new BigDecimal(expected).compareTo(point.balance()), () -> "Balance on " + point.date());
+    }
+
+    private List<BalanceSnapshot> snapshots() {
+        return QuarkusTransaction.requiringNew().call(() -> BalanceSnapshot.list("wallet.id = ?1 ORDER BY day", fixture.wallet.id));
+    }
+
+    @Test
+    void testDailySeries() {
+        book(fixture.wallet, 1, "10");
+        book(fixture.wallet, 3, "5");
+        book(fixture.wallet, 10, "-2");
+
+        assertEquals(1, refresh());
+        assertEquals(0, refresh());
+        assertEquals(3, snapshots().size());
+
+        final List<BalanceHistoryDTO.Point> points = history(fixture.wallet.id, 1, 10, 366);
+        assertEquals(10, points.size());
+        assertEquals(START, points.getFirst().date());
+        assertBalance("10", points.get(1));
+        assertBalance("15", points.get(4));
+        assertBalance("13", points.get(9));
+
+        // Days before the first snapshot carry its balance forward
+        assertBalance("15", history(fixture.wallet.id, 5, 6, 366).getFirst());
+    }
+
+    @Test
+    void testLateBooking() {
+        book(fixture.wallet, 1, "10");
+        book(fixture.wallet, 3, "5");
+        book(fixture.wallet, 10, "-2");
+        refresh();
+
+        book(fixture.wallet, 2, "1");
+
+        final LocalDate dirty = QuarkusTransaction.requiringNew().call(() -> (LocalDate) BalanceSnapshot.getEntityManager()
+                .createNativeQuery("SELECT day FROM BalanceSnapshotDirty WHERE wallet_id = :wallet", LocalDate.class)
+                .setParameter("wallet", fixture.wallet.id)
+                .getSingleResult());
+        assertEquals(START.plusDays(1), dirty);
+
+        assertEquals(1, refresh());
+
+        final List<BalanceSnapshot> snapshots = snapshots();
+        assertEquals(4, snapshots.size());
+        assertEquals(0, new BigDecimal("10").compareTo(snapshots.get(0).balance));
+        assertEquals(0, new BigDecimal("11").compareTo(snapshots.get(1).balance));
+        assertEquals(0, new BigDecimal("16").compareTo(snapshots.get(2).balance));
+        assertEquals(0, new BigDecimal("14").compareTo(snapshots.get(3).balance));
+    }
+
+    @Test
+    void testDownsampledWorkspaceSeries() {
+        book(fixture.wallet, 1, "10");
+        book(savings, 4, "100");
+        book(fixture.wallet, 9, "-5");
+        assertEquals(2, refresh());
+
+        final List<BalanceHistoryDTO.Point> points = history(null, 1, 10, 3);
+        assertEquals(3, points.size());
+        assertEquals(START.plusDays(1), points.get(0).date());
+        assertBalance("10", points.get(0));
+        assertEquals(START.plusDays(5), points.get(1).date());
+        assertBalance("110", points.get(1));
+        assertEquals(START.plusDays(9), points.get(2).date());
+        assertBalance("105", points.get(2));
+    }
+
+}
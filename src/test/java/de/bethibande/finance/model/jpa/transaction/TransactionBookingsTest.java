@@ -0,0 +1,149 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.Wallet;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class TransactionBookingsTest {
+
+    private static final int CONCURRENT_BOOKINGS = 100;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    @Inject
+    protected TransactionBookings transactionBookings;
+
+    private TestWorkspace fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Bookings")
+                .dollar()
+                .transaction(BigDecimal.TEN)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private BookedAmount book(final Asset asset, final String amount) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            final BookedAmount booked = new BookedAmount();
+            booked.transaction = Transaction.findById(fixture.transaction.id);
+            booked.amount = new BigDecimal(amount);
+            booked.asset = Asset.findById(asset.id);
+            booked.wallet = Wallet.findById(fixture.wallet.id);
+            booked.date = Instant.now();
+            booked.persist();
+
+            walletBalances.book(booked);
+            return booked;
+        });
+    }
+
+    private void assertBooked(final int count, final String sum) {
+        final Transaction loaded = QuarkusTransaction.requiringNew().call(() -> Transaction.findById(fixture.transaction.id));
+
+        assertEquals(count, loaded.bookedCount);
+        assertEquals(0, new BigDecimal(sum).compareTo(loaded.bookedSum), () -> "Expected " + sum + " but was " + loaded.bookedSum);
+    }
+
+    private List<TransactionBookings.Mismatch> verify() {
+        return QuarkusTransaction.requiringNew().call(() -> transactionBookings.verify(fixture.id()));
+    }
+
+    @Test
+    void testBookAndUnbook() {
+        book(fixture.euro, "4.50");
+        final BookedAmount changed = book(fixture.euro, "3");
+        book(fixture.dollar, "100");
+
+        // Amounts in other assets are only counted
+        assertBooked(3, "7.50");
+
+        // Like BookedAmountEndpoint#updateBookedAmount
+        QuarkusTransaction.requiringNew().run(() -> {
+            final BookedAmount amount = BookedAmount.findById(changed.id);
+            walletBalances.unbook(amount);
+            amount.amount = new BigDecimal("5");
+            walletBalances.book(amount);
+        });
+        assertBooked(3, "9.50");
+
+        // Like BookedAmountEndpoint#deleteBookedAmount
+        QuarkusTransaction.requiringNew().run(() -> {
+            final BookedAmount amount = BookedAmount.findById(changed.id);
+            walletBalances.unbook(amount);
+            amount.delete();
+        });
+        assertBooked(2, "4.50");
+        assertTrue(verify().isEmpty());
+    }
+
+    @Test
+    void testVerifyAndRefresh() {
+        book(fixture.euro, "1");
+        book(fixture.dollar, "2");
+
+        QuarkusTransaction.requiringNew().run(() -> Transaction.getEntityManager()
+                .createNativeQuery("UPDATE Transaction SET bookedCount = 5 WHERE id = :id")
+                .setParameter("id", fixture.transaction.id)
+                .executeUpdate());
+
+        final List<TransactionBookings.Mismatch> mismatches = verify();
+        assertEquals(1, mismatches.size());
+        assertEquals(5, mismatches.getFirst().storedCount());
+        assertEquals(2, mismatches.getFirst().ledgerCount());
+
+        // The booked sum follows the asset of the transaction
+        QuarkusTransaction.requiringNew().run(() -> {
+            final Transaction loaded = Transaction.findById(fixture.transaction.id);
+            loaded.asset = Asset.findById(fixture.dollar.id);
+            loaded.name = "Changed";
+        });
+
+        assertEquals(1, QuarkusTransaction.requiringNew().call(() -> transactionBookings.refresh(List.of(fixture.transaction.id))));
+        assertTrue(verify().isEmpty());
+        assertBooked(2, "2");
+    }
+
+    @Test
+    void testConcurrentBookings() {
+        try (final ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            final List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_BOOKINGS; i++) {
+                futures.add(CompletableFuture.runAsync(() -> book(fixture.euro, "1.01"), executor));
+                if (i == CONCURRENT_BOOKINGS / 2) {
+                    futures.add(CompletableFuture.runAsync(() -> QuarkusTransaction.requiringNew().run(() -> transactionBookings.refresh(List.of(fixture.transaction.id))), executor));
+                }
+            }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertBooked(CONCURRENT_BOOKINGS, new BigDecimal("1.01").multiply(BigDecimal.valueOf(CONCURRENT_BOOKINGS)).toPlainString());
+        assertTrue(verify().isEmpty());
+    }
+
+}
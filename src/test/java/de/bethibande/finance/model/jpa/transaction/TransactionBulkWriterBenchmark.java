@@ -0,0 +1,137 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.Wallet;
+import de.bethibande.finance.model.jpa.Workspace;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Compares the rows/sec of {@link Transaction#persist(Iterable)} and {@link TransactionBulkWriter#insert}.
+ * <br>
+ * Requires a database (dev services) and is only run with {@code ./gradlew test -Dbenchmark=true}, the sizes can be
+ * changed using {@code -Dbenchmark.sizes=10000,100000}.
+ */
+@QuarkusTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TransactionBulkWriterBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionBulkWriterBenchmark.class);
+
+    private static final int SLICE_SIZE = 10_000;
+
+    @Inject
+    protected TransactionBulkWriter bulkWriter;
+
+    private Workspace workspace;
+    private Asset asset;
+    private Wallet wallet;
+
+    @BeforeEach
+    void setUp() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            workspace = new Workspace();
+            workspace.name = "Benchmark";
+            workspace.persist();
+
+            asset = new Asset();
+            asset.name = "Euro";
+            asset.code = "EUR";
+            asset.workspace = workspace;
+            asset.persist();
+
+            wallet = new Wallet();
+            wallet.name = "Benchmark";
+            wallet.asset = asset;
+            wallet.workspace = workspace;
+            wallet.persist();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            Transaction.delete("workspace.id = ?1", workspace.id);
+            Wallet.deleteById(wallet.id);
+            Asset.deleteById(asset.id);
+            Workspace.deleteById(workspace.id);
+        });
+    }
+
+    @Test
+    void benchmark() {
+        final int[] sizes = Arrays.stream(System.getProperty("benchmark.sizes", "10000,100000,1000000").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+
+        for (final int size : sizes) {
+            final double before = measure(size, slice -> {
+                Transaction.persist(slice);
+                Transaction.flush();
+                Transaction.getEntityManager().clear();
+            });
+            final double after = measure(size, bulkWriter::insert);
+
+            LOGGER.info("{} rows: persist {} rows/sec, bulk writer {} rows/sec ({}x)",
+                    size,
+                    Math.round(before),
+                    Math.round(after),
+                    String.format("%.2f", after / before));
+        }
+    }
+
+    private double measure(final int size, final Consumer<List<Transaction>> writer) {
+        final long start = System.nanoTime();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            final Instant now = Instant.now();
+            for (int offset = 0; offset < size; offset += SLICE_SIZE) {
+                writer.accept(generate(Math.min(SLICE_SIZE, size - offset), now));
+            }
+        });
+
+        final double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        QuarkusTransaction.requiringNew().run(() -> Transaction.delete("workspace.id = ?1", workspace.id));
+
+        return size / seconds;
+    }
+
+    private List<Transaction> generate(final int count, final Instant now) {
+        final Workspace workspace = Workspace.getEntityManager().getReference(Workspace.class, this.workspace.id);
+        final Asset asset = Asset.getEntityManager().getReference(Asset.class, this.asset.id);
+        final Wallet wallet = Wallet.getEntityManager().getReference(Wallet.class, this.wallet.id);
+
+        final List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Transaction transaction = new Transaction();
+            transaction.name = "Benchmark " + i;
+            transaction.date = now.plusSeconds(i);
+            transaction.amount = BigDecimal.valueOf(i);
+            transaction.asset = asset;
+            transaction.wallet = wallet;
+            transaction.workspace = workspace;
+            transaction.type = TransactionType.PAYMENT;
+            transaction.status = TransactionStatus.OPEN;
+            transactions.add(transaction);
+        }
+
+        return transactions;
+    }
+
+}
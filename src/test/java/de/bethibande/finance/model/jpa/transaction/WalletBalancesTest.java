@@ -0,0 +1,132 @@
+package de.bethibande.finance.model.jpa.transaction;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.WalletBalance;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class WalletBalancesTest {
+
+    private static final int CONCURRENT_BOOKINGS = 200;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    private TestWorkspace fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Balances")
+                .dollar()
+                .transaction(BigDecimal.ZERO)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private BookedAmount book(final Asset asset, final String amount) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            final BookedAmount booked = new BookedAmount();
+            booked.transaction = fixture.transaction;
+            booked.amount = new BigDecimal(amount);
+            booked.asset = asset;
+            booked.wallet = fixture.wallet;
+            booked.date = Instant.now();
+            booked.persist();
+
+            walletBalances.book(booked);
+            return booked;
+        });
+    }
+
+    private BigDecimal balance(final Asset asset) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            final WalletBalance balance = WalletBalance.find("wallet.id = ?1 AND asset.id = ?2", fixture.wallet.id, asset.id).firstResult();
+            return balance != null ? balance.balance : null;
+        });
+    }
+
+    private List<WalletBalances.Mismatch> verify() {
+        return QuarkusTransaction.requiringNew().call(() -> walletBalances.verify(fixture.id()));
+    }
+
+    @Test
+    void testBookAndUnbook() {
+        book(fixture.euro, "10.50");
+        final BookedAmount changed = book(fixture.euro, "-3.25");
+        book(fixture.dollar, "7");
+
+        assertEquals(0, new BigDecimal("7.25").compareTo(balance(fixture.euro)));
+        assertEquals(0, new BigDecimal("7").compareTo(balance(fixture.dollar)));
+
+        // Change the currency of a booked amount, like BookedAmountEndpoint#updateBookedAmount
+        QuarkusTransaction.requiringNew().run(() -> {
+            final BookedAmount amount = BookedAmount.findById(changed.id);
+            walletBalances.unbook(amount);
+            amount.asset = Asset.findById(fixture.dollar.id);
+            amount.amount = new BigDecimal("-4");
+            walletBalances.book(amount);
+        });
+
+        assertEquals(0, new BigDecimal("10.50").compareTo(balance(fixture.euro)));
+        assertEquals(0, new BigDecimal("3").compareTo(balance(fixture.dollar)));
+        assertTrue(verify().isEmpty());
+    }
+
+    @Test
+    void testVerifyAndRebuild() {
+        book(fixture.euro, "1");
+        book(fixture.euro, "2");
+        book(fixture.dollar, "5");
+
+        QuarkusTransaction.requiringNew().run(() -> WalletBalance.update("balance = 100 WHERE wallet.id = ?1 AND asset.id = ?2", fixture.wallet.id, fixture.euro.id));
+        QuarkusTransaction.requiringNew().run(() -> WalletBalance.delete("wallet.id = ?1 AND asset.id = ?2", fixture.wallet.id, fixture.dollar.id));
+
+        final List<WalletBalances.Mismatch> mismatches = verify();
+        assertEquals(2, mismatches.size());
+
+        assertEquals(2, QuarkusTransaction.requiringNew().call(() -> walletBalances.rebuild(fixture.id())));
+        assertTrue(verify().isEmpty());
+        assertEquals(0, new BigDecimal("3").compareTo(balance(fixture.euro)));
+        assertEquals(0, new BigDecimal("5").compareTo(balance(fixture.dollar)));
+    }
+
+    @Test
+    void testConcurrentBookings() {
+        try (final ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            final List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_BOOKINGS; i++) {
+                futures.add(CompletableFuture.runAsync(() -> book(fixture.euro, "1.01"), executor));
+                if (i == CONCURRENT_BOOKINGS / 2) {
+                    futures.add(CompletableFuture.runAsync(() -> QuarkusTransaction.requiringNew().run(() -> walletBalances.rebuild(fixture.id())), executor));
+                }
+            }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertEquals(0, new BigDecimal("1.01").multiply(BigDecimal.valueOf(CONCURRENT_BOOKINGS)).compareTo(balance(fixture.euro)));
+        assertTrue(verify().isEmpty());
+    }
+
+}
@@ -0,0 +1,159 @@
+package de.bethibande.finance.model.jpa.valuation;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.ExchangeRate;
+import de.bethibande.finance.model.jpa.Wallet;
+import de.bethibande.finance.model.jpa.transaction.*;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class PortfolioValuatorTest {
+
+    private static final Instant JAN = Instant.parse("2026-01-01T12:00:00Z");
+    private static final Instant FEB = Instant.parse("2026-02-01T12:00:00Z");
+
+    @Inject
+    protected PortfolioValuator valuator;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    private TestWorkspace fixture;
+    private Asset yen;
+    private Asset bitcoin;
+    private Wallet savings;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Valuation")
+                .wallet("Checking")
+                .dollar()
+                .transaction(BigDecimal.ZERO)
+                .build();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            yen = asset("JPY");
+            bitcoin = asset("BTC");
+            savings = fixture.wallet("Savings");
+
+            rate(fixture.euro, fixture.dollar, 2);
+            rate(fixture.dollar, yen, 100);
+        });
+
+        book(fixture.wallet, fixture.euro, "100", JAN);
+        book(fixture.wallet, fixture.dollar, "50", JAN);
+        book(savings, yen, "10000", FEB);
+        book(savings, bitcoin, "1", FEB);
+    }
+
+    private Asset asset(final String code) {
+        final Asset asset = new Asset();
+        asset.name = code;
+        asset.code = code;
+        asset.workspace = fixture.workspace;
+        asset.persist();
+
+        return asset;
+    }
+
+    private void rate(final Asset base, final Asset quote, final double rate) {
+        final ExchangeRate exchangeRate = new ExchangeRate();
+        exchangeRate.base = base;
+        exchangeRate.quote = quote;
+        exchangeRate.rate = rate;
+        exchangeRate.date = JAN;
+        exchangeRate.persist();
+    }
+
+    private void book(final Wallet wallet, final Asset asset, final String amount, final Instant date) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            final BookedAmount booked = new BookedAmount();
+            booked.transaction = Transaction.findById(fixture.transaction.id);
+            booked.amount = new BigDecimal(amount);
+            booked.asset = Asset.findById(asset.id);
+            booked.wallet = Wallet.findById(wallet.id);
+            booked.date = date;
+            booked.persist();
+
+            walletBalances.book(booked);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        QuarkusTransaction.requiringNew().run(() -> ExchangeRate.delete("base.workspace.id = ?1", fixture.id()));
+        fixture.delete();
+    }
+
+    private ValuationDTO value(final LocalDate date) {
+        return QuarkusTransaction.requiringNew().call(() -> valuator.value(fixture.id(), fixture.euro.id, date));
+    }
+
+    private static void assertValue(final String expected, final BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), () -> "Expected " + expected + " but was " + actual);
+    }
+
+    @Test
+    void testCurrentValuation() {
+        final ValuationDTO valuation = value(null);
+
+        // 100 EUR + 50 USD / 2 + 10000 JPY / 200, bitcoin has no rate
+        assertValue("175", valuation.total());
+        assertEquals(List.of(bitcoin.id), valuation.unconvertible());
+
+        final ValuationDTO.WalletValue first = valuation.wallets().getFirst();
+        assertEquals(fixture.wallet.id, first.walletId());
+        assertValue("125", first.value());
+        assertEquals(2, first.positions().size());
+
+        final ValuationDTO.WalletValue second = valuation.wallets().get(1);
+        assertValue("50", second.value());
+        assertNull(second.positions().stream().filter(position -> position.assetId() == bitcoin.id).findFirst().orElseThrow().value());
+    }
+
+    @Test
+    void testPastValuation() {
+        final ValuationDTO valuation = value(LocalDate.of(2026, 1, 15));
+
+        assertValue("125", valuation.total());
+        assertTrue(valuation.unconvertible().isEmpty());
+        assertTrue(valuation.wallets().get(1).positions().isEmpty());
+    }
+
+    @Test
+    void testCache() {
+        final ValuationDTO first = value(null);
+        assertSame(first, value(null));
+
+        book(fixture.wallet, fixture.euro, "10", FEB);
+        final ValuationDTO booked = value(null);
+        assertNotSame(first, booked);
+        assertValue("185", booked.total());
+        assertSame(booked, value(null));
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            final ExchangeRate rate = new ExchangeRate();
+            rate.base = Asset.findById(bitcoin.id);
+            rate.quote = Asset.findById(fixture.euro.id);
+            rate.rate = 50_000.0;
+            rate.date = JAN;
+            rate.persist();
+        });
+
+        assertValue("50185", value(null).total());
+    }
+
+}
@@ -0,0 +1,354 @@
+package de.bethibande.finance.statement;
+
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.Job;
+import de.bethibande.finance.model.jpa.StatementFormat;
+import de.bethibande.finance.model.jpa.StatementImport;
+import de.bethibande.finance.model.jpa.StatementImportStatus;
+import de.bethibande.finance.model.jpa.partner.Partner;
+import de.bethibande.finance.model.jpa.partner.PartnerType;
+import de.bethibande.finance.model.jpa.transaction.BookedAmount;
+import de.bethibande.finance.model.jpa.transaction.Transaction;
+import de.bethibande.finance.model.web.DeleteResult;
+import de.bethibande.finance.security.Roles;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.smallrye.jwt.build.Jwt;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class StatementImporterTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementImporterTest.class);
+
+    private static final String CAMT = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Document xmlns="urn:iso:std:iso:20022:tech:xsd:camt.053.001.02">
+              <BkToCstmrStmt>
+                <Stmt>
+                  <Ntry>
+                    <Amt Ccy="EUR">12.50</Amt>
+                    <CdtDbtInd>DBIT</CdtDbtInd>
+                    <BookgDt><Dt>2026-01-02</Dt></BookgDt>
+                    <NtryDtls><TxDtls>
+                      <AmtDtls><TxAmt><Amt Ccy="EUR">12.50</Amt></TxAmt></AmtDtls>
+                      <RltdPties><Cdtr><Nm>Bakery</Nm></Cdtr><Dbtr><Nm>Me</Nm></Dbtr></RltdPties>
+                      <RmtInf><Ustrd>Bread</Ustrd></RmtInf>
+                    </TxDtls></NtryDtls>
+                  </Ntry>
+                  <Ntry>
+                    <Amt Ccy="EUR">1000</Amt>
+                    <CdtDbtInd>CRDT</CdtDbtInd>
+                    <BookgDt><Dt>2026-01-03</Dt></BookgDt>
+                    <NtryDtls><TxDtls>
+                      <RltdPties><Dbtr><Pty><Nm>Employer</Nm></Pty></Dbtr></RltdPties>
+                    </TxDtls></NtryDtls>
+                    <AddtlNtryInf>Salary</AddtlNtryInf>
+                  </Ntry>
+                  <Ntry>
+                    <Amt Ccy="EUR">broken</Amt>
+                    <CdtDbtInd>CRDT</CdtDbtInd>
+                    <BookgDt><Dt>2026-01-03</Dt></BookgDt>
+                  </Ntry>
+                </Stmt>
+              </BkToCstmrStmt>
+            </Document>
+            """;
+
+    private static final String OFX = """
+            OFXHEADER:100
+            DATA:OFXSGML
+            VERSION:102
+
+            <OFX>
+            <BANKMSGSRSV1><STMTTRNRS><STMTRS>
+            <CURDEF>EUR
+            <BANKTRANLIST>
+            <STMTTRN>
+            <TRNTYPE>DEBIT
+            <DTPOSTED>20260105120000.000[+1:CET]
+            <TRNAMT>-3.20
+            <FITID>1
+            <NAME>Bakery
+            <MEMO>Coffee &amp; cake
+            </STMTTRN>
+            <STMTTRN>
+            <TRNTYPE>DEBIT
+            <DTPOSTED>20260106
+            <TRNAMT>-10
+            <NAME>Shop
+            <CURRENCY><CURRATE>1.1<CURSYM>XYZ</CURRENCY>
+            </STMTTRN>
+            </BANKTRANLIST>
+            </STMTRS></STMTTRNRS></BANKMSGSRSV1>
+            </OFX>
+            """;
+
+    @Inject
+    protected StatementImporter importer;
+
+    @Inject
+    protected StatementContents contents;
+
+    @ConfigProperty(name = "mp.jwt.verify.issuer")
+    protected String issuer;
+
+    @ConfigProperty(name = "mp.jwt.token.cookie")
+    protected String cookieName;
+
+    private TestWorkspace fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Import")
+                .wallet("Checking")
+                .dollar()
+                .build();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            final Partner bakery = new Partner();
+            bakery.name = "Bakery";
+            bakery.type = PartnerType.COMPANY;
+            bakery.workspace = fixture.workspace;
+            bakery.persist();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            StatementImport.delete("workspace.id = ?1", fixture.id());
+            Job.delete("workspace.id = ?1", fixture.id());
+        });
+        fixture.delete();
+    }
+
+    private long createImport(final StatementFormat format, final String content) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            final StatementImport statement = new StatementImport();
+            statement.workspace = fixture.workspace;
+            statement.wallet = fixture.wallet;
+            statement.fileName = "statement." + format.name().toLowerCase();
+            statement.format = format;
+            statement.persist();
+
+            contents.write(statement.id, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+            return statement.id;
+        });
+    }
+
+    private StatementImport find(final long id) {
+        return QuarkusTransaction.requiringNew().call(() -> StatementImport.findById(id));
+    }
+
+    private List<Transaction> transactions() {
+        return QuarkusTransaction.requiringNew().call(() -> Transaction.list("workspace.id = ?1 ORDER BY date, id", fixture.id()));
+    }
+
+    private long partners() {
+        return QuarkusTransaction.requiringNew().call(() -> Partner.count("workspace.id = ?1", fixture.id()));
+    }
+
+    @Test
+    void testCsv() {
+        final StringBuilder csv = new StringBuilder("Buchungstag;Betrag;Währung;Verwendungszweck;Empfänger\n");
+        for (int i = 0; i < 250; i++) {
+            csv.append(String.format("%02d.01.2026;-%d,50;%s;\"Payment; %d\";Partner %d\n", i % 28 + 1, i, i % 50 == 0 ? "USD" : "EUR", i, i % 10));
+        }
+        csv.append("not a date;1,00;EUR;Broken;\n");
+        csv.append("01.02.2026;1,00;CHF;Unknown currency;\n");
+
+        final long id = createImport(StatementFormat.detect(csv.toString().getBytes(StandardCharsets.UTF_8)), csv.toString());
+        importer.run(id, 100, () -> true, LOGGER);
+
+        final StatementImport statement = find(id);
+        assertEquals(StatementImportStatus.COMPLETED, statement.status);
+        assertEquals(250, statement.importedRows);
+        assertEquals(2, statement.skippedRows);
+        assertNotNull(statement.finishedAt);
+
+        final List<Transaction> transactions = transactions();
+        assertEquals(250, transactions.size());
+        assertEquals(5, transactions.stream().filter(transaction -> transaction.asset.code.equals("USD")).count());
+        assertTrue(transactions.stream().anyMatch(transaction -> transaction.name.equals("Payment; 3")
+                && transaction.amount.compareTo(new BigDecimal("-3.50")) == 0));
+        assertEquals(250, QuarkusTransaction.requiringNew().call(() -> BookedAmount.count("transaction.workspace.id = ?1", fixture.id())));
+
+        // Bakery plus the ten partners of the statement
+        assertEquals(11, partners());
+    }
+
+    @Test
+    void testCamt053() {
+        assertEquals(StatementFormat.CAMT053, StatementFormat.detect(CAMT.getBytes(StandardCharsets.UTF_8)));
+
+        final long id = createImport(StatementFormat.CAMT053, CAMT);
+        importer.run(id, 100, () -> true, LOGGER);
+
+        final StatementImport statement = find(id);
+        assertEquals(2, statement.importedRows);
+        assertEquals(1, statement.skippedRows);
+
+        final List<Transaction> transactions = transactions();
+        assertEquals(0, new BigDecimal("-12.50").compareTo(transactions.get(0).amount));
+        assertEquals("Bread", transactions.get(0).name);
+        assertEquals("Bakery", transactions.get(0).partner.name);
+        assertEquals(0, new BigDecimal("1000").compareTo(transactions.get(1).amount));
+        assertEquals("Salary", transactions.get(1).name);
+        assertEquals("Employer", transactions.get(1).partner.name);
+        assertEquals(2, partners());
+    }
+
+    @Test
+    void testOfx() {
+        assertEquals(StatementFormat.OFX, StatementFormat.detect(OFX.getBytes(StandardCharsets.UTF_8)));
+
+        final long id = createImport(StatementFormat.OFX, OFX);
+        importer.run(id, 100, () -> true, LOGGER);
+
+        final StatementImport statement = find(id);
+        assertEquals(1, statement.importedRows);
+        // Unknown currency
+        assertEquals(1, statement.skippedRows);
+
+        final Transaction transaction = transactions().getFirst();
+        assertEquals("Coffee & cake", transaction.name);
+        assertEquals(Instant.parse("2026-01-05T11:00:00Z"), transaction.date);
+        assertEquals("Bakery", transaction.partner.name);
+    }
+
+    @Test
+    void testResume() {
+        final StringBuilder csv = new StringBuilder("date,amount,name\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("2026-01-01,").append(i).append(",Entry ").append(i).append('\n');
+        }
+
+        final long id = createImport(StatementFormat.CSV, csv.toString());
+
+        // Lose the lock after the first two batches have been written
+        final AtomicInteger checks = new AtomicInteger();
+        assertThrows(CancellationException.class, () -> importer.run(id, 30, () -> checks.incrementAndGet() <= 2, LOGGER));
+        assertEquals(60, find(id).importedRows);
+
+        importer.run(id, 30, () -> true, LOGGER);
+
+        final List<Transaction> transactions = transactions();
+        assertEquals(100, transactions.size());
+        assertEquals(100, transactions.stream().map(transaction -> transaction.name).distinct().count());
+        assertEquals(StatementImportStatus.COMPLETED, find(id).status);
+    }
+
+    private String token() {
+        return Jwt.issuer(issuer)
+                .upn("admin")
+                .groups(Set.of(Roles.ADMIN))
+                .sign();
+    }
+
+    private long chunks(final long id) {
+        return QuarkusTransaction.requiringNew().call(() -> ((Number) StatementImport.getEntityManager()
+                .createNativeQuery("SELECT count(*) FROM StatementImportChunk WHERE import_id = :id")
+                .setParameter("id", id)
+                .getSingleResult()).longValue());
+    }
+
+    @Test
+    void testUploadInChunks() {
+        final int entries = 3000;
+        final String padding = "x".repeat(1000);
+        final StringBuilder csv = new StringBuilder("date,amount,name,notes\n");
+        for (int i = 0; i < entries; i++) {
+            csv.append("2026-01-01,").append(i).append(",Entry ").append(i).append(',').append(padding).append('\n');
+        }
+
+        final byte[] content = csv.toString().getBytes(StandardCharsets.UTF_8);
+        final long id = given().cookie(cookieName, token())
+                .contentType(ContentType.BINARY)
+                .queryParam("wallet_id", fixture.wallet.id)
+                .body(content)
+                .post("/api/v2/import/{workspace_id}", fixture.id())
+                .then()
+                .statusCode(200)
+                .extract()
+                .jsonPath()
+                .getLong("id");
+
+        assertEquals(StatementFormat.CSV, find(id).format);
+        assertEquals((content.length + StatementContents.CHUNK_SIZE - 1) / StatementContents.CHUNK_SIZE, chunks(id));
+
+        importer.run(id, 1000, () -> true, LOGGER);
+        assertEquals(entries, find(id).importedRows);
+        assertEquals(0, chunks(id));
+    }
+
+    @Test
+    void testBodyLimit() {
+        // Only statement uploads may exceed finance.http.max-body-size
+        given().cookie(cookieName, token())
+                .contentType(ContentType.JSON)
+                .body(new byte[11 * 1024 * 1024])
+                .post("/api/v2/transaction/batch")
+                .then()
+                .statusCode(413);
+    }
+
+    @Test
+    void testChunkedBodyLimit() {
+        // Without a Content-Length the body is sent in chunks and cut off once it exceeds the limit
+        given().cookie(cookieName, token())
+                .contentType(ContentType.JSON)
+                .body(new ByteArrayInputStream(new byte[11 * 1024 * 1024]))
+                .post("/api/v2/transaction/batch")
+                .then()
+                .statusCode(413);
+    }
+
+    @Test
+    void testImportsAreDependents() {
+        final long id = createImport(StatementFormat.CSV, "date,amount,name\n");
+        importer.run(id, 100, () -> true, LOGGER);
+        assertEquals(0, find(id).importedRows);
+
+        final String token = token();
+        final DeleteResult[] results = given().cookie(cookieName, token)
+                .contentType(ContentType.JSON)
+                .body(List.of(fixture.wallet.id))
+                .post("/api/v2/wallet/batch-delete")
+                .then()
+                .statusCode(200)
+                .extract()
+                .as(DeleteResult[].class);
+        assertEquals(DeleteResult.Status.CONFLICT, results[0].status());
+
+        given().cookie(cookieName, token)
+                .delete("/api/v1/wallet/{id}", fixture.wallet.id)
+                .then()
+                .statusCode(409);
+
+        given().cookie(cookieName, token)
+                .delete("/api/v2/workspace/{id}", fixture.id())
+                .then()
+                .statusCode(409);
+    }
+
+}
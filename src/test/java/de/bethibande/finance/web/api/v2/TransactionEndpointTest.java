@@ -0,0 +1,458 @@
+package de.bethibande.finance.web.api.v2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.Wallet;
+import de.bethibande.finance.model.jpa.partner.Partner;
+import de.bethibande.finance.model.jpa.partner.PartnerType;
+import de.bethibande.finance.model.jpa.recurring.RecurringPayment;
+import de.bethibande.finance.model.jpa.recurring.RecurringPaymentStatus;
+import de.bethibande.finance.model.jpa.transaction.*;
+import de.bethibande.finance.model.web.BatchResult;
+import de.bethibande.finance.model.web.DeleteResult;
+import de.bethibande.finance.security.Roles;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import io.smallrye.jwt.build.Jwt;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Requires hibernate statistics, which are enabled in the test profile.
+ */
+@QuarkusTest
+class TransactionEndpointTest {
+
+    private static final int TRANSACTIONS = 120;
+    private static final int PARTNERS = 6;
+    private static final int RECURRING_PAYMENTS = 40;
+    private static final int BOOKED_AMOUNTS = 2;
+
+    /**
+     * Count, page and source query plus a few for the references of the sources that are not part of the page.
+     */
+    private static final int MAX_STATEMENTS = 8;
+
+    /**
+     * One query per referenced entity type, a few sequence calls and the batched inserts or updates. Booked amounts
+     * additionally update the balance and snapshot of each of the three wallets, independent of the number of items.
+     */
+    private static final int MAX_BATCH_STATEMENTS = 16;
+    private static final int BATCH_ITEMS = 100;
+
+    @Inject
+    protected SessionFactory sessionFactory;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    protected WalletBalances walletBalances;
+
+    @ConfigProperty(name = "mp.jwt.verify.issuer")
+    protected String issuer;
+
+    @ConfigProperty(name = "mp.jwt.token.cookie")
+    protected String cookieName;
+
+    private TestWorkspace fixture;
+    private final List<Long> transactions = new ArrayList<>();
+    private final List<Long> assets = new ArrayList<>();
+    private final List<Long> wallets = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Transactions").build();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            final List<Partner> partners = new ArrayList<>();
+            for (int i = 0; i < PARTNERS; i++) {
+                final Partner partner = new Partner();
+                partner.name = "Partner " + i;
+                partner.type = PartnerType.COMPANY;
+                partner.workspace = fixture.workspace;
+                partner.persist();
+                partners.add(partner);
+            }
+
+            final List<Asset> assets = new ArrayList<>();
+            final List<Wallet> wallets = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final Asset asset = new Asset();
+                asset.name = "Asset " + i;
+                asset.code = "AS" + i;
+                asset.provider = partners.get(i);
+                asset.workspace = fixture.workspace;
+                asset.persist();
+                assets.add(asset);
+
+                final Wallet wallet = new Wallet();
+                wallet.name = "Wallet " + i;
+                wallet.asset = asset;
+                wallet.provider = partners.get(i + 1);
+                wallet.workspace = fixture.workspace;
+                wallet.persist();
+                wallets.add(wallet);
+
+                this.assets.add(asset.id);
+                this.wallets.add(wallet.id);
+            }
+
+            final List<RecurringPayment> payments = new ArrayList<>();
+            for (int i = 0; i < RECURRING_PAYMENTS; i++) {
+                final RecurringPayment payment = new RecurringPayment();
+                payment.name = "Recurring " + i;
+                payment.cronSchedule = "0 0 0 1 * *";
+                payment.status = RecurringPaymentStatus.ACTIVE;
+                payment.type = TransactionType.PAYMENT;
+                payment.amount = BigDecimal.TEN;
+                payment.asset = assets.get(i % assets.size());
+                payment.wallet = wallets.get(i % wallets.size());
+                payment.partner = partners.get(i % partners.size());
+                payment.workspace = fixture.workspace;
+                payment.persist();
+                payments.add(payment);
+            }
+
+            Transaction previous = null;
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                final Transaction transaction = new Transaction();
+                transaction.name = "Transaction " + i;
+                transaction.date = Instant.now().minusSeconds(i);
+                transaction.amount = BigDecimal.valueOf(i);
+                transaction.type = TransactionType.PAYMENT;
+                transaction.status = TransactionStatus.OPEN;
+                transaction.asset = assets.get(i % assets.size());
+                transaction.wallet = wallets.get(i % wallets.size());
+                transaction.partner = i % 3 == 0 ? null : partners.get(i % partners.size());
+                transaction.internalRef = i % 5 == 0 ? previous : null;
+                transaction.workspace = fixture.workspace;
+                if (i % 2 == 0) transaction.setSource(payments.get(i / 2 % payments.size()));
+                transaction.persist();
+                transactions.add(transaction.id);
+
+                if (i % 4 == 0) {
+                    for (int j = 0; j < BOOKED_AMOUNTS; j++) {
+                        final BookedAmount amount = new BookedAmount();
+                        amount.transaction = transaction;
+                        amount.amount = BigDecimal.ONE;
+                        amount.asset = transaction.asset;
+                        amount.wallet = transaction.wallet;
+                        amount.date = transaction.date;
+                        amount.notes = j == 0 ? "Quoted, \"note\"" : null;
+                        amount.persist();
+                    }
+                }
+
+                previous = transaction;
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private long countStatements(final Runnable request) {
+        final Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        request.run();
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    private String token() {
+        return Jwt.issuer(issuer)
+                .upn("admin")
+                .groups(Set.of(Roles.ADMIN))
+                .sign();
+    }
+
+    @Test
+    void testListDoesNotLoadReferencesPerRow() {
+        final String token = token();
+        final long statements = countStatements(() -> given()
+                .cookie(cookieName, token)
+                .queryParam("size", TRANSACTIONS)
+                .get("/api/v2/transaction/{workspace_id}", fixture.id())
+                .then()
+                .statusCode(200)
+                .body("data", hasSize(TRANSACTIONS)));
+
+        assertTrue(statements <= MAX_STATEMENTS, "Listing " + TRANSACTIONS + " transactions took " + statements + " statements");
+    }
+
+    @Test
+    void testCursorListDoesNotLoadReferencesPerRow() {
+        final String token = token();
+        final long statements = countStatements(() -> given()
+                .cookie(cookieName, token)
+                .queryParam("size", TRANSACTIONS)
+                .queryParam("cursor", "")
+                .get("/api/v2/transaction/{workspace_id}", fixture.id())
+                .then()
+                .statusCode(200)
+                .body("data", hasSize(TRANSACTIONS)));
+
+        // No count, the keys of the cursors are selected by the page query
+        assertTrue(statements <= MAX_STATEMENTS, "Listing " + TRANSACTIONS + " transactions took " + statements + " statements");
+    }
+
+    @Test
+    void testExportNdjson() throws IOException {
+        final String body = given()
+                .cookie(cookieName, token())
+                .get("/api/v2/transaction/{workspace_id}/export", fixture.id())
+                .then()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract()
+                .asString();
+
+        final List<String> lines = body.lines().toList();
+        assertEquals(TRANSACTIONS, lines.size());
+
+        int bookedAmounts = 0;
+        for (final String line : lines) {
+            bookedAmounts += objectMapper.readTree(line).path("bookedAmounts").size();
+        }
+
+        assertEquals(TRANSACTIONS / 4 * BOOKED_AMOUNTS, bookedAmounts);
+    }
+
+    @Test
+    void testExportCsv() {
+        final String body = given()
+                .cookie(cookieName, token())
+                .queryParam("format", "csv")
+                .get("/api/v2/transaction/{workspace_id}/export", fixture.id())
+                .then()
+                .statusCode(200)
+                .contentType("text/csv")
+                .extract()
+                .asString();
+
+        final List<String> lines = body.lines().toList();
+        final int withBookedAmounts = TRANSACTIONS / 4;
+
+        // Header, one line per booked amount and one line per transaction without booked amounts
+        assertEquals(1 + withBookedAmounts * BOOKED_AMOUNTS + (TRANSACTIONS - withBookedAmounts), lines.size());
+        assertTrue(lines.stream().anyMatch(line -> line.endsWith(",\"Quoted, \"\"note\"\"\"")));
+    }
+
+    @Test
+    void testBatchDelete() {
+        final long deletable = transactions.get(1);
+        final long generated = transactions.get(0);
+        final long referenced = transactions.get(9); // The internal reference of transaction 10
+        final long missing = Long.MAX_VALUE;
+
+        final String token = token();
+        given().cookie(cookieName, token)
+                .delete("/api/v2/transaction/{id}", referenced)
+                .then()
+                .statusCode(409);
+
+        final List<DeleteResult> results = new ArrayList<>();
+        final long statements = countStatements(() -> results.addAll(List.of(given()
+                .cookie(cookieName, token)
+                .contentType(ContentType.JSON)
+                .body(List.of(deletable, generated, referenced, missing, deletable))
+                .post("/api/v2/transaction/batch-delete")
+                .then()
+                .statusCode(200)
+                .extract()
+                .as(DeleteResult[].class))));
+
+        assertEquals(List.of(
+                new DeleteResult(deletable, DeleteResult.Status.DELETED),
+                new DeleteResult(generated, DeleteResult.Status.CONFLICT),
+                new DeleteResult(referenced, DeleteResult.Status.CONFLICT),
+                new DeleteResult(missing, DeleteResult.Status.NOT_FOUND)
+        ), results);
+
+        // One dependency check and one delete
+        assertEquals(2, statements);
+        assertEquals(TRANSACTIONS - 1, QuarkusTransaction.requiringNew().call(() -> Transaction.count("workspace.id = ?1", fixture.id())));
+    }
+
+    private List<BatchResult<?>> writeBatch(final String method, final String path, final List<?> items) {
+        final List<BatchResult<?>> results = new ArrayList<>();
+        final long statements = countStatements(() -> results.addAll(List.<BatchResult<?>>of(given()
+                .cookie(cookieName, token())
+                .contentType(ContentType.JSON)
+                .body(items)
+                .request(method, path)
+                .then()
+                .statusCode(200)
+                .extract()
+                .as(BatchResult[].class))));
+
+        assertTrue(statements <= MAX_BATCH_STATEMENTS, "Writing " + items.size() + " items took " + statements + " statements");
+        assertEquals(items.size(), results.size());
+        return results;
+    }
+
+    private static void assertResults(final List<BatchResult<?>> results, final int notFound) {
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).index());
+            assertEquals(i == notFound ? Integer.valueOf(404) : null, results.get(i).error() != null ? results.get(i).error().status() : null);
+        }
+    }
+
+    @Test
+    void testBatchCreateAndUpdateTransactions() {
+        final List<Map<String, Object>> creates = new ArrayList<>();
+        for (int i = 0; i < BATCH_ITEMS; i++) {
+            creates.add(Map.of(
+                    "name", "Batch " + i,
+                    "amount", i,
+                    "date", Instant.now().toString(),
+                    "assetId", i == 3 ? Long.MAX_VALUE : assets.get(i % assets.size()),
+                    "walletId", wallets.get(i % wallets.size()),
+                    "workspaceId", fixture.id(),
+                    "type", TransactionType.PAYMENT,
+                    "status", TransactionStatus.OPEN
+            ));
+        }
+
+        assertResults(writeBatch("POST", "/api/v2/transaction/batch", creates), 3);
+        assertEquals(BATCH_ITEMS - 1, QuarkusTransaction.requiringNew().call(() -> Transaction.count("workspace.id = ?1 AND name LIKE 'Batch %'", fixture.id())));
+
+        final List<Map<String, Object>> updates = new ArrayList<>();
+        for (int i = 0; i < BATCH_ITEMS; i++) {
+            updates.add(Map.of(
+                    "id", i == 7 ? Long.MAX_VALUE : transactions.get(i),
+                    "name", "Updated " + i,
+                    "amount", i,
+                    "date", Instant.now().toString(),
+                    "assetId", assets.getFirst(),
+                    "walletId", wallets.getFirst(),
+                    "type", TransactionType.PAYMENT,
+                    "status", TransactionStatus.CLOSED
+            ));
+        }
+
+        assertResults(writeBatch("PUT", "/api/v2/transaction/batch", updates), 7);
+        assertEquals(BATCH_ITEMS - 1, QuarkusTransaction.requiringNew().call(() -> Transaction.count("workspace.id = ?1 AND name LIKE 'Updated %' AND status = ?2", fixture.id(), TransactionStatus.CLOSED)));
+    }
+
+    @Test
+    void testBatchCreateAndUpdateBookedAmounts() {
+        QuarkusTransaction.requiringNew().run(() -> walletBalances.rebuild(fixture.id()));
+
+        final List<Map<String, Object>> creates = new ArrayList<>();
+        for (int i = 0; i < BATCH_ITEMS; i++) {
+            creates.add(Map.of(
+                    "transactionId", i == 5 ? Long.MAX_VALUE : transactions.get(i),
+                    "amount", 10,
+                    "date", Instant.now().toString(),
+                    "assetId", assets.get(i % assets.size()),
+                    "walletId", wallets.get(i % wallets.size())
+            ));
+        }
+
+        assertResults(writeBatch("POST", "/api/v2/bookedamount/batch", creates), 5);
+
+        final List<Long> created = QuarkusTransaction.requiringNew().call(() -> BookedAmount.<BookedAmount>list("transaction.workspace.id = ?1 AND amount = 10 ORDER BY id", fixture.id())
+                .stream()
+                .map(amount -> amount.id)
+                .toList());
+        assertEquals(BATCH_ITEMS - 1, created.size());
+
+        final List<Map<String, Object>> updates = new ArrayList<>();
+        for (int i = 0; i < created.size(); i++) {
+            updates.add(Map.of(
+                    "id", created.get(i),
+                    "amount", 20,
+                    "date", Instant.now().toString(),
+                    "assetId", assets.getFirst(),
+                    "walletId", i == 1 ? Long.MAX_VALUE : wallets.getFirst()
+            ));
+        }
+
+        assertResults(writeBatch("PUT", "/api/v2/bookedamount/batch", updates), 1);
+        assertEquals(BATCH_ITEMS - 2, QuarkusTransaction.requiringNew().call(() -> BookedAmount.count("transaction.workspace.id = ?1 AND amount = 20", fixture.id())));
+        assertTrue(QuarkusTransaction.requiringNew().call(() -> walletBalances.verify(fixture.id())).isEmpty());
+    }
+
+
+    private JsonPath search(final Map<String, ?> params) {
+        return given()
+                .cookie(cookieName, token())
+                .queryParams(params)
+                .get("/api/v2/transaction/{workspace_id}/search", fixture.id())
+                .then()
+                .statusCode(200)
+                .extract()
+                .jsonPath();
+    }
+
+    private List<String> searchNames(final Map<String, ?> params) {
+        return search(params).getList("data.name", String.class);
+    }
+
+    @Test
+    void testSearch() {
+        // Partner 4 is the partner of every sixth transaction, starting at transaction 4
+        assertEquals(TRANSACTIONS / PARTNERS, searchNames(Map.of("query", "PARTNER 4", "size", TRANSACTIONS)).size());
+
+        // The newest, that is the lowest numbered, transactions first
+        assertEquals(
+                List.of("Transaction 11", "Transaction 110", "Transaction 113", "Transaction 116", "Transaction 119"),
+                searchNames(Map.of("query", "action 11", "wallet[]", wallets.get(2)))
+        );
+        assertEquals(10, searchNames(Map.of("min_amount", 10, "max_amount", 19, "status[]", TransactionStatus.OPEN)).size());
+        assertEquals(0, searchNames(Map.of("min_amount", 10, "max_amount", 19, "status[]", TransactionStatus.CLOSED)).size());
+
+        // Wildcards are matched literally
+        assertEquals(0, searchNames(Map.of("query", "%")).size());
+        assertEquals(0, searchNames(Map.of("query", "Transaction_1")).size());
+    }
+
+    @Test
+    void testSearchPages() {
+        final int pageSize = 7;
+        final List<String> names = new ArrayList<>();
+        final String[] cursor = {""};
+
+        do {
+            final long statements = countStatements(() -> {
+                final JsonPath page = search(Map.of("query", "action 1", "size", pageSize, "cursor", cursor[0]));
+                names.addAll(page.getList("data.name", String.class));
+                cursor[0] = page.getString("nextCursor");
+            });
+
+            assertTrue(statements <= MAX_STATEMENTS, "Searching a page took " + statements + " statements");
+        } while (cursor[0] != null);
+
+        // Transaction 1, 10 to 19 and 100 to 119
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            if (String.valueOf(i).startsWith("1")) expected.add("Transaction " + i);
+        }
+
+        assertEquals(expected, names);
+    }
+
+}
@@ -0,0 +1,195 @@
+package de.bethibande.finance.web.api.v2;
+
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.jpa.Wallet;
+import de.bethibande.finance.model.jpa.Workspace;
+import de.bethibande.finance.model.jpa.partner.Partner;
+import de.bethibande.finance.model.jpa.partner.PartnerType;
+import de.bethibande.finance.model.jpa.transaction.*;
+import de.bethibande.finance.security.Roles;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.smallrye.jwt.build.Jwt;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Measures the latency of {@link TransactionEndpoint#searchTransactions} in a large workspace.
+ * <br>
+ * Requires a database (dev services) and is only run with {@code ./gradlew test -Dbenchmark=true}, the size of the
+ * workspace and the number of requests per search can be changed using {@code -Dbenchmark.rows=1000000} and
+ * {@code -Dbenchmark.iterations=200}.
+ */
+@QuarkusTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TransactionSearchBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionSearchBenchmark.class);
+
+    private static final int SLICE_SIZE = 10_000;
+    private static final int WARMUP = 20;
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Duration RANGE = Duration.ofDays(3 * 365);
+    private static final List<String> PARTNERS = List.of(
+            "Netflix", "Spotify", "Amazon", "Landlord", "Supermarket", "Gas Station", "Employer", "Insurance",
+            "Gym", "Pharmacy", "Bakery", "Cinema", "Airline", "Hotel", "Electricity", "Internet Provider"
+    );
+
+    @Inject
+    protected TransactionBulkWriter bulkWriter;
+
+    @ConfigProperty(name = "mp.jwt.verify.issuer")
+    protected String issuer;
+
+    @ConfigProperty(name = "mp.jwt.token.cookie")
+    protected String cookieName;
+
+    private Workspace workspace;
+    private Asset asset;
+    private final List<Wallet> wallets = new ArrayList<>();
+    private final List<Partner> partners = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            workspace = new Workspace();
+            workspace.name = "Benchmark";
+            workspace.persist();
+
+            asset = new Asset();
+            asset.name = "Euro";
+            asset.code = "EUR";
+            asset.workspace = workspace;
+            asset.persist();
+
+            for (int i = 0; i < 4; i++) {
+                final Wallet wallet = new Wallet();
+                wallet.name = "Wallet " + i;
+                wallet.asset = asset;
+                wallet.workspace = workspace;
+                wallet.persist();
+                wallets.add(wallet);
+            }
+
+            for (final String name : PARTNERS) {
+                final Partner partner = new Partner();
+                partner.name = name;
+                partner.type = PartnerType.COMPANY;
+                partner.workspace = workspace;
+                partner.persist();
+                partners.add(partner);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            Transaction.delete("workspace.id = ?1", workspace.id);
+            Wallet.delete("workspace.id = ?1", workspace.id);
+            Partner.delete("workspace.id = ?1", workspace.id);
+            Asset.deleteById(asset.id);
+            Workspace.deleteById(workspace.id);
+        });
+    }
+
+    @Test
+    void benchmark() {
+        final int rows = Integer.getInteger("benchmark.rows", 1_000_000);
+        final int iterations = Integer.getInteger("benchmark.iterations", 200);
+
+        final long start = System.nanoTime();
+        for (int offset = 0; offset < rows; offset += SLICE_SIZE) {
+            final int from = offset;
+            final int count = Math.min(SLICE_SIZE, rows - offset);
+            QuarkusTransaction.requiringNew().run(() -> bulkWriter.insert(generate(from, count, rows)));
+        }
+        QuarkusTransaction.requiringNew().run(() -> Transaction.getEntityManager().createNativeQuery("ANALYZE Transaction").executeUpdate());
+        LOGGER.info("Inserted {} rows in {} ms", rows, (System.nanoTime() - start) / 1_000_000);
+
+        final String token = Jwt.issuer(issuer)
+                .upn("admin")
+                .groups(Set.of(Roles.ADMIN))
+                .sign();
+
+        final Map<String, Map<String, ?>> searches = new LinkedHashMap<>();
+        searches.put("latest", Map.of());
+        searches.put("text", Map.of("query", "netfl"));
+        searches.put("text, wallet and year", Map.of(
+                "query", "netflix",
+                "wallet[]", wallets.getFirst().id,
+                "from", "2025-01-01T00:00:00Z",
+                "to", "2026-01-01T00:00:00Z"
+        ));
+        searches.put("notes", Map.of("query", "invoice 4711"));
+        searches.put("month", Map.of("from", "2025-06-01T00:00:00Z", "to", "2025-07-01T00:00:00Z"));
+        searches.put("partner and amount", Map.of("partner[]", partners.get(3).id, "min_amount", -100, "max_amount", 0));
+        searches.put("status and type", Map.of("status[]", TransactionStatus.OPEN, "type[]", TransactionType.PAYMENT, "size", 100));
+
+        for (final Map.Entry<String, Map<String, ?>> search : searches.entrySet()) {
+            final long[] latencies = new long[iterations];
+            for (int i = -WARMUP; i < iterations; i++) {
+                final long requestStart = System.nanoTime();
+                given().cookie(cookieName, token)
+                        .queryParams(search.getValue())
+                        .get("/api/v2/transaction/{workspace_id}/search", workspace.id)
+                        .then()
+                        .statusCode(200);
+
+                if (i >= 0) latencies[i] = System.nanoTime() - requestStart;
+            }
+
+            Arrays.sort(latencies);
+            LOGGER.info("{} rows, {}: p50 {} ms, p99 {} ms, max {} ms",
+                    rows,
+                    search.getKey(),
+                    String.format("%.2f", percentile(latencies, 0.5)),
+                    String.format("%.2f", percentile(latencies, 0.99)),
+                    String.format("%.2f", latencies[latencies.length - 1] / 1_000_000.0));
+        }
+    }
+
+    private static double percentile(final long[] sorted, final double percentile) {
+        final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    private List<Transaction> generate(final int offset, final int count, final int rows) {
+        final Workspace workspace = Workspace.getEntityManager().getReference(Workspace.class, this.workspace.id);
+        final Asset asset = Asset.getEntityManager().getReference(Asset.class, this.asset.id);
+        final long step = RANGE.toSeconds() / rows;
+
+        final List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = offset; i < offset + count; i++) {
+            final Partner partner = partners.get(i % partners.size());
+            final Transaction transaction = new Transaction();
+            transaction.name = partner.name + " " + (i % 997);
+            transaction.notes = i % 10 == 0 ? "Invoice " + i : null;
+            transaction.date = START.plusSeconds(i * step);
+            transaction.amount = BigDecimal.valueOf(i % 1000 - 700);
+            transaction.asset = asset;
+            transaction.wallet = Wallet.getEntityManager().getReference(Wallet.class, wallets.get(i % wallets.size()).id);
+            transaction.partner = i % 7 == 0 ? null : Partner.getEntityManager().getReference(Partner.class, partner.id);
+            transaction.workspace = workspace;
+            transaction.type = TransactionType.PAYMENT;
+            transaction.status = i % 3 == 0 ? TransactionStatus.OPEN : TransactionStatus.CLOSED;
+            transactions.add(transaction);
+        }
+
+        return transactions;
+    }
+
+}
@@ -0,0 +1,146 @@
+package de.bethibande.finance.web.api.v2.crud;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bethibande.finance.TestWorkspace;
+import de.bethibande.finance.model.jpa.Asset;
+import de.bethibande.finance.model.web.PagedResponse;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class CursorPaginationTest {
+
+    private static final int ASSETS = 47;
+    private static final int PAGE_SIZE = 6;
+
+    @Inject
+    protected CursorPagination cursorPagination;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    protected SessionFactory sessionFactory;
+
+    private TestWorkspace fixture;
+    private List<Asset> assets;
+
+    @BeforeEach
+    void setUp() {
+        fixture = TestWorkspace.builder("Cursor").build();
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            assets = new ArrayList<>();
+            for (int i = 0; i < ASSETS; i++) {
+                final Asset asset = new Asset();
+                asset.name = "Asset " + (i % 5);
+                asset.code = "C" + i + "XX";
+                asset.symbol = i % 4 == 0 ? null : String.valueOf((char) ('a' + i % 3));
+                asset.workspace = fixture.workspace;
+                asset.persist();
+
+                assets.add(asset);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.delete();
+    }
+
+    private PaginationParams params(final String cursor, final String... sort) {
+        final PaginationParams params = new PaginationParams();
+        params.objectMapper = objectMapper;
+        params.size = PAGE_SIZE;
+        params.cursor = cursor;
+        params.sortOrders = List.of(sort);
+        return params;
+    }
+
+    private PagedResponse<Long> page(final String cursor) {
+        return QuarkusTransaction.requiringNew().call(() -> cursorPagination.list(
+                Asset.class,
+                params(cursor, "{\"field\":\"symbol\",\"direction\":\"Descending\"}", "{\"field\":\"name\",\"direction\":\"Ascending\"}"),
+                asset -> asset.id,
+                "workspace.id = ?1",
+                fixture.id()
+        ));
+    }
+
+    private List<Long> expectedOrder() {
+        return assets.stream()
+                .sorted(Comparator.comparing((Asset asset) -> asset.symbol, Comparator.nullsLast(Comparator.<String>reverseOrder()))
+                        .thenComparing(asset -> asset.name, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                        .thenComparing(asset -> asset.id))
+                .map(asset -> asset.id)
+                .toList();
+    }
+
+    @Test
+    void testForwardAndBackward() {
+        final List<PagedResponse<Long>> pages = new ArrayList<>();
+        PagedResponse<Long> page = page("");
+        assertNull(page.prevCursor());
+        pages.add(page);
+
+        while (page.nextCursor() != null) {
+            page = page(page.nextCursor());
+            assertNotNull(page.prevCursor());
+            pages.add(page);
+        }
+
+        assertEquals((ASSETS + PAGE_SIZE - 1) / PAGE_SIZE, pages.size());
+        assertEquals(expectedOrder(), pages.stream().flatMap(p -> p.data().stream()).toList());
+
+        // Walk back from the last page, every page must match the one seen on the way forward
+        for (int i = pages.size() - 1; i > 0; i--) {
+            final PagedResponse<Long> previous = page(pages.get(i).prevCursor());
+            assertEquals(pages.get(i - 1).data(), previous.data());
+        }
+    }
+
+    @Test
+    void testPageIsSingleStatement() {
+        final String cursor = page("").nextCursor();
+
+        final Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        final PagedResponse<Long> page = page(cursor);
+        assertNotNull(page.prevCursor());
+        assertNotNull(page.nextCursor());
+
+        // The cursors are built from the keys selected by the page query
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testCountIsOptional() {
+        assertEquals(PagedResponse.UNKNOWN, page("").totalElements());
+
+        final PaginationParams params = params("");
+        params.count = true;
+
+        final PagedResponse<Long> counted = QuarkusTransaction.requiringNew().call(() -> cursorPagination.list(
+                Asset.class,
+                params,
+                asset -> asset.id,
+                "workspace.id = ?1",
+                fixture.id()
+        ));
+
+        assertEquals(ASSETS, counted.totalElements());
+    }
+
+}